@@ -0,0 +1,89 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+
+import java.util.List;
+
+/**
+ * 基准测试用的实体类，包含常见的字段类型和一个嵌套对象
+ *
+ * @author hc
+ */
+@Index("article")
+public class Article {
+
+    @Id
+    private Long id;
+
+    private String title;
+
+    private String content;
+
+    private Double price;
+
+    private List<String> tags;
+
+    private Author author;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public void setPrice(Double price) {
+        this.price = price;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public Author getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(Author author) {
+        this.author = author;
+    }
+
+    public static class Author {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 基准测试用的Repository
+ *
+ * @author hc
+ */
+public interface ArticleRepository extends Repository<Article, Long> {
+
+    Mono<List<Article>> findByTitle(String title);
+}
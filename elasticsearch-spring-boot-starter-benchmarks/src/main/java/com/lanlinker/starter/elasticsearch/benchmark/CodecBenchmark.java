@@ -0,0 +1,59 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.lanlinker.starter.elasticsearch.codec.EntityCodec;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadataRegistry;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实体的序列化和反序列化，对应save时生成请求体和查询时解码源数据
+ *
+ * @author hc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"JSON", "SMILE"})
+    private XContentType contentType;
+
+    private EntityCodec<Article> codec;
+
+    private Article article;
+
+    private BytesReference source;
+
+    @Setup
+    public void setup() {
+        codec = new EntityCodec<>(EntityMetadataRegistry.get(Article.class), contentType);
+        article = Fixtures.article(1);
+        source = codec.encode(article);
+    }
+
+    @Benchmark
+    public BytesReference encode() {
+        return codec.encode(article);
+    }
+
+    @Benchmark
+    public Article decode() {
+        return codec.decode(source);
+    }
+}
@@ -0,0 +1,114 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试的测试数据和固定响应
+ *
+ * @author hc
+ */
+public final class Fixtures {
+
+    /**
+     * 正文的长度接近一篇短文章
+     */
+    private static final String CONTENT = repeat("Elasticsearch是一个分布式的搜索和分析引擎。", 20);
+
+    private Fixtures() {
+    }
+
+    public static List<Article> articles(int size) {
+        List<Article> articles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            articles.add(article(i));
+        }
+        return articles;
+    }
+
+    public static Article article(long id) {
+        Article article = new Article();
+        article.setId(id);
+        article.setTitle("文章标题" + id);
+        article.setContent(CONTENT);
+        article.setPrice(99.5 + id);
+        article.setTags(Arrays.asList("搜索", "分布式", "java"));
+        Article.Author author = new Article.Author();
+        author.setName("作者" + id);
+        article.setAuthor(author);
+        return article;
+    }
+
+    /**
+     * 和{@link #article(long)}对应的JSON源数据
+     */
+    public static String sourceJson(long id) {
+        return "{\"id\":" + id + ",\"title\":\"文章标题" + id + "\",\"content\":\"" + CONTENT + "\",\"price\":"
+                + (99.5 + id) + ",\"tags\":[\"搜索\",\"分布式\",\"java\"],\"author\":{\"name\":\"作者" + id + "\"}}";
+    }
+
+    /**
+     * 分页查询的响应
+     *
+     * @param hits      命中的条数
+     * @param highlight 是否包含title和content的高亮，content有两个片段
+     */
+    public static String searchResponseJson(int hits, boolean highlight) {
+        StringBuilder sb = new StringBuilder("{\"took\":3,\"timed_out\":false,")
+                .append("\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+                .append("\"hits\":{\"total\":{\"value\":").append(hits * 10).append(",\"relation\":\"eq\"},")
+                .append("\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"_index\":\"article\",\"_type\":\"_doc\",\"_id\":\"").append(i)
+                    .append("\",\"_score\":1.0,\"_source\":").append(sourceJson(i));
+            if (highlight) {
+                sb.append(",\"highlight\":{\"title\":[\"<em>文章</em>标题").append(i)
+                        .append("\"],\"content\":[\"<em>Elasticsearch</em>是一个分布式的\",\"搜索和分析<em>引擎</em>\"]}");
+            }
+            sb.append('}');
+        }
+        return sb.append("]}}").toString();
+    }
+
+    public static SearchResponse parseSearchResponse(String json) {
+        try (XContentParser parser = XContentType.JSON.xContent().createParser(
+                NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, json)) {
+            return SearchResponse.fromXContent(parser);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 不会真正发出请求的客户端，只用来创建处理器
+     */
+    public static RestHighLevelClient idleClient() {
+        return client("http://127.0.0.1:9200");
+    }
+
+    public static RestHighLevelClient client(String host) {
+        return new RestHighLevelClient(RestClient.builder(HttpHost.create(host)));
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
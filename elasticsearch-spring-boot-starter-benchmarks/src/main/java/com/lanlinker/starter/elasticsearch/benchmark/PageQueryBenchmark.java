@@ -0,0 +1,76 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端的分页高亮查询：生成请求、经过HTTP发送到进程内的桩服务、解析响应、解码实体并注入高亮
+ *
+ * @author hc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageQueryBenchmark {
+
+    @Param({"10", "100"})
+    private int hits;
+
+    @Param({"false", "true"})
+    private boolean highlight;
+
+    private StubServer server;
+
+    private RestHighLevelClient client;
+
+    private ArticleRepository repository;
+
+    private SearchSourceBuilder sourceBuilder;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new StubServer(Fixtures.searchResponseJson(hits, highlight));
+        client = Fixtures.client(server.getHost());
+        ElasticsearchProperties properties = new ElasticsearchProperties();
+        properties.setHosts(server.getHost());
+        repository = new RepositoryFactory<>(ArticleRepository.class, client, properties).getObject();
+        sourceBuilder = new SearchSourceBuilder().query(QueryBuilders.matchQuery("content", "分布式")).size(hits);
+        if (highlight) {
+            sourceBuilder.highlighter(new HighlightBuilder().field("title").field("content"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public PageInfo<Article> queryBySourceBuilderForPageHighlight() {
+        return repository.queryBySourceBuilderForPageHighlight(sourceBuilder).block();
+    }
+}
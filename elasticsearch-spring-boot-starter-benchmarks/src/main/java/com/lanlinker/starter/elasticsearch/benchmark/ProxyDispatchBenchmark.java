@@ -0,0 +1,85 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.metrics.MicrometerRepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.repository.RepositoryHandler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过RepositoryFactory创建的代理对象分发方法调用的开销，不发出请求。<br/>
+ * direct直接调用处理器，作为基线；proxy经过代理调用同一个方法；derivedQuery经过代理调用派生查询，只创建Mono不订阅
+ *
+ * @author hc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+    /**
+     * 是否开启监控指标
+     */
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private RestHighLevelClient client;
+
+    private RepositoryHandler<Article, Long> handler;
+
+    private ArticleRepository repository;
+
+    @Setup
+    public void setup() throws Exception {
+        client = Fixtures.idleClient();
+        ElasticsearchProperties properties = new ElasticsearchProperties();
+        handler = new RepositoryHandler<>(client, ArticleRepository.class, properties);
+        RepositoryFactory<ArticleRepository> factory = new RepositoryFactory<>(ArticleRepository.class, client, properties);
+        if (metrics) {
+            factory.setMetrics(new MicrometerRepositoryMetrics(new SimpleMeterRegistry()));
+        }
+        repository = factory.getObject();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public CacheStats direct() {
+        return handler.nearCacheStats();
+    }
+
+    @Benchmark
+    public CacheStats proxy() {
+        return repository.nearCacheStats();
+    }
+
+    @Benchmark
+    public Mono<List<Article>> derivedQuery() {
+        return repository.findByTitle("标题");
+    }
+}
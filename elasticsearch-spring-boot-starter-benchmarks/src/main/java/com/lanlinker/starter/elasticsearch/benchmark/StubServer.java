@@ -0,0 +1,64 @@
+package com.lanlinker.starter.elasticsearch.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程内的HTTP桩服务，对任何请求都返回同一个固定的JSON响应
+ *
+ * @author hc
+ */
+public class StubServer implements AutoCloseable {
+
+    static {
+        // 响应头和响应体分开写出，不关闭Nagle算法的话每个请求会多出几十毫秒的延迟
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    public StubServer(String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            // 读完请求体，连接才能复用
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // 丢弃
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * 桩服务的地址，可以直接作为hosts配置
+     */
+    public String getHost() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,64 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.benchmark.Article;
+import com.lanlinker.starter.elasticsearch.benchmark.ArticleRepository;
+import com.lanlinker.starter.elasticsearch.benchmark.Fixtures;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * saveAll中创建BulkRequest的开销，包括每个实体的序列化
+ *
+ * @author hc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkRequestBenchmark {
+
+    @Param({"100", "1000"})
+    private int size;
+
+    private RestHighLevelClient client;
+
+    private RepositoryHandler<Article, Long> handler;
+
+    private List<Article> articles;
+
+    @Setup
+    public void setup() {
+        client = Fixtures.idleClient();
+        handler = new RepositoryHandler<>(client, ArticleRepository.class, new ElasticsearchProperties());
+        articles = Fixtures.articles(size);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public BulkRequest newBulkRequest() {
+        return handler.newBulkRequest(articles);
+    }
+}
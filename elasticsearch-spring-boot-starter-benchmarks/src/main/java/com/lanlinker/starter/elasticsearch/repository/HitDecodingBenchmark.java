@@ -0,0 +1,68 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.benchmark.Article;
+import com.lanlinker.starter.elasticsearch.benchmark.ArticleRepository;
+import com.lanlinker.starter.elasticsearch.benchmark.Fixtures;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.SearchHits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把已经解析好的命中结果解码为实体并注入高亮，highlight为true和false的差值就是注入高亮的开销。<br/>
+ * 放在repository包中才能调用处理器的包内方法
+ *
+ * @author hc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitDecodingBenchmark {
+
+    @Param({"10", "100"})
+    private int hits;
+
+    @Param({"false", "true"})
+    private boolean highlight;
+
+    private RestHighLevelClient client;
+
+    private RepositoryHandler<Article, Long> handler;
+
+    private SearchHits searchHits;
+
+    @Setup
+    public void setup() {
+        client = Fixtures.idleClient();
+        handler = new RepositoryHandler<>(client, ArticleRepository.class, new ElasticsearchProperties());
+        searchHits = Fixtures.parseSearchResponse(Fixtures.searchResponseJson(hits, highlight)).getHits();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+    @Benchmark
+    public List<Article> toEntities() {
+        return handler.toEntities(searchHits);
+    }
+}
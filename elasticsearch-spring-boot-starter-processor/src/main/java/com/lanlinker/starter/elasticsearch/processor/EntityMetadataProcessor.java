@@ -0,0 +1,705 @@
+package com.lanlinker.starter.elasticsearch.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 为标记了@Index或@Id的实体类生成 {实体类名}_Metadata 元信息类，嵌套类的 $ 替换为 _ 。<br/>
+ * 生成的类继承 GeneratedEntityMetadata，包含索引库名称、id和routing的读取、字符串属性的写入，
+ * 以及在实体类满足Jackson默认规则时生成的序列化代码。运行时由 EntityMetadataRegistry 加载，不再反射解析实体类。<br/>
+ * 无法生成的实体类只输出警告，运行时会退回到反射解析。<br/>
+ * 同时把直接继承了Repository或ReactiveRepository的接口写入 META-INF/lanlinker-elasticsearch.repositories ，
+ * 运行时 RepositoryScanner 读取该索引，不再扫描类路径。
+ *
+ * @author hc
+ */
+// Repository接口没有注解，需要处理所有类型
+@SupportedAnnotationTypes("*")
+public class EntityMetadataProcessor extends AbstractProcessor {
+
+    static final String INDEX = "com.lanlinker.starter.elasticsearch.annotaions.Index";
+
+    static final String ID = "com.lanlinker.starter.elasticsearch.annotaions.Id";
+
+    static final String ROUTING = "com.lanlinker.starter.elasticsearch.annotaions.Routing";
+
+    static final String REPOSITORY = "com.lanlinker.starter.elasticsearch.repository.Repository";
+
+    static final String REACTIVE_REPOSITORY = "com.lanlinker.starter.elasticsearch.repository.ReactiveRepository";
+
+    /**
+     * Repository索引的位置，和运行时的 RepositoryScanner.INDEX_LOCATION 一致
+     */
+    static final String INDEX_LOCATION = "META-INF/lanlinker-elasticsearch.repositories";
+
+    private static final String SUFFIX = "_Metadata";
+
+    private static final String JACKSON_PACKAGE = "com.fasterxml.jackson.";
+
+    private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+
+    /**
+     * 已经生成过的实体类，多轮处理时避免重复生成
+     */
+    private final Set<String> generated = new HashSet<>();
+
+    /**
+     * 本次编译中找到的Repository接口的二进制名称
+     */
+    private final Set<String> repositories = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeRepositoryIndex();
+            return false;
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            collectRepositories(type);
+        }
+        Set<TypeElement> entities = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            String annotationName = annotation.getQualifiedName().toString();
+            if (!annotationName.equals(INDEX) && !annotationName.equals(ID)) {
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    entities.add((TypeElement) element);
+                } else if (element.getKind() == ElementKind.FIELD) {
+                    entities.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+        for (TypeElement entity : entities) {
+            if (generated.add(entity.getQualifiedName().toString())) {
+                generate(entity);
+            }
+        }
+        // 不独占注解，其它处理器仍然可以处理
+        return false;
+    }
+
+    private void generate(TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) {
+            warn(type, "带泛型的实体类不生成元信息，运行时使用反射");
+            return;
+        }
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                warn(type, "private的实体类不生成元信息，运行时使用反射");
+                return;
+            }
+        }
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+
+        // id和路由字段，和运行时一样只看实体类自身声明的字段，最后一个生效
+        VariableElement idField = null;
+        VariableElement routingField = null;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (annotation(field, ID) != null) {
+                idField = field;
+            }
+            if (annotation(field, ROUTING) != null) {
+                routingField = field;
+            }
+        }
+        if (idField == null) {
+            warn(type, "实体类中必须有一个字段标记@Id注解，未生成元信息");
+            return;
+        }
+        String idExpression = readExpression(type, idField, packageName);
+        if (idExpression == null) {
+            warn(idField, "id字段不可访问且没有可访问的get方法，未生成元信息");
+            return;
+        }
+        String routingExpression = routingField == null ? null : readExpression(type, routingField, packageName);
+        if (routingField != null && routingExpression == null) {
+            warn(routingField, "路由字段不可访问且没有可访问的get方法，未生成元信息");
+            return;
+        }
+
+        String entityName = type.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + SUFFIX;
+
+        StringBuilder src = new StringBuilder();
+        // 生成的源码只包含ASCII字符，不受编译编码影响
+        src.append("// Generated by EntityMetadataProcessor, do not edit\n");
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        src.append("public final class ").append(simpleName)
+                .append(" extends com.lanlinker.starter.elasticsearch.metadata.GeneratedEntityMetadata<")
+                .append(entityName).append("> {\n\n");
+
+        src.append("    public ").append(simpleName).append("() {\n")
+                .append("        super(").append(entityName).append(".class);\n")
+                .append("    }\n\n");
+
+        // 索引库名称
+        src.append("    @Override\n    public String getIndexName() {\n        return ")
+                .append(literal(indexName(type))).append(";\n    }\n\n");
+
+        // id
+        src.append("    @Override\n    public String getId(").append(entityName).append(" t) {\n");
+        appendToString(src, idField, idExpression);
+        src.append("    }\n\n");
+
+        // routing，没有路由字段时使用父类的实现
+        if (routingField != null) {
+            src.append("    @Override\n    public String getRouting(").append(entityName).append(" t) {\n");
+            appendToString(src, routingField, routingExpression);
+            src.append("    }\n\n");
+        }
+
+        // 字符串属性的写入
+        src.append("    @Override\n    protected boolean setDirectString(").append(entityName)
+                .append(" t, String name, String value) {\n        switch (name) {\n");
+        Set<String> written = new HashSet<>();
+        for (VariableElement field : hierarchyFields(type)) {
+            String name = field.getSimpleName().toString();
+            if (field.getModifiers().contains(Modifier.STATIC) || !isString(field.asType()) || !written.add(name)) {
+                continue;
+            }
+            String statement = writeStatement(type, field, packageName);
+            if (statement != null) {
+                src.append("            case ").append(literal(name)).append(":\n")
+                        .append("                ").append(statement).append(";\n")
+                        .append("                return true;\n");
+            }
+        }
+        src.append("            default:\n                return false;\n        }\n    }\n");
+
+        // 序列化代码
+        List<Property> properties = serializableProperties(type, packageName);
+        if (properties != null) {
+            src.append("\n    @Override\n    public boolean hasSerializer() {\n        return true;\n    }\n\n");
+            src.append("    @Override\n    public void serialize(").append(entityName)
+                    .append(" t, com.fasterxml.jackson.core.JsonGenerator g) throws java.io.IOException {\n");
+            src.append("        g.writeStartObject();\n");
+            for (Property property : properties) {
+                src.append("        ").append(writeField(property)).append(";\n");
+            }
+            src.append("        g.writeEndObject();\n    }\n");
+        }
+        src.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(src.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "生成" + qualifiedName + "失败：" + e, type);
+        }
+    }
+
+    /**
+     * 生成把字段值转为字符串的返回语句，值为null时返回null
+     */
+    private static void appendToString(StringBuilder src, VariableElement field, String expression) {
+        if (field.asType().getKind().isPrimitive()) {
+            src.append("        return String.valueOf(").append(expression).append(");\n");
+        } else {
+            src.append("        Object value = ").append(expression).append(";\n")
+                    .append("        return value == null ? null : value.toString();\n");
+        }
+    }
+
+    /**
+     * 收集类型及其嵌套类型中的Repository接口
+     */
+    private void collectRepositories(TypeElement type) {
+        if (isRepository(type)) {
+            repositories.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+        }
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            collectRepositories(nested);
+        }
+    }
+
+    /**
+     * 和运行时扫描的规则一致：直接继承了Repository或ReactiveRepository的接口
+     */
+    private boolean isRepository(TypeElement type) {
+        if (type.getKind() != ElementKind.INTERFACE) {
+            return false;
+        }
+        for (TypeMirror superInterface : type.getInterfaces()) {
+            if (superInterface.getKind() != TypeKind.DECLARED) {
+                continue;
+            }
+            Name name = ((TypeElement) ((DeclaredType) superInterface).asElement()).getQualifiedName();
+            if (name.contentEquals(REPOSITORY) || name.contentEquals(REACTIVE_REPOSITORY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写出Repository索引。增量编译时只有部分源文件参与编译，先合并上次生成的索引，
+     * 再去掉已经不存在或者不再是Repository的接口
+     */
+    private void writeRepositoryIndex() {
+        Filer filer = processingEnv.getFiler();
+        Set<String> index = new TreeSet<>(repositories);
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#") || index.contains(line)) {
+                        continue;
+                    }
+                    TypeElement type = processingEnv.getElementUtils().getTypeElement(line.replace('$', '.'));
+                    if (type != null && isRepository(type)) {
+                        index.add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // 第一次编译，没有上次生成的索引
+        }
+        // 没有Repository接口的模块不生成索引，否则运行时会以为整个应用都有索引而跳过扫描
+        if (index.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# Generated by EntityMetadataProcessor, do not edit\n");
+                for (String name : index) {
+                    writer.write(name);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "生成" + INDEX_LOCATION + "失败：" + e);
+        }
+    }
+
+    private String indexName(TypeElement type) {
+        AnnotationMirror index = annotation(type, INDEX);
+        if (index != null) {
+            AnnotationValue value = annotationValue(index, "value");
+            if (value != null) {
+                return String.valueOf(value.getValue());
+            }
+        }
+        // 没有注解，用类名称首字母小写，作为索引库名称
+        String simpleName = type.getSimpleName().toString();
+        return simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
+    }
+
+    /**
+     * 读取字段的表达式，字段可访问时直接读取，否则使用get方法
+     */
+    private String readExpression(TypeElement type, VariableElement field, String packageName) {
+        if (isAccessible(field, packageName)) {
+            return "t." + field.getSimpleName();
+        }
+        String name = capitalize(field.getSimpleName().toString());
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            String methodName = method.getSimpleName().toString();
+            if ((methodName.equals("get" + name) || methodName.equals("is" + name))
+                    && method.getParameters().isEmpty()
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && isAccessible(method, packageName)) {
+                return "t." + methodName + "()";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入字符串字段的语句，优先使用set方法
+     */
+    private String writeStatement(TypeElement type, VariableElement field, String packageName) {
+        String setter = "set" + capitalize(field.getSimpleName().toString());
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getSimpleName().contentEquals(setter)
+                    && method.getParameters().size() == 1
+                    && isString(method.getParameters().get(0).asType())
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && isAccessible(method, packageName)) {
+                return "t." + setter + "(value)";
+            }
+        }
+        if (!field.getModifiers().contains(Modifier.FINAL) && isAccessible(field, packageName)) {
+            return "t." + field.getSimpleName() + " = value";
+        }
+        return null;
+    }
+
+    /**
+     * 按Jackson默认规则收集要序列化的属性：public的getter和public的字段。<br/>
+     * 遇到除@JsonIgnore、@JsonProperty以外的Jackson注解，或者有Jackson可见但生成代码无法访问的属性时返回null，
+     * 此时运行时仍由Jackson序列化
+     */
+    private List<Property> serializableProperties(TypeElement type, String packageName) {
+        if (hasUnsupportedAnnotation(type)) {
+            return null;
+        }
+        Map<String, Property> properties = new LinkedHashMap<>();
+        // 先收集字段，父类在前
+        for (VariableElement field : hierarchyFields(type)) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            if (hasUnsupportedAnnotation(field)) {
+                return null;
+            }
+            Property property = properties.computeIfAbsent(field.getSimpleName().toString(), Property::new);
+            property.type = field.asType();
+            property.ignored |= annotation(field, JSON_IGNORE) != null;
+            property.explicit |= annotation(field, JSON_PROPERTY) != null;
+            property.rename(explicitName(field));
+            if (field.getModifiers().contains(Modifier.PUBLIC) && !field.getModifiers().contains(Modifier.TRANSIENT)) {
+                property.field = field.getSimpleName().toString();
+                property.fieldOwnerAccessible = isAccessible((TypeElement) field.getEnclosingElement(), packageName);
+            }
+        }
+        // 再收集getter
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    || !method.getParameters().isEmpty()
+                    || ((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object")) {
+                continue;
+            }
+            String name = getterPropertyName(method);
+            if (name == null) {
+                continue;
+            }
+            if (hasUnsupportedAnnotation(method)) {
+                return null;
+            }
+            boolean annotated = annotation(method, JSON_PROPERTY) != null;
+            if (!method.getModifiers().contains(Modifier.PUBLIC)) {
+                // 非public的getter只有加了@JsonProperty才对Jackson可见
+                if (annotated) {
+                    return null;
+                }
+                continue;
+            }
+            Property property = properties.computeIfAbsent(name, Property::new);
+            property.getter = method.getSimpleName().toString();
+            property.type = method.getReturnType();
+            property.getterOwnerAccessible = isAccessible((TypeElement) method.getEnclosingElement(), packageName);
+            property.ignored |= annotation(method, JSON_IGNORE) != null;
+            property.explicit |= annotated;
+            property.rename(explicitName(method));
+        }
+
+        // 和Jackson一样，先去掉忽略的属性，再按最终名称合并，改名的属性排到后面
+        Map<String, Property> merged = new LinkedHashMap<>();
+        List<Property> renamed = new ArrayList<>();
+        for (Property property : properties.values()) {
+            if (property.ignored) {
+                continue;
+            }
+            if (property.name.equals(property.implicitName)) {
+                merged.put(property.name, property);
+            } else {
+                renamed.add(property);
+            }
+        }
+        for (Property property : renamed) {
+            Property old = merged.get(property.name);
+            if (old == null) {
+                merged.put(property.name, property);
+            } else {
+                old.merge(property);
+            }
+        }
+        List<Property> result = new ArrayList<>();
+        for (Property property : merged.values()) {
+            if (property.getter == null && property.field == null) {
+                // private字段加了@JsonProperty，Jackson可见但生成代码访问不到
+                if (property.explicit) {
+                    return null;
+                }
+                continue;
+            }
+            if (property.getter != null ? !property.getterOwnerAccessible : !property.fieldOwnerAccessible) {
+                return null;
+            }
+            result.add(property);
+        }
+        // 没有属性的类Jackson默认会报错，交给Jackson处理
+        return result.isEmpty() ? null : result;
+    }
+
+    private String writeField(Property property) {
+        String name = literal(property.name);
+        String value = property.getter != null ? "t." + property.getter + "()" : "t." + property.field;
+        switch (property.type.getKind()) {
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return "g.writeNumberField(" + name + ", " + value + ")";
+            case SHORT:
+            case BYTE:
+                return "g.writeNumberField(" + name + ", (int) " + value + ")";
+            case BOOLEAN:
+                return "g.writeBooleanField(" + name + ", " + value + ")";
+            case CHAR:
+                return "g.writeStringField(" + name + ", String.valueOf(" + value + "))";
+            default:
+                if (isString(property.type)) {
+                    // null会写出为null
+                    return "g.writeStringField(" + name + ", " + value + ")";
+                }
+                // 其它类型交给生成器关联的ObjectMapper
+                return "g.writeObjectField(" + name + ", " + value + ")";
+        }
+    }
+
+    /**
+     * 和Jackson默认的命名规则一致：getURL -> url，isOk -> ok，is前缀只用于boolean
+     */
+    private String getterPropertyName(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        TypeMirror returnType = method.getReturnType();
+        if (returnType.getKind() == TypeKind.VOID) {
+            return null;
+        }
+        String base;
+        if (name.startsWith("get") && name.length() > 3) {
+            base = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 && returnType.getKind() == TypeKind.BOOLEAN) {
+            base = name.substring(2);
+        } else {
+            return null;
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < base.length(); i++) {
+            char upper = base.charAt(i);
+            char lower = Character.toLowerCase(upper);
+            if (upper == lower) {
+                break;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(base);
+            }
+            sb.setCharAt(i, lower);
+        }
+        return sb == null ? base : sb.toString();
+    }
+
+    private String explicitName(Element element) {
+        AnnotationMirror property = annotation(element, JSON_PROPERTY);
+        if (property == null) {
+            return null;
+        }
+        AnnotationValue value = annotationValue(property, "value");
+        return value == null || String.valueOf(value.getValue()).isEmpty() ? null : String.valueOf(value.getValue());
+    }
+
+    /**
+     * 是否有生成代码无法等价处理的Jackson注解
+     */
+    private boolean hasUnsupportedAnnotation(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (!name.startsWith(JACKSON_PACKAGE)) {
+                continue;
+            }
+            if (name.equals(JSON_IGNORE)) {
+                AnnotationValue value = annotationValue(mirror, "value");
+                if (value == null || Boolean.TRUE.equals(value.getValue())) {
+                    continue;
+                }
+            }
+            if (name.equals(JSON_PROPERTY) && mirror.getElementValues().size() == (annotationValue(mirror, "value") == null ? 0 : 1)) {
+                continue;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 实体类及其父类声明的字段，父类在前
+     */
+    private List<VariableElement> hierarchyFields(TypeElement type) {
+        List<TypeElement> types = new ArrayList<>();
+        for (TypeElement t = type; t != null && !t.getQualifiedName().contentEquals("java.lang.Object"); t = superclass(t)) {
+            types.add(0, t);
+        }
+        List<VariableElement> fields = new ArrayList<>();
+        for (TypeElement t : types) {
+            fields.addAll(ElementFilter.fieldsIn(t.getEnclosedElements()));
+        }
+        return fields;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    /**
+     * 生成的类和实体类在同一个包中，public的成员，以及同一个包中非private的成员可以访问
+     */
+    private boolean isAccessible(Element element, String packageName) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        TypeElement owner = element instanceof TypeElement ? (TypeElement) element : (TypeElement) element.getEnclosingElement();
+        boolean ownerPublic = owner.getModifiers().contains(Modifier.PUBLIC);
+        boolean samePackage = processingEnv.getElementUtils().getPackageOf(owner).getQualifiedName().contentEquals(packageName);
+        if (element == owner) {
+            return ownerPublic || samePackage;
+        }
+        return modifiers.contains(Modifier.PUBLIC) ? ownerPublic || samePackage : samePackage;
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private AnnotationMirror annotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String literal(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private void warn(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
+    /**
+     * 要序列化的属性
+     */
+    private static final class Property {
+
+        private final String implicitName;
+
+        private String name;
+
+        private TypeMirror type;
+
+        private String getter;
+
+        private String field;
+
+        private boolean getterOwnerAccessible;
+
+        private boolean fieldOwnerAccessible;
+
+        private boolean ignored;
+
+        private boolean explicit;
+
+        private Property(String implicitName) {
+            this.implicitName = implicitName;
+            this.name = implicitName;
+        }
+
+        private void rename(String explicitName) {
+            if (explicitName != null) {
+                this.name = explicitName;
+            }
+        }
+
+        /**
+         * 合并改名后同名的属性，序列化时优先使用getter
+         */
+        private void merge(Property other) {
+            if (getter == null && other.getter != null) {
+                getter = other.getter;
+                getterOwnerAccessible = other.getterOwnerAccessible;
+                type = other.type;
+            }
+            if (field == null && other.field != null) {
+                field = other.field;
+                fieldOwnerAccessible = other.fieldOwnerAccessible;
+                if (getter == null) {
+                    type = other.type;
+                }
+            }
+            explicit |= other.explicit;
+        }
+    }
+}
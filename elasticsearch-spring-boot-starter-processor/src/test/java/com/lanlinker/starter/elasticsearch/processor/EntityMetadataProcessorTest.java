@@ -0,0 +1,212 @@
+package com.lanlinker.starter.elasticsearch.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lanlinker.starter.elasticsearch.codec.EntityCodec;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadata;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadataRegistry;
+import com.lanlinker.starter.elasticsearch.metadata.GeneratedEntityMetadata;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用处理器编译 src/test/resources/sources 下的实体类，生成的元信息类与反射解析的结果逐项比较：
+ * 嵌套属性路径、嵌套类的 $ 、带有不支持的Jackson注解时退回Jackson序列化，以及无法生成时退回反射
+ *
+ * @author hc
+ */
+class EntityMetadataProcessorTest {
+
+    private static final String[] SOURCES = {"Book", "Shelf", "Annotated", "Hidden", "BookRepository"};
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    static Path output;
+
+    private static URLClassLoader loader;
+
+    private static final List<Diagnostic<? extends JavaFileObject>> WARNINGS = new ArrayList<>();
+
+    @BeforeAll
+    static void compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (String name : SOURCES) {
+            sources.add(source(name));
+        }
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(output.toFile()));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(output.toFile()));
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, sources);
+            task.setProcessors(Collections.singletonList(new EntityMetadataProcessor()));
+            boolean success = task.call();
+            assertTrue(success, diagnostics.getDiagnostics().toString());
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.WARNING || diagnostic.getKind() == Diagnostic.Kind.MANDATORY_WARNING) {
+                WARNINGS.add(diagnostic);
+            }
+        }
+        loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, EntityMetadataProcessorTest.class.getClassLoader());
+    }
+
+    private static JavaFileObject source(String name) throws IOException {
+        String content;
+        try (InputStream in = EntityMetadataProcessorTest.class.getResourceAsStream("/sources/sample/" + name + ".java");
+             Scanner scanner = new Scanner(in, "UTF-8")) {
+            content = scanner.useDelimiter("\\A").next();
+        }
+        return new SimpleJavaFileObject(URI.create("string:///sample/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EntityMetadata<Object> reflective(Class<?> type) throws ReflectiveOperationException {
+        Class<?> reflective = Class.forName("com.lanlinker.starter.elasticsearch.metadata.ReflectiveEntityMetadata");
+        Constructor<?> constructor = reflective.getDeclaredConstructor(Class.class);
+        constructor.setAccessible(true);
+        return (EntityMetadata<Object>) constructor.newInstance(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EntityMetadata<Object> generated(Class<?> type) {
+        EntityMetadata<Object> metadata = (EntityMetadata<Object>) EntityMetadataRegistry.get(type);
+        assertTrue(metadata instanceof GeneratedEntityMetadata, type + "没有使用生成的元信息类");
+        assertEquals(type.getName().replace('$', '_') + EntityMetadataRegistry.SUFFIX, metadata.getClass().getName());
+        return metadata;
+    }
+
+    private static String encode(EntityMetadata<Object> metadata, Object entity) {
+        return new EntityCodec<>(metadata, XContentType.JSON).encode(entity).utf8ToString();
+    }
+
+    /**
+     * 生成的元信息与反射解析的元信息对同一个实体给出相同的结果
+     */
+    private static void assertSameAsReflective(EntityMetadata<Object> generated, Object entity) throws ReflectiveOperationException {
+        EntityMetadata<Object> reflective = reflective(generated.getEntityClass());
+        assertEquals(reflective.getIndexName(), generated.getIndexName());
+        assertEquals(reflective.getId(entity), generated.getId(entity));
+        assertEquals(reflective.getRouting(entity), generated.getRouting(entity));
+        assertEquals(encode(reflective, entity), encode(generated, entity));
+    }
+
+    private Object read(String className, String json) throws Exception {
+        return MAPPER.readValue(json, loader.loadClass(className));
+    }
+
+    @Test
+    void generatedMetadataMatchesReflection() throws Exception {
+        Class<?> book = loader.loadClass("sample.Book");
+        EntityMetadata<Object> metadata = generated(book);
+        assertTrue(metadata.hasSerializer());
+        assertEquals("books", metadata.getIndexName());
+
+        Object entity = read("sample.Book", "{\"id\":7,\"shop\":\"s1\",\"book_title\":\"标题\\n\\\"引号\\\"\","
+                + "\"pages\":320,\"onSale\":true,\"internal\":\"x\",\"author\":{\"name\":\"hc\"}}");
+        assertEquals("7", metadata.getId(entity));
+        assertEquals("s1", metadata.getRouting(entity));
+        assertSameAsReflective(metadata, entity);
+        // @JsonIgnore的字段不输出，@JsonProperty改名生效
+        String json = encode(metadata, entity);
+        assertFalse(json.contains("internal"), json);
+        assertTrue(json.contains("\"book_title\""), json);
+
+        // 空值
+        assertSameAsReflective(metadata, read("sample.Book", "{}"));
+    }
+
+    @Test
+    void setStringOnDirectAndNestedPaths() throws Exception {
+        Class<?> book = loader.loadClass("sample.Book");
+        EntityMetadata<Object> generated = generated(book);
+        EntityMetadata<Object> reflective = reflective(book);
+        // 嵌套路径只写入已经存在的对象
+        Object left = read("sample.Book", "{\"id\":1,\"author\":{}}");
+        Object right = read("sample.Book", "{\"id\":1,\"author\":{}}");
+        for (EntityMetadata<Object> metadata : Arrays.asList(generated, reflective)) {
+            Object entity = metadata == generated ? left : right;
+            metadata.setString(entity, "title", "<em>高亮</em>");
+            metadata.setString(entity, "author.name", "<em>hc</em>");
+        }
+        assertEquals(encode(reflective, right), encode(reflective, left));
+        String json = encode(generated, left);
+        assertTrue(json.contains("\"book_title\":\"<em>高亮</em>\""), json);
+        assertTrue(json.contains("\"author\":{\"name\":\"<em>hc</em>\"}"), json);
+    }
+
+    @Test
+    void nestedClassUsesUnderscore() throws Exception {
+        Class<?> item = loader.loadClass("sample.Shelf$Item");
+        EntityMetadata<Object> metadata = generated(item);
+        assertNotNull(loader.loadClass("sample.Shelf_Item_Metadata"));
+        assertTrue(metadata.hasSerializer());
+        assertSameAsReflective(metadata, read("sample.Shelf$Item", "{\"code\":\"c-1\",\"label\":\"书架\",\"count\":3}"));
+    }
+
+    @Test
+    void unsupportedJacksonAnnotationsFallBackToJackson() throws Exception {
+        // 类上有@JsonInclude，生成的类只负责id等元信息，序列化仍由Jackson完成
+        EntityMetadata<Object> annotated = generated(loader.loadClass("sample.Annotated"));
+        assertFalse(annotated.hasSerializer());
+        assertSameAsReflective(annotated, read("sample.Annotated", "{\"id\":\"a\"}"));
+
+        // 私有字段上的@JsonProperty需要Jackson通过反射读取
+        EntityMetadata<Object> hidden = generated(loader.loadClass("sample.Hidden"));
+        assertFalse(hidden.hasSerializer());
+        Object entity = read("sample.Hidden", "{\"id\":\"h\",\"secret\":\"s\"}");
+        assertSameAsReflective(hidden, entity);
+        assertTrue(encode(hidden, entity).contains("\"secret\":\"s\""));
+    }
+
+    @Test
+    void privateClassIsSkippedWithWarning() throws Exception {
+        Class<?> secret = loader.loadClass("sample.Shelf$Secret");
+        assertFalse(Files.exists(output.resolve("sample/Shelf_Secret_Metadata.class")));
+        assertFalse(EntityMetadataRegistry.get(secret) instanceof GeneratedEntityMetadata);
+        assertTrue(WARNINGS.stream().anyMatch(warning -> warning.getMessage(null).startsWith("private的实体类")), WARNINGS.toString());
+    }
+
+    @Test
+    void repositoryIndexUsesBinaryNames() throws Exception {
+        List<String> lines = Files.readAllLines(output.resolve("META-INF/lanlinker-elasticsearch.repositories"), StandardCharsets.UTF_8);
+        assertTrue(lines.contains("sample.BookRepository"), lines.toString());
+        assertTrue(lines.contains("sample.Shelf$ItemRepository"), lines.toString());
+    }
+}
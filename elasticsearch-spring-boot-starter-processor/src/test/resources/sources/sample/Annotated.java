@@ -0,0 +1,29 @@
+package sample;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Annotated {
+
+    @Id
+    private String id;
+
+    private String note;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+}
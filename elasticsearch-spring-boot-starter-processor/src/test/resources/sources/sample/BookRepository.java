@@ -0,0 +1,6 @@
+package sample;
+
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+
+public interface BookRepository extends Repository<Book, Long> {
+}
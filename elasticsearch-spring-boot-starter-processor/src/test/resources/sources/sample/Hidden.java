@@ -0,0 +1,21 @@
+package sample;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+
+public class Hidden {
+
+    @Id
+    private String id;
+
+    @JsonProperty
+    private String secret;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+}
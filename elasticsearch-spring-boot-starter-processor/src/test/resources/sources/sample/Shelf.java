@@ -0,0 +1,26 @@
+package sample;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.repository.ReactiveRepository;
+
+public class Shelf {
+
+    public static class Item {
+
+        @Id
+        public String code;
+
+        public String label;
+
+        public long count;
+    }
+
+    public interface ItemRepository extends ReactiveRepository<Item, String> {
+    }
+
+    private static class Secret {
+
+        @Id
+        private String id;
+    }
+}
@@ -0,0 +1,89 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 索引库别名，每个别名最多有一个写入索引库
+ *
+ * @author hc
+ */
+class Aliases {
+
+    /**
+     * 别名 -> (索引库 -> 是否为写入索引库)
+     */
+    private final Map<String, Map<String, Boolean>> aliases = new LinkedHashMap<>();
+
+    synchronized void add(String alias, String index, boolean writeIndex) {
+        Map<String, Boolean> indices = aliases.computeIfAbsent(alias, key -> new LinkedHashMap<>());
+        if (writeIndex) {
+            indices.replaceAll((name, write) -> false);
+        }
+        indices.put(index, writeIndex);
+    }
+
+    synchronized boolean exists(String alias) {
+        return aliases.containsKey(alias);
+    }
+
+    /**
+     * 别名指向的索引库，不是别名时返回null
+     */
+    synchronized List<String> indices(String alias) {
+        Map<String, Boolean> indices = aliases.get(alias);
+        return indices == null ? null : new ArrayList<>(indices.keySet());
+    }
+
+    /**
+     * 写入时的目标索引库，不是别名时原样返回
+     */
+    synchronized String writeIndex(String name) {
+        Map<String, Boolean> indices = aliases.get(name);
+        if (indices == null) {
+            return name;
+        }
+        for (Map.Entry<String, Boolean> entry : indices.entrySet()) {
+            if (entry.getValue()) {
+                return entry.getKey();
+            }
+        }
+        // 只指向一个索引库的别名即使没有标记也可以写入
+        if (indices.size() == 1) {
+            return indices.keySet().iterator().next();
+        }
+        throw new StubException(400, "illegal_argument_exception",
+                "no write index is defined for alias [" + name + "]");
+    }
+
+    /**
+     * 按id读取时的目标索引库，别名必须只指向一个索引库
+     */
+    synchronized String readIndex(String name) {
+        Map<String, Boolean> indices = aliases.get(name);
+        if (indices == null) {
+            return name;
+        }
+        if (indices.size() != 1) {
+            throw new StubException(400, "illegal_argument_exception",
+                    "alias [" + name + "] has more than one index associated with it " + indices.keySet()
+                            + ", can't execute a single index op");
+        }
+        return indices.keySet().iterator().next();
+    }
+
+    /**
+     * 删除索引库时把它从所有别名中去掉，没有索引库的别名也随之删除
+     */
+    synchronized void removeIndex(String index) {
+        aliases.values().forEach(indices -> indices.remove(index));
+        aliases.values().removeIf(Map::isEmpty);
+    }
+
+    synchronized Collection<String> names() {
+        return new ArrayList<>(aliases.keySet());
+    }
+}
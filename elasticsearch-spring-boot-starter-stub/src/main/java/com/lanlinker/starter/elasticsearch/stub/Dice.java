@@ -0,0 +1,29 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.Random;
+
+/**
+ * 桩服务共用的随机数生成器，所有的随机决策都从这里采样，相同的种子和请求顺序得到相同的结果
+ *
+ * @author hc
+ */
+class Dice {
+
+    private final Random random;
+
+    Dice(long seed) {
+        this.random = new Random(seed);
+    }
+
+    synchronized boolean chance(double probability) {
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    synchronized int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    synchronized long sampleNanos(LatencyModel model) {
+        return model.sampleNanos(random);
+    }
+}
@@ -0,0 +1,72 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * 桩服务的存储，默认是{@link InMemoryDocumentStore}，可以替换为其它实现，例如预先装好数据的只读存储。<br/>
+ * 实现必须是线程安全的
+ *
+ * @author hc
+ */
+public interface DocumentStore {
+
+    /**
+     * 创建索引库
+     *
+     * @return 已经存在时返回false
+     */
+    boolean createIndex(String index, Map<String, Object> settings);
+
+    /**
+     * 删除索引库
+     *
+     * @return 不存在时返回false
+     */
+    boolean deleteIndex(String index);
+
+    boolean indexExists(String index);
+
+    /**
+     * 所有索引库的名称
+     */
+    Collection<String> indexNames();
+
+    /**
+     * 索引库的设置，不存在时返回null
+     */
+    Map<String, Object> getSettings(String index);
+
+    /**
+     * 更新索引库的设置，值为null的设置被删除，写入时不存在的索引库会被自动创建
+     */
+    void updateSettings(String index, Map<String, Object> settings);
+
+    /**
+     * 原子地修改一个文档，不存在的索引库会被自动创建
+     *
+     * @param index    索引库
+     * @param id       文档id
+     * @param function 参数是当前的文档（不存在时为null），返回新的文档，返回null表示删除，返回参数本身表示不修改
+     * @return 修改后的文档，删除时为null
+     */
+    StoredDocument compute(String index, String id, UnaryOperator<StoredDocument> function);
+
+    /**
+     * 查询文档
+     *
+     * @return 索引库或文档不存在时返回null
+     */
+    StoredDocument get(String index, String id);
+
+    /**
+     * 索引库中的所有文档，按id排序，索引库不存在时返回null
+     */
+    Collection<StoredDocument> documents(String index);
+
+    /**
+     * 为索引库分配下一个序号
+     */
+    long nextSeqNo(String index);
+}
@@ -0,0 +1,1204 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 进程内的Elasticsearch桩服务。<br/>
+ * 实现starter用到的REST接口子集：文档的index、create、update（含简单脚本，见{@link ScriptRunner}）、get、delete，_bulk、_mget、_search（含补全）、_msearch、
+ * _count、_delete_by_query、scroll，索引库的创建、删除和设置，以及别名、_rollover和索引模板。可以为每种操作配置延迟分布，按概率或按并发数返回429，
+ * 按概率模拟部分分片失败，所有随机决策都来自同一个带种子的随机数生成器。<br/>
+ * 用法：
+ * <pre>
+ * ElasticsearchStubServer stub = ElasticsearchStubServer.builder()
+ *         .latency(LatencyModel.logNormal(Duration.ofMillis(5), 0.5))
+ *         .maxInFlight(64)
+ *         .start();
+ * // 配置给starter
+ * System.setProperty(ElasticsearchStubServer.HOSTS_PROPERTY, stub.getHosts());
+ * </pre>
+ * Spring测试中也可以通过@DynamicPropertySource注册{@link #HOSTS_PROPERTY}
+ *
+ * @author hc
+ */
+public class ElasticsearchStubServer implements AutoCloseable {
+
+    /**
+     * starter的地址配置
+     */
+    public static final String HOSTS_PROPERTY = "lanlinker.elasticsearch.hosts";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final ObjectMapper SMILE = new ObjectMapper(new SmileFactory());
+
+    private static final ObjectMapper CBOR = new ObjectMapper(new CBORFactory());
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    /**
+     * SMILE格式的bulk请求中每一行之间的分隔符
+     */
+    private static final byte SMILE_SEPARATOR = (byte) 0xFF;
+
+    static {
+        // 响应头和响应体分开写出，不关闭Nagle算法的话每个请求会多出几十毫秒的延迟
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final DocumentStore store;
+
+    private final Aliases aliases = new Aliases();
+
+    /**
+     * 索引模板，第一次写入不存在的索引库时按模板的settings自动创建
+     */
+    private final Map<String, Map<String, Object>> templates = new ConcurrentHashMap<>();
+
+    private final Dice dice;
+
+    private final SearchExecutor searchExecutor;
+
+    private final LatencyModel defaultLatency;
+
+    private final Map<Operation, LatencyModel> latencies;
+
+    private final double rejectionRate;
+
+    private final double bulkItemRejectionRate;
+
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<Operation, LongAdder> requests = new EnumMap<>(Operation.class);
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder rejectedItems = new LongAdder();
+
+    private ElasticsearchStubServer(Builder builder) throws IOException {
+        this.store = builder.store;
+        this.dice = new Dice(builder.seed);
+        this.searchExecutor = new SearchExecutor(store, aliases, dice, builder.shards, builder.shardFailureRate);
+        this.defaultLatency = builder.latency;
+        this.latencies = new EnumMap<>(builder.latencies);
+        this.rejectionRate = builder.rejectionRate;
+        this.bulkItemRejectionRate = builder.bulkItemRejectionRate;
+        this.maxInFlight = builder.maxInFlight;
+        for (Operation operation : Operation.values()) {
+            requests.put(operation, new LongAdder());
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+        // 模拟延迟时处理线程会等待，用不限数量的线程池，并发上限由maxInFlight控制
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "elasticsearch-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 用默认配置启动：随机端口、内存存储、没有延迟和故障
+     */
+    public static ElasticsearchStubServer start() throws IOException {
+        return builder().start();
+    }
+
+    /**
+     * 桩服务的地址，可以直接作为{@link #HOSTS_PROPERTY}的值
+     */
+    public String getHosts() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public DocumentStore getStore() {
+        return store;
+    }
+
+    /**
+     * 某种操作收到的请求数，包括被拒绝的请求
+     */
+    public long getRequestCount(Operation operation) {
+        return requests.get(operation).sum();
+    }
+
+    /**
+     * 整个请求被拒绝（429）的次数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * bulk请求中单个文档被拒绝（429）的次数
+     */
+    public long getRejectedItemCount() {
+        return rejectedItems.sum();
+    }
+
+    /**
+     * 当前正在处理的请求数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 尚未清理的scroll上下文数量，可以用来检查客户端是否释放了scroll
+     */
+    public int getOpenScrollCount() {
+        return searchExecutor.openScrolls();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+        List<String> segments = segments(path);
+        Operation operation = operation(method, segments);
+        int current = inFlight.incrementAndGet();
+        try {
+            byte[] body = readBody(exchange);
+            if (operation != null) {
+                requests.get(operation).increment();
+                // 超过并发上限或者按概率拒绝，和Elasticsearch的线程池队列满时一样返回429
+                if ((maxInFlight > 0 && current > maxInFlight) || dice.chance(rejectionRate)) {
+                    rejected.increment();
+                    throw StubException.rejected();
+                }
+                sleep(operation);
+            }
+            Response response = route(exchange, method, segments, params, body);
+            send(exchange, response.status, "HEAD".equals(method) ? null : response.body);
+        } catch (StubException e) {
+            send(exchange, e.getStatus(), "HEAD".equals(method) ? null : error(e));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error(new StubException(500, "exception", String.valueOf(e))));
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private Response route(HttpExchange exchange, String method, List<String> segments, Map<String, String> params,
+                           byte[] body) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        int size = segments.size();
+        String first = size > 0 ? segments.get(0) : null;
+        String second = size > 1 ? segments.get(1) : null;
+        if (size == 0) {
+            if ("HEAD".equals(method) || "GET".equals(method)) {
+                return ok(info());
+            }
+        } else if ("_bulk".equals(first) && size == 1) {
+            return ok(bulk(null, body, contentType, params));
+        } else if ("_bulk".equals(second) && size == 2) {
+            return ok(bulk(first, body, contentType, params));
+        } else if ("_mget".equals(first) && size == 1) {
+            return ok(mget(null, parse(body, contentType)));
+        } else if ("_mget".equals(second) && size == 2) {
+            return ok(mget(first, parse(body, contentType)));
+        } else if ("_msearch".equals(first) && size == 1) {
+            return ok(msearch(null, body, contentType, params));
+        } else if ("_msearch".equals(second) && size == 2) {
+            return ok(msearch(first, body, contentType, params));
+        } else if ("_search".equals(first) && size == 2 && "scroll".equals(second)) {
+            return scroll(method, parse(body, contentType), params);
+        } else if ("_search".equals(first) && size == 1) {
+            return ok(searchExecutor.search(null, parse(body, contentType), params));
+        } else if ("_search".equals(second) && size == 2) {
+            return ok(searchExecutor.search(first, parse(body, contentType), params));
+        } else if ("_count".equals(second) && size == 2) {
+            return ok(searchExecutor.count(first, parse(body, contentType), params));
+        } else if ("_delete_by_query".equals(second) && size == 2) {
+            return ok(searchExecutor.deleteByQuery(first, parse(body, contentType), params));
+        } else if ("_rollover".equals(second) && (size == 2 || size == 3)) {
+            return ok(rollover(first, size == 3 ? segments.get(2) : null, parse(body, contentType)));
+        } else if ("_template".equals(first) && size == 2) {
+            return template(method, second, parse(body, contentType));
+        } else if ("_settings".equals(second) && size == 2) {
+            return settings(method, first, parse(body, contentType), params);
+        } else if (("_refresh".equals(second) || "_forcemerge".equals(second)) && size == 2) {
+            return ok(shardsResult(first, params));
+        } else if (size == 1 && !first.startsWith("_")) {
+            return index(method, first, parse(body, contentType));
+        } else if (size == 2 && "_doc".equals(second) && "POST".equals(method)) {
+            // 自动生成id
+            return indexDocument(first, UUID.randomUUID().toString().replace("-", ""),
+                    parse(body, contentType), false);
+        } else if (size == 3 && ("_doc".equals(second) || "_create".equals(second))) {
+            return document(method, first, second, segments.get(2), parse(body, contentType), params);
+        } else if (size == 3 && "_update".equals(second) && "POST".equals(method)) {
+            return update(first, segments.get(2), parse(body, contentType));
+        }
+        throw new StubException(400, "illegal_argument_exception",
+                "桩服务不支持的请求 [" + method + " " + String.join("/", segments) + "]");
+    }
+
+    private Response document(String method, String index, String endpoint, String id, Map<String, Object> body,
+                              Map<String, String> params) {
+        switch (method) {
+            case "PUT":
+            case "POST":
+                return indexDocument(index, id, body, "_create".equals(endpoint) || "create".equals(params.get("op_type")));
+            case "GET":
+            case "HEAD":
+                return get(index, id);
+            case "DELETE":
+                return delete(index, id);
+            default:
+                throw new StubException(405, "illegal_argument_exception", "不支持的方法 [" + method + "]");
+        }
+    }
+
+    private Response indexDocument(String index, String id, Map<String, Object> source, boolean create) {
+        return single(indexItem(index, id, source, create));
+    }
+
+    private ItemResult indexItem(String target, String id, Map<String, Object> source, boolean create) {
+        String index = writeIndex(target);
+        boolean[] created = new boolean[1];
+        StoredDocument existing = store.get(index, id);
+        if (create && existing != null) {
+            return ItemResult.error(index, id, versionConflict(id, existing.getVersion()));
+        }
+        StoredDocument stored = store.compute(index, id, current -> {
+            if (create && current != null) {
+                return current;
+            }
+            created[0] = current == null;
+            long version = current == null ? 1 : current.getVersion() + 1;
+            return new StoredDocument(id, source, version, store.nextSeqNo(index));
+        });
+        if (create && !created[0]) {
+            return ItemResult.error(index, id, versionConflict(id, stored.getVersion()));
+        }
+        return ItemResult.of(created[0] ? 201 : 200, writeResult(index, stored, created[0] ? "created" : "updated"));
+    }
+
+    private Response update(String index, String id, Map<String, Object> body) {
+        return single(updateItem(index, id, body));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ItemResult updateItem(String target, String id, Map<String, Object> body) {
+        String index = writeIndex(target);
+        Object script = body.get("script");
+        Map<String, Object> doc = (Map<String, Object>) body.get("doc");
+        Map<String, Object> upsert = (Map<String, Object>) body.get("upsert");
+        boolean docAsUpsert = Boolean.TRUE.equals(body.get("doc_as_upsert"));
+        boolean scriptedUpsert = Boolean.TRUE.equals(body.get("scripted_upsert"));
+        // 和Elasticsearch一样，只有doc更新才检测noop
+        boolean detectNoop = script == null && !Boolean.FALSE.equals(body.get("detect_noop"));
+        String[] result = new String[1];
+        StoredDocument stored;
+        try {
+            stored = store.compute(index, id, current -> {
+                if (current == null) {
+                    Map<String, Object> initial = docAsUpsert ? doc : upsert;
+                    if (initial == null) {
+                        return null;
+                    }
+                    if (script != null && scriptedUpsert) {
+                        initial = ScriptRunner.run(script, initial);
+                    }
+                    result[0] = "created";
+                    return new StoredDocument(id, initial, 1, store.nextSeqNo(index));
+                }
+                Map<String, Object> updated = script != null ? ScriptRunner.run(script, current.getSource())
+                        : merge(current.getSource(), doc == null ? Collections.emptyMap() : doc);
+                if (detectNoop && updated.equals(current.getSource())) {
+                    result[0] = "noop";
+                    return current;
+                }
+                result[0] = "updated";
+                return new StoredDocument(id, updated, current.getVersion() + 1, store.nextSeqNo(index));
+            });
+        } catch (StubException e) {
+            return ItemResult.error(index, id, e);
+        }
+        if (stored == null) {
+            return ItemResult.error(index, id,
+                    new StubException(404, "document_missing_exception", "[_doc][" + id + "]: document missing"));
+        }
+        return ItemResult.of("created".equals(result[0]) ? 201 : 200, writeResult(index, stored, result[0]));
+    }
+
+    private Response get(String target, String id) {
+        String index = aliases.readIndex(target);
+        if (!store.indexExists(index)) {
+            throw StubException.indexNotFound(index);
+        }
+        Map<String, Object> response = getResult(index, id);
+        return new Response(Boolean.TRUE.equals(response.get("found")) ? 200 : 404, response);
+    }
+
+    private Map<String, Object> getResult(String index, String id) {
+        StoredDocument doc = store.get(index, id);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("_index", index);
+        response.put("_type", "_doc");
+        response.put("_id", id);
+        if (doc == null) {
+            response.put("found", false);
+            return response;
+        }
+        response.put("_version", doc.getVersion());
+        response.put("_seq_no", doc.getSeqNo());
+        response.put("_primary_term", 1);
+        response.put("found", true);
+        response.put("_source", doc.getSource());
+        return response;
+    }
+
+    private Response delete(String index, String id) {
+        return single(deleteItem(index, id));
+    }
+
+    /**
+     * 单个文档请求的响应，失败时和Elasticsearch一样只返回error和status，bulk中的失败项才带有_index和_id
+     */
+    private static Response single(ItemResult result) {
+        if (!result.body.containsKey("error")) {
+            return new Response(result.status, result.body);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", result.body.get("error"));
+        body.put("status", result.status);
+        return new Response(result.status, body);
+    }
+
+    private ItemResult deleteItem(String target, String id) {
+        String index = aliases.writeIndex(target);
+        StoredDocument[] removed = new StoredDocument[1];
+        if (store.indexExists(index)) {
+            store.compute(index, id, current -> {
+                removed[0] = current;
+                return null;
+            });
+        }
+        if (removed[0] == null) {
+            Map<String, Object> response = writeResult(index, new StoredDocument(id, null, 1, store.nextSeqNo(index)), "not_found");
+            return ItemResult.of(404, response);
+        }
+        StoredDocument tombstone = new StoredDocument(id, null, removed[0].getVersion() + 1, store.nextSeqNo(index));
+        return ItemResult.of(200, writeResult(index, tombstone, "deleted"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> mget(String defaultIndex, Map<String, Object> body) {
+        List<Object> docs = new ArrayList<>();
+        List<Object> specs = new ArrayList<>();
+        if (body.get("docs") instanceof List) {
+            specs.addAll((List<Object>) body.get("docs"));
+        } else if (body.get("ids") instanceof List) {
+            for (Object id : (List<Object>) body.get("ids")) {
+                specs.add(Collections.singletonMap("_id", id));
+            }
+        }
+        for (Object spec : specs) {
+            Map<String, Object> item = (Map<String, Object>) spec;
+            String index = aliases.readIndex(item.containsKey("_index") ? (String) item.get("_index") : defaultIndex);
+            String id = String.valueOf(item.get("_id"));
+            if (!store.indexExists(index)) {
+                Map<String, Object> failed = new LinkedHashMap<>();
+                failed.put("_index", index);
+                failed.put("_type", "_doc");
+                failed.put("_id", id);
+                failed.put("error", errorBody(StubException.indexNotFound(index)));
+                docs.add(failed);
+            } else {
+                docs.add(getResult(index, id));
+            }
+        }
+        return Collections.singletonMap("docs", docs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> bulk(String defaultIndex, byte[] body, String contentType,
+                                     Map<String, String> params) throws IOException {
+        long start = System.nanoTime();
+        List<Map<String, Object>> lines = bulkLines(body, contentType);
+        List<Object> items = new ArrayList<>();
+        boolean errors = false;
+        for (int i = 0; i < lines.size(); i++) {
+            Map.Entry<String, Object> action = lines.get(i).entrySet().iterator().next();
+            String type = action.getKey();
+            Map<String, Object> meta = (Map<String, Object>) action.getValue();
+            String index = meta.containsKey("_index") ? (String) meta.get("_index") : defaultIndex;
+            Object rawId = meta.get("_id");
+            String id = rawId == null ? UUID.randomUUID().toString().replace("-", "") : String.valueOf(rawId);
+            Map<String, Object> source = "delete".equals(type) ? null : lines.get(++i);
+            ItemResult result;
+            if (dice.chance(bulkItemRejectionRate)) {
+                rejectedItems.increment();
+                result = ItemResult.error(index, id, StubException.rejected());
+            } else {
+                switch (type) {
+                    case "index":
+                        result = indexItem(index, id, source, "create".equals(meta.get("op_type")));
+                        break;
+                    case "create":
+                        result = indexItem(index, id, source, true);
+                        break;
+                    case "update":
+                        result = updateItem(index, id, source);
+                        break;
+                    case "delete":
+                        result = deleteItem(index, id);
+                        break;
+                    default:
+                        throw StubException.unsupported("bulk action " + type);
+                }
+            }
+            errors |= result.body.containsKey("error");
+            items.add(Collections.singletonMap(type, result.body));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("took", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        response.put("errors", errors);
+        response.put("items", items);
+        return response;
+    }
+
+    /**
+     * 拆分bulk请求体，JSON按换行分隔，SMILE按0xFF分隔
+     */
+    /**
+     * 按header、body成对执行搜索，header中的index和其它参数只对紧随其后的body生效，
+     * 单个搜索失败时只在对应位置返回错误
+     */
+    private Map<String, Object> msearch(String defaultIndex, byte[] body, String contentType,
+                                        Map<String, String> params) throws IOException {
+        long start = System.nanoTime();
+        List<Map<String, Object>> lines = bulkLines(body, contentType);
+        List<Object> responses = new ArrayList<>();
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            Map<String, String> itemParams = new LinkedHashMap<>(params);
+            String index = defaultIndex;
+            for (Map.Entry<String, Object> entry : lines.get(i).entrySet()) {
+                Object value = entry.getValue();
+                String text = value instanceof List ? String.join(",", toStrings((List<?>) value)) : String.valueOf(value);
+                if ("index".equals(entry.getKey())) {
+                    index = text;
+                } else {
+                    itemParams.put(entry.getKey(), text);
+                }
+            }
+            Map<String, Object> response;
+            try {
+                response = new LinkedHashMap<>(searchExecutor.search(index, lines.get(i + 1), itemParams));
+                response.put("status", 200);
+            } catch (StubException e) {
+                response = error(e);
+            }
+            responses.add(response);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("took", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        result.put("responses", responses);
+        return result;
+    }
+
+    private static List<String> toStrings(List<?> values) {
+        List<String> strings = new ArrayList<>(values.size());
+        values.forEach(value -> strings.add(String.valueOf(value)));
+        return strings;
+    }
+
+    private static List<Map<String, Object>> bulkLines(byte[] body, String contentType) throws IOException {
+        boolean smile = contentType != null && contentType.contains("smile");
+        byte separator = smile ? SMILE_SEPARATOR : (byte) '\n';
+        ObjectMapper mapper = smile ? SMILE : JSON;
+        List<Map<String, Object>> lines = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i <= body.length; i++) {
+            if (i == body.length || body[i] == separator) {
+                if (i > from && !isBlank(body, from, i)) {
+                    lines.add(mapper.readValue(body, from, i - from, MAP_TYPE));
+                }
+                from = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Response scroll(String method, Map<String, Object> body, Map<String, String> params) {
+        Object scrollId = body.containsKey("scroll_id") ? body.get("scroll_id") : params.get("scroll_id");
+        if ("DELETE".equals(method)) {
+            List<String> ids = new ArrayList<>();
+            if (scrollId instanceof List) {
+                ((List<Object>) scrollId).forEach(id -> ids.add(String.valueOf(id)));
+            } else if (scrollId != null) {
+                ids.addAll(Arrays.asList(String.valueOf(scrollId).split(",")));
+            }
+            return ok(searchExecutor.clearScroll(ids));
+        }
+        Object keepAlive = body.containsKey("scroll") ? body.get("scroll") : params.get("scroll");
+        return ok(searchExecutor.scroll(scrollId == null ? null : String.valueOf(scrollId),
+                keepAlive == null ? null : String.valueOf(keepAlive), params));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Response index(String method, String index, Map<String, Object> body) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        switch (method) {
+            case "PUT":
+                Map<String, Object> settings = new LinkedHashMap<>();
+                if (body.get("settings") instanceof Map) {
+                    settings.putAll(flatten((Map<String, Object>) body.get("settings")));
+                }
+                createIndex(index, settings);
+                if (body.get("aliases") instanceof Map) {
+                    ((Map<String, Object>) body.get("aliases")).forEach((alias, definition) -> aliases.add(alias, index,
+                            definition instanceof Map && Boolean.TRUE.equals(((Map<?, ?>) definition).get("is_write_index"))));
+                }
+                response.put("acknowledged", true);
+                response.put("shards_acknowledged", true);
+                response.put("index", index);
+                return ok(response);
+            case "DELETE":
+                List<String> indices = searchExecutor.resolve(index, Collections.emptyMap());
+                for (String name : indices) {
+                    store.deleteIndex(name);
+                    aliases.removeIndex(name);
+                }
+                response.put("acknowledged", true);
+                return ok(response);
+            case "HEAD":
+                if (!store.indexExists(index) && !aliases.exists(index)) {
+                    throw StubException.indexNotFound(index);
+                }
+                return ok(response);
+            default:
+                throw new StubException(405, "illegal_argument_exception", "不支持的方法 [" + method + "]");
+        }
+    }
+
+    /**
+     * 创建索引库并记录创建时间，已存在时返回400
+     */
+    private void createIndex(String index, Map<String, Object> settings) {
+        settings.putIfAbsent("index.creation_date", String.valueOf(System.currentTimeMillis()));
+        if (!store.createIndex(index, settings)) {
+            throw new StubException(400, "resource_already_exists_exception",
+                    "index [" + index + "] already exists");
+        }
+    }
+
+    /**
+     * 写入时的目标索引库：别名解析为写入索引库，索引库不存在且匹配某个模板时按模板创建
+     */
+    @SuppressWarnings("unchecked")
+    private String writeIndex(String target) {
+        String index = aliases.writeIndex(target);
+        if (store.indexExists(index)) {
+            return index;
+        }
+        for (Map<String, Object> template : templates.values()) {
+            List<String> patterns = (List<String>) template.getOrDefault("index_patterns", Collections.emptyList());
+            for (String pattern : patterns) {
+                if (Pattern.matches(pattern.replace(".", "\\.").replace("*", ".*"), index)) {
+                    Map<String, Object> settings = new LinkedHashMap<>();
+                    if (template.get("settings") instanceof Map) {
+                        settings.putAll(flatten((Map<String, Object>) template.get("settings")));
+                    }
+                    try {
+                        createIndex(index, settings);
+                    } catch (StubException e) {
+                        // 并发写入时已被其他请求创建
+                    }
+                    return index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private Response template(String method, String name, Map<String, Object> body) {
+        switch (method) {
+            case "PUT":
+            case "POST":
+                templates.put(name, body);
+                return ok(Collections.singletonMap("acknowledged", true));
+            case "DELETE":
+                if (templates.remove(name) == null) {
+                    throw new StubException(404, "index_template_missing_exception",
+                            "index_template [" + name + "] missing");
+                }
+                return ok(Collections.singletonMap("acknowledged", true));
+            case "GET":
+            case "HEAD":
+                Map<String, Object> template = templates.get(name);
+                if (template == null) {
+                    return new Response(404, Collections.emptyMap());
+                }
+                return ok(Collections.singletonMap(name, template));
+            default:
+                throw new StubException(405, "illegal_argument_exception", "不支持的方法 [" + method + "]");
+        }
+    }
+
+    /**
+     * 别名滚动：满足任意一个条件（或没有条件）时创建新索引库并把写入别名切换过去。<br/>
+     * max_size按文档源数据的大致字节数计算
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> rollover(String alias, String newIndex, Map<String, Object> body) {
+        List<String> indices = aliases.indices(alias);
+        if (indices == null) {
+            throw new StubException(400, "illegal_argument_exception",
+                    "rollover target [" + alias + "] does not exist");
+        }
+        String oldIndex = aliases.writeIndex(alias);
+        if (newIndex == null) {
+            Matcher matcher = Pattern.compile("^(.*-)(\\d+)$").matcher(oldIndex);
+            if (!matcher.matches()) {
+                throw new StubException(400, "illegal_argument_exception",
+                        "index name [" + oldIndex + "] does not match pattern '^.*-\\d+$'");
+            }
+            newIndex = matcher.group(1) + String.format("%06d", Long.parseLong(matcher.group(2)) + 1);
+        }
+        Collection<StoredDocument> docs = store.documents(oldIndex);
+        long count = docs == null ? 0 : docs.size();
+        Map<String, Object> settings = store.getSettings(oldIndex);
+        long created = settings == null ? System.currentTimeMillis()
+                : Long.parseLong(String.valueOf(settings.getOrDefault("index.creation_date", System.currentTimeMillis())));
+        Map<String, Object> conditions = body.get("conditions") instanceof Map
+                ? (Map<String, Object>) body.get("conditions") : Collections.emptyMap();
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> condition : conditions.entrySet()) {
+            String value = String.valueOf(condition.getValue());
+            boolean met;
+            switch (condition.getKey()) {
+                case "max_docs":
+                    met = count >= Long.parseLong(value);
+                    break;
+                case "max_age":
+                    met = System.currentTimeMillis() - created >= TimeUnit.NANOSECONDS.toMillis(TimeValues.parseNanos(value));
+                    break;
+                case "max_size":
+                    long bytes = docs == null ? 0 : docs.stream()
+                            .mapToLong(doc -> doc.getSource().toString().length()).sum();
+                    met = bytes >= parseBytes(value);
+                    break;
+                default:
+                    throw new StubException(400, "illegal_argument_exception",
+                            "桩服务不支持的滚动条件 [" + condition.getKey() + "]");
+            }
+            results.put("[" + condition.getKey() + ": " + value + "]", met);
+        }
+        boolean rollover = conditions.isEmpty() || results.containsValue(true);
+        if (rollover) {
+            Map<String, Object> newSettings = new LinkedHashMap<>();
+            if (body.get("settings") instanceof Map) {
+                newSettings.putAll(flatten((Map<String, Object>) body.get("settings")));
+            }
+            createIndex(newIndex, newSettings);
+            aliases.add(alias, newIndex, true);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("acknowledged", rollover);
+        response.put("shards_acknowledged", rollover);
+        response.put("old_index", oldIndex);
+        response.put("new_index", newIndex);
+        response.put("rolled_over", rollover);
+        response.put("dry_run", false);
+        response.put("conditions", results);
+        return response;
+    }
+
+    private static long parseBytes(String value) {
+        String lower = value.trim().toLowerCase();
+        String[] units = {"pb", "tb", "gb", "mb", "kb", "b"};
+        long[] factors = {1L << 50, 1L << 40, 1L << 30, 1L << 20, 1L << 10, 1L};
+        for (int i = 0; i < units.length; i++) {
+            if (lower.endsWith(units[i])) {
+                return (long) (Double.parseDouble(lower.substring(0, lower.length() - units[i].length())) * factors[i]);
+            }
+        }
+        return Long.parseLong(lower);
+    }
+
+    /**
+     * 读取或修改设置，支持逗号分隔、通配符和别名；修改时值为null的设置恢复默认值
+     */
+    @SuppressWarnings("unchecked")
+    private Response settings(String method, String expression, Map<String, Object> body, Map<String, String> params) {
+        List<String> indices = searchExecutor.resolve(expression, params);
+        if ("PUT".equals(method)) {
+            Map<String, Object> settings = flatten(body.get("settings") instanceof Map
+                    ? (Map<String, Object>) body.get("settings") : body);
+            indices.forEach(index -> store.updateSettings(index, settings));
+            return ok(Collections.singletonMap("acknowledged", true));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        for (String index : indices) {
+            Map<String, Object> settings = store.getSettings(index);
+            if (settings != null) {
+                response.put(index, Collections.singletonMap("settings", settings));
+            }
+        }
+        return ok(response);
+    }
+
+    /**
+     * _refresh和_forcemerge，桩服务的写入立即可见，只返回分片信息
+     */
+    private Map<String, Object> shardsResult(String expression, Map<String, String> params) {
+        int total = searchExecutor.resolve(expression, params).size();
+        Map<String, Object> shards = new LinkedHashMap<>();
+        shards.put("total", total);
+        shards.put("successful", total);
+        shards.put("failed", 0);
+        return Collections.singletonMap("_shards", shards);
+    }
+
+    private Map<String, Object> writeResult(String index, StoredDocument doc, String result) {
+        Map<String, Object> shards = new LinkedHashMap<>();
+        shards.put("total", 1);
+        shards.put("successful", "noop".equals(result) ? 0 : 1);
+        shards.put("failed", 0);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("_index", index);
+        response.put("_type", "_doc");
+        response.put("_id", doc.getId());
+        response.put("_version", doc.getVersion());
+        response.put("result", result);
+        response.put("_shards", shards);
+        response.put("_seq_no", doc.getSeqNo());
+        response.put("_primary_term", 1);
+        return response;
+    }
+
+    private static Map<String, Object> info() {
+        Map<String, Object> version = new LinkedHashMap<>();
+        version.put("number", "7.9.0");
+        version.put("build_flavor", "default");
+        version.put("build_type", "stub");
+        version.put("build_hash", "stub");
+        version.put("build_date", "2020-08-11T21:36:48.204330Z");
+        version.put("build_snapshot", false);
+        version.put("lucene_version", "8.6.0");
+        version.put("minimum_wire_compatibility_version", "6.8.0");
+        version.put("minimum_index_compatibility_version", "6.0.0-beta1");
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("name", "stub-node");
+        info.put("cluster_name", "elasticsearch-stub");
+        info.put("cluster_uuid", "stub");
+        info.put("version", version);
+        info.put("tagline", "You Know, for Search");
+        return info;
+    }
+
+    /**
+     * 把嵌套的设置展开成index.refresh_interval这样的键，没有index.前缀的补上
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> flatten(Map<String, Object> settings) {
+        Map<String, Object> flat = new LinkedHashMap<>();
+        flatten("", settings, flat);
+        Map<String, Object> result = new LinkedHashMap<>();
+        flat.forEach((key, value) -> result.put(key.startsWith("index.") ? key : "index." + key,
+                value == null ? null : String.valueOf(value)));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void flatten(String prefix, Map<String, Object> node, Map<String, Object> flat) {
+        node.forEach((key, value) -> {
+            if (value instanceof Map) {
+                flatten(prefix + key + ".", (Map<String, Object>) value, flat);
+            } else {
+                flat.put(prefix + key, value);
+            }
+        });
+    }
+
+    /**
+     * 局部更新：嵌套对象递归合并，其它值直接覆盖
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> merge(Map<String, Object> current, Map<String, Object> doc) {
+        Map<String, Object> merged = new LinkedHashMap<>(current);
+        doc.forEach((key, value) -> {
+            Object old = merged.get(key);
+            if (value instanceof Map && old instanceof Map) {
+                merged.put(key, merge((Map<String, Object>) old, (Map<String, Object>) value));
+            } else {
+                merged.put(key, value);
+            }
+        });
+        return merged;
+    }
+
+    private static StubException versionConflict(String id, long version) {
+        return new StubException(409, "version_conflict_engine_exception",
+                "[" + id + "]: version conflict, document already exists (current version [" + version + "])");
+    }
+
+    private void sleep(Operation operation) {
+        long nanos = dice.sampleNanos(latencies.getOrDefault(operation, defaultLatency));
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 判断请求对应的操作，不属于任何操作的请求返回null
+     */
+    private static Operation operation(String method, List<String> segments) {
+        int size = segments.size();
+        String first = size > 0 ? segments.get(0) : "";
+        String second = size > 1 ? segments.get(1) : "";
+        if ("_bulk".equals(first) || "_bulk".equals(second)) {
+            return Operation.BULK;
+        }
+        if ("_mget".equals(first) || "_mget".equals(second)) {
+            return Operation.MGET;
+        }
+        if ("_msearch".equals(first) || "_msearch".equals(second)) {
+            return Operation.MSEARCH;
+        }
+        if ("_search".equals(first) && "scroll".equals(second)) {
+            return "DELETE".equals(method) ? Operation.CLEAR_SCROLL : Operation.SCROLL;
+        }
+        if ("_search".equals(first) || "_search".equals(second)) {
+            return Operation.SEARCH;
+        }
+        if ("_count".equals(second)) {
+            return Operation.COUNT;
+        }
+        if ("_delete_by_query".equals(second)) {
+            return Operation.DELETE_BY_QUERY;
+        }
+        if ("_update".equals(second)) {
+            return Operation.UPDATE;
+        }
+        if (size == 1 && !first.startsWith("_")) {
+            switch (method) {
+                case "PUT":
+                    return Operation.CREATE_INDEX;
+                case "DELETE":
+                    return Operation.DELETE_INDEX;
+                case "HEAD":
+                    return Operation.INDEX_EXISTS;
+                default:
+                    return null;
+            }
+        }
+        if ("_doc".equals(second) || "_create".equals(second)) {
+            switch (method) {
+                case "GET":
+                case "HEAD":
+                    return Operation.GET;
+                case "DELETE":
+                    return Operation.DELETE;
+                default:
+                    return Operation.INDEX;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, Object> parse(byte[] body, String contentType) throws IOException {
+        if (body.length == 0 || isBlank(body, 0, body.length)) {
+            return new LinkedHashMap<>();
+        }
+        ObjectMapper mapper = JSON;
+        if (contentType != null && contentType.contains("smile")) {
+            mapper = SMILE;
+        } else if (contentType != null && contentType.contains("cbor")) {
+            mapper = CBOR;
+        }
+        return mapper.readValue(body, MAP_TYPE);
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, Object> error(StubException e) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", errorBody(e));
+        response.put("status", e.getStatus());
+        return response;
+    }
+
+    private static Map<String, Object> errorBody(StubException e) {
+        Map<String, Object> cause = new LinkedHashMap<>();
+        cause.put("type", e.getType());
+        cause.put("reason", e.getMessage());
+        Map<String, Object> error = new LinkedHashMap<>(cause);
+        error.put("root_cause", Collections.singletonList(cause));
+        return error;
+    }
+
+    private static List<String> segments(String path) throws IOException {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, "UTF-8"));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> params(String query) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            String value = eq < 0 ? "true" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Response ok(Map<String, Object> body) {
+        return new Response(200, body);
+    }
+
+    private static class Response {
+
+        private final int status;
+
+        private final Map<String, Object> body;
+
+        Response(int status, Map<String, Object> body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 单个文档的写入结果，bulk响应中的一项
+     */
+    private static class ItemResult {
+
+        private final int status;
+
+        private final Map<String, Object> body;
+
+        private ItemResult(int status, Map<String, Object> body) {
+            this.status = status;
+            this.body = body;
+            body.put("status", status);
+        }
+
+        static ItemResult of(int status, Map<String, Object> body) {
+            return new ItemResult(status, body);
+        }
+
+        static ItemResult error(String index, String id, StubException e) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("_index", index);
+            body.put("_type", "_doc");
+            body.put("_id", id);
+            body.put("error", errorBody(e));
+            return new ItemResult(e.getStatus(), body);
+        }
+    }
+
+    public static class Builder {
+
+        private int port;
+
+        private long seed = 42;
+
+        private DocumentStore store = new InMemoryDocumentStore();
+
+        private LatencyModel latency = LatencyModel.none();
+
+        private final Map<Operation, LatencyModel> latencies = new EnumMap<>(Operation.class);
+
+        private double rejectionRate;
+
+        private double bulkItemRejectionRate;
+
+        private int maxInFlight;
+
+        private int shards = 1;
+
+        private double shardFailureRate;
+
+        private Builder() {
+        }
+
+        /**
+         * 监听的端口，默认随机
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * 随机数种子，默认42
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder store(DocumentStore store) {
+            this.store = Objects.requireNonNull(store);
+            return this;
+        }
+
+        /**
+         * 所有操作默认的延迟分布
+         */
+        public Builder latency(LatencyModel latency) {
+            this.latency = Objects.requireNonNull(latency);
+            return this;
+        }
+
+        /**
+         * 某种操作的延迟分布
+         */
+        public Builder latency(Operation operation, LatencyModel latency) {
+            latencies.put(operation, Objects.requireNonNull(latency));
+            return this;
+        }
+
+        /**
+         * 整个请求按概率返回429
+         */
+        public Builder rejectionRate(double rejectionRate) {
+            this.rejectionRate = rejectionRate;
+            return this;
+        }
+
+        /**
+         * bulk请求中的单个文档按概率返回429，其余文档正常写入
+         */
+        public Builder bulkItemRejectionRate(double bulkItemRejectionRate) {
+            this.bulkItemRejectionRate = bulkItemRejectionRate;
+            return this;
+        }
+
+        /**
+         * 同时处理的请求数上限，超过时返回429，不大于0表示不限制
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * 每个索引库的分片数，默认1
+         */
+        public Builder shards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * 每次搜索有一个分片失败的概率，失败分片上的文档不会出现在结果中
+         */
+        public Builder shardFailureRate(double shardFailureRate) {
+            this.shardFailureRate = shardFailureRate;
+            return this;
+        }
+
+        public ElasticsearchStubServer start() throws IOException {
+            return new ElasticsearchStubServer(this);
+        }
+    }
+}
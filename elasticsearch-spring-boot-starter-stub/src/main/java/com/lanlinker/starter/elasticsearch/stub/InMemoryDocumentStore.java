@@ -0,0 +1,105 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 基于内存的存储，每个索引库是一个按id排序的并发Map
+ *
+ * @author hc
+ */
+public class InMemoryDocumentStore implements DocumentStore {
+
+    private final ConcurrentMap<String, IndexData> indices = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean createIndex(String index, Map<String, Object> settings) {
+        IndexData data = new IndexData();
+        data.settings.putAll(settings);
+        return indices.putIfAbsent(index, data) == null;
+    }
+
+    @Override
+    public boolean deleteIndex(String index) {
+        return indices.remove(index) != null;
+    }
+
+    @Override
+    public boolean indexExists(String index) {
+        return indices.containsKey(index);
+    }
+
+    @Override
+    public Collection<String> indexNames() {
+        return new TreeSet<>(indices.keySet());
+    }
+
+    @Override
+    public Map<String, Object> getSettings(String index) {
+        IndexData data = indices.get(index);
+        if (data == null) {
+            return null;
+        }
+        synchronized (data.settings) {
+            return new LinkedHashMap<>(data.settings);
+        }
+    }
+
+    @Override
+    public void updateSettings(String index, Map<String, Object> settings) {
+        Map<String, Object> current = data(index).settings;
+        synchronized (current) {
+            // 值为null表示恢复默认值
+            settings.forEach((key, value) -> {
+                if (value == null) {
+                    current.remove(key);
+                } else {
+                    current.put(key, value);
+                }
+            });
+        }
+    }
+
+    @Override
+    public StoredDocument compute(String index, String id, UnaryOperator<StoredDocument> function) {
+        return data(index).documents.compute(id, (key, current) -> function.apply(current));
+    }
+
+    @Override
+    public StoredDocument get(String index, String id) {
+        IndexData data = indices.get(index);
+        return data == null ? null : data.documents.get(id);
+    }
+
+    @Override
+    public Collection<StoredDocument> documents(String index) {
+        IndexData data = indices.get(index);
+        return data == null ? null : data.documents.values();
+    }
+
+    @Override
+    public long nextSeqNo(String index) {
+        return data(index).seqNo.getAndIncrement();
+    }
+
+    private IndexData data(String index) {
+        return indices.computeIfAbsent(index, name -> new IndexData());
+    }
+
+    private static class IndexData {
+
+        private final ConcurrentNavigableMap<String, StoredDocument> documents = new ConcurrentSkipListMap<>();
+
+        private final Map<String, Object> settings = new LinkedHashMap<>();
+
+        private final AtomicLong seqNo = new AtomicLong();
+    }
+}
@@ -0,0 +1,74 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * 响应延迟的分布。桩服务用同一个带种子的随机数生成器采样，相同的种子和请求顺序得到相同的延迟序列
+ *
+ * @author hc
+ */
+@FunctionalInterface
+public interface LatencyModel {
+
+    /**
+     * 采样一次延迟
+     *
+     * @param random 随机数生成器
+     * @return 延迟的纳秒数，不大于0时不延迟
+     */
+    long sampleNanos(Random random);
+
+    /**
+     * 没有延迟
+     */
+    static LatencyModel none() {
+        return random -> 0;
+    }
+
+    /**
+     * 固定延迟
+     */
+    static LatencyModel fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    /**
+     * [min, max)之间的均匀分布
+     */
+    static LatencyModel uniform(Duration min, Duration max) {
+        long low = min.toNanos();
+        long range = Math.max(1, max.toNanos() - low);
+        return random -> low + (long) (random.nextDouble() * range);
+    }
+
+    /**
+     * 指数分布，适合模拟排队
+     *
+     * @param mean 平均值
+     */
+    static LatencyModel exponential(Duration mean) {
+        double nanos = mean.toNanos();
+        return random -> (long) (-nanos * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * 对数正态分布，真实服务的延迟通常接近这种长尾分布
+     *
+     * @param median 中位数
+     * @param sigma  对数的标准差，越大尾部越长，例如0.5
+     */
+    static LatencyModel logNormal(Duration median, double sigma) {
+        double mu = Math.log(median.toNanos());
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+
+    /**
+     * 以一定概率出现的毛刺：大多数请求使用base，probability的请求额外增加spike
+     */
+    static LatencyModel withSpikes(LatencyModel base, double probability, Duration spike) {
+        long nanos = spike.toNanos();
+        return random -> base.sampleNanos(random) + (random.nextDouble() < probability ? nanos : 0);
+    }
+}
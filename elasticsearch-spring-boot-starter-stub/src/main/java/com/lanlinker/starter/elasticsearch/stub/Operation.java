@@ -0,0 +1,45 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+/**
+ * 桩服务支持的操作，用于分别配置延迟和统计请求数
+ *
+ * @author hc
+ */
+public enum Operation {
+
+    INDEX,
+
+    UPDATE,
+
+    BULK,
+
+    GET,
+
+    MGET,
+
+    DELETE,
+
+    /**
+     * 包括补全查询
+     */
+    SEARCH,
+
+    /**
+     * _msearch，整个请求计一次
+     */
+    MSEARCH,
+
+    COUNT,
+
+    DELETE_BY_QUERY,
+
+    SCROLL,
+
+    CLEAR_SCROLL,
+
+    CREATE_INDEX,
+
+    DELETE_INDEX,
+
+    INDEX_EXISTS
+}
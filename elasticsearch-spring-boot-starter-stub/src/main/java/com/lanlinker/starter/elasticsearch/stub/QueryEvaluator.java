@@ -0,0 +1,431 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 在内存中对文档执行查询。<br/>
+ * 支持match_all、match、match_phrase、multi_match、term、terms、range、prefix、wildcard、exists、ids和bool，
+ * 文本字段的分词近似于standard分词器：按字母和数字切分并转为小写，中日韩文字每个字单独成词。
+ * 所有命中的评分都是1.0
+ *
+ * @author hc
+ */
+final class QueryEvaluator {
+
+    private QueryEvaluator() {
+    }
+
+    /**
+     * 判断文档是否满足查询
+     *
+     * @param query 查询，为null时等同于match_all
+     * @param doc   文档
+     */
+    @SuppressWarnings("unchecked")
+    static boolean matches(Map<String, Object> query, StoredDocument doc) {
+        if (query == null || query.isEmpty()) {
+            return true;
+        }
+        Map.Entry<String, Object> clause = single(query);
+        Object body = clause.getValue();
+        switch (clause.getKey()) {
+            case "match_all":
+                return true;
+            case "match_none":
+                return false;
+            case "bool":
+                return bool((Map<String, Object>) body, doc);
+            case "ids":
+                return ((List<Object>) ((Map<String, Object>) body).get("values")).contains(doc.getId());
+            case "exists":
+                return !values(doc.getSource(), (String) ((Map<String, Object>) body).get("field")).isEmpty();
+            case "match":
+                return fieldClause(body, (field, value, options) -> match(doc, field, value, options));
+            case "match_phrase":
+                return fieldClause(body, (field, value, options) -> phrase(doc, field, String.valueOf(value)));
+            case "multi_match":
+                return multiMatch((Map<String, Object>) body, doc);
+            case "term":
+                return fieldClause(body, (field, value, options) -> term(doc, field, value));
+            case "terms":
+                return terms((Map<String, Object>) body, doc);
+            case "range":
+                return fieldClause(body, (field, value, options) -> range(doc, field, options));
+            case "prefix":
+                return fieldClause(body, (field, value, options) -> prefix(doc, field, String.valueOf(value)));
+            case "wildcard":
+                return fieldClause(body, (field, value, options) -> wildcard(doc, field, options, value));
+            case "constant_score":
+                return matches((Map<String, Object>) ((Map<String, Object>) body).get("filter"), doc);
+            default:
+                throw StubException.unsupported(clause.getKey() + " query");
+        }
+    }
+
+    /**
+     * 查询中每个字段用到的词，用来生成高亮
+     */
+    static Map<String, Set<String>> highlightTerms(Map<String, Object> query) {
+        Map<String, Set<String>> terms = new LinkedHashMap<>();
+        collectTerms(query, terms);
+        return terms;
+    }
+
+    /**
+     * 按路径取字段值，支持a.b这样的嵌套路径，路径上遇到数组时展开
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> values(Object node, String path) {
+        List<Object> result = new ArrayList<>();
+        collect(node, path.split("\\."), 0, result);
+        return result;
+    }
+
+    /**
+     * 近似standard分词器的分词
+     */
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); ) {
+            int cp = lower.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isIdeographic(cp)) {
+                flush(current, tokens);
+                tokens.add(new String(Character.toChars(cp)));
+            } else if (Character.isLetterOrDigit(cp)) {
+                current.appendCodePoint(cp);
+            } else {
+                flush(current, tokens);
+            }
+        }
+        flush(current, tokens);
+        return tokens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean bool(Map<String, Object> body, StoredDocument doc) {
+        for (String occur : new String[]{"must", "filter"}) {
+            for (Map<String, Object> q : clauses(body.get(occur))) {
+                if (!matches(q, doc)) {
+                    return false;
+                }
+            }
+        }
+        for (Map<String, Object> q : clauses(body.get("must_not"))) {
+            if (matches(q, doc)) {
+                return false;
+            }
+        }
+        List<Map<String, Object>> should = clauses(body.get("should"));
+        if (should.isEmpty()) {
+            return true;
+        }
+        Object minimum = body.get("minimum_should_match");
+        int required;
+        if (minimum != null && String.valueOf(minimum).matches("\\d+")) {
+            required = Integer.parseInt(String.valueOf(minimum));
+        } else {
+            // 没有must和filter时至少满足一个should
+            required = body.containsKey("must") || body.containsKey("filter") ? 0 : 1;
+        }
+        int matched = 0;
+        for (Map<String, Object> q : should) {
+            if (matches(q, doc) && ++matched >= required) {
+                return true;
+            }
+        }
+        return matched >= required;
+    }
+
+    private static boolean match(StoredDocument doc, String field, Object value, Map<String, Object> options) {
+        if (!(value instanceof String)) {
+            return term(doc, field, value);
+        }
+        List<String> queryTokens = tokens((String) value);
+        Set<String> fieldTokens = fieldTokens(doc, field);
+        boolean and = "and".equalsIgnoreCase(String.valueOf(options.get("operator")));
+        for (String token : queryTokens) {
+            boolean found = fieldTokens.contains(token);
+            if (and && !found) {
+                return false;
+            }
+            if (!and && found) {
+                return true;
+            }
+        }
+        return and && !queryTokens.isEmpty();
+    }
+
+    private static boolean phrase(StoredDocument doc, String field, String text) {
+        List<String> phrase = tokens(text);
+        for (Object value : values(doc.getSource(), field)) {
+            if (Collections.indexOfSubList(tokens(String.valueOf(value)), phrase) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean multiMatch(Map<String, Object> body, StoredDocument doc) {
+        for (Object field : (List<Object>) body.get("fields")) {
+            // 去掉字段的权重，例如title^2
+            String name = String.valueOf(field).replaceAll("\\^.*$", "");
+            if (match(doc, name, body.get("query"), body)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean term(StoredDocument doc, String field, Object value) {
+        for (Object actual : values(doc.getSource(), field)) {
+            if (equal(actual, value)) {
+                return true;
+            }
+        }
+        // text字段的term查询匹配分词后的词
+        return value instanceof String && fieldTokens(doc, field).contains(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean terms(Map<String, Object> body, StoredDocument doc) {
+        for (Map.Entry<String, Object> entry : body.entrySet()) {
+            if ("boost".equals(entry.getKey())) {
+                continue;
+            }
+            for (Object value : (List<Object>) entry.getValue()) {
+                if (term(doc, entry.getKey(), value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private static boolean range(StoredDocument doc, String field, Map<String, Object> options) {
+        for (Object actual : values(doc.getSource(), field)) {
+            if (inRange(actual, options)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inRange(Object actual, Map<String, Object> options) {
+        Object from = options.get("from");
+        Object to = options.get("to");
+        // RangeQueryBuilder生成from/to/include_lower/include_upper，也兼容gt/gte/lt/lte
+        boolean includeLower = !Boolean.FALSE.equals(options.get("include_lower"));
+        boolean includeUpper = !Boolean.FALSE.equals(options.get("include_upper"));
+        if (options.containsKey("gt")) {
+            from = options.get("gt");
+            includeLower = false;
+        } else if (options.containsKey("gte")) {
+            from = options.get("gte");
+            includeLower = true;
+        }
+        if (options.containsKey("lt")) {
+            to = options.get("lt");
+            includeUpper = false;
+        } else if (options.containsKey("lte")) {
+            to = options.get("lte");
+            includeUpper = true;
+        }
+        if (from != null) {
+            int c = compare(actual, from);
+            if (c < 0 || (c == 0 && !includeLower)) {
+                return false;
+            }
+        }
+        if (to != null) {
+            int c = compare(actual, to);
+            return c < 0 || (c == 0 && includeUpper);
+        }
+        return true;
+    }
+
+    private static boolean prefix(StoredDocument doc, String field, String prefix) {
+        for (Object value : values(doc.getSource(), field)) {
+            if (String.valueOf(value).startsWith(prefix)) {
+                return true;
+            }
+        }
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        for (String token : fieldTokens(doc, field)) {
+            if (token.startsWith(lower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean wildcard(StoredDocument doc, String field, Map<String, Object> options, Object value) {
+        Object pattern = options.containsKey("wildcard") ? options.get("wildcard") : value;
+        StringBuilder regex = new StringBuilder();
+        for (char c : String.valueOf(pattern).toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern compiled = Pattern.compile(regex.toString());
+        for (Object actual : values(doc.getSource(), field)) {
+            if (compiled.matcher(String.valueOf(actual)).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 比较两个值，数字按数值比较，其它按字符串比较
+     */
+    static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Number || b instanceof Number) {
+            try {
+                return Double.compare(Double.parseDouble(String.valueOf(a)), Double.parseDouble(String.valueOf(b)));
+            } catch (NumberFormatException e) {
+                // 按字符串比较
+            }
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private static boolean equal(Object actual, Object expected) {
+        if (actual instanceof Number || expected instanceof Number || actual instanceof Boolean) {
+            return compare(actual, expected) == 0 || String.valueOf(actual).equals(String.valueOf(expected));
+        }
+        return String.valueOf(actual).equals(String.valueOf(expected));
+    }
+
+    private static Set<String> fieldTokens(StoredDocument doc, String field) {
+        Set<String> tokens = new HashSet<>();
+        for (Object value : values(doc.getSource(), field)) {
+            tokens.addAll(tokens(String.valueOf(value)));
+        }
+        return tokens;
+    }
+
+    /**
+     * 处理{"field": value}或{"field": {"query"/"value": value, ...}}形式的字段查询
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean fieldClause(Object body, FieldPredicate predicate) {
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) body).entrySet()) {
+            if ("boost".equals(entry.getKey())) {
+                continue;
+            }
+            Object spec = entry.getValue();
+            if (spec instanceof Map) {
+                Map<String, Object> options = (Map<String, Object>) spec;
+                Object value = options.containsKey("query") ? options.get("query") : options.get("value");
+                return predicate.test(entry.getKey(), value, options);
+            }
+            return predicate.test(entry.getKey(), spec, Collections.emptyMap());
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectTerms(Object node, Map<String, Set<String>> terms) {
+        if (!(node instanceof Map)) {
+            if (node instanceof List) {
+                ((List<Object>) node).forEach(item -> collectTerms(item, terms));
+            }
+            return;
+        }
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) node).entrySet()) {
+            String type = entry.getKey();
+            if ("match".equals(type) || "match_phrase".equals(type) || "term".equals(type) || "prefix".equals(type)) {
+                fieldClause(entry.getValue(), (field, value, options) -> {
+                    if (value != null) {
+                        terms.computeIfAbsent(field, f -> new LinkedHashSet<>()).addAll(tokens(String.valueOf(value)));
+                    }
+                    return true;
+                });
+            } else if ("must_not".equals(type)) {
+                // 排除条件中的词不高亮
+                continue;
+            } else {
+                collectTerms(entry.getValue(), terms);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> clauses(Object node) {
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        if (node instanceof List) {
+            return (List<Map<String, Object>>) node;
+        }
+        return Collections.singletonList((Map<String, Object>) node);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collect(Object node, String[] path, int depth, Collection<Object> result) {
+        if (node == null) {
+            return;
+        }
+        if (node instanceof List) {
+            for (Object item : (List<Object>) node) {
+                collect(item, path, depth, result);
+            }
+            return;
+        }
+        if (depth == path.length) {
+            result.add(node);
+            return;
+        }
+        if (node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            if (map.containsKey(path[depth])) {
+                collect(map.get(path[depth]), path, depth + 1, result);
+            }
+        } else if (depth == path.length - 1) {
+            // title.keyword这样的子字段，上一级已经是值
+            result.add(node);
+        }
+    }
+
+    private static Map.Entry<String, Object> single(Map<String, Object> query) {
+        if (query.size() != 1) {
+            throw StubException.unsupported("query with " + query.size() + " clauses");
+        }
+        return query.entrySet().iterator().next();
+    }
+
+    private static void flush(StringBuilder current, List<String> tokens) {
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldPredicate {
+
+        boolean test(String field, Object value, Map<String, Object> options);
+    }
+}
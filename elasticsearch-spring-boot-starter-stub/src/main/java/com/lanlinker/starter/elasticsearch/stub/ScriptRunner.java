@@ -0,0 +1,152 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 执行更新脚本中最常见的一小部分painless语法：分号分隔的若干条
+ * {@code ctx._source.a.b = 值}、{@code += 值}、{@code -= 值}，
+ * 值可以是params.名称、数字、带引号的字符串、true、false或null。<br/>
+ * 数字相加时整数保持为整数，字符串的+=为拼接，其它写法返回400
+ *
+ * @author hc
+ */
+final class ScriptRunner {
+
+    private static final Pattern STATEMENT = Pattern.compile(
+            "ctx\\._source\\.([A-Za-z_][\\w.]*)\\s*([+-]?=)\\s*(.+)");
+
+    private ScriptRunner() {
+    }
+
+    /**
+     * 在源数据的副本上执行脚本
+     *
+     * @param script 请求中的script，可以是字符串或包含source和params的对象
+     * @param source 文档的源数据，不会被修改
+     * @return 执行后的源数据
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> run(Object script, Map<String, Object> source) {
+        String code;
+        Map<String, Object> params = Collections.emptyMap();
+        if (script instanceof Map) {
+            Map<String, Object> spec = (Map<String, Object>) script;
+            Object lang = spec.getOrDefault("lang", "painless");
+            if (!"painless".equals(lang) || !(spec.get("source") instanceof String)) {
+                throw StubException.unsupported("script " + spec);
+            }
+            code = (String) spec.get("source");
+            if (spec.get("params") instanceof Map) {
+                params = (Map<String, Object>) spec.get("params");
+            }
+        } else {
+            code = String.valueOf(script);
+        }
+        Map<String, Object> result = copy(source);
+        for (String statement : code.split(";")) {
+            statement = statement.trim();
+            if (statement.isEmpty()) {
+                continue;
+            }
+            Matcher matcher = STATEMENT.matcher(statement);
+            if (!matcher.matches()) {
+                throw StubException.unsupported("script " + statement);
+            }
+            assign(result, matcher.group(1).split("\\."), matcher.group(2), value(matcher.group(3).trim(), params));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assign(Map<String, Object> source, String[] path, String operator, Object value) {
+        Map<String, Object> node = source;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object child = node.get(path[i]);
+            if (!(child instanceof Map)) {
+                child = new LinkedHashMap<String, Object>();
+                node.put(path[i], child);
+            }
+            node = (Map<String, Object>) child;
+        }
+        String field = path[path.length - 1];
+        Object current = node.get(field);
+        switch (operator) {
+            case "=":
+                node.put(field, value);
+                break;
+            case "+=":
+                node.put(field, current instanceof String || value instanceof String
+                        ? String.valueOf(current) + value : add(current, value, 1));
+                break;
+            default:
+                node.put(field, add(current, value, -1));
+        }
+    }
+
+    private static Object add(Object current, Object value, int sign) {
+        if (!(current instanceof Number) || !(value instanceof Number)) {
+            throw new StubException(400, "illegal_argument_exception",
+                    "cannot apply arithmetic to [" + current + "] and [" + value + "]");
+        }
+        Number a = (Number) current;
+        Number b = (Number) value;
+        if (isIntegral(a) && isIntegral(b)) {
+            return a.longValue() + sign * b.longValue();
+        }
+        return a.doubleValue() + sign * b.doubleValue();
+    }
+
+    private static boolean isIntegral(Number number) {
+        return !(number instanceof Double || number instanceof Float);
+    }
+
+    private static Object value(String expression, Map<String, Object> params) {
+        if (expression.startsWith("params.")) {
+            String name = expression.substring("params.".length());
+            if (!params.containsKey(name)) {
+                throw new StubException(400, "illegal_argument_exception", "missing script parameter [" + name + "]");
+            }
+            return params.get(name);
+        }
+        if (expression.length() >= 2 && (expression.startsWith("'") && expression.endsWith("'")
+                || expression.startsWith("\"") && expression.endsWith("\""))) {
+            return expression.substring(1, expression.length() - 1);
+        }
+        switch (expression) {
+            case "true":
+                return true;
+            case "false":
+                return false;
+            case "null":
+                return null;
+            default:
+                try {
+                    return expression.contains(".") ? (Object) Double.parseDouble(expression)
+                            : (Object) Long.parseLong(expression);
+                } catch (NumberFormatException e) {
+                    throw StubException.unsupported("script expression " + expression);
+                }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copy(Map<String, Object> source) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        source.forEach((key, value) -> {
+            if (value instanceof Map) {
+                copy.put(key, copy((Map<String, Object>) value));
+            } else if (value instanceof List) {
+                copy.put(key, new ArrayList<>((List<Object>) value));
+            } else {
+                copy.put(key, value);
+            }
+        });
+        return copy;
+    }
+}
@@ -0,0 +1,764 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 执行search、count、scroll和补全查询，生成和Elasticsearch相同格式的响应
+ *
+ * @author hc
+ */
+class SearchExecutor {
+
+    private static final String NODE = "stub-node";
+
+    private static final long DEFAULT_SCROLL_KEEP_ALIVE = TimeUnit.MINUTES.toNanos(1);
+
+    private final DocumentStore store;
+
+    private final Aliases aliases;
+
+    private final Dice dice;
+
+    /**
+     * 每个索引库的分片数
+     */
+    private final int shards;
+
+    /**
+     * 每次搜索有一个分片失败的概率
+     */
+    private final double shardFailureRate;
+
+    private final ConcurrentMap<String, ScrollContext> scrolls = new ConcurrentHashMap<>();
+
+    SearchExecutor(DocumentStore store, Aliases aliases, Dice dice, int shards, double shardFailureRate) {
+        this.store = store;
+        this.aliases = aliases;
+        this.dice = dice;
+        this.shards = Math.max(1, shards);
+        this.shardFailureRate = shardFailureRate;
+    }
+
+    /**
+     * 执行搜索
+     *
+     * @param indices 逗号分隔的索引库表达式，为null时搜索所有索引库
+     * @param body    请求体
+     * @param params  URL参数
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> search(String indices, Map<String, Object> body, Map<String, String> params) {
+        long start = System.nanoTime();
+        if (body.containsKey("aggs") || body.containsKey("aggregations")) {
+            throw StubException.unsupported("aggregations");
+        }
+        Shards shardResult = new Shards();
+        List<Hit> hits = matching(resolve(indices, params), (Map<String, Object>) body.get("query"), shardResult);
+        List<Object> sort = sortSpec(body.get("sort"));
+        if (!sort.isEmpty()) {
+            hits.sort(comparator(sort));
+            hits.forEach(hit -> hit.sortValues = sortValues(hit.doc, sort));
+        }
+        Object searchAfter = body.get("search_after");
+        if (searchAfter != null) {
+            List<Object> after = (List<Object>) searchAfter;
+            Comparator<Hit> order = comparator(sort);
+            Hit marker = new Hit(null, null);
+            marker.sortValues = after;
+            hits.removeIf(hit -> order.compare(hit, marker) <= 0);
+        }
+        long total = hits.size();
+        int from = intValue(body.get("from"), 0);
+        int size = intValue(body.get("size"), 10);
+        Map<String, Object> response = new LinkedHashMap<>();
+        String scroll = params.get("scroll");
+        List<Hit> page = page(hits, from, size);
+        if (scroll != null) {
+            String scrollId = UUID.randomUUID().toString().replace("-", "");
+            List<Hit> rest = new ArrayList<>(hits.subList(Math.min(hits.size(), from + page.size()), hits.size()));
+            scrolls.put(scrollId, new ScrollContext(rest, size, total, body, keepAlive(scroll), shardResult));
+            response.put("_scroll_id", scrollId);
+        }
+        response.put("took", took(start));
+        response.put("timed_out", false);
+        response.put("_shards", shardResult.toMap());
+        response.put("hits", hitsSection(page, total, body, params));
+        Object suggest = body.get("suggest");
+        if (suggest != null) {
+            response.put("suggest", suggest((Map<String, Object>) suggest, resolve(indices, params), params));
+        }
+        return response;
+    }
+
+    /**
+     * 滚动到下一页
+     */
+    Map<String, Object> scroll(String scrollId, String keepAlive, Map<String, String> params) {
+        long start = System.nanoTime();
+        purgeExpiredScrolls();
+        ScrollContext context = scrollId == null ? null : scrolls.get(scrollId);
+        if (context == null) {
+            throw new StubException(404, "search_context_missing_exception", "No search context found for id [" + scrollId + "]");
+        }
+        List<Hit> page;
+        synchronized (context) {
+            page = page(context.remaining, 0, context.size);
+            context.remaining = new ArrayList<>(context.remaining.subList(page.size(), context.remaining.size()));
+            context.deadline = System.nanoTime() + (keepAlive == null ? context.keepAliveNanos : keepAlive(keepAlive));
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("_scroll_id", scrollId);
+        response.put("took", took(start));
+        response.put("timed_out", false);
+        response.put("_shards", context.shards.toMap());
+        response.put("hits", hitsSection(page, context.total, context.body, params));
+        return response;
+    }
+
+    /**
+     * 清理scroll上下文
+     */
+    Map<String, Object> clearScroll(Collection<String> scrollIds) {
+        int freed = 0;
+        for (String id : scrollIds) {
+            if ("_all".equals(id)) {
+                freed += scrolls.size();
+                scrolls.clear();
+            } else if (scrolls.remove(id) != null) {
+                freed++;
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("succeeded", true);
+        response.put("num_freed", freed);
+        return response;
+    }
+
+    /**
+     * 统计满足查询的文档数
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> count(String indices, Map<String, Object> body, Map<String, String> params) {
+        Shards shardResult = new Shards();
+        List<Hit> hits = matching(resolve(indices, params), (Map<String, Object>) body.get("query"), shardResult);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("count", hits.size());
+        response.put("_shards", shardResult.toMap());
+        return response;
+    }
+
+    /**
+     * 删除满足查询的文档，不模拟分片失败
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> deleteByQuery(String indices, Map<String, Object> body, Map<String, String> params) {
+        long start = System.nanoTime();
+        Shards shardResult = new Shards();
+        List<String> resolved = resolve(indices, params);
+        int deleted = 0;
+        for (String index : resolved) {
+            Collection<StoredDocument> docs = store.documents(index);
+            if (docs == null) {
+                continue;
+            }
+            for (StoredDocument doc : new ArrayList<>(docs)) {
+                if (QueryEvaluator.matches((Map<String, Object>) body.get("query"), doc)) {
+                    boolean[] removed = new boolean[1];
+                    store.compute(index, doc.getId(), current -> {
+                        removed[0] = current != null;
+                        return null;
+                    });
+                    if (removed[0]) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        Map<String, Object> retries = new LinkedHashMap<>();
+        retries.put("bulk", 0);
+        retries.put("search", 0);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("took", took(start));
+        response.put("timed_out", false);
+        response.put("total", deleted);
+        response.put("deleted", deleted);
+        response.put("batches", deleted == 0 ? 0 : 1);
+        response.put("version_conflicts", 0);
+        response.put("noops", 0);
+        response.put("retries", retries);
+        response.put("throttled_millis", 0);
+        response.put("requests_per_second", -1.0);
+        response.put("throttled_until_millis", 0);
+        response.put("failures", new ArrayList<>());
+        return response;
+    }
+
+    /**
+     * 当前的scroll上下文数量
+     */
+    int openScrolls() {
+        purgeExpiredScrolls();
+        return scrolls.size();
+    }
+
+    /**
+     * 把索引库表达式解析为实际存在的索引库，支持逗号分隔、*通配符和别名
+     */
+    List<String> resolve(String expression, Map<String, String> params) {
+        boolean ignoreUnavailable = "true".equals(params.get("ignore_unavailable"));
+        Set<String> result = new LinkedHashSet<>();
+        if (expression == null || expression.isEmpty() || "_all".equals(expression) || "*".equals(expression)) {
+            result.addAll(store.indexNames());
+            return new ArrayList<>(result);
+        }
+        for (String part : expression.split(",")) {
+            if (part.contains("*")) {
+                Pattern pattern = Pattern.compile(part.replace(".", "\\.").replace("*", ".*"));
+                for (String name : store.indexNames()) {
+                    if (pattern.matcher(name).matches()) {
+                        result.add(name);
+                    }
+                }
+            } else if (store.indexExists(part)) {
+                result.add(part);
+            } else if (aliases.exists(part)) {
+                result.addAll(aliases.indices(part));
+            } else if (!ignoreUnavailable) {
+                throw StubException.indexNotFound(part);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * 所有满足查询的文档，模拟分片失败时失败分片上的文档不返回
+     */
+    private List<Hit> matching(List<String> indices, Map<String, Object> query, Shards shardResult) {
+        List<Hit> hits = new ArrayList<>();
+        for (String index : indices) {
+            int failedShard = -1;
+            if (dice.chance(shardFailureRate)) {
+                failedShard = dice.nextInt(shards);
+                shardResult.fail(index, failedShard);
+            }
+            shardResult.total += shards;
+            Collection<StoredDocument> docs = store.documents(index);
+            if (docs == null) {
+                continue;
+            }
+            for (StoredDocument doc : docs) {
+                if (failedShard >= 0 && Math.floorMod(doc.getId().hashCode(), shards) == failedShard) {
+                    continue;
+                }
+                if (QueryEvaluator.matches(query, doc)) {
+                    hits.add(new Hit(index, doc));
+                }
+            }
+        }
+        return hits;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> hitsSection(List<Hit> page, long total, Map<String, Object> body,
+                                            Map<String, String> params) {
+        Map<String, Object> highlight = (Map<String, Object>) body.get("highlight");
+        Map<String, Set<String>> terms = highlight == null
+                ? Collections.emptyMap() : QueryEvaluator.highlightTerms((Map<String, Object>) body.get("query"));
+        List<Object> hitList = new ArrayList<>(page.size());
+        boolean sorted = !sortSpec(body.get("sort")).isEmpty();
+        for (Hit hit : page) {
+            Map<String, Object> h = new LinkedHashMap<>();
+            h.put("_index", hit.index);
+            h.put("_type", "_doc");
+            h.put("_id", hit.doc.getId());
+            h.put("_score", sorted ? null : 1.0);
+            Object source = filterSource(hit.doc.getSource(), body.get("_source"));
+            if (source != null) {
+                h.put("_source", source);
+            }
+            if (sorted) {
+                h.put("sort", hit.sortValues);
+            }
+            if (highlight != null) {
+                Map<String, Object> fragments = highlight(hit.doc, highlight, terms);
+                if (!fragments.isEmpty()) {
+                    h.put("highlight", fragments);
+                }
+            }
+            hitList.add(h);
+        }
+        Map<String, Object> hits = new LinkedHashMap<>();
+        if ("true".equals(params.get("rest_total_hits_as_int"))) {
+            hits.put("total", total);
+        } else {
+            Map<String, Object> totalHits = new LinkedHashMap<>();
+            totalHits.put("value", total);
+            totalHits.put("relation", "eq");
+            hits.put("total", totalHits);
+        }
+        hits.put("max_score", sorted || page.isEmpty() ? null : 1.0);
+        hits.put("hits", hitList);
+        return hits;
+    }
+
+    /**
+     * 把查询用到的词用前后标签包起来，每个字段值生成一个片段
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> highlight(StoredDocument doc, Map<String, Object> highlight,
+                                          Map<String, Set<String>> terms) {
+        String preTag = firstTag(highlight.get("pre_tags"), "<em>");
+        String postTag = firstTag(highlight.get("post_tags"), "</em>");
+        Object fields = highlight.get("fields");
+        Collection<String> names = fields instanceof Map
+                ? ((Map<String, Object>) fields).keySet() : names((List<Object>) fields);
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String field : names) {
+            Set<String> fieldTerms = terms.get(field);
+            if (fieldTerms == null || fieldTerms.isEmpty()) {
+                continue;
+            }
+            List<String> fragments = new ArrayList<>();
+            for (Object value : QueryEvaluator.values(doc.getSource(), field)) {
+                String fragment = mark(String.valueOf(value), fieldTerms, preTag, postTag);
+                if (fragment != null) {
+                    fragments.add(fragment);
+                }
+            }
+            if (!fragments.isEmpty()) {
+                result.put(field, fragments);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 补全查询，结果的key带上类型前缀，和客户端发送的typed_keys参数对应
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> suggest(Map<String, Object> suggest, List<String> indices, Map<String, String> params) {
+        boolean typedKeys = "true".equals(params.get("typed_keys"));
+        Object globalText = suggest.get("text");
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : suggest.entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> spec = (Map<String, Object>) entry.getValue();
+            Map<String, Object> completion = (Map<String, Object>) spec.get("completion");
+            if (completion == null) {
+                throw StubException.unsupported("suggester " + spec.keySet());
+            }
+            Object prefixValue = spec.containsKey("prefix") ? spec.get("prefix")
+                    : spec.containsKey("text") ? spec.get("text") : globalText;
+            String prefix = prefixValue == null ? "" : String.valueOf(prefixValue);
+            String field = (String) completion.get("field");
+            int size = intValue(completion.get("size"), 5);
+            boolean skipDuplicates = Boolean.TRUE.equals(completion.get("skip_duplicates"));
+            Map<String, Object> suggestion = new LinkedHashMap<>();
+            suggestion.put("text", prefix);
+            suggestion.put("offset", 0);
+            suggestion.put("length", prefix.length());
+            suggestion.put("options", completionOptions(indices, field, prefix, size, skipDuplicates));
+            result.put(typedKeys ? "completion#" + entry.getKey() : entry.getKey(), Collections.singletonList(suggestion));
+        }
+        return result;
+    }
+
+    private List<Object> completionOptions(List<String> indices, String field, String prefix, int size,
+                                           boolean skipDuplicates) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        List<Option> candidates = new ArrayList<>();
+        Map<String, Option> byText = new LinkedHashMap<>();
+        for (String index : indices) {
+            Collection<StoredDocument> docs = store.documents(index);
+            if (docs == null) {
+                continue;
+            }
+            for (StoredDocument doc : docs) {
+                Map<String, Integer> inputs = new LinkedHashMap<>();
+                collectInputs(doc.getSource(), field.split("\\."), 0, inputs);
+                for (Map.Entry<String, Integer> input : inputs.entrySet()) {
+                    if (!input.getKey().toLowerCase(Locale.ROOT).startsWith(lowerPrefix)) {
+                        continue;
+                    }
+                    Option option = new Option(index, doc, input.getKey(), input.getValue());
+                    if (skipDuplicates) {
+                        // 相同的词条只保留权重最大的一个
+                        byText.merge(option.text, option, (a, b) -> b.weight > a.weight ? b : a);
+                    } else {
+                        candidates.add(option);
+                    }
+                }
+            }
+        }
+        if (skipDuplicates) {
+            candidates.addAll(byText.values());
+        }
+        // 按权重从高到低，权重相同时按词条排序
+        candidates.sort(Comparator.<Option>comparingInt(o -> o.weight).reversed().thenComparing(o -> o.text));
+        List<Object> options = new ArrayList<>();
+        for (Option option : candidates.subList(0, Math.min(size, candidates.size()))) {
+            Map<String, Object> o = new LinkedHashMap<>();
+            o.put("text", option.text);
+            o.put("_index", option.index);
+            o.put("_type", "_doc");
+            o.put("_id", option.doc.getId());
+            o.put("_score", (double) option.weight);
+            o.put("_source", option.doc.getSource());
+            options.add(o);
+        }
+        return options;
+    }
+
+    /**
+     * 取出补全字段的输入，值可以是字符串、数组或{"input": ..., "weight": ...}；
+     * 路径在源数据中不存在时（例如title.suggest这样的子字段）使用上一级的值
+     */
+    @SuppressWarnings("unchecked")
+    private static void collectInputs(Object node, String[] path, int depth, Map<String, Integer> inputs) {
+        if (depth < path.length && node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            if (map.containsKey(path[depth])) {
+                collectInputs(map.get(path[depth]), path, depth + 1, inputs);
+                return;
+            }
+            if (depth == 0) {
+                return;
+            }
+        }
+        if (node instanceof List) {
+            for (Object item : (List<Object>) node) {
+                collectInputs(item, path, path.length, inputs);
+            }
+        } else if (node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            Object weight = map.get("weight");
+            int w = weight instanceof Number ? ((Number) weight).intValue() : 1;
+            Object input = map.get("input");
+            if (input instanceof List) {
+                for (Object item : (List<Object>) input) {
+                    putInput(inputs, item, w);
+                }
+            } else {
+                putInput(inputs, input, w);
+            }
+        } else {
+            putInput(inputs, node, 1);
+        }
+    }
+
+    private static void putInput(Map<String, Integer> inputs, Object input, int weight) {
+        if (input instanceof String) {
+            inputs.merge((String) input, weight, Math::max);
+        }
+    }
+
+    /**
+     * 支持"field"、{"field": "desc"}、{"field": {"order": "desc"}}三种写法，_score和_doc按文档顺序处理
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> sortSpec(Object sort) {
+        if (sort == null) {
+            return Collections.emptyList();
+        }
+        List<Object> specs = sort instanceof List ? (List<Object>) sort : Collections.singletonList(sort);
+        List<Object> result = new ArrayList<>();
+        for (Object spec : specs) {
+            if (spec instanceof String) {
+                result.add(new SortField((String) spec, false));
+            } else {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) spec).entrySet()) {
+                    Object order = entry.getValue() instanceof Map
+                            ? ((Map<String, Object>) entry.getValue()).get("order") : entry.getValue();
+                    result.add(new SortField(entry.getKey(), "desc".equalsIgnoreCase(String.valueOf(order))));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Comparator<Hit> comparator(List<Object> sort) {
+        return (a, b) -> {
+            for (int i = 0; i < sort.size(); i++) {
+                SortField field = (SortField) sort.get(i);
+                Object x = a.sortValues != null ? a.sortValues.get(i) : sortValue(a.doc, field.name);
+                Object y = b.sortValues != null ? b.sortValues.get(i) : sortValue(b.doc, field.name);
+                int c;
+                if (x == null || y == null) {
+                    // 没有值的排在最后
+                    c = x == null ? (y == null ? 0 : 1) : -1;
+                } else {
+                    c = QueryEvaluator.compare(x, y);
+                    if (field.descending) {
+                        c = -c;
+                    }
+                }
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static List<Object> sortValues(StoredDocument doc, List<Object> sort) {
+        List<Object> values = new ArrayList<>(sort.size());
+        for (Object field : sort) {
+            values.add(sortValue(doc, ((SortField) field).name));
+        }
+        return values;
+    }
+
+    private static Object sortValue(StoredDocument doc, String field) {
+        if ("_id".equals(field)) {
+            return doc.getId();
+        }
+        List<Object> values = QueryEvaluator.values(doc.getSource(), field);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * 按_source参数过滤源数据，只处理顶层字段
+     */
+    @SuppressWarnings("unchecked")
+    private static Object filterSource(Map<String, Object> source, Object filter) {
+        if (filter == null || Boolean.TRUE.equals(filter)) {
+            return source;
+        }
+        if (Boolean.FALSE.equals(filter)) {
+            return null;
+        }
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        if (filter instanceof String) {
+            includes.add((String) filter);
+        } else if (filter instanceof List) {
+            includes.addAll(names((List<Object>) filter));
+        } else if (filter instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) filter;
+            if (map.get("includes") instanceof List) {
+                includes.addAll(names((List<Object>) map.get("includes")));
+            }
+            if (map.get("excludes") instanceof List) {
+                excludes.addAll(names((List<Object>) map.get("excludes")));
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            String key = entry.getKey();
+            if ((includes.isEmpty() || matchesAny(key, includes)) && !matchesAny(key, excludes)) {
+                result.put(key, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static boolean matchesAny(String key, List<String> patterns) {
+        for (String pattern : patterns) {
+            // a.b这样的路径按顶层字段处理
+            String top = pattern.split("\\.")[0];
+            if (top.equals(key) || (top.contains("*") && key.matches(top.replace("*", ".*")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String mark(String text, Set<String> terms, String preTag, String postTag) {
+        StringBuilder sb = new StringBuilder();
+        boolean marked = false;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            int end = i + Character.charCount(cp);
+            if (!Character.isIdeographic(cp)) {
+                while (Character.isLetterOrDigit(cp) && end < text.length()
+                        && Character.isLetterOrDigit(text.codePointAt(end)) && !Character.isIdeographic(text.codePointAt(end))) {
+                    end += Character.charCount(text.codePointAt(end));
+                }
+            }
+            String word = text.substring(i, end);
+            if (Character.isLetterOrDigit(cp) && terms.contains(word.toLowerCase(Locale.ROOT))) {
+                sb.append(preTag).append(word).append(postTag);
+                marked = true;
+            } else {
+                sb.append(word);
+            }
+            i = end;
+        }
+        return marked ? sb.toString() : null;
+    }
+
+    private static String firstTag(Object tags, String defaultTag) {
+        if (tags instanceof List && !((List<?>) tags).isEmpty()) {
+            return String.valueOf(((List<?>) tags).get(0));
+        }
+        return defaultTag;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> names(List<Object> list) {
+        List<String> names = new ArrayList<>();
+        if (list == null) {
+            return names;
+        }
+        for (Object item : list) {
+            if (item instanceof Map) {
+                names.addAll(((Map<String, Object>) item).keySet());
+            } else {
+                names.add(String.valueOf(item));
+            }
+        }
+        return names;
+    }
+
+    private static List<Hit> page(List<Hit> hits, int from, int size) {
+        int start = Math.min(from, hits.size());
+        return hits.subList(start, Math.min(hits.size(), start + Math.max(0, size)));
+    }
+
+    private void purgeExpiredScrolls() {
+        long now = System.nanoTime();
+        scrolls.values().removeIf(context -> now - context.deadline > 0);
+    }
+
+    private static long keepAlive(String value) {
+        try {
+            return TimeValues.parseNanos(value);
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_SCROLL_KEEP_ALIVE;
+        }
+    }
+
+    private static long took(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static int intValue(Object value, int defaultValue) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return value == null ? defaultValue : Integer.parseInt(String.valueOf(value));
+    }
+
+    private static class Hit {
+
+        private final String index;
+
+        private final StoredDocument doc;
+
+        private List<Object> sortValues;
+
+        Hit(String index, StoredDocument doc) {
+            this.index = index;
+            this.doc = doc;
+        }
+    }
+
+    private static class SortField {
+
+        private final String name;
+
+        private final boolean descending;
+
+        SortField(String name, boolean descending) {
+            this.name = name;
+            this.descending = descending;
+        }
+    }
+
+    private static class Option {
+
+        private final String index;
+
+        private final StoredDocument doc;
+
+        private final String text;
+
+        private final int weight;
+
+        Option(String index, StoredDocument doc, String text, int weight) {
+            this.index = index;
+            this.doc = doc;
+            this.text = text;
+            this.weight = weight;
+        }
+    }
+
+    private static class ScrollContext {
+
+        private List<Hit> remaining;
+
+        private final int size;
+
+        private final long total;
+
+        private final Map<String, Object> body;
+
+        private final long keepAliveNanos;
+
+        private final Shards shards;
+
+        private volatile long deadline;
+
+        ScrollContext(List<Hit> remaining, int size, long total, Map<String, Object> body, long keepAliveNanos,
+                      Shards shards) {
+            this.remaining = remaining;
+            this.size = size;
+            this.total = total;
+            this.body = body;
+            this.keepAliveNanos = keepAliveNanos;
+            this.shards = shards;
+            this.deadline = System.nanoTime() + keepAliveNanos;
+        }
+    }
+
+    /**
+     * 响应中的_shards部分
+     */
+    private static class Shards {
+
+        private int total;
+
+        private final List<Object> failures = new ArrayList<>();
+
+        void fail(String index, int shard) {
+            Map<String, Object> reason = new LinkedHashMap<>();
+            reason.put("type", "stub_shard_failure_exception");
+            reason.put("reason", "桩服务模拟的分片失败");
+            Map<String, Object> failure = new LinkedHashMap<>();
+            failure.put("shard", shard);
+            failure.put("index", index);
+            failure.put("node", NODE);
+            failure.put("reason", reason);
+            failures.add(failure);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("total", total);
+            map.put("successful", total - failures.size());
+            map.put("skipped", 0);
+            map.put("failed", failures.size());
+            if (!failures.isEmpty()) {
+                map.put("failures", failures);
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.Map;
+
+/**
+ * 保存在桩服务中的文档，创建后不再修改，更新时替换为新的实例
+ *
+ * @author hc
+ */
+public class StoredDocument {
+
+    private final String id;
+
+    private final Map<String, Object> source;
+
+    private final long version;
+
+    private final long seqNo;
+
+    public StoredDocument(String id, Map<String, Object> source, long version, long seqNo) {
+        this.id = id;
+        this.source = source;
+        this.version = version;
+        this.seqNo = seqNo;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, Object> getSource() {
+        return source;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSeqNo() {
+        return seqNo;
+    }
+}
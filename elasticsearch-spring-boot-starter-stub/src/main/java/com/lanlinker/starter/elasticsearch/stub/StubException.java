@@ -0,0 +1,39 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+/**
+ * 以Elasticsearch错误格式返回给客户端的异常
+ *
+ * @author hc
+ */
+class StubException extends RuntimeException {
+
+    private final int status;
+
+    private final String type;
+
+    StubException(int status, String type, String reason) {
+        super(reason);
+        this.status = status;
+        this.type = type;
+    }
+
+    static StubException indexNotFound(String index) {
+        return new StubException(404, "index_not_found_exception", "no such index [" + index + "]");
+    }
+
+    static StubException unsupported(String what) {
+        return new StubException(400, "parsing_exception", "桩服务不支持 [" + what + "]");
+    }
+
+    static StubException rejected() {
+        return new StubException(429, "es_rejected_execution_exception", "rejected execution by the stub server");
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getType() {
+        return type;
+    }
+}
@@ -0,0 +1,33 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析Elasticsearch格式的时间，例如1m、30s、500ms
+ *
+ * @author hc
+ */
+final class TimeValues {
+
+    private TimeValues() {
+    }
+
+    static long parseNanos(String value) {
+        String v = value.trim().toLowerCase();
+        String[][] units = {{"nanos", "1"}, {"micros", "1000"}, {"ms", "1000000"}, {"s", "1000000000"},
+                {"m", "60000000000"}, {"h", "3600000000000"}, {"d", "86400000000000"}};
+        for (String[] unit : units) {
+            if (v.endsWith(unit[0])) {
+                String number = v.substring(0, v.length() - unit[0].length());
+                // ms和s都以s结尾，数字部分不合法时继续尝试下一个单位
+                if (number.matches("-?\\d+")) {
+                    return Long.parseLong(number) * Long.parseLong(unit[1]);
+                }
+            }
+        }
+        if (v.matches("-?\\d+")) {
+            return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(v));
+        }
+        throw new IllegalArgumentException("无法解析的时间 [" + value + "]");
+    }
+}
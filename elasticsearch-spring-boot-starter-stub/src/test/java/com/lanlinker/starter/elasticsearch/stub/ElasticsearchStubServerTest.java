@@ -0,0 +1,98 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 通过HTTP访问桩服务：写入后立即可以搜索，高亮使用默认的em标签，不支持的查询以Elasticsearch的错误格式返回400
+ *
+ * @author hc
+ */
+class ElasticsearchStubServerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ElasticsearchStubServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = ElasticsearchStubServer.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    /**
+     * 发送请求，返回状态码和响应体
+     */
+    private Response send(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.getHosts() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Response(status, MAPPER.readTree(in));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    void indexThenSearch() throws IOException {
+        assertEquals(201, send("PUT", "/items/_doc/1", "{\"title\":\"Reactive Streams\",\"price\":10}").status);
+        assertEquals(201, send("PUT", "/items/_doc/2", "{\"title\":\"Java Concurrency\",\"price\":25}").status);
+        assertEquals(2, server.getRequestCount(Operation.INDEX));
+
+        Response response = send("POST", "/items/_search", "{\"query\":{\"bool\":{\"must\":[{\"match\":"
+                + "{\"title\":\"streams\"}}],\"filter\":[{\"range\":{\"price\":{\"lt\":20}}}]}},"
+                + "\"highlight\":{\"fields\":{\"title\":{}}}}");
+        assertEquals(200, response.status);
+        JsonNode hits = response.body.path("hits");
+        assertEquals(1, hits.path("total").path("value").asInt());
+        assertEquals("1", hits.path("hits").get(0).path("_id").asText());
+        assertEquals("Reactive <em>Streams</em>",
+                hits.path("hits").get(0).path("highlight").path("title").get(0).asText());
+        assertEquals(1, server.getRequestCount(Operation.SEARCH));
+    }
+
+    @Test
+    void unsupportedQueryReturnsError() throws IOException {
+        send("PUT", "/items/_doc/1", "{\"title\":\"Reactive Streams\"}");
+        Response response = send("POST", "/items/_search", "{\"query\":{\"query_string\":{\"query\":\"streams\"}}}");
+        assertEquals(400, response.status);
+        assertEquals("parsing_exception", response.body.path("error").path("type").asText());
+        assertEquals(400, response.body.path("status").asInt());
+    }
+
+    private static class Response {
+
+        private final int status;
+
+        private final JsonNode body;
+
+        Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.lanlinker.starter.elasticsearch.stub;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 查询DSL子集的冒烟测试：每种支持的查询至少覆盖一次，JSON和RestHighLevelClient生成的请求体形式一致
+ *
+ * @author hc
+ */
+class QueryEvaluatorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<StoredDocument> DOCS = Arrays.asList(
+            doc("1", "{\"title\":\"Reactive Streams in Java\",\"brand\":\"acme\",\"price\":10,\"tags\":[\"java\",\"rx\"],"
+                    + "\"author\":{\"name\":\"hc\"}}"),
+            doc("2", "{\"title\":\"Java Concurrency\",\"brand\":\"globex\",\"price\":25,\"tags\":[\"java\"]}"),
+            doc("3", "{\"title\":\"响应式编程\",\"brand\":\"acme\",\"price\":40,\"author\":{\"name\":\"li\"}}"),
+            doc("4", "{\"title\":\"Streams of Consciousness\",\"brand\":\"initech\",\"price\":25.5,\"sku\":\"AB-123\"}"));
+
+    private static StoredDocument doc(String id, String json) {
+        return new StoredDocument(id, parse(json), 1, 0);
+    }
+
+    private static Map<String, Object> parse(String json) {
+        try {
+            return MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException(json, e);
+        }
+    }
+
+    /**
+     * 满足查询的文档id
+     */
+    private static List<String> ids(String query) {
+        Map<String, Object> parsed = parse(query);
+        List<String> ids = new ArrayList<>();
+        for (StoredDocument doc : DOCS) {
+            if (QueryEvaluator.matches(parsed, doc)) {
+                ids.add(doc.getId());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    void matchAllAndIds() {
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids("{\"match_all\":{\"boost\":1.0}}"));
+        assertEquals(Arrays.asList("1", "2", "3", "4"), ids("{}"));
+        assertEquals(Arrays.asList("1", "3"), ids("{\"ids\":{\"values\":[\"3\",\"1\",\"9\"]}}"));
+    }
+
+    @Test
+    void fullTextQueries() {
+        // 默认or，分词后小写
+        assertEquals(Arrays.asList("1", "2", "4"), ids("{\"match\":{\"title\":{\"query\":\"JAVA streams\"}}}"));
+        assertEquals(Collections.singletonList("1"),
+                ids("{\"match\":{\"title\":{\"query\":\"java streams\",\"operator\":\"AND\"}}}"));
+        // 中日韩文字每个字单独成词
+        assertEquals(Collections.singletonList("3"), ids("{\"match\":{\"title\":\"编程\"}}"));
+        assertEquals(Collections.singletonList("1"), ids("{\"match_phrase\":{\"title\":{\"query\":\"streams in java\"}}}"));
+        assertEquals(Collections.emptyList(), ids("{\"match_phrase\":{\"title\":\"java streams\"}}"));
+        // 字段权重被忽略，嵌套路径
+        assertEquals(Arrays.asList("1", "3"),
+                ids("{\"multi_match\":{\"query\":\"li hc\",\"fields\":[\"title^2\",\"author.name\"]}}"));
+    }
+
+    @Test
+    void termLevelQueries() {
+        assertEquals(Arrays.asList("1", "3"), ids("{\"term\":{\"brand\":{\"value\":\"acme\",\"boost\":1.0}}}"));
+        // 数组字段中任一元素匹配
+        assertEquals(Arrays.asList("1", "2"), ids("{\"term\":{\"tags\":\"java\"}}"));
+        // 数字按数值比较，字符串形式的数字也可以
+        assertEquals(Collections.singletonList("2"), ids("{\"term\":{\"price\":25}}"));
+        assertEquals(Collections.singletonList("1"), ids("{\"term\":{\"price\":\"10\"}}"));
+        assertEquals(Arrays.asList("2", "4"), ids("{\"terms\":{\"brand\":[\"globex\",\"initech\"],\"boost\":1.0}}"));
+        assertEquals(Collections.singletonList("4"), ids("{\"prefix\":{\"sku\":{\"value\":\"AB-\"}}}"));
+        assertEquals(Collections.singletonList("4"), ids("{\"wildcard\":{\"sku\":{\"wildcard\":\"A?-1*\"}}}"));
+        assertEquals(Arrays.asList("1", "3"), ids("{\"exists\":{\"field\":\"author.name\"}}"));
+    }
+
+    @Test
+    void rangeQueries() {
+        // RangeQueryBuilder生成的形式
+        assertEquals(Arrays.asList("2", "4"), ids("{\"range\":{\"price\":{\"from\":25,\"to\":40,"
+                + "\"include_lower\":true,\"include_upper\":false}}}"));
+        assertEquals(Arrays.asList("3", "4"), ids("{\"range\":{\"price\":{\"gt\":25}}}"));
+        assertEquals(Arrays.asList("1", "2"), ids("{\"range\":{\"price\":{\"lte\":25}}}"));
+    }
+
+    @Test
+    void boolCombinations() {
+        assertEquals(Collections.singletonList("3"), ids("{\"bool\":{\"must\":[{\"term\":{\"brand\":\"acme\"}}],"
+                + "\"filter\":[{\"range\":{\"price\":{\"gte\":20}}}]}}"));
+        assertEquals(Arrays.asList("2", "4"), ids("{\"bool\":{\"must_not\":{\"term\":{\"brand\":\"acme\"}}}}"));
+        // 只有should时至少满足一个
+        assertEquals(Arrays.asList("2", "3"), ids("{\"bool\":{\"should\":[{\"term\":{\"brand\":\"globex\"}},"
+                + "{\"match\":{\"author.name\":\"li\"}}]}}"));
+        // 有filter时should是可选的，除非指定minimum_should_match
+        assertEquals(Arrays.asList("1", "3"), ids("{\"bool\":{\"filter\":{\"term\":{\"brand\":\"acme\"}},"
+                + "\"should\":{\"match\":{\"title\":\"java\"}}}}"));
+        assertEquals(Collections.singletonList("1"), ids("{\"bool\":{\"filter\":{\"term\":{\"brand\":\"acme\"}},"
+                + "\"should\":{\"match\":{\"title\":\"java\"}},\"minimum_should_match\":\"1\"}}"));
+        assertEquals(Arrays.asList("1", "3"), ids("{\"constant_score\":{\"filter\":{\"term\":{\"brand\":\"acme\"}}}}"));
+    }
+
+    @Test
+    void unsupportedQueryIsRejected() {
+        StubException e = assertThrows(StubException.class, () -> ids("{\"query_string\":{\"query\":\"java\"}}"));
+        assertEquals(400, e.getStatus());
+        assertEquals("parsing_exception", e.getType());
+    }
+}
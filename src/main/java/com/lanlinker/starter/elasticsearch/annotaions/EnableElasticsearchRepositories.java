@@ -0,0 +1,38 @@
+package com.lanlinker.starter.elasticsearch.annotaions;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指定扫描Repository接口的包，标记在任意配置类上。<br/>
+ * 不使用该注解时扫描启动类所在的包，使用后只扫描注解中指定的包，多个配置类上的注解取并集；
+ * 三个属性都不设置时扫描被标记的类所在的包
+ *
+ * @author hc
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface EnableElasticsearchRepositories {
+
+    /**
+     * {@link #basePackages()}的别名
+     * @return 要扫描的包
+     */
+    String[] value() default {};
+
+    /**
+     * 要扫描的包，包含子包
+     * @return 要扫描的包
+     */
+    String[] basePackages() default {};
+
+    /**
+     * 以这些类所在的包作为要扫描的包，比写字符串更便于重构
+     * @return 所在包要被扫描的类
+     */
+    Class<?>[] basePackageClasses() default {};
+}
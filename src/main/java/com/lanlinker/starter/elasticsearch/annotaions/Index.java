@@ -18,4 +18,73 @@ public @interface Index {
      * @return 索引库名称
      */
     String value();
+
+    /**
+     * 是否为queryById开启本地缓存，全局开启时可以不设置。指定routing的queryById不经过缓存
+     * @return 是否开启本地缓存
+     */
+    boolean cache() default false;
+
+    /**
+     * 本地缓存最多保存的文档数，小于0时使用全局配置
+     * @return 最多保存的文档数
+     */
+    long cacheMaximumSize() default -1;
+
+    /**
+     * 本地缓存的过期时间（秒），写入后开始计时，小于0时使用全局配置
+     * @return 过期时间
+     */
+    long cacheExpireAfterWriteSeconds() default -1;
+
+    /**
+     * 按时间分区的日期字段，设置后文档按该字段的值写入 {索引库名称}-{时间后缀} ，
+     * 查询时根据该字段的范围条件只查询可能命中的分区。<br/>
+     * 字段支持Date、Instant、LocalDate、LocalDateTime、OffsetDateTime、ZonedDateTime、毫秒时间戳和ISO-8601格式的字符串，
+     * 写入后不应再修改，否则旧分区中会留下一份文档。<br/>
+     * 只有id时无法确定分区：queryById、queryAllById通过搜索所有分区完成，只能读到已经refresh的文档；
+     * deleteById先refresh所有分区再通过_delete_by_query删除。能拿到实体类时使用delete(T)，直接删除所在分区中的文档
+     * @return 分区字段名称
+     */
+    String partitionField() default "";
+
+    /**
+     * 分区的时间粒度
+     * @return 时间粒度
+     */
+    PartitionGranularity partitionGranularity() default PartitionGranularity.DAY;
+
+    /**
+     * 计算分区时使用的时区，例如 Asia/Shanghai 或 +08:00
+     * @return 时区
+     */
+    String partitionZone() default "UTC";
+
+    /**
+     * 是否使用rollover：索引库名称作为写入别名，实际的索引库为 {索引库名称}-000001 ，达到条件后滚动到下一个。
+     * 不能和{@link #partitionField()}同时使用。<br/>
+     * 写入总是发往当前的写入索引库，滚动后再次save已有id的文档会在新索引库中写入一份，旧索引库中的那份不会被覆盖，
+     * 适合只追加、不修改的数据（如日志）；
+     * 按id读取通过搜索所有索引库完成，只能读到已经refresh的文档，deleteById和delete(T)先refresh再通过_delete_by_query删除所有副本
+     * @return 是否使用rollover
+     */
+    boolean rollover() default false;
+
+    /**
+     * 写入索引库达到该大小后滚动，例如 50gb ，为空表示不限制
+     * @return 最大大小
+     */
+    String rolloverMaxSize() default "";
+
+    /**
+     * 写入索引库创建超过该时间后滚动，例如 7d ，为空表示不限制
+     * @return 最长时间
+     */
+    String rolloverMaxAge() default "";
+
+    /**
+     * 写入索引库的文档数达到该值后滚动，小于等于0表示不限制
+     * @return 最大文档数
+     */
+    long rolloverMaxDocs() default -1;
 }
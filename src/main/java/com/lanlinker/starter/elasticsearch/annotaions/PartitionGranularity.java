@@ -0,0 +1,42 @@
+package com.lanlinker.starter.elasticsearch.annotaions;
+
+/**
+ * 按时间分区的粒度，决定分区索引库名称的时间后缀
+ *
+ * @author hc
+ */
+public enum PartitionGranularity {
+
+    /**
+     * 每小时一个分区，后缀为 yyyy.MM.dd.HH
+     */
+    HOUR("yyyy.MM.dd.HH"),
+
+    /**
+     * 每天一个分区，后缀为 yyyy.MM.dd
+     */
+    DAY("yyyy.MM.dd"),
+
+    /**
+     * 每月一个分区，后缀为 yyyy.MM
+     */
+    MONTH("yyyy.MM"),
+
+    /**
+     * 每年一个分区，后缀为 yyyy
+     */
+    YEAR("yyyy");
+
+    private final String pattern;
+
+    PartitionGranularity(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return 时间后缀的格式
+     */
+    public String getPattern() {
+        return pattern;
+    }
+}
@@ -0,0 +1,17 @@
+package com.lanlinker.starter.elasticsearch.annotaions;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记路由字段，字段值作为文档的routing，相同routing的文档落在同一个分片上。<br/>
+ * 写入时自动使用该字段的值；按id读取、删除和查询时通过带routing参数的方法指定，只访问一个分片
+ *
+ * @author hc
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Routing {
+}
@@ -0,0 +1,166 @@
+package com.lanlinker.starter.elasticsearch.codec;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 响应解码使用的{@link Scheduler}。<br/>
+ * 异步请求的回调在HTTP客户端的IO线程上执行，Repository在回调之后通过publishOn切换到这里，
+ * 反序列化、高亮注入和下游的操作都不再占用IO线程。<br/>
+ * 默认是有界线程池，队列满时在提交任务的线程上直接执行，不会丢弃；
+ * 开启虚拟线程且JDK支持时每个任务使用一个虚拟线程。两种方式都统计排队和执行中的任务数
+ *
+ * @author hc
+ */
+public class DecodeScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DecodeScheduler.class);
+
+    private static final String NAME = "lanlinker-es-decode";
+
+    /**
+     * 已提交还没有开始执行的任务数
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * 正在执行的任务数
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Scheduler scheduler;
+
+    public DecodeScheduler(ElasticsearchProperties.Decode decode) {
+        ExecutorService executor = decode.isVirtualThreads() ? virtualThreadExecutor() : null;
+        if (executor == null) {
+            executor = boundedExecutor(Math.max(1, decode.getThreads()), Math.max(1, decode.getQueueCapacity()));
+        }
+        this.scheduler = Schedulers.fromExecutorService(new CountingExecutorService(executor), NAME);
+    }
+
+    /**
+     * @return 解码使用的Scheduler
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return 已提交还没有开始执行的任务数，即解码队列的深度
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * @return 正在执行的任务数
+     */
+    public int active() {
+        return active.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+
+    private static ExecutorService boundedExecutor(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, NAME + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        // 队列满时在IO线程上解码，和不开启时的行为一样，只是变慢而不是失败
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 通过反射调用Executors.newVirtualThreadPerTaskExecutor，编译时不依赖新版本的JDK
+     *
+     * @return JDK不支持虚拟线程时返回null
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            log.warn("当前JDK不支持虚拟线程，解码改用线程池");
+        } catch (InvocationTargetException e) {
+            // 预览版本的JDK没有开启--enable-preview时抛出UnsupportedOperationException
+            log.warn("当前JDK无法创建虚拟线程，解码改用线程池", e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * 统计排队和执行中的任务数，其它操作交给被包装的ExecutorService
+     */
+    private class CountingExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        CountingExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            queued.incrementAndGet();
+            try {
+                delegate.execute(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 已经关闭时任务被拒绝，不会再执行
+                queued.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.lanlinker.starter.elasticsearch.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadata;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 实体类的编解码器，每个实体类一个实例。<br/>
+ * 读写器在创建时就绑定好实体类型，解码直接读取响应中的_source字节，编码直接写入请求体的字节，
+ * 中间不经过String。写入格式可以是JSON或SMILE，读取时按字节内容自动识别格式。<br/>
+ * 不支持CBOR：7.9的客户端构建bulk请求时只接受JSON和SMILE，所有批量写入都会失败。<br/>
+ * java.time的类型写成ISO-8601字符串，Date和Calendar写成毫秒时间戳，都是Elasticsearch日期字段默认能解析的格式。<br/>
+ * 注意这与早期版本的写入格式不同：java.time的类型以前写成包含year、month等属性的对象，java.sql.Date以前写成毫秒时间戳，
+ * 现在写成yyyy-MM-dd。已有索引中日期字段的format只有epoch_millis、或者用数值字段保存这些值时，需要先调整映射
+ *
+ * @author hc
+ */
+public class EntityCodec<T> {
+
+    /**
+     * 各格式对应的ObjectMapper
+     */
+    private static final Map<XContentType, ObjectMapper> MAPPERS = new EnumMap<>(XContentType.class);
+
+    static {
+        MAPPERS.put(XContentType.JSON, configure(new ObjectMapper()));
+        MAPPERS.put(XContentType.SMILE, configure(new ObjectMapper(new SmileFactory())));
+    }
+
+    private static ObjectMapper configure(ObjectMapper mapper) {
+        mapper.registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        // 关闭上面的选项会影响Date，保持原来的毫秒时间戳
+        mapper.configOverride(Date.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.NUMBER));
+        mapper.configOverride(Calendar.class).setFormat(JsonFormat.Value.forShape(JsonFormat.Shape.NUMBER));
+        return mapper;
+    }
+
+    /**
+     * 按实体类相同的规则把任意值写成JSON，用于查询条件中的参数，保证参数和文档中的值格式一致
+     *
+     * @return JSON格式的写出器
+     */
+    public static ObjectWriter jsonWriter() {
+        return MAPPERS.get(XContentType.JSON).writer();
+    }
+
+    /**
+     * 写入时使用的格式
+     */
+    private final XContentType contentType;
+
+    private final ObjectWriter writer;
+
+    /**
+     * 跳过null属性的写出器，用于局部更新
+     */
+    private final ObjectWriter partialWriter;
+
+    /**
+     * 实体类的元信息，有编译期生成的序列化代码时直接用它写出
+     */
+    private final EntityMetadata<T> metadata;
+
+    /**
+     * 写入格式对应的生成器工厂
+     */
+    private final JsonFactory factory;
+
+    /**
+     * 各格式对应的读取器
+     */
+    private final Map<XContentType, ObjectReader> readers = new EnumMap<>(XContentType.class);
+
+    public EntityCodec(EntityMetadata<T> metadata, XContentType contentType) {
+        if (!MAPPERS.containsKey(contentType)) {
+            throw new IllegalArgumentException("不支持的文档格式：" + contentType + "，可选JSON、SMILE");
+        }
+        Class<T> clazz = metadata.getEntityClass();
+        this.metadata = metadata;
+        this.contentType = contentType;
+        this.factory = MAPPERS.get(contentType).getFactory();
+        this.writer = MAPPERS.get(contentType).writerFor(clazz);
+        this.partialWriter = MAPPERS.get(contentType).copy()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL).writerFor(clazz);
+        MAPPERS.forEach((type, mapper) -> readers.put(type, mapper.readerFor(clazz)));
+    }
+
+    /**
+     * @return 写入时使用的格式
+     */
+    public XContentType contentType() {
+        return contentType;
+    }
+
+    /**
+     * 把实体类编码为请求体字节
+     *
+     * @param t 实体类
+     * @return 编码后的字节
+     */
+    public BytesReference encode(T t) {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            if (metadata.hasSerializer()) {
+                // 编译期生成的序列化代码，不经过Jackson的内省
+                try (JsonGenerator generator = factory.createGenerator(out)) {
+                    metadata.serialize(t, generator);
+                }
+            } else {
+                writer.writeValue(out, t);
+            }
+            return out.bytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 把实体类编码为局部更新的文档，值为null的属性（包括嵌套对象中的）不写出，基本类型的属性总会写出
+     *
+     * @param t 实体类
+     * @return 编码后的字节
+     */
+    public BytesReference encodePartial(T t) {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            partialWriter.writeValue(out, t);
+            return out.bytes();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 把_source字节解码为实体类
+     *
+     * @param source _source字节
+     * @return 实体类，source为空时返回null
+     */
+    public T decode(BytesReference source) {
+        if (source == null || source.length() == 0) {
+            return null;
+        }
+        // BytesArray不会发生复制
+        BytesRef ref = source.toBytesRef();
+        ObjectReader reader = readers.get(isSmile(ref) ? XContentType.SMILE : XContentType.JSON);
+        try {
+            return reader.readValue(ref.bytes, ref.offset, ref.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * SMILE内容总是以 ':' ')' '\n' 三个字节的头部开始，其它内容都按JSON读取
+     *
+     * @param ref _source字节
+     * @return 是否为SMILE格式
+     */
+    private static boolean isSmile(BytesRef ref) {
+        return ref.length >= 3
+                && ref.bytes[ref.offset] == SmileConstants.HEADER_BYTE_1
+                && ref.bytes[ref.offset + 1] == SmileConstants.HEADER_BYTE_2
+                && ref.bytes[ref.offset + 2] == SmileConstants.HEADER_BYTE_3;
+    }
+}
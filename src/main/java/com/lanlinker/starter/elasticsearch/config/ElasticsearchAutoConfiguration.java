@@ -1,13 +1,27 @@
 package com.lanlinker.starter.elasticsearch.config;
 
+import com.lanlinker.starter.elasticsearch.codec.DecodeScheduler;
+import com.lanlinker.starter.elasticsearch.node.HedgedReads;
+import com.lanlinker.starter.elasticsearch.node.LatencyAwareNodeSelector;
+import com.lanlinker.starter.elasticsearch.node.NodeLatencyTracker;
 import com.lanlinker.starter.elasticsearch.scanner.RepositoryScanner;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
 import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
 import org.springframework.beans.BeansException;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.annotation.Bean;
@@ -15,6 +29,7 @@ import org.springframework.context.annotation.Configuration;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.lang.reflect.Method;
 import java.util.stream.Stream;
 
 /**
@@ -25,33 +40,140 @@ import java.util.stream.Stream;
 @ConditionalOnClass({Mono.class, Flux.class, RestHighLevelClient.class})
 public class ElasticsearchAutoConfiguration implements ApplicationContextAware {
 
-    // elasticsearch的地址，默认是本机
-    private String hosts = "http://127.0.0.1:9200";
+    // lanlinker.elasticsearch 开头的配置，elasticsearch的地址默认是本机
+    private ElasticsearchProperties properties = new ElasticsearchProperties();
+
+    // 请求失败时通知Sniffer，开启sniff时由Sniffer绑定
+    private final SniffOnFailureListener sniffOnFailureListener = new SniffOnFailureListener();
+
+    // 各节点的延迟统计，开启按延迟选择节点或对冲读时创建
+    private NodeLatencyTracker latencyTracker;
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-        // 读取配置文件中的 "ly.elasticsearch.hosts"属性
-        this.hosts = applicationContext.getEnvironment().getProperty("lanlinker.elasticsearch.hosts");
+        // 读取配置文件中 "lanlinker.elasticsearch" 开头的属性
+        // RepositoryScanner 是 BeanDefinitionRegistryPostProcessor，实例化得很早，这里直接用Binder绑定
+        this.properties = Binder.get(applicationContext.getEnvironment())
+                .bind(ElasticsearchProperties.PREFIX, ElasticsearchProperties.class)
+                .orElseGet(ElasticsearchProperties::new);
+        ElasticsearchProperties.Read read = properties.getRead();
+        if (read.isLatencyAware() || read.isHedge()) {
+            this.latencyTracker = new NodeLatencyTracker(read.getEwmaAlpha());
+        }
     }
 
     @Bean
     @ConditionalOnMissingBean
     public RestHighLevelClient restHighLevelClient() {
-        return new RestHighLevelClient(
-                // 利用Builder构建器来初始化，接收HttpHost数组
-                RestClient.builder(
-                        // 将地址以 , 分割得到其中的每个地址
-                        Stream.of(StringUtils.split(hosts, ","))
-                                // 将单个地址封装为HttpHost对象
-                                .map(HttpHost::create)
-                                // 转为HttpHost数组
-                                .toArray(HttpHost[]::new)
-                )
-        );
+        ElasticsearchProperties.Client config = properties.getClient();
+        // 利用Builder构建器来初始化，接收HttpHost数组
+        RestClientBuilder builder = RestClient.builder(hosts())
+                .setRequestConfigCallback(requestConfig -> {
+                    requestConfig.setConnectTimeout((int) config.getConnectTimeout().toMillis())
+                            .setSocketTimeout((int) config.getSocketTimeout().toMillis());
+                    if (config.getConnectionRequestTimeout() != null) {
+                        requestConfig.setConnectionRequestTimeout((int) config.getConnectionRequestTimeout().toMillis());
+                    }
+                    return requestConfig;
+                })
+                .setHttpClientConfigCallback(httpClient -> {
+                    httpClient.setMaxConnTotal(config.getMaxConnTotal())
+                            .setMaxConnPerRoute(config.getMaxConnPerRoute());
+                    if (config.getIoThreadCount() > 0) {
+                        httpClient.setDefaultIOReactorConfig(IOReactorConfig.custom()
+                                .setIoThreadCount(config.getIoThreadCount())
+                                .build());
+                    }
+                    if (config.getKeepAlive() != null) {
+                        long keepAlive = config.getKeepAlive().toMillis();
+                        httpClient.setKeepAliveStrategy((response, context) -> keepAlive);
+                    }
+                    if (latencyTracker != null) {
+                        latencyTracker.install(httpClient);
+                    }
+                    return httpClient;
+                });
+        if (latencyTracker != null) {
+            ElasticsearchProperties.Read read = properties.getRead();
+            builder.setNodeSelector(new LatencyAwareNodeSelector(
+                    latencyTracker, read.isLatencyAware(), read.getProbeInterval().toNanos()));
+        }
+        if (config.isCompression()) {
+            enableCompression(builder);
+        }
+        if (config.getSniff().isEnabled() && config.getSniff().isOnFailure()) {
+            // 请求失败时立即重新获取节点列表
+            builder.setFailureListener(sniffOnFailureListener);
+        }
+        return new RestHighLevelClient(builder);
+    }
+
+    /**
+     * 定期从集群获取节点列表，替换配置中的地址
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = ElasticsearchProperties.PREFIX + ".client.sniff", name = "enabled", havingValue = "true")
+    public Sniffer sniffer(RestHighLevelClient restHighLevelClient) {
+        ElasticsearchProperties.Sniff sniff = properties.getClient().getSniff();
+        // 发现的节点沿用配置中地址的协议
+        ElasticsearchNodesSniffer.Scheme scheme = "https".equalsIgnoreCase(hosts()[0].getSchemeName())
+                ? ElasticsearchNodesSniffer.Scheme.HTTPS : ElasticsearchNodesSniffer.Scheme.HTTP;
+        RestClient lowLevelClient = restHighLevelClient.getLowLevelClient();
+        Sniffer sniffer = Sniffer.builder(lowLevelClient)
+                .setSniffIntervalMillis((int) sniff.getInterval().toMillis())
+                .setSniffAfterFailureDelayMillis((int) sniff.getDelayAfterFailure().toMillis())
+                .setNodesSniffer(new ElasticsearchNodesSniffer(lowLevelClient,
+                        ElasticsearchNodesSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT, scheme))
+                .build();
+        sniffOnFailureListener.setSniffer(sniffer);
+        return sniffer;
+    }
+
+    /**
+     * 对冲读，由RepositoryFactory按类型注入
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = ElasticsearchProperties.PREFIX + ".read", name = "hedge", havingValue = "true")
+    public HedgedReads hedgedReads() {
+        ElasticsearchProperties.Read read = properties.getRead();
+        return new HedgedReads(latencyTracker, read.getHedgePercentile(), read.getHedgeMinDelay(), read.getHedgeInitialDelay());
+    }
+
+    /**
+     * 响应解码的线程池，由RepositoryFactory按类型注入
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = ElasticsearchProperties.PREFIX + ".decode", name = "enabled", havingValue = "true")
+    public DecodeScheduler decodeScheduler() {
+        return new DecodeScheduler(properties.getDecode());
     }
 
     @Bean
     public RepositoryScanner repositoryScanner() {
-        return new RepositoryScanner(restHighLevelClient());
+        return new RepositoryScanner(restHighLevelClient(), properties);
+    }
+
+    private HttpHost[] hosts() {
+        // 将地址以 , 分割得到其中的每个地址
+        return Stream.of(StringUtils.split(properties.getHosts(), ","))
+                // 将单个地址封装为HttpHost对象
+                .map(String::trim)
+                .map(HttpHost::create)
+                // 转为HttpHost数组
+                .toArray(HttpHost[]::new);
+    }
+
+    /**
+     * 7.10及以上的客户端自带请求和响应的压缩，低版本只能通过Accept-Encoding请求压缩的响应，客户端会自动解压
+     */
+    private static void enableCompression(RestClientBuilder builder) {
+        try {
+            Method setCompressionEnabled = RestClientBuilder.class.getMethod("setCompressionEnabled", boolean.class);
+            setCompressionEnabled.invoke(builder, true);
+        } catch (NoSuchMethodException e) {
+            builder.setDefaultHeaders(new Header[]{new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "gzip")});
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
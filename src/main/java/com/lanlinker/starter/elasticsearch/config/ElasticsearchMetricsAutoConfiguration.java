@@ -0,0 +1,33 @@
+package com.lanlinker.starter.elasticsearch.config;
+
+import com.lanlinker.starter.elasticsearch.metrics.MicrometerRepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.metrics.RepositoryMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 容器中存在MeterRegistry时，为所有Repository记录监控指标
+ *
+ * @author hc
+ */
+@Configuration
+@ConditionalOnClass(MeterRegistry.class)
+// 在actuator创建MeterRegistry之后再判断
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
+public class ElasticsearchMetricsAutoConfiguration {
+
+    /**
+     * 监控指标，由RepositoryFactory按类型注入
+     */
+    @Bean
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean(RepositoryMetrics.class)
+    public RepositoryMetrics repositoryMetrics(MeterRegistry meterRegistry) {
+        return new MicrometerRepositoryMetrics(meterRegistry);
+    }
+}
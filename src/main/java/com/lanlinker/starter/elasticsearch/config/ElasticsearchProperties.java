@@ -0,0 +1,1026 @@
+package com.lanlinker.starter.elasticsearch.config;
+
+import org.elasticsearch.common.xcontent.XContentType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * lanlinker.elasticsearch 开头的配置
+ *
+ * @author hc
+ * @date 2021/7/9 11:52
+ */
+@ConfigurationProperties(prefix = ElasticsearchProperties.PREFIX)
+public class ElasticsearchProperties {
+
+    public static final String PREFIX = "lanlinker.elasticsearch";
+
+    /**
+     * elasticsearch集群中节点信息，多个以,隔开
+     */
+    private String hosts = "http://127.0.0.1:9200";
+
+    /**
+     * 写入文档时使用的格式，可选JSON、SMILE，二进制格式体积更小、解析更快。不支持CBOR，客户端的bulk请求只接受JSON和SMILE
+     */
+    private XContentType contentType = XContentType.JSON;
+
+    /**
+     * HTTP客户端的配置
+     */
+    private final Client client = new Client();
+
+    /**
+     * 读请求的节点选择和对冲配置
+     */
+    private final Read read = new Read();
+
+    /**
+     * 缓冲批量写入的配置
+     */
+    private final Bulk bulk = new Bulk();
+
+    /**
+     * 局部更新、upsert和脚本更新的配置
+     */
+    private final Update update = new Update();
+
+    /**
+     * queryById本地缓存的配置
+     */
+    private final Cache cache = new Cache();
+
+    /**
+     * queryById合并为_mget的配置
+     */
+    private final Mget mget = new Mget();
+
+    /**
+     * 分页查询合并为_msearch的配置
+     */
+    private final Msearch msearch = new Msearch();
+
+    /**
+     * 自动补全的配置
+     */
+    private final Suggest suggest = new Suggest();
+
+    /**
+     * Repository接口的扫描配置
+     */
+    private final Repositories repositories = new Repositories();
+
+    /**
+     * 按时间分区和rollover的配置
+     */
+    private final Partition partition = new Partition();
+
+    /**
+     * 响应解码线程池的配置
+     */
+    private final Decode decode = new Decode();
+
+    public String getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(String hosts) {
+        this.hosts = hosts;
+    }
+
+    public XContentType getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(XContentType contentType) {
+        this.contentType = contentType;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public Read getRead() {
+        return read;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Update getUpdate() {
+        return update;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Mget getMget() {
+        return mget;
+    }
+
+    public Msearch getMsearch() {
+        return msearch;
+    }
+
+    public Suggest getSuggest() {
+        return suggest;
+    }
+
+    public Repositories getRepositories() {
+        return repositories;
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    public Decode getDecode() {
+        return decode;
+    }
+
+    /**
+     * HTTP客户端（RestClient）的配置
+     */
+    public static class Client {
+
+        /**
+         * 连接池的最大连接数
+         */
+        private int maxConnTotal = 30;
+
+        /**
+         * 每个节点的最大连接数
+         */
+        private int maxConnPerRoute = 10;
+
+        /**
+         * IO线程数，0表示使用CPU核数
+         */
+        private int ioThreadCount = 0;
+
+        /**
+         * 建立连接的超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(1);
+
+        /**
+         * 等待响应数据的超时时间
+         */
+        private Duration socketTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 从连接池获取连接的超时时间，不设置时一直等待
+         */
+        private Duration connectionRequestTimeout;
+
+        /**
+         * 空闲连接的保持时间，不设置时按服务端的Keep-Alive响应头处理
+         */
+        private Duration keepAlive;
+
+        /**
+         * 是否开启gzip压缩，响应总是可以压缩，请求体的压缩需要客户端版本支持（7.10及以上）
+         */
+        private boolean compression = false;
+
+        /**
+         * 节点自动发现的配置
+         */
+        private final Sniff sniff = new Sniff();
+
+        public int getMaxConnTotal() {
+            return maxConnTotal;
+        }
+
+        public void setMaxConnTotal(int maxConnTotal) {
+            this.maxConnTotal = maxConnTotal;
+        }
+
+        public int getMaxConnPerRoute() {
+            return maxConnPerRoute;
+        }
+
+        public void setMaxConnPerRoute(int maxConnPerRoute) {
+            this.maxConnPerRoute = maxConnPerRoute;
+        }
+
+        public int getIoThreadCount() {
+            return ioThreadCount;
+        }
+
+        public void setIoThreadCount(int ioThreadCount) {
+            this.ioThreadCount = ioThreadCount;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public void setSocketTimeout(Duration socketTimeout) {
+            this.socketTimeout = socketTimeout;
+        }
+
+        public Duration getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+
+        public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public boolean isCompression() {
+            return compression;
+        }
+
+        public void setCompression(boolean compression) {
+            this.compression = compression;
+        }
+
+        public Sniff getSniff() {
+            return sniff;
+        }
+    }
+
+    /**
+     * 节点自动发现（Sniffer）的配置
+     */
+    public static class Sniff {
+
+        /**
+         * 是否定期从集群获取节点列表
+         */
+        private boolean enabled = false;
+
+        /**
+         * 获取节点列表的间隔
+         */
+        private Duration interval = Duration.ofMinutes(5);
+
+        /**
+         * 请求失败后是否立即重新获取节点列表
+         */
+        private boolean onFailure = true;
+
+        /**
+         * 请求失败后重新获取节点列表，之后下一次获取的间隔
+         */
+        private Duration delayAfterFailure = Duration.ofMinutes(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public boolean isOnFailure() {
+            return onFailure;
+        }
+
+        public void setOnFailure(boolean onFailure) {
+            this.onFailure = onFailure;
+        }
+
+        public Duration getDelayAfterFailure() {
+            return delayAfterFailure;
+        }
+
+        public void setDelayAfterFailure(Duration delayAfterFailure) {
+            this.delayAfterFailure = delayAfterFailure;
+        }
+    }
+
+    /**
+     * 读请求的节点选择和对冲配置
+     */
+    public static class Read {
+
+        /**
+         * 是否按各节点的平均延迟选择节点
+         */
+        private boolean latencyAware = false;
+
+        /**
+         * 是否开启对冲读：第一次请求超过延迟分位数还没有返回时，向另一个节点再发一次
+         */
+        private boolean hedge = false;
+
+        /**
+         * 触发对冲的延迟分位数
+         */
+        private double hedgePercentile = 0.95;
+
+        /**
+         * 对冲前等待的最短时间
+         */
+        private Duration hedgeMinDelay = Duration.ofMillis(5);
+
+        /**
+         * 延迟样本不足时，对冲前等待的时间
+         */
+        private Duration hedgeInitialDelay = Duration.ofMillis(50);
+
+        /**
+         * 计算平均延迟时新样本的权重
+         */
+        private double ewmaAlpha = 0.3;
+
+        /**
+         * 节点超过该时间没有新样本时，平均延迟视为未知，会被重新探测
+         */
+        private Duration probeInterval = Duration.ofSeconds(10);
+
+        public boolean isLatencyAware() {
+            return latencyAware;
+        }
+
+        public void setLatencyAware(boolean latencyAware) {
+            this.latencyAware = latencyAware;
+        }
+
+        public boolean isHedge() {
+            return hedge;
+        }
+
+        public void setHedge(boolean hedge) {
+            this.hedge = hedge;
+        }
+
+        public double getHedgePercentile() {
+            return hedgePercentile;
+        }
+
+        public void setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+        }
+
+        public Duration getHedgeMinDelay() {
+            return hedgeMinDelay;
+        }
+
+        public void setHedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+        }
+
+        public Duration getHedgeInitialDelay() {
+            return hedgeInitialDelay;
+        }
+
+        public void setHedgeInitialDelay(Duration hedgeInitialDelay) {
+            this.hedgeInitialDelay = hedgeInitialDelay;
+        }
+
+        public double getEwmaAlpha() {
+            return ewmaAlpha;
+        }
+
+        public void setEwmaAlpha(double ewmaAlpha) {
+            this.ewmaAlpha = ewmaAlpha;
+        }
+
+        public Duration getProbeInterval() {
+            return probeInterval;
+        }
+
+        public void setProbeInterval(Duration probeInterval) {
+            this.probeInterval = probeInterval;
+        }
+    }
+
+    /**
+     * 缓冲批量写入（BulkProcessor）的配置
+     */
+    public static class Bulk {
+
+        /**
+         * 缓冲的文档数达到该值时发送一次bulk请求
+         */
+        private int actions = 1000;
+
+        /**
+         * 缓冲的请求体大小达到该值时发送一次bulk请求
+         */
+        private DataSize size = DataSize.ofMegabytes(5);
+
+        /**
+         * 定时刷新的间隔，缓冲区不满时也会按该间隔发送
+         */
+        private Duration flushInterval = Duration.ofSeconds(1);
+
+        /**
+         * 同时在途的bulk请求数，0表示同步发送（流式批量写入时至少为1）
+         */
+        private int concurrentRequests = 1;
+
+        /**
+         * 尚未确认的文档数上限，超过后写入方会被阻塞，起到背压作用
+         */
+        private int maxPendingActions = 10000;
+
+        /**
+         * 缓冲写入时，未确认的文档数达到max-pending-actions后最多排队等待的文档数，超过后新的写入直接以失败结束
+         */
+        private int maxWaiters = 10000;
+
+        /**
+         * bulkLoad结束后强制合并的目标段数
+         */
+        private int forceMergeMaxSegments = 1;
+
+        /**
+         * 是否按集群的反馈自动调整每个bulk请求的文档数和并发数：被拒绝（429）或耗时超过maxLatency时成倍减小，
+         * 持续成功时逐步增大。以actions和concurrentRequests为初始值，关闭后二者固定不变
+         */
+        private boolean adaptive = true;
+
+        /**
+         * 自动调整时每个bulk请求文档数的下限
+         */
+        private int minActions = 100;
+
+        /**
+         * 自动调整时每个bulk请求文档数的上限
+         */
+        private int maxActions = 10000;
+
+        /**
+         * 每次成功后文档数增加的步长
+         */
+        private int actionsIncrement = 100;
+
+        /**
+         * 自动调整时同时在途的bulk请求数上限
+         */
+        private int maxConcurrentRequests = 8;
+
+        /**
+         * 单个bulk请求的耗时超过该值时视为集群跟不上，和被拒绝一样减小文档数和并发数
+         */
+        private Duration maxLatency = Duration.ofSeconds(2);
+
+        /**
+         * 被拒绝（429）的文档最多重试的次数，流式写入和缓冲写入都适用，只重试被拒绝的文档，0表示不重试
+         */
+        private int maxRetries = 5;
+
+        /**
+         * 第一次重试前的等待时间，之后每次翻倍，并加上随机抖动
+         */
+        private Duration initialBackoff = Duration.ofMillis(100);
+
+        /**
+         * 重试等待时间的上限
+         */
+        private Duration maxBackoff = Duration.ofSeconds(10);
+
+        public int getActions() {
+            return actions;
+        }
+
+        public void setActions(int actions) {
+            this.actions = actions;
+        }
+
+        public DataSize getSize() {
+            return size;
+        }
+
+        public void setSize(DataSize size) {
+            this.size = size;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        public int getConcurrentRequests() {
+            return concurrentRequests;
+        }
+
+        public void setConcurrentRequests(int concurrentRequests) {
+            this.concurrentRequests = concurrentRequests;
+        }
+
+        public int getMaxPendingActions() {
+            return maxPendingActions;
+        }
+
+        public void setMaxPendingActions(int maxPendingActions) {
+            this.maxPendingActions = maxPendingActions;
+        }
+
+        public int getMaxWaiters() {
+            return maxWaiters;
+        }
+
+        public void setMaxWaiters(int maxWaiters) {
+            this.maxWaiters = maxWaiters;
+        }
+
+        public int getForceMergeMaxSegments() {
+            return forceMergeMaxSegments;
+        }
+
+        public void setForceMergeMaxSegments(int forceMergeMaxSegments) {
+            this.forceMergeMaxSegments = forceMergeMaxSegments;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getMinActions() {
+            return minActions;
+        }
+
+        public void setMinActions(int minActions) {
+            this.minActions = minActions;
+        }
+
+        public int getMaxActions() {
+            return maxActions;
+        }
+
+        public void setMaxActions(int maxActions) {
+            this.maxActions = maxActions;
+        }
+
+        public int getActionsIncrement() {
+            return actionsIncrement;
+        }
+
+        public void setActionsIncrement(int actionsIncrement) {
+            this.actionsIncrement = actionsIncrement;
+        }
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+
+        public Duration getMaxLatency() {
+            return maxLatency;
+        }
+
+        public void setMaxLatency(Duration maxLatency) {
+            this.maxLatency = maxLatency;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    /**
+     * 局部更新、upsert和脚本更新的配置，对单条和批量更新都生效
+     */
+    public static class Update {
+
+        /**
+         * 版本冲突时在服务端重试的次数，并发修改同一个文档（例如计数器）时避免失败
+         */
+        private int retryOnConflict = 3;
+
+        /**
+         * 更新后的文档和原文档相同时不重新索引，返回noop
+         */
+        private boolean detectNoop = true;
+
+        public int getRetryOnConflict() {
+            return retryOnConflict;
+        }
+
+        public void setRetryOnConflict(int retryOnConflict) {
+            this.retryOnConflict = retryOnConflict;
+        }
+
+        public boolean isDetectNoop() {
+            return detectNoop;
+        }
+
+        public void setDetectNoop(boolean detectNoop) {
+            this.detectNoop = detectNoop;
+        }
+    }
+
+    /**
+     * queryById本地缓存的配置，@Index中的设置优先
+     */
+    public static class Cache {
+
+        /**
+         * 是否为所有Repository开启本地缓存，关闭时只有@Index(cache = true)的实体类开启
+         */
+        private boolean enabled = false;
+
+        /**
+         * 最多保存的文档数
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 按文档源数据的字节数限制缓存大小，设置后maximumSize不再生效
+         */
+        private DataSize maximumWeight;
+
+        /**
+         * 写入缓存后的过期时间
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+        /**
+         * 是否统计命中率
+         */
+        private boolean recordStats = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public DataSize getMaximumWeight() {
+            return maximumWeight;
+        }
+
+        public void setMaximumWeight(DataSize maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        public Duration getExpireAfterWrite() {
+            return expireAfterWrite;
+        }
+
+        public void setExpireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+        }
+
+        public boolean isRecordStats() {
+            return recordStats;
+        }
+
+        public void setRecordStats(boolean recordStats) {
+            this.recordStats = recordStats;
+        }
+    }
+
+    /**
+     * queryById合并为_mget的配置
+     */
+    public static class Mget {
+
+        /**
+         * 是否把短时间内的多个queryById合并成一次_mget请求
+         */
+        private boolean batching = false;
+
+        /**
+         * 合并的时间窗口，第一个请求到达时开始计时
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * 每次_mget最多包含的文档数，攒够后立即发送
+         */
+        private int maxBatchSize = 100;
+
+        public boolean isBatching() {
+            return batching;
+        }
+
+        public void setBatching(boolean batching) {
+            this.batching = batching;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+
+    /**
+     * multiQuery和分页查询合并为_msearch的配置
+     */
+    public static class Msearch {
+
+        /**
+         * 是否把短时间内的多个queryBySourceBuilderForPageHighlight合并成一次_msearch请求
+         */
+        private boolean batching = false;
+
+        /**
+         * 合并的时间窗口，第一个请求到达时开始计时
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * 每次_msearch最多包含的查询数，攒够后立即发送
+         */
+        private int maxBatchSize = 20;
+
+        /**
+         * 每个_msearch请求在集群中同时执行的查询数，不大于0时由集群决定
+         */
+        private int maxConcurrentSearches = 0;
+
+        public boolean isBatching() {
+            return batching;
+        }
+
+        public void setBatching(boolean batching) {
+            this.batching = batching;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public int getMaxConcurrentSearches() {
+            return maxConcurrentSearches;
+        }
+
+        public void setMaxConcurrentSearches(int maxConcurrentSearches) {
+            this.maxConcurrentSearches = maxConcurrentSearches;
+        }
+    }
+
+    /**
+     * 自动补全的配置
+     */
+    public static class Suggest {
+
+        /**
+         * 每次返回的补全结果数
+         */
+        private int size = 30;
+
+        /**
+         * 是否在本地维护补全索引，前缀查询直接在内存中完成，本地没有结果时再查询集群
+         */
+        private boolean local = false;
+
+        /**
+         * 本地补全索引的重建间隔
+         */
+        private Duration refreshInterval = Duration.ofMinutes(5);
+
+        /**
+         * 每个字段最多加载的文档数，防止本地补全索引占用过多内存。超过时本地索引不完整，查询全部交给集群
+         */
+        private int maxEntries = 1000000;
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        public void setLocal(boolean local) {
+            this.local = local;
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Repository接口的扫描配置
+     */
+    public static class Repositories {
+
+        /**
+         * 要扫描的包，和@EnableElasticsearchRepositories指定的包取并集，都没有指定时扫描启动类所在的包
+         */
+        private List<String> basePackages = new ArrayList<>();
+
+        /**
+         * 是否使用编译期生成的Repository索引代替类路径扫描，默认关闭。
+         * 索引只包含使用了注解处理器的模块中的接口，只有所有Repository所在的模块都使用了注解处理器时才能开启；
+         * 开启后索引中没有任何接口的包仍然会被扫描
+         */
+        private boolean useIndex = false;
+
+        public List<String> getBasePackages() {
+            return basePackages;
+        }
+
+        public void setBasePackages(List<String> basePackages) {
+            this.basePackages = basePackages;
+        }
+
+        public boolean isUseIndex() {
+            return useIndex;
+        }
+
+        public void setUseIndex(boolean useIndex) {
+            this.useIndex = useIndex;
+        }
+    }
+
+    /**
+     * 按时间分区和rollover的配置
+     */
+    public static class Partition {
+
+        /**
+         * 查询最多列出的分区数，范围条件跨越更多分区或没有上下界时查询全部分区
+         */
+        private int maxPartitions = 100;
+
+        /**
+         * rollover时写入过程中检查滚动条件的最小间隔，条件由集群判断
+         */
+        private Duration rolloverCheckInterval = Duration.ofMinutes(1);
+
+        public int getMaxPartitions() {
+            return maxPartitions;
+        }
+
+        public void setMaxPartitions(int maxPartitions) {
+            this.maxPartitions = maxPartitions;
+        }
+
+        public Duration getRolloverCheckInterval() {
+            return rolloverCheckInterval;
+        }
+
+        public void setRolloverCheckInterval(Duration rolloverCheckInterval) {
+            this.rolloverCheckInterval = rolloverCheckInterval;
+        }
+    }
+
+    /**
+     * 响应解码线程池的配置。<br/>
+     * 默认情况下反序列化和高亮注入在HTTP客户端的IO线程上执行，下游的操作也在IO线程上运行，
+     * 一个大的分页结果会拖慢共用该线程的其它请求。开启后这些工作切换到单独的线程池，IO线程只负责收发字节
+     */
+    public static class Decode {
+
+        /**
+         * 是否把解码切换到单独的线程池
+         */
+        private boolean enabled = false;
+
+        /**
+         * 线程数，默认等于CPU核数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 等待解码的任务数上限，队列满时在IO线程上直接解码
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * 运行在支持虚拟线程的JDK（21及以上）时，每个解码任务使用一个虚拟线程，此时threads和queueCapacity不生效；
+         * JDK不支持时仍然使用线程池
+         */
+        private boolean virtualThreads = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+    }
+}
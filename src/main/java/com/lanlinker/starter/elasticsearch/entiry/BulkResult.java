@@ -0,0 +1,106 @@
+package com.lanlinker.starter.elasticsearch.entiry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量写入的结果汇总
+ *
+ * @author hc
+ */
+public class BulkResult {
+
+    /**
+     * 写入的文档总数
+     */
+    private long total;
+
+    /**
+     * 发送的bulk请求数
+     */
+    private long bulks;
+
+    /**
+     * 失败的文档数，单独计数，不受文档id重复或为null的影响
+     */
+    private long failed;
+
+    /**
+     * 失败的文档，key是文档id，value是失败原因。id相同的文档只保留最后一个失败原因，失败数以{@link #failed}为准
+     */
+    private Map<String, String> failures = new LinkedHashMap<>();
+
+    public BulkResult() {
+    }
+
+    public BulkResult(long total, long bulks, Map<String, String> failures) {
+        this(total, bulks, failures.size(), failures);
+    }
+
+    public BulkResult(long total, long bulks, long failed, Map<String, String> failures) {
+        this.total = total;
+        this.bulks = bulks;
+        this.failed = failed;
+        this.failures = failures;
+    }
+
+    /**
+     * 合并另一个结果
+     *
+     * @param other 另一个结果
+     * @return 合并后的结果，即当前对象
+     */
+    public BulkResult merge(BulkResult other) {
+        this.total += other.total;
+        this.bulks += other.bulks;
+        this.failed += other.failed;
+        this.failures.putAll(other.failures);
+        return this;
+    }
+
+    /**
+     * @return 是否全部写入成功
+     */
+    public boolean isSuccess() {
+        return failed == 0;
+    }
+
+    /**
+     * @return 成功的文档数
+     */
+    public long getSucceeded() {
+        return total - failed;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getBulks() {
+        return bulks;
+    }
+
+    public void setBulks(long bulks) {
+        this.bulks = bulks;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(Map<String, String> failures) {
+        this.failures = failures;
+    }
+}
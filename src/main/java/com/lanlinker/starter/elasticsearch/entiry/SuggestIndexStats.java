@@ -0,0 +1,128 @@
+package com.lanlinker.starter.elasticsearch.entiry;
+
+/**
+ * 本地补全索引的状态
+ *
+ * @author hc
+ */
+public class SuggestIndexStats {
+
+    /**
+     * 补全字段
+     */
+    private String field;
+
+    /**
+     * 索引中的词条数
+     */
+    private long entries;
+
+    /**
+     * 估算的内存占用（字节）
+     */
+    private long memoryBytes;
+
+    /**
+     * 距离上次成功刷新的时间（毫秒），还没有加载完成时为-1
+     */
+    private long refreshLagMillis;
+
+    /**
+     * 上次刷新耗时（毫秒）
+     */
+    private long refreshDurationMillis;
+
+    /**
+     * 由本地索引直接返回的次数
+     */
+    private long localHits;
+
+    /**
+     * 回退到集群查询的次数
+     */
+    private long fallbacks;
+
+    /**
+     * 文档数是否超过max-entries，超过时本地索引不完整，所有查询都回退到集群
+     */
+    private boolean truncated;
+
+    public SuggestIndexStats() {
+    }
+
+    public SuggestIndexStats(String field, long entries, long memoryBytes, long refreshLagMillis,
+                             long refreshDurationMillis, long localHits, long fallbacks, boolean truncated) {
+        this.field = field;
+        this.entries = entries;
+        this.memoryBytes = memoryBytes;
+        this.refreshLagMillis = refreshLagMillis;
+        this.refreshDurationMillis = refreshDurationMillis;
+        this.localHits = localHits;
+        this.fallbacks = fallbacks;
+        this.truncated = truncated;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public void setMemoryBytes(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+
+    public long getRefreshLagMillis() {
+        return refreshLagMillis;
+    }
+
+    public void setRefreshLagMillis(long refreshLagMillis) {
+        this.refreshLagMillis = refreshLagMillis;
+    }
+
+    public long getRefreshDurationMillis() {
+        return refreshDurationMillis;
+    }
+
+    public void setRefreshDurationMillis(long refreshDurationMillis) {
+        this.refreshDurationMillis = refreshDurationMillis;
+    }
+
+    public long getLocalHits() {
+        return localHits;
+    }
+
+    public void setLocalHits(long localHits) {
+        this.localHits = localHits;
+    }
+
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    public void setFallbacks(long fallbacks) {
+        this.fallbacks = fallbacks;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+}
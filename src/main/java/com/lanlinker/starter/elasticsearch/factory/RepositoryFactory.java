@@ -1,14 +1,19 @@
 package com.lanlinker.starter.elasticsearch.factory;
 
+import com.lanlinker.starter.elasticsearch.codec.DecodeScheduler;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.metrics.RepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.node.HedgedReads;
+import com.lanlinker.starter.elasticsearch.repository.ReactiveRepository;
+import com.lanlinker.starter.elasticsearch.repository.ReactiveRepositoryHandler;
 import com.lanlinker.starter.elasticsearch.repository.RepositoryHandler;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 
-import java.lang.reflect.Proxy;
-
-public class RepositoryFactory<T> implements FactoryBean<T> {
+public class RepositoryFactory<T> implements FactoryBean<T>, DisposableBean {
 	// 日志记录
     private static final Logger log = LoggerFactory.getLogger(RepositoryFactory.class);
 
@@ -18,22 +23,61 @@ public class RepositoryFactory<T> implements FactoryBean<T> {
     // elasticsearch客户端
     private RestHighLevelClient client;
 
-    public RepositoryFactory(Class<T> interfaceType, RestHighLevelClient client) {
+    // lanlinker.elasticsearch 开头的配置
+    private ElasticsearchProperties properties;
+
+    // 对冲读，开启时由容器按类型注入
+    private HedgedReads hedgedReads;
+
+    // 响应解码的线程池，开启时由容器按类型注入
+    private DecodeScheduler decodeScheduler;
+
+    // 监控指标，容器中存在时按类型注入
+    private RepositoryMetrics metrics = RepositoryMetrics.NOOP;
+
+    // 代理对象背后的处理器，容器关闭时需要释放它持有的资源
+    private RepositoryHandler<?, ?> handler;
+
+    public RepositoryFactory(Class<T> interfaceType, RestHighLevelClient client, ElasticsearchProperties properties) {
         log.info("RepositoryFactory init ...");
         this.interfaceType = interfaceType;
         this.client = client;
+        this.properties = properties;
+    }
+
+    public void setHedgedReads(HedgedReads hedgedReads) {
+        this.hedgedReads = hedgedReads;
+    }
+
+    public void setDecodeScheduler(DecodeScheduler decodeScheduler) {
+        this.decodeScheduler = decodeScheduler;
+    }
+
+    public void setMetrics(RepositoryMetrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
     public T getObject() throws Exception {
         log.info("RepositoryBean proxy init ...");
-        // 生成动态代理对象并返回
-        return (T) Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class[]{interfaceType},
-                new RepositoryHandler(client, interfaceType));
+        handler = new RepositoryHandler<>(client, interfaceType, properties, hedgedReads, decodeScheduler, metrics);
+        // 响应式的Repository由ReactiveRepositoryHandler实现，其它的由RepositoryHandler实现
+        Object target = ReactiveRepository.class.isAssignableFrom(interfaceType)
+                ? new ReactiveRepositoryHandler<>(handler) : handler;
+        // 生成动态代理对象并返回，调用直接分发到target的方法上
+        return RepositoryInvocationHandler.newProxy(interfaceType, target, handler, metrics);
     }
 
     @Override
     public Class<?> getObjectType() {
         return interfaceType;
     }
+
+    @Override
+    public void destroy() throws Exception {
+        if (handler != null) {
+            // 把缓冲中尚未发送的数据刷出去
+            handler.close();
+        }
+    }
 }
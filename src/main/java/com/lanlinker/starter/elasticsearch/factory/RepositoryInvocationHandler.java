@@ -0,0 +1,212 @@
+package com.lanlinker.starter.elasticsearch.factory;
+
+import com.lanlinker.starter.elasticsearch.metrics.RepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.repository.RepositoryHandler;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Repository代理对象的调用处理器。<br/>
+ * 创建代理时为接口的每个方法准备好绑定了目标对象的{@link MethodHandle}，调用时直接查表分发，
+ * 不再经过{@link Method#invoke}；接口的default方法调用接口自身的实现，目标对象没有实现的方法按方法名编译为派生查询，
+ * Object的方法按代理对象的身份处理。开启监控时每次调用都记录耗时，返回Mono或Flux的方法从订阅到结束计时
+ *
+ * @author hc
+ */
+class RepositoryInvocationHandler implements InvocationHandler {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * 统一后的调用类型：(Object[])Object
+     */
+    private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Function.apply，用来调用编译好的派生查询
+     */
+    private static final MethodHandle APPLY;
+
+    static {
+        try {
+            APPLY = LOOKUP.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?> interfaceType;
+
+    /**
+     * 方法对应的调用句柄
+     */
+    private final Map<Method, MethodHandle> handles = new HashMap<>();
+
+    private final RepositoryMetrics metrics;
+
+    /**
+     * 指标的标签
+     */
+    private final String indexName;
+
+    private RepositoryInvocationHandler(Class<?> interfaceType, RepositoryMetrics metrics, String indexName) {
+        this.interfaceType = interfaceType;
+        this.metrics = metrics;
+        this.indexName = indexName;
+    }
+
+    /**
+     * 创建代理对象
+     *
+     * @param interfaceType 被代理的接口
+     * @param target        实现接口中方法的对象
+     * @param queries       负责编译派生查询的处理器
+     * @param metrics       监控指标
+     * @return 代理对象
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T newProxy(Class<T> interfaceType, Object target, RepositoryHandler<?, ?> queries,
+                          RepositoryMetrics metrics) {
+        RepositoryInvocationHandler handler = new RepositoryInvocationHandler(interfaceType, metrics, queries.getIndexName());
+        T proxy = (T) Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[]{interfaceType}, handler);
+        try {
+            for (Method method : interfaceType.getMethods()) {
+                MethodHandle handle;
+                if (method.isDefault()) {
+                    // default方法绑定到代理对象上，其中再调用的接口方法仍然走代理
+                    handle = spread(defaultMethodHandle(method).bindTo(proxy), method.getParameterCount());
+                } else {
+                    Method implementation = implementation(method, target);
+                    handle = implementation != null
+                            ? spread(LOOKUP.unreflect(implementation).bindTo(target), method.getParameterCount())
+                            // 在这里一次性解析方法名，调用时只绑定参数
+                            : APPLY.bindTo(queries.derivedQuery(method)).asType(SPREAD_TYPE);
+                }
+                handler.handles.put(method, handle);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("创建" + interfaceType.getName() + "的代理对象失败", e);
+        }
+        return proxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodHandle handle = handles.get(method);
+        if (handle != null) {
+            if (metrics == RepositoryMetrics.NOOP) {
+                return (Object) handle.invokeExact(args == null ? NO_ARGS : args);
+            }
+            return timed(method.getName(), handle, args == null ? NO_ARGS : args);
+        }
+        // object 方法，按代理对象的身份处理
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return interfaceType.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+
+    /**
+     * 调用并记录耗时
+     */
+    private Object timed(String name, MethodHandle handle, Object[] args) throws Throwable {
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = (Object) handle.invokeExact(args);
+        } catch (Throwable e) {
+            record(name, start, RepositoryMetrics.OUTCOME_ERROR);
+            throw e;
+        }
+        // 异步的结果在每次订阅时重新计时
+        if (result instanceof Mono) {
+            Mono<?> mono = (Mono<?>) result;
+            return Mono.defer(() -> {
+                long subscribed = System.nanoTime();
+                return mono.doFinally(signal -> record(name, subscribed, outcome(signal)));
+            });
+        }
+        if (result instanceof Flux) {
+            Flux<?> flux = (Flux<?>) result;
+            return Flux.defer(() -> {
+                long subscribed = System.nanoTime();
+                return flux.doFinally(signal -> record(name, subscribed, outcome(signal)));
+            });
+        }
+        record(name, start, RepositoryMetrics.OUTCOME_SUCCESS);
+        return result;
+    }
+
+    private void record(String name, long start, String outcome) {
+        metrics.recordCall(interfaceType.getSimpleName(), indexName, name, System.nanoTime() - start, outcome);
+    }
+
+    private static String outcome(SignalType signal) {
+        switch (signal) {
+            case ON_ERROR:
+                return RepositoryMetrics.OUTCOME_ERROR;
+            case CANCEL:
+                return RepositoryMetrics.OUTCOME_CANCELLED;
+            default:
+                return RepositoryMetrics.OUTCOME_SUCCESS;
+        }
+    }
+
+    /**
+     * 目标对象上的同名方法，没有实现时返回null
+     */
+    private static Method implementation(Method method, Object target) {
+        try {
+            return target.getClass().getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 找到default方法在接口中的实现
+     */
+    private static MethodHandle defaultMethodHandle(Method method) throws ReflectiveOperationException {
+        Class<?> declaringClass = method.getDeclaringClass();
+        MethodHandles.Lookup lookup;
+        try {
+            // Java 9 及以上
+            Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaringClass, LOOKUP);
+        } catch (NoSuchMethodException e) {
+            // Java 8
+            Constructor<MethodHandles.Lookup> constructor =
+                    MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+            constructor.setAccessible(true);
+            lookup = constructor.newInstance(declaringClass, MethodHandles.Lookup.PRIVATE);
+        }
+        return lookup.unreflectSpecial(method, declaringClass);
+    }
+
+    /**
+     * 把句柄转成 (Object[])Object 的形式，调用时可以用invokeExact
+     */
+    private static MethodHandle spread(MethodHandle handle, int parameterCount) {
+        return handle.asSpreader(Object[].class, parameterCount).asType(SPREAD_TYPE);
+    }
+}
@@ -0,0 +1,65 @@
+package com.lanlinker.starter.elasticsearch.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * 实体类的元信息，每个实体类只解析一次，之后的读写都直接使用解析好的访问器。<br/>
+ * 使用了 elasticsearch-spring-boot-starter-processor 注解处理器时，元信息在编译期生成，
+ * 运行时不再需要反射；否则在运行时通过反射解析，参见{@link EntityMetadataRegistry}
+ *
+ * @author hc
+ */
+public interface EntityMetadata<T> {
+
+    /**
+     * @return 实体类的字节码
+     */
+    Class<T> getEntityClass();
+
+    /**
+     * @return 索引库名称，取自{@code @Index}注解，没有注解时为类名称首字母小写
+     */
+    String getIndexName();
+
+    /**
+     * 读取标记了{@code @Id}注解的字段的值
+     *
+     * @param t 实体类
+     * @return id的字符串形式，id为null时返回null
+     */
+    String getId(T t);
+
+    /**
+     * 读取标记了{@code @Routing}注解的字段的值
+     *
+     * @param t 实体类
+     * @return routing的字符串形式，没有路由字段或值为null时返回null
+     */
+    String getRouting(T t);
+
+    /**
+     * 把字符串值写入实体类的属性，用于注入高亮结果。<br/>
+     * 支持 author.name 这样的嵌套路径，路径中间的对象为null或属性不是字符串类型时忽略
+     *
+     * @param t     实体类
+     * @param path  属性路径
+     * @param value 要写入的值
+     */
+    void setString(T t, String path, String value);
+
+    /**
+     * @return 是否有编译期生成的序列化代码，没有时由Jackson完成序列化
+     */
+    boolean hasSerializer();
+
+    /**
+     * 直接用{@link JsonGenerator}写出实体类，只有{@link #hasSerializer()}为true时才能调用
+     *
+     * @param t         实体类
+     * @param generator JSON或SMILE的生成器
+     * @throws IOException 写出失败
+     */
+    void serialize(T t, JsonGenerator generator) throws IOException;
+}
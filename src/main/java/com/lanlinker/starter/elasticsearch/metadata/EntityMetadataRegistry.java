@@ -0,0 +1,50 @@
+package com.lanlinker.starter.elasticsearch.metadata;
+
+/**
+ * 实体类元信息的注册表，每个实体类的元信息只创建一次。<br/>
+ * 优先使用注解处理器生成的 {实体类名}_Metadata 类，嵌套类的 $ 替换为 _，没有时通过反射解析
+ *
+ * @author hc
+ */
+public final class EntityMetadataRegistry {
+
+    /**
+     * 生成类的名称后缀
+     */
+    public static final String SUFFIX = "_Metadata";
+
+    private static final ClassValue<EntityMetadata<?>> REGISTRY = new ClassValue<EntityMetadata<?>>() {
+        @Override
+        protected EntityMetadata<?> computeValue(Class<?> type) {
+            EntityMetadata<?> generated = loadGenerated(type);
+            return generated != null ? generated : new ReflectiveEntityMetadata<>(type);
+        }
+    };
+
+    private EntityMetadataRegistry() {
+    }
+
+    /**
+     * 获取实体类的元信息
+     *
+     * @param clazz 实体类的字节码
+     * @return 实体类的元信息
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMetadata<T> get(Class<T> clazz) {
+        return (EntityMetadata<T>) REGISTRY.get(clazz);
+    }
+
+    private static EntityMetadata<?> loadGenerated(Class<?> type) {
+        String name = type.getName().replace('$', '_') + SUFFIX;
+        try {
+            Class<?> generated = Class.forName(name, true, type.getClassLoader());
+            return (EntityMetadata<?>) generated.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            // 没有使用注解处理器
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("实例化" + name + "失败", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.lanlinker.starter.elasticsearch.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * 编译期生成的实体类元信息的基类，由 elasticsearch-spring-boot-starter-processor 生成子类。<br/>
+ * 生成的代码直接处理实体类自身的字符串属性，只有嵌套路径才在第一次用到时通过反射解析
+ *
+ * @author hc
+ */
+public abstract class GeneratedEntityMetadata<T> implements EntityMetadata<T> {
+
+    private final Class<T> clazz;
+
+    /**
+     * 处理嵌套路径用的反射元信息，用到时才创建
+     */
+    private volatile EntityMetadata<T> nested;
+
+    protected GeneratedEntityMetadata(Class<T> clazz) {
+        this.clazz = clazz;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return clazz;
+    }
+
+    @Override
+    public void setString(T t, String path, String value) {
+        if (!setDirectString(t, path, value)) {
+            nested().setString(t, path, value);
+        }
+    }
+
+    /**
+     * 写入实体类自身的字符串属性
+     *
+     * @param t     实体类
+     * @param name  属性名称
+     * @param value 要写入的值
+     * @return 是否写入，属性不存在时返回false
+     */
+    protected abstract boolean setDirectString(T t, String name, String value);
+
+    /**
+     * 没有路由字段时不生成该方法
+     */
+    @Override
+    public String getRouting(T t) {
+        return null;
+    }
+
+    @Override
+    public boolean hasSerializer() {
+        return false;
+    }
+
+    @Override
+    public void serialize(T t, JsonGenerator generator) throws IOException {
+        throw new UnsupportedOperationException(clazz.getName() + "没有生成序列化代码");
+    }
+
+    private EntityMetadata<T> nested() {
+        EntityMetadata<T> metadata = nested;
+        if (metadata == null) {
+            metadata = new ReflectiveEntityMetadata<>(clazz);
+            nested = metadata;
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,280 @@
+package com.lanlinker.starter.elasticsearch.metadata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.annotaions.Routing;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 通过反射解析的实体类元信息。<br/>
+ * 索引库名称、id字段和路由字段在创建时解析，属性的getter/setter在第一次用到时解析为{@link MethodHandle}并缓存，之后的调用不再做内省和类型转换
+ *
+ * @author hc
+ */
+class ReflectiveEntityMetadata<T> implements EntityMetadata<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * 统一后的getter类型：(Object)Object
+     */
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * 统一后的setter类型：(Object, String)void
+     */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, String.class);
+
+    /**
+     * 无法写入的路径，也缓存起来，避免重复解析
+     */
+    private static final PathSetter NOT_WRITABLE = new PathSetter(new MethodHandle[0], null);
+
+    private final Class<T> clazz;
+
+    /**
+     * 索引库名称
+     */
+    private final String indexName;
+
+    /**
+     * id字段的getter
+     */
+    private final MethodHandle idGetter;
+
+    /**
+     * 路由字段的getter，没有路由字段时为null
+     */
+    private final MethodHandle routingGetter;
+
+    /**
+     * 属性路径对应的setter
+     */
+    private final ConcurrentMap<String, PathSetter> setters = new ConcurrentHashMap<>();
+
+    ReflectiveEntityMetadata(Class<T> clazz) {
+        this.clazz = clazz;
+        // 利用反射获取注解
+        if (clazz.isAnnotationPresent(Index.class)) {
+            // 获取@Index注解
+            Index indices = clazz.getAnnotation(Index.class);
+            // 获取索引库及类型名称
+            indexName = indices.value();
+        } else {
+            // 没有注解，我们用类名称首字母小写，作为索引库名称
+            String simpleName = clazz.getSimpleName();
+            indexName = simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
+        }
+
+        // 获取带有@Id注解的字段：
+        Field idField = null;
+        Field routingField = null;
+        // 获取所有字段
+        for (Field field : clazz.getDeclaredFields()) {
+            // 判断是否包含@Id注解
+            if (field.isAnnotationPresent(Id.class)) {
+                idField = field;
+            }
+            if (field.isAnnotationPresent(Routing.class)) {
+                routingField = field;
+            }
+        }
+        // 没有发现包含@Id的字段，抛出异常
+        if (idField == null) {
+            // 没有找到id字段，则抛出异常
+            throw new RuntimeException("实体类中必须有一个字段标记@IndexID注解。");
+        }
+        try {
+            idField.setAccessible(true);
+            this.idGetter = LOOKUP.unreflectGetter(idField).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("实体类中没有id字段或者id字段没有get方法", e);
+        }
+        if (routingField == null) {
+            this.routingGetter = null;
+        } else {
+            try {
+                routingField.setAccessible(true);
+                this.routingGetter = LOOKUP.unreflectGetter(routingField).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("无法读取路由字段" + routingField.getName(), e);
+            }
+        }
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return clazz;
+    }
+
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public String getId(T t) {
+        try {
+            Object value = (Object) idGetter.invokeExact((Object) t);
+            return value == null ? null : value.toString();
+        } catch (Throwable e) {
+            throw new RuntimeException("实体类中没有id字段或者id字段没有get方法", e);
+        }
+    }
+
+    @Override
+    public String getRouting(T t) {
+        if (routingGetter == null) {
+            return null;
+        }
+        try {
+            Object value = (Object) routingGetter.invokeExact((Object) t);
+            return value == null ? null : value.toString();
+        } catch (Throwable e) {
+            throw new RuntimeException("无法读取路由字段", e);
+        }
+    }
+
+    @Override
+    public boolean hasSerializer() {
+        return false;
+    }
+
+    @Override
+    public void serialize(T t, JsonGenerator generator) {
+        throw new UnsupportedOperationException(clazz.getName() + "没有生成序列化代码");
+    }
+
+    @Override
+    public void setString(T t, String path, String value) {
+        PathSetter setter = setters.get(path);
+        if (setter == null) {
+            setter = setters.computeIfAbsent(path, this::resolve);
+        }
+        setter.set(t, value);
+    }
+
+    /**
+     * 解析属性路径，路径中除最后一段以外都是getter，最后一段是setter
+     */
+    private PathSetter resolve(String path) {
+        String[] names = path.split("\\.");
+        MethodHandle[] getters = new MethodHandle[names.length - 1];
+        Class<?> type = clazz;
+        try {
+            for (int i = 0; i < getters.length; i++) {
+                Property property = property(type, names[i]);
+                if (property == null || property.getter == null) {
+                    return NOT_WRITABLE;
+                }
+                getters[i] = property.getter.asType(GETTER_TYPE);
+                type = property.type;
+            }
+            Property property = property(type, names[names.length - 1]);
+            // 只有字符串类型的属性才能注入
+            if (property == null || property.setter == null || !property.type.isAssignableFrom(String.class)) {
+                return NOT_WRITABLE;
+            }
+            return new PathSetter(getters, property.setter.asType(SETTER_TYPE));
+        } catch (IllegalAccessException | IntrospectionException e) {
+            throw new RuntimeException("解析实体类" + clazz.getName() + "的属性" + path + "失败", e);
+        }
+    }
+
+    /**
+     * 查找属性的访问器，优先使用public的getter/setter，没有的话直接访问字段
+     */
+    private static Property property(Class<?> type, String name) throws IntrospectionException, IllegalAccessException {
+        BeanInfo beanInfo = Introspector.getBeanInfo(type);
+        for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+            if (descriptor.getName().equals(name)) {
+                Method read = descriptor.getReadMethod();
+                Method write = descriptor.getWriteMethod();
+                if (read != null && write != null) {
+                    // 实体类本身可能不是public的
+                    read.setAccessible(true);
+                    write.setAccessible(true);
+                    return new Property(descriptor.getPropertyType(), LOOKUP.unreflect(read), LOOKUP.unreflect(write));
+                }
+            }
+        }
+        Field field = findField(type, name);
+        if (field == null) {
+            return null;
+        }
+        field.setAccessible(true);
+        return new Property(field.getType(), LOOKUP.unreflectGetter(field), LOOKUP.unreflectSetter(field));
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException ignored) {
+                // 继续在父类中查找
+            }
+        }
+        return null;
+    }
+
+    private static final class Property {
+
+        private final Class<?> type;
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        private Property(Class<?> type, MethodHandle getter, MethodHandle setter) {
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * 解析好的属性路径
+     */
+    private static final class PathSetter {
+
+        private final MethodHandle[] getters;
+
+        private final MethodHandle setter;
+
+        private PathSetter(MethodHandle[] getters, MethodHandle setter) {
+            this.getters = getters;
+            this.setter = setter;
+        }
+
+        void set(Object target, String value) {
+            if (setter == null) {
+                return;
+            }
+            try {
+                for (MethodHandle getter : getters) {
+                    target = (Object) getter.invokeExact(target);
+                    if (target == null) {
+                        return;
+                    }
+                }
+                setter.invokeExact(target, value);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
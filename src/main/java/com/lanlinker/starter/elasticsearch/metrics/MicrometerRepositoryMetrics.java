@@ -0,0 +1,196 @@
+package com.lanlinker.starter.elasticsearch.metrics;
+
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 基于Micrometer的监控指标。<br/>
+ * 指标按repository、index、method打标签，同一组标签的指标只注册一次，之后直接从本地缓存中取出
+ *
+ * @author hc
+ */
+public class MicrometerRepositoryMetrics implements RepositoryMetrics {
+
+    private static final String PREFIX = "lanlinker.elasticsearch.";
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<String, Timer> callTimers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, BulkMeters> bulkMeters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, SearchMeters> searchMeters = new ConcurrentHashMap<>();
+
+    /**
+     * 本地补全索引的状态，Micrometer只弱引用函数型指标的对象，需要在这里持有
+     */
+    private final ConcurrentMap<String, Supplier<SuggestIndexStats>> suggestStats = new ConcurrentHashMap<>();
+
+    public MicrometerRepositoryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordCall(String repository, String index, String method, long nanos, String outcome) {
+        callTimers.computeIfAbsent(repository + '/' + method + '/' + outcome, key -> Timer.builder(PREFIX + "repository")
+                .description("Repository方法的耗时")
+                .tags(tags(repository, index, method).and("outcome", outcome))
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordBulk(String repository, String index, int items, long bytes, int failedItems) {
+        BulkMeters meters = bulkMeters.computeIfAbsent(repository, key -> new BulkMeters(repository, index));
+        meters.items.record(items);
+        meters.bytes.record(bytes);
+        if (failedItems > 0) {
+            meters.failures.increment(failedItems);
+        }
+    }
+
+    @Override
+    public void registerBulkGauges(String repository, String index, IntSupplier actions, IntSupplier concurrency) {
+        Tags tags = Tags.of("repository", repository, "index", index);
+        Gauge.builder(PREFIX + "bulk.batch.size", actions::getAsInt)
+                .description("流式批量写入当前每个bulk请求的文档数")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(PREFIX + "bulk.concurrency", concurrency::getAsInt)
+                .description("流式批量写入当前同时在途的bulk请求数")
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    public void registerDecodeGauges(IntSupplier queued, IntSupplier active) {
+        // 同名同标签的Gauge已经存在时Micrometer直接返回已有的
+        Gauge.builder(PREFIX + "decode.queued", queued::getAsInt)
+                .description("等待解码的任务数")
+                .register(registry);
+        Gauge.builder(PREFIX + "decode.active", active::getAsInt)
+                .description("正在解码的任务数")
+                .register(registry);
+    }
+
+    @Override
+    public void registerSuggestMeters(String repository, String index, String field,
+                                      Supplier<SuggestIndexStats> stats) {
+        if (suggestStats.putIfAbsent(repository + '/' + field, stats) != null) {
+            return;
+        }
+        Tags tags = Tags.of("repository", repository, "index", index, "field", field);
+        FunctionCounter.builder(PREFIX + "suggest.local.hits", stats, s -> s.get().getLocalHits())
+                .description("由本地补全索引直接返回的次数")
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + "suggest.local.fallbacks", stats, s -> s.get().getFallbacks())
+                .description("本地补全索引不可用或没有结果，回退到集群查询的次数")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(PREFIX + "suggest.local.entries", stats, s -> s.get().getEntries())
+                .description("本地补全索引中的词条数")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(PREFIX + "suggest.local.truncated", stats, s -> s.get().isTruncated() ? 1 : 0)
+                .description("文档数超过max-entries时为1，此时所有查询都回退到集群")
+                .tags(tags)
+                .register(registry);
+        // 还没有加载完成时没有值
+        TimeGauge.builder(PREFIX + "suggest.local.refresh.lag", stats, TimeUnit.MILLISECONDS, s -> {
+            long lag = s.get().getRefreshLagMillis();
+            return lag < 0 ? Double.NaN : lag;
+        })
+                .description("距离本地补全索引上次成功刷新的时间")
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    public void recordSearch(String repository, String index, String method, long tookMillis, long clientNanos,
+                             int failedShards) {
+        SearchMeters meters = searchMeters.computeIfAbsent(repository + '/' + method,
+                key -> new SearchMeters(tags(repository, index, method)));
+        long tookNanos = TimeUnit.MILLISECONDS.toNanos(tookMillis);
+        meters.took.record(tookNanos, TimeUnit.NANOSECONDS);
+        meters.client.record(clientNanos, TimeUnit.NANOSECONDS);
+        // took的精度是毫秒，差值可能略小于0
+        meters.overhead.record(Math.max(0, clientNanos - tookNanos), TimeUnit.NANOSECONDS);
+        if (failedShards > 0) {
+            meters.shardFailures.increment(failedShards);
+        }
+    }
+
+    private static Tags tags(String repository, String index, String method) {
+        return Tags.of("repository", repository, "index", index, "method", method);
+    }
+
+    private class BulkMeters {
+
+        private final DistributionSummary items;
+
+        private final DistributionSummary bytes;
+
+        private final Counter failures;
+
+        BulkMeters(String repository, String index) {
+            Tags tags = Tags.of("repository", repository, "index", index);
+            items = DistributionSummary.builder(PREFIX + "bulk.items")
+                    .description("每个bulk请求的文档数")
+                    .tags(tags)
+                    .register(registry);
+            bytes = DistributionSummary.builder(PREFIX + "bulk.bytes")
+                    .description("每个bulk请求的估算字节数")
+                    .baseUnit("bytes")
+                    .tags(tags)
+                    .register(registry);
+            failures = Counter.builder(PREFIX + "bulk.item.failures")
+                    .description("bulk请求中失败的文档数")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+
+    private class SearchMeters {
+
+        private final Timer took;
+
+        private final Timer client;
+
+        private final Timer overhead;
+
+        private final Counter shardFailures;
+
+        SearchMeters(Tags tags) {
+            took = Timer.builder(PREFIX + "search.took")
+                    .description("服务端返回的搜索耗时")
+                    .tags(tags)
+                    .register(registry);
+            client = Timer.builder(PREFIX + "search.latency")
+                    .description("客户端观察到的搜索耗时，包含序列化、网络和排队")
+                    .tags(tags)
+                    .register(registry);
+            overhead = Timer.builder(PREFIX + "search.overhead")
+                    .description("客户端耗时减去服务端耗时")
+                    .tags(tags)
+                    .register(registry);
+            shardFailures = Counter.builder(PREFIX + "search.shard.failures")
+                    .description("搜索中失败的分片数")
+                    .tags(tags)
+                    .register(registry);
+        }
+    }
+}
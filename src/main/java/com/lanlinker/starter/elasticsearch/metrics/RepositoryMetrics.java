@@ -0,0 +1,98 @@
+package com.lanlinker.starter.elasticsearch.metrics;
+
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Repository的监控指标。<br/>
+ * 容器中存在该类型的Bean时由RepositoryFactory按类型注入，否则使用{@link #NOOP}，不产生任何开销。
+ * 存在MeterRegistry时自动配置为{@link MicrometerRepositoryMetrics}
+ *
+ * @author hc
+ */
+public interface RepositoryMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    RepositoryMetrics NOOP = new RepositoryMetrics() {
+    };
+
+    String OUTCOME_SUCCESS = "success";
+
+    String OUTCOME_ERROR = "error";
+
+    String OUTCOME_CANCELLED = "cancelled";
+
+    /**
+     * 记录一次Repository方法的调用，返回Mono或Flux的方法从订阅到结束计时
+     *
+     * @param repository Repository接口的名称
+     * @param index      索引库名称
+     * @param method     方法名
+     * @param nanos      耗时
+     * @param outcome    success、error或cancelled
+     */
+    default void recordCall(String repository, String index, String method, long nanos, String outcome) {
+    }
+
+    /**
+     * 记录一次bulk请求
+     *
+     * @param repository  Repository接口的名称
+     * @param index       索引库名称
+     * @param items       请求中的文档数
+     * @param bytes       请求的估算字节数
+     * @param failedItems 失败的文档数，整个请求失败时等于items
+     */
+    default void recordBulk(String repository, String index, int items, long bytes, int failedItems) {
+    }
+
+    /**
+     * 注册流式批量写入的当前文档数和并发数，二者随集群的反馈自动调整，每个Repository创建时调用一次
+     *
+     * @param repository  Repository接口的名称
+     * @param index       索引库名称
+     * @param actions     每个bulk请求当前的文档数
+     * @param concurrency 当前同时在途的bulk请求数
+     */
+    default void registerBulkGauges(String repository, String index, IntSupplier actions, IntSupplier concurrency) {
+    }
+
+    /**
+     * 注册响应解码线程池的排队任务数和执行中的任务数，线程池由所有Repository共用，重复注册只保留第一次
+     *
+     * @param queued 已提交还没有开始执行的解码任务数
+     * @param active 正在执行的解码任务数
+     */
+    default void registerDecodeGauges(IntSupplier queued, IntSupplier active) {
+    }
+
+    /**
+     * 注册本地补全索引的命中数、回退到集群的次数、词条数和距离上次刷新的时间，每个补全字段第一次查询时调用一次
+     *
+     * @param repository Repository接口的名称
+     * @param index      索引库名称
+     * @param field      补全字段
+     * @param stats      本地补全索引的当前状态
+     */
+    default void registerSuggestMeters(String repository, String index, String field,
+                                       Supplier<SuggestIndexStats> stats) {
+    }
+
+    /**
+     * 记录一次搜索请求，服务端耗时和客户端耗时的差值就是序列化、网络和排队的时间
+     *
+     * @param repository   Repository接口的名称
+     * @param index        索引库名称
+     * @param method       方法名
+     * @param tookMillis   响应中的took
+     * @param clientNanos  客户端从发送请求到解析完响应的耗时
+     * @param failedShards 失败的分片数
+     */
+    default void recordSearch(String repository, String index, String method, long tookMillis, long clientNanos,
+                              int failedShards) {
+    }
+}
@@ -0,0 +1,84 @@
+package com.lanlinker.starter.elasticsearch.node;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 对冲读请求。<br/>
+ * 第一次请求超过最近延迟的指定分位数还没有返回时，向另一个节点再发一次相同的请求，
+ * 先返回的结果胜出，另一个请求被取消。需要配合{@link LatencyAwareNodeSelector}使用。
+ *
+ * @author hc
+ */
+public class HedgedReads {
+
+    private final NodeLatencyTracker tracker;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long initialDelayNanos;
+
+    /**
+     * @param tracker      节点延迟统计
+     * @param percentile   触发对冲的延迟分位数，例如0.95
+     * @param minDelay     对冲等待的最短时间
+     * @param initialDelay 样本不足时的等待时间
+     */
+    public HedgedReads(NodeLatencyTracker tracker, double percentile, Duration minDelay, Duration initialDelay) {
+        this.tracker = tracker;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.initialDelayNanos = initialDelay.toNanos();
+    }
+
+    /**
+     * 发起一次可对冲的读请求
+     *
+     * @param call 发起异步调用，返回可取消的句柄；可能被调用两次
+     * @return 先返回的结果
+     */
+    public <R> Mono<R> read(Function<ActionListener<R>, Cancellable> call) {
+        return Mono.defer(() -> {
+            AtomicReference<HttpHost> firstHost = new AtomicReference<>();
+            Mono<R> first = attempt(call, null, firstHost);
+            Mono<R> hedge = Mono.delay(Duration.ofNanos(delayNanos()))
+                    .then(Mono.defer(() -> attempt(call, firstHost.get(), new AtomicReference<>())));
+            // 先发出信号的一方胜出，另一方被取消
+            return Mono.first(first, hedge);
+        });
+    }
+
+    /**
+     * 对冲前等待的时间
+     */
+    long delayNanos() {
+        long observed = tracker.percentileNanos(percentile);
+        return Math.max(minDelayNanos, observed < 0 ? initialDelayNanos : observed);
+    }
+
+    private <R> Mono<R> attempt(Function<ActionListener<R>, Cancellable> call, HttpHost excluded,
+                                AtomicReference<HttpHost> selected) {
+        return Mono.create(sink -> {
+            long start = System.nanoTime();
+            Cancellable cancellable = LatencyAwareNodeSelector.excluding(excluded,
+                    () -> call.apply(ActionListener.wrap(sink::success, sink::error)));
+            HttpHost host = LatencyAwareNodeSelector.lastSelected();
+            selected.set(host);
+            sink.onCancel(() -> {
+                cancellable.cancel();
+                // 落败的请求没有响应，把已经等待的时间记到该节点上
+                if (host != null) {
+                    tracker.recordCancelled(host, System.nanoTime() - start);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,109 @@
+package com.lanlinker.starter.elasticsearch.node;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 按延迟选择节点。<br/>
+ * 每次请求只保留一个节点：随机取两个候选节点，选平均延迟较低的一个（power of two choices），
+ * 既能避开变慢的节点，又不会让所有请求都挤到同一个节点上。没有样本或样本过期的节点延迟视为0，
+ * 保证被避开的节点过一段时间后会被重新探测。<br/>
+ * RestClient在调用线程上同步执行{@link #select(Iterable)}，因此可以通过ThreadLocal
+ * 排除指定节点（对冲请求不发往第一次请求的节点），以及取得本次选中的节点。
+ *
+ * @author hc
+ */
+public class LatencyAwareNodeSelector implements NodeSelector {
+
+    private static final ThreadLocal<HttpHost> EXCLUDED = new ThreadLocal<>();
+
+    private static final ThreadLocal<HttpHost> SELECTED = new ThreadLocal<>();
+
+    private final NodeLatencyTracker tracker;
+
+    /**
+     * 为false时在候选节点中随机选择，只用于支持对冲请求
+     */
+    private final boolean latencyAware;
+
+    private final long probeIntervalNanos;
+
+    public LatencyAwareNodeSelector(NodeLatencyTracker tracker, boolean latencyAware, long probeIntervalNanos) {
+        this.tracker = tracker;
+        this.latencyAware = latencyAware;
+        this.probeIntervalNanos = probeIntervalNanos;
+    }
+
+    @Override
+    public void select(Iterable<Node> nodes) {
+        HttpHost excluded = EXCLUDED.get();
+        List<Node> candidates = new ArrayList<>();
+        for (Node node : nodes) {
+            if (!node.getHost().equals(excluded)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // 只有被排除的节点可用时，仍然发往该节点
+            nodes.forEach(candidates::add);
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        Node chosen = choose(candidates);
+        for (Iterator<Node> it = nodes.iterator(); it.hasNext(); ) {
+            if (it.next() != chosen) {
+                it.remove();
+            }
+        }
+        SELECTED.set(chosen.getHost());
+    }
+
+    private Node choose(List<Node> candidates) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = candidates.size();
+        int i = random.nextInt(size);
+        if (size == 1 || !latencyAware) {
+            return candidates.get(i);
+        }
+        // 取另一个不同的下标
+        int j = (i + 1 + random.nextInt(size - 1)) % size;
+        return latency(candidates.get(j)) < latency(candidates.get(i)) ? candidates.get(j) : candidates.get(i);
+    }
+
+    private long latency(Node node) {
+        return Math.max(0, tracker.latencyNanos(node.getHost(), probeIntervalNanos));
+    }
+
+    /**
+     * 在排除指定节点的情况下发起请求
+     *
+     * @param excluded 要排除的节点，为null时不排除
+     * @param call     发起请求
+     */
+    static <T> T excluding(HttpHost excluded, Supplier<T> call) {
+        EXCLUDED.set(excluded);
+        SELECTED.remove();
+        try {
+            return call.get();
+        } finally {
+            EXCLUDED.remove();
+        }
+    }
+
+    /**
+     * 当前线程上一次请求选中的节点
+     */
+    static HttpHost lastSelected() {
+        HttpHost host = SELECTED.get();
+        SELECTED.remove();
+        return host;
+    }
+}
@@ -0,0 +1,168 @@
+package com.lanlinker.starter.elasticsearch.node;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录每个节点的响应延迟。<br/>
+ * 通过HttpClient的拦截器在请求发出和收到响应头时计时，按节点维护指数加权移动平均（EWMA），
+ * 同时保留最近一段时间所有请求的延迟样本，用来计算对冲请求的触发阈值。
+ *
+ * @author hc
+ */
+public class NodeLatencyTracker {
+
+    private static final String START_ATTRIBUTE = NodeLatencyTracker.class.getName() + ".start";
+
+    /**
+     * 保留的样本数，必须是2的幂
+     */
+    private static final int SAMPLES = 1024;
+
+    /**
+     * 样本数少于该值时不计算分位数
+     */
+    private static final int MIN_SAMPLES = 32;
+
+    /**
+     * 分位数的缓存时间
+     */
+    private static final long PERCENTILE_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final double alpha;
+
+    private final ConcurrentMap<HttpHost, Ewma> nodes = new ConcurrentHashMap<>();
+
+    private final long[] samples = new long[SAMPLES];
+
+    private final AtomicLong cursor = new AtomicLong();
+
+    private volatile CachedPercentile cachedPercentile;
+
+    /**
+     * @param alpha 新样本的权重，越大对延迟变化越敏感
+     */
+    public NodeLatencyTracker(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * 在HttpClient上安装计时用的拦截器
+     */
+    public void install(HttpAsyncClientBuilder builder) {
+        builder.addInterceptorFirst((HttpRequestInterceptor) (request, context) ->
+                context.setAttribute(START_ATTRIBUTE, System.nanoTime()));
+        builder.addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+            Object start = context.getAttribute(START_ATTRIBUTE);
+            HttpHost host = HttpClientContext.adapt(context).getTargetHost();
+            if (start instanceof Long && host != null) {
+                record(host, System.nanoTime() - (Long) start);
+            }
+        });
+    }
+
+    /**
+     * 记录一次请求的延迟
+     */
+    public void record(HttpHost host, long nanos) {
+        nodes.computeIfAbsent(host, h -> new Ewma()).update(nanos, alpha);
+        samples[(int) (cursor.getAndIncrement() & (SAMPLES - 1))] = nanos;
+    }
+
+    /**
+     * 记录一次被取消的请求，已经等待的时间是延迟的下限，只计入节点的平均值，不计入分位数样本。
+     * 对冲中落败的请求会被取消，收不到响应，不这样记录的话慢节点永远不会有样本
+     */
+    public void recordCancelled(HttpHost host, long elapsedNanos) {
+        nodes.computeIfAbsent(host, h -> new Ewma()).update(elapsedNanos, alpha);
+    }
+
+    /**
+     * 节点的平均延迟（纳秒）
+     *
+     * @param host         节点
+     * @param maxAgeNanos  超过该时间没有新样本时视为未知
+     * @return 没有样本或样本过期时返回-1
+     */
+    public long latencyNanos(HttpHost host, long maxAgeNanos) {
+        Ewma ewma = nodes.get(host);
+        return ewma == null ? -1 : ewma.get(maxAgeNanos);
+    }
+
+    /**
+     * 最近所有请求延迟的分位数（纳秒），结果会缓存一小段时间
+     *
+     * @param percentile 0到1之间
+     * @return 样本不足时返回-1
+     */
+    public long percentileNanos(double percentile) {
+        long now = System.nanoTime();
+        CachedPercentile cached = cachedPercentile;
+        if (cached != null && cached.percentile == percentile && now - cached.computedAt < PERCENTILE_TTL_NANOS) {
+            return cached.value;
+        }
+        int count = (int) Math.min(cursor.get(), SAMPLES);
+        long value = -1;
+        if (count >= MIN_SAMPLES) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            value = sorted[Math.min(count - 1, (int) (percentile * count))];
+        }
+        cachedPercentile = new CachedPercentile(percentile, value, now);
+        return value;
+    }
+
+    /**
+     * 每个节点当前的平均延迟（毫秒）
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        nodes.forEach((host, ewma) -> result.put(host.toURI(), ewma.get(Long.MAX_VALUE) / 1e6));
+        return result;
+    }
+
+    private static class Ewma {
+
+        private double value = -1;
+
+        private long updatedAt;
+
+        synchronized void update(long nanos, double alpha) {
+            value = value < 0 ? nanos : value + alpha * (nanos - value);
+            updatedAt = System.nanoTime();
+        }
+
+        synchronized long get(long maxAgeNanos) {
+            if (value < 0 || System.nanoTime() - updatedAt > maxAgeNanos) {
+                return -1;
+            }
+            return (long) value;
+        }
+    }
+
+    private static class CachedPercentile {
+
+        private final double percentile;
+
+        private final long value;
+
+        private final long computedAt;
+
+        CachedPercentile(double percentile, long value, long computedAt) {
+            this.percentile = percentile;
+            this.value = value;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.lanlinker.starter.elasticsearch.partition;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.query.DerivedQuery;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilder;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+/**
+ * 一个实体类对应多个索引库时，决定写入哪个索引库、查询哪些索引库。<br/>
+ * 由{@code @Index}注解开启：设置了partitionField时按时间分区，见{@link TimeIndexPartitioner}；
+ * 设置了rollover时通过写入别名滚动，见{@link RolloverIndexPartitioner}。<br/>
+ * 只有id时文档可能位于任何一个索引库中，按id读取和删除都通过ids查询完成，只能看到已经refresh的文档；
+ * 按实体类删除时能根据实体类确定索引库的（按时间分区），直接删除该索引库中的文档
+ *
+ * @author hc
+ */
+public abstract class IndexPartitioner<T> {
+
+    /**
+     * 查询多个索引库时忽略不存在的索引库，通配符没有匹配时也不报错
+     */
+    public static final IndicesOptions INDICES_OPTIONS = IndicesOptions.lenientExpandOpen();
+
+    /**
+     * 拼接在低级客户端请求路径后的参数，和{@link #INDICES_OPTIONS}一致
+     */
+    public static final String INDICES_OPTIONS_PARAMS = "?ignore_unavailable=true&allow_no_indices=true";
+
+    /**
+     * {@code @Index}中的索引库名称，作为分区索引库的前缀
+     */
+    protected final String baseName;
+
+    protected IndexPartitioner(String baseName) {
+        this.baseName = baseName;
+    }
+
+    /**
+     * 按@Index注解创建
+     *
+     * @param entityClass 实体类
+     * @param indexName   索引库名称
+     * @param config      全局配置
+     * @return 没有开启分区时返回null
+     */
+    public static <T> IndexPartitioner<T> create(Class<T> entityClass, String indexName,
+                                                 ElasticsearchProperties.Partition config) {
+        Index index = entityClass.getAnnotation(Index.class);
+        if (index == null) {
+            return null;
+        }
+        boolean timePartitioned = StringUtils.isNotEmpty(index.partitionField());
+        if (timePartitioned && index.rollover()) {
+            throw new RuntimeException(entityClass.getName() + "的@Index不能同时设置partitionField和rollover");
+        }
+        if (timePartitioned) {
+            return new TimeIndexPartitioner<>(entityClass, indexName, index, config.getMaxPartitions());
+        }
+        if (index.rollover()) {
+            return new RolloverIndexPartitioner<>(indexName, index, config.getRolloverCheckInterval());
+        }
+        return null;
+    }
+
+    /**
+     * 文档要写入的索引库或别名
+     */
+    public abstract String writeIndex(T t);
+
+    /**
+     * 包含所有文档的索引库，用于按id读取和删除
+     */
+    public abstract String[] allIndices();
+
+    /**
+     * 实体类对应的文档所在的索引库，用于按实体类删除
+     *
+     * @return 文档可能位于多个索引库中时返回null
+     */
+    public String documentIndex(T t) {
+        return null;
+    }
+
+    /**
+     * 查询要发往的索引库
+     *
+     * @param query 查询条件，可能为null
+     */
+    public String[] searchIndices(QueryBuilder query) {
+        return allIndices();
+    }
+
+    /**
+     * 派生查询要发往的索引库
+     *
+     * @param query 派生查询
+     * @param args  查询方法的参数
+     */
+    public String[] searchIndices(DerivedQuery query, Object[] args) {
+        return allIndices();
+    }
+
+    /**
+     * 创建索引库，同步方法在此基础上阻塞等待
+     *
+     * @param client 客户端
+     * @param source 索引库的settings和mappings
+     */
+    public abstract Mono<Boolean> createIndex(RestHighLevelClient client, String source);
+
+    /**
+     * 删除所有分区
+     */
+    public abstract Mono<Boolean> deleteIndex(RestHighLevelClient client);
+
+    /**
+     * 每次写入时调用，默认什么都不做
+     */
+    public void afterWrite(RestHighLevelClient client) {
+    }
+
+    /**
+     * 订阅时发起异步调用
+     */
+    protected static <R> Mono<R> call(Consumer<ActionListener<R>> call) {
+        return Mono.create(sink -> call.accept(ActionListener.wrap(sink::success, sink::error)));
+    }
+}
@@ -0,0 +1,113 @@
+package com.lanlinker.starter.elasticsearch.partition;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.rollover.RolloverRequest;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通过写入别名滚动：索引库名称是别名，指向 {索引库名称}-000001、{索引库名称}-000002 ……，
+ * 只有最新的一个是写入索引库，查询通过别名覆盖全部。<br/>
+ * 设置了滚动条件时，写入过程中每隔一段时间发送一次rollover请求，是否滚动由集群根据条件判断；
+ * 没有设置条件时交给ILM等外部机制滚动
+ *
+ * @author hc
+ */
+class RolloverIndexPartitioner<T> extends IndexPartitioner<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(RolloverIndexPartitioner.class);
+
+    private final TimeValue maxAge;
+
+    private final ByteSizeValue maxSize;
+
+    private final long maxDocs;
+
+    private final long checkIntervalNanos;
+
+    /**
+     * 下一次允许检查滚动条件的时间
+     */
+    private final AtomicLong nextCheck = new AtomicLong(System.nanoTime());
+
+    RolloverIndexPartitioner(String baseName, Index index, Duration checkInterval) {
+        super(baseName);
+        this.maxAge = StringUtils.isEmpty(index.rolloverMaxAge())
+                ? null : TimeValue.parseTimeValue(index.rolloverMaxAge(), "rolloverMaxAge");
+        this.maxSize = StringUtils.isEmpty(index.rolloverMaxSize())
+                ? null : ByteSizeValue.parseBytesSizeValue(index.rolloverMaxSize(), "rolloverMaxSize");
+        this.maxDocs = index.rolloverMaxDocs();
+        this.checkIntervalNanos = checkInterval.toNanos();
+    }
+
+    @Override
+    public String writeIndex(T t) {
+        return baseName;
+    }
+
+    @Override
+    public String[] allIndices() {
+        return new String[]{baseName};
+    }
+
+    @Override
+    public Mono<Boolean> createIndex(RestHighLevelClient client, String source) {
+        CreateIndexRequest request = new CreateIndexRequest(baseName + "-000001")
+                .source(source, XContentType.JSON)
+                .alias(new Alias(baseName).writeIndex(true));
+        return IndexPartitioner.<CreateIndexResponse>call(listener ->
+                client.indices().createAsync(request, RequestOptions.DEFAULT, listener))
+                .map(CreateIndexResponse::isAcknowledged);
+    }
+
+    @Override
+    public Mono<Boolean> deleteIndex(RestHighLevelClient client) {
+        return IndexPartitioner.<AcknowledgedResponse>call(listener ->
+                client.indices().deleteAsync(new DeleteIndexRequest(baseName + "-*"), RequestOptions.DEFAULT, listener))
+                .map(AcknowledgedResponse::isAcknowledged);
+    }
+
+    @Override
+    public void afterWrite(RestHighLevelClient client) {
+        if (maxAge == null && maxSize == null && maxDocs <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long next = nextCheck.get();
+        // 同一个间隔内只有一个线程发送请求
+        if (now - next < 0 || !nextCheck.compareAndSet(next, now + checkIntervalNanos)) {
+            return;
+        }
+        RolloverRequest request = new RolloverRequest(baseName, null);
+        if (maxAge != null) {
+            request.addMaxIndexAgeCondition(maxAge);
+        }
+        if (maxSize != null) {
+            request.addMaxIndexSizeCondition(maxSize);
+        }
+        if (maxDocs > 0) {
+            request.addMaxIndexDocsCondition(maxDocs);
+        }
+        client.indices().rolloverAsync(request, RequestOptions.DEFAULT, ActionListener.wrap(response -> {
+            if (response.isRolledOver()) {
+                log.info("{}已滚动：{} -> {}", baseName, response.getOldIndex(), response.getNewIndex());
+            }
+        }, e -> log.warn("{}检查滚动条件失败", baseName, e)));
+    }
+}
@@ -0,0 +1,381 @@
+package com.lanlinker.starter.elasticsearch.partition;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.annotaions.PartitionGranularity;
+import com.lanlinker.starter.elasticsearch.query.DerivedQuery;
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.template.delete.DeleteIndexTemplateRequest;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.PutIndexTemplateRequest;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 按时间分区：文档写入 {索引库名称}-{时间后缀} ，例如 logs-2021.07.09 。<br/>
+ * 创建索引库时创建一个匹配 {索引库名称}-* 的索引模板，分区在第一次写入时由集群自动创建；
+ * 查询条件中有分区字段的上下界时只查询范围内的分区，否则查询全部分区。<br/>
+ * 没有时区的时间和Elasticsearch一样按UTC理解，再按配置的时区计算分区。<br/>
+ * Elasticsearch对lte、gt以及term、match中精度不完整的时间（例如只有日期，或者只到分钟）向上取整到该时间段的末尾，
+ * 裁剪时上界同样取时间段的末尾，下界取时间段的开始，保证不会漏掉分区
+ *
+ * @author hc
+ */
+class TimeIndexPartitioner<T> extends IndexPartitioner<T> {
+
+    private final String field;
+
+    private final PartitionGranularity granularity;
+
+    private final ZoneId zone;
+
+    private final DateTimeFormatter formatter;
+
+    private final int maxPartitions;
+
+    private final String pattern;
+
+    /**
+     * 读取分区字段的值：public的get方法，或者字段本身
+     */
+    private final Accessor accessor;
+
+    TimeIndexPartitioner(Class<T> entityClass, String baseName, Index index, int maxPartitions) {
+        super(baseName);
+        this.field = index.partitionField();
+        this.granularity = index.partitionGranularity();
+        this.zone = ZoneId.of(index.partitionZone());
+        this.formatter = DateTimeFormatter.ofPattern(granularity.getPattern()).withZone(zone);
+        this.maxPartitions = maxPartitions;
+        this.pattern = baseName + "-*";
+        this.accessor = accessor(entityClass, field);
+    }
+
+    @Override
+    public String writeIndex(T t) {
+        Object value = accessor.get(t);
+        Instant instant = toInstant(value, ZoneOffset.UTC);
+        if (instant == null) {
+            throw new RuntimeException("分区字段" + field + "的值无法转换为时间：" + value);
+        }
+        return baseName + "-" + formatter.format(instant);
+    }
+
+    @Override
+    public String[] allIndices() {
+        return new String[]{pattern};
+    }
+
+    /**
+     * 分区字段写入后不再修改时，文档就在写入时的分区中
+     */
+    @Override
+    public String documentIndex(T t) {
+        return writeIndex(t);
+    }
+
+    @Override
+    public String[] searchIndices(QueryBuilder query) {
+        Bounds bounds = new Bounds();
+        collect(query, bounds);
+        return indices(bounds);
+    }
+
+    @Override
+    public String[] searchIndices(DerivedQuery query, Object[] args) {
+        Bounds bounds = new Bounds();
+        query.collectRange(field, args, (lower, upper) ->
+                bounds.intersect(toInstant(lower, ZoneOffset.UTC), toUpperInstant(upper, ZoneOffset.UTC)));
+        return indices(bounds);
+    }
+
+    @Override
+    public Mono<Boolean> createIndex(RestHighLevelClient client, String source) {
+        // 分区由集群自动创建，模板保证它们有相同的settings和mappings
+        PutIndexTemplateRequest request = new PutIndexTemplateRequest(baseName)
+                .source(source, XContentType.JSON)
+                .patterns(Collections.singletonList(pattern));
+        return IndexPartitioner.<AcknowledgedResponse>call(listener ->
+                client.indices().putTemplateAsync(request, RequestOptions.DEFAULT, listener))
+                .map(AcknowledgedResponse::isAcknowledged);
+    }
+
+    @Override
+    public Mono<Boolean> deleteIndex(RestHighLevelClient client) {
+        Mono<Boolean> deleteIndices = IndexPartitioner.<AcknowledgedResponse>call(listener ->
+                client.indices().deleteAsync(new DeleteIndexRequest(pattern), RequestOptions.DEFAULT, listener))
+                .map(AcknowledgedResponse::isAcknowledged);
+        Mono<Boolean> deleteTemplate = IndexPartitioner.<AcknowledgedResponse>call(listener ->
+                client.indices().deleteTemplateAsync(new DeleteIndexTemplateRequest(baseName), RequestOptions.DEFAULT, listener))
+                .map(AcknowledgedResponse::isAcknowledged)
+                // 没有通过createIndex创建模板时也能删除分区
+                .onErrorResume(e -> e instanceof ElasticsearchStatusException
+                        && ((ElasticsearchStatusException) e).status() == RestStatus.NOT_FOUND, e -> Mono.just(true));
+        return deleteIndices.flatMap(deleted -> deleteTemplate.map(templateDeleted -> deleted && templateDeleted));
+    }
+
+    /**
+     * 列出范围内的分区，没有上界或下界、或者分区过多时查询全部分区
+     */
+    private String[] indices(Bounds bounds) {
+        if (bounds.lower == null || bounds.upper == null || bounds.lower.isAfter(bounds.upper)) {
+            return allIndices();
+        }
+        ChronoUnit unit = unit();
+        ZonedDateTime current = truncate(bounds.lower.atZone(zone));
+        List<String> indices = new ArrayList<>();
+        while (!current.toInstant().isAfter(bounds.upper)) {
+            if (indices.size() >= maxPartitions) {
+                return allIndices();
+            }
+            indices.add(baseName + "-" + formatter.format(current));
+            current = current.plus(1, unit);
+        }
+        return indices.toArray(new String[0]);
+    }
+
+    /**
+     * 从查询条件中取出分区字段的上下界：range、term、match条件，以及bool中must和filter的交集
+     */
+    private void collect(QueryBuilder query, Bounds bounds) {
+        if (query instanceof BoolQueryBuilder) {
+            BoolQueryBuilder bool = (BoolQueryBuilder) query;
+            bool.must().forEach(clause -> collect(clause, bounds));
+            bool.filter().forEach(clause -> collect(clause, bounds));
+        } else if (query instanceof ConstantScoreQueryBuilder) {
+            collect(((ConstantScoreQueryBuilder) query).innerQuery(), bounds);
+        } else if (query instanceof RangeQueryBuilder) {
+            RangeQueryBuilder range = (RangeQueryBuilder) query;
+            // 自定义格式的字符串无法可靠解析，不做裁剪
+            if (field.equals(range.fieldName()) && range.format() == null) {
+                ZoneId rangeZone = range.timeZone() == null ? ZoneOffset.UTC : ZoneId.of(range.timeZone());
+                bounds.intersect(toInstant(range.from(), rangeZone), toUpperInstant(range.to(), rangeZone));
+            }
+        } else if (query instanceof TermQueryBuilder) {
+            TermQueryBuilder term = (TermQueryBuilder) query;
+            if (field.equals(term.fieldName())) {
+                bounds.intersect(toInstant(term.value(), ZoneOffset.UTC), toUpperInstant(term.value(), ZoneOffset.UTC));
+            }
+        } else if (query instanceof MatchQueryBuilder) {
+            MatchQueryBuilder match = (MatchQueryBuilder) query;
+            if (field.equals(match.fieldName())) {
+                bounds.intersect(toInstant(match.value(), ZoneOffset.UTC), toUpperInstant(match.value(), ZoneOffset.UTC));
+            }
+        }
+    }
+
+    private ZonedDateTime truncate(ZonedDateTime time) {
+        switch (granularity) {
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return time.truncatedTo(ChronoUnit.DAYS);
+            case MONTH:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case YEAR:
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+            default:
+                throw new IllegalStateException(granularity.name());
+        }
+    }
+
+    private ChronoUnit unit() {
+        switch (granularity) {
+            case HOUR:
+                return ChronoUnit.HOURS;
+            case DAY:
+                return ChronoUnit.DAYS;
+            case MONTH:
+                return ChronoUnit.MONTHS;
+            case YEAR:
+                return ChronoUnit.YEARS;
+            default:
+                throw new IllegalStateException(granularity.name());
+        }
+    }
+
+    /**
+     * 把各种时间类型转为时刻，无法确定时返回null，例如now-1d这样的日期表达式
+     *
+     * @param value 时间值
+     * @param zone  没有时区的时间按该时区理解
+     */
+    static Instant toInstant(Object value, ZoneId zone) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toInstant();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).toInstant();
+        }
+        if (value instanceof Number) {
+            // 和Elasticsearch默认的epoch_millis一致
+            return Instant.ofEpochMilli(((Number) value).longValue());
+        }
+        if (value instanceof Instant) {
+            return (Instant) value;
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay(zone).toInstant();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(zone).toInstant();
+        }
+        if (value instanceof TemporalAccessor) {
+            try {
+                return Instant.from((TemporalAccessor) value);
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+        if (value instanceof CharSequence) {
+            return parse(value.toString().trim(), zone);
+        }
+        return null;
+    }
+
+    /**
+     * 作为上界时的时刻：精度不完整的时间取它所表示的时间段的最后一刻，例如2021-07-09取当天的最后一刻，
+     * 2021-07-09T10:15取该分钟的最后一刻，和Elasticsearch对lte的取整一致；其它值和{@link #toInstant}相同
+     *
+     * @param value 时间值
+     * @param zone  没有时区的时间按该时区理解
+     */
+    static Instant toUpperInstant(Object value, ZoneId zone) {
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).plusDays(1).atStartOfDay(zone).toInstant().minusNanos(1);
+        }
+        Instant instant = toInstant(value, zone);
+        if (instant == null || !(value instanceof CharSequence)) {
+            return instant;
+        }
+        String text = value.toString().trim();
+        int t = text.indexOf('T');
+        if (t < 0) {
+            // 毫秒时间戳是完整的时刻，其它能解析的只有日期
+            return text.chars().allMatch(Character::isDigit)
+                    ? instant : LocalDate.parse(text).plusDays(1).atStartOfDay(zone).toInstant().minusNanos(1);
+        }
+        String time = text.substring(t + 1);
+        int offset = StringUtils.indexOfAny(time, 'Z', 'z', '+', '-');
+        if (offset >= 0) {
+            time = time.substring(0, offset);
+        }
+        if (time.indexOf('.') >= 0 || time.indexOf(',') >= 0) {
+            return instant;
+        }
+        ChronoUnit precision = StringUtils.countMatches(time, ':') >= 2 ? ChronoUnit.SECONDS : ChronoUnit.MINUTES;
+        return instant.plus(1, precision).minusNanos(1);
+    }
+
+    private static Instant parse(String text, ZoneId zone) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        if (text.chars().allMatch(Character::isDigit) && text.length() > 4) {
+            return Instant.ofEpochMilli(Long.parseLong(text));
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeException ignored) {
+            // 继续尝试没有时区的格式
+        }
+        try {
+            return LocalDateTime.parse(text).atZone(zone).toInstant();
+        } catch (DateTimeException ignored) {
+            // 继续尝试日期格式
+        }
+        try {
+            return LocalDate.parse(text).atStartOfDay(zone).toInstant();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static Accessor accessor(Class<?> entityClass, String field) {
+        String getter = "get" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        try {
+            Method method = entityClass.getMethod(getter);
+            return t -> {
+                try {
+                    return method.invoke(t);
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        } catch (NoSuchMethodException e) {
+            // 没有get方法时直接读取字段
+        }
+        for (Class<?> c = entityClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (f.getName().equals(field) && !Modifier.isStatic(f.getModifiers())) {
+                    f.setAccessible(true);
+                    return t -> {
+                        try {
+                            return f.get(t);
+                        } catch (IllegalAccessException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    };
+                }
+            }
+        }
+        throw new RuntimeException("分区字段" + field + "在" + entityClass.getName() + "中不存在");
+    }
+
+    private interface Accessor {
+
+        Object get(Object t);
+    }
+
+    /**
+     * 分区字段的上下界，null表示没有限制
+     */
+    private static class Bounds {
+
+        private Instant lower;
+
+        private Instant upper;
+
+        void intersect(Instant from, Instant to) {
+            if (from != null && (lower == null || from.isAfter(lower))) {
+                lower = from;
+            }
+            if (to != null && (upper == null || to.isBefore(upper))) {
+                upper = to;
+            }
+        }
+    }
+}
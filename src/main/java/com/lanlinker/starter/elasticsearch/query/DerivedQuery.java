@@ -0,0 +1,483 @@
+package com.lanlinker.starter.elasticsearch.query;
+
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 由方法名派生的查询，例如：
+ * <pre>
+ * Flux&lt;Item&gt; findByTitleAndPriceBetween(String title, long lo, long hi);
+ * Mono&lt;Item&gt; findFirstByTitleOrderByPriceDesc(String title);
+ * Mono&lt;PageInfo&lt;Item&gt;&gt; findTop20ByCategoryIn(List&lt;String&gt; categories);
+ * Mono&lt;Long&gt; countByBrandAndPriceLessThan(String brand, long price);
+ * Mono&lt;Boolean&gt; existsByTitle(String title);
+ * </pre>
+ * 方法名只在创建代理时解析一次，编译为{@link QueryTemplate}，调用时只需把参数绑定进模板。<br/>
+ * 条件之间用And、Or连接（And优先），属性名中的_表示嵌套路径，例如Author_Name对应author.name。
+ * 没有用TopN/FirstN指定条数时，返回多条结果的查询使用Elasticsearch默认的条数。
+ *
+ * @author hc
+ */
+public class DerivedQuery {
+
+    private static final Pattern METHOD_NAME =
+            Pattern.compile("^(find|query|search|get|read|stream|count|exists)(?:Top|First)?(\\d*)By(.+)$");
+
+    private static final Pattern ORDER = Pattern.compile("(.+?)(Asc|Desc)(?=[A-Z]|$)|(.+)$");
+
+    /**
+     * 查询结果的形式
+     */
+    public enum ResultType {
+        /**
+         * Mono&lt;T&gt;，第一条命中的结果
+         */
+        ONE,
+        /**
+         * Flux&lt;T&gt;
+         */
+        MANY,
+        /**
+         * Mono&lt;List&lt;T&gt;&gt;
+         */
+        LIST,
+        /**
+         * Mono&lt;PageInfo&lt;T&gt;&gt;
+         */
+        PAGE,
+        /**
+         * Mono&lt;Long&gt;，命中的总数
+         */
+        COUNT,
+        /**
+         * Mono&lt;Boolean&gt;，是否有命中
+         */
+        EXISTS
+    }
+
+    private final Method method;
+
+    private final ResultType resultType;
+
+    private final QueryTemplate template;
+
+    /**
+     * 只有一组And连接的条件时保存这些条件，用于分区裁剪；有Or时为空
+     */
+    private final List<Part> parts;
+
+    private DerivedQuery(Method method, ResultType resultType, QueryTemplate template, List<Part> parts) {
+        this.method = method;
+        this.resultType = resultType;
+        this.template = template;
+        this.parts = parts;
+    }
+
+    /**
+     * 解析方法名，编译为查询模板
+     *
+     * @param method      接口中声明的查询方法
+     * @param entityClass 实体类，用来校验属性名
+     * @return 派生查询
+     */
+    public static DerivedQuery parse(Method method, Class<?> entityClass) {
+        Matcher matcher = METHOD_NAME.matcher(method.getName());
+        if (!matcher.matches()) {
+            throw new RuntimeException("无法解析的查询方法：" + method);
+        }
+        String subject = matcher.group(1);
+        ResultType resultType = resultType(method, subject);
+        String criteria = matcher.group(3);
+        String orderBy = null;
+        int orderIndex = criteria.indexOf("OrderBy");
+        if (orderIndex >= 0) {
+            orderBy = criteria.substring(orderIndex + "OrderBy".length());
+            criteria = criteria.substring(0, orderIndex);
+        }
+
+        // 先编译查询条件，统计用到的参数个数
+        QueryTemplate.Builder builder = QueryTemplate.builder().literal("{\"query\":");
+        List<Part> parts = new ArrayList<>();
+        int args = appendQuery(builder, method, criteria, entityClass, parts);
+        if (args != method.getParameterCount()) {
+            throw new RuntimeException("查询方法" + method + "需要" + args + "个参数，实际声明了" + method.getParameterCount() + "个");
+        }
+        if (resultType != ResultType.COUNT && resultType != ResultType.EXISTS) {
+            String size = matcher.group(2);
+            if (!size.isEmpty()) {
+                builder.literal(",\"size\":" + Integer.parseInt(size));
+            } else if (resultType == ResultType.ONE) {
+                builder.literal(",\"size\":1");
+            }
+            if (orderBy != null) {
+                appendSort(builder, method, orderBy, entityClass);
+            }
+        }
+        builder.literal("}");
+        return new DerivedQuery(method, resultType, builder.build(), parts);
+    }
+
+    public ResultType getResultType() {
+        return resultType;
+    }
+
+    /**
+     * 统计类的查询发往_count，其余发往_search
+     */
+    public String getEndpoint() {
+        return resultType == ResultType.COUNT || resultType == ResultType.EXISTS ? "_count" : "_search";
+    }
+
+    /**
+     * 绑定参数，生成请求体
+     */
+    public String bind(Object[] args) {
+        return template.bind(args);
+    }
+
+    /**
+     * 取出某个字段上的范围条件，用于按时间分区的索引库只查询可能命中的分区。<br/>
+     * 等于、Between、大于、小于等条件各回调一次，没有上界或下界时对应的参数为null；
+     * 查询中有Or时条件无法确定，不会回调
+     *
+     * @param field 字段名称
+     * @param args  查询方法的参数
+     * @param range 接收下界和上界
+     */
+    public void collectRange(String field, Object[] args, BiConsumer<Object, Object> range) {
+        int arg = 0;
+        for (Part part : parts) {
+            if (part.field.equals(field)) {
+                switch (part.operator) {
+                    case EQUALS:
+                        range.accept(args[arg], args[arg]);
+                        break;
+                    case BETWEEN:
+                        range.accept(args[arg], args[arg + 1]);
+                        break;
+                    case GREATER_THAN:
+                    case GREATER_THAN_EQUAL:
+                    case AFTER:
+                        range.accept(args[arg], null);
+                        break;
+                    case LESS_THAN:
+                    case LESS_THAN_EQUAL:
+                    case BEFORE:
+                        range.accept(null, args[arg]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            arg += part.operator.args;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return method.getName() + " -> " + template;
+    }
+
+    /**
+     * 根据方法前缀和返回值确定结果的形式
+     */
+    private static ResultType resultType(Method method, String subject) {
+        Type returnType = method.getGenericReturnType();
+        Class<?> raw = returnType instanceof ParameterizedType
+                ? (Class<?>) ((ParameterizedType) returnType).getRawType() : method.getReturnType();
+        if (raw == Flux.class) {
+            if ("count".equals(subject) || "exists".equals(subject)) {
+                throw new RuntimeException(subject + "查询只能返回Mono：" + method);
+            }
+            return ResultType.MANY;
+        }
+        if (raw != Mono.class) {
+            throw new RuntimeException("查询方法只能返回Mono或Flux：" + method);
+        }
+        if ("count".equals(subject)) {
+            return ResultType.COUNT;
+        }
+        if ("exists".equals(subject)) {
+            return ResultType.EXISTS;
+        }
+        Type element = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        Class<?> elementRaw = element instanceof ParameterizedType
+                ? (Class<?>) ((ParameterizedType) element).getRawType() : null;
+        if (elementRaw != null && List.class.isAssignableFrom(elementRaw)) {
+            return ResultType.LIST;
+        }
+        if (elementRaw == PageInfo.class) {
+            return ResultType.PAGE;
+        }
+        return ResultType.ONE;
+    }
+
+    /**
+     * 编译查询条件，Or分隔的每一组是And连接的条件
+     *
+     * @return 用到的参数个数
+     */
+    private static int appendQuery(QueryTemplate.Builder builder, Method method, String criteria, Class<?> entityClass,
+                                   List<Part> andParts) {
+        String[] groups = criteria.split("Or(?=[A-Z])");
+        int arg = 0;
+        if (groups.length > 1) {
+            builder.literal("{\"bool\":{\"should\":[");
+        }
+        for (int g = 0; g < groups.length; g++) {
+            if (g > 0) {
+                builder.literal(",");
+            }
+            List<Part> parts = new ArrayList<>();
+            for (String part : groups[g].split("And(?=[A-Z])")) {
+                parts.add(Part.parse(part, method, entityClass));
+            }
+            arg = appendGroup(builder, parts, arg);
+            if (groups.length == 1) {
+                andParts.addAll(parts);
+            }
+        }
+        if (groups.length > 1) {
+            builder.literal("],\"minimum_should_match\":1}}");
+        }
+        return arg;
+    }
+
+    /**
+     * 编译一组And连接的条件，取反的条件放在must_not中。参数下标按条件在方法名中的顺序分配
+     *
+     * @return 下一个参数的下标
+     */
+    private static int appendGroup(QueryTemplate.Builder builder, List<Part> parts, int arg) {
+        int[] starts = new int[parts.size()];
+        boolean hasMust = false;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = arg;
+            arg += parts.get(i).operator.args;
+            hasMust |= !parts.get(i).operator.negated;
+        }
+        builder.literal("{\"bool\":{");
+        appendClause(builder, parts, starts, false, "\"must\":[");
+        appendClause(builder, parts, starts, true, hasMust ? ",\"must_not\":[" : "\"must_not\":[");
+        builder.literal("}}");
+        return arg;
+    }
+
+    private static void appendClause(QueryTemplate.Builder builder, List<Part> parts, int[] starts,
+                                     boolean negated, String open) {
+        boolean first = true;
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            if (part.operator.negated == negated) {
+                builder.literal(first ? open : ",");
+                part.append(builder, starts[i]);
+                first = false;
+            }
+        }
+        if (!first) {
+            builder.literal("]");
+        }
+    }
+
+    /**
+     * 编译排序，例如PriceDescTitle对应price降序、title升序
+     */
+    private static void appendSort(QueryTemplate.Builder builder, Method method, String orderBy, Class<?> entityClass) {
+        builder.literal(",\"sort\":[");
+        Matcher matcher = ORDER.matcher(orderBy);
+        boolean first = true;
+        while (matcher.find()) {
+            // 没有写方向的属性只能出现在最后，按升序处理
+            String property = matcher.group(1) != null ? matcher.group(1) : matcher.group(3);
+            String field = fieldName(property, method, entityClass);
+            String direction = "Desc".equals(matcher.group(2)) ? "desc" : "asc";
+            builder.literal((first ? "" : ",") + "{\"" + field + "\":{\"order\":\"" + direction + "\"}}");
+            first = false;
+        }
+        builder.literal("]");
+    }
+
+    /**
+     * 把属性转为字段名：首字母小写，_表示嵌套路径。顶层属性必须在实体类中存在
+     */
+    private static String fieldName(String property, Method method, Class<?> entityClass) {
+        String[] segments = property.split("_");
+        StringBuilder sb = new StringBuilder();
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                throw new RuntimeException("查询方法" + method + "中的属性名不正确：" + property);
+            }
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(Character.toLowerCase(segment.charAt(0))).append(segment, 1, segment.length());
+        }
+        String field = sb.toString();
+        String top = field.contains(".") ? field.substring(0, field.indexOf('.')) : field;
+        if (!hasField(entityClass, top)) {
+            throw new RuntimeException("查询方法" + method + "中的属性在" + entityClass.getName() + "中不存在：" + top);
+        }
+        return field;
+    }
+
+    private static boolean hasField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 条件的运算符，按后缀的长度从长到短排列，保证优先匹配较长的后缀
+     */
+    private enum Operator {
+        GREATER_THAN_EQUAL(1, false, "GreaterThanEqual"),
+        LESS_THAN_EQUAL(1, false, "LessThanEqual"),
+        STARTING_WITH(1, false, "StartingWith", "StartsWith"),
+        GREATER_THAN(1, false, "GreaterThan"),
+        IS_NOT_NULL(0, false, "IsNotNull", "NotNull"),
+        CONTAINING(1, false, "Containing", "Contains"),
+        LESS_THAN(1, false, "LessThan"),
+        BETWEEN(2, false, "Between"),
+        IS_NULL(0, true, "IsNull", "Null"),
+        IS_FALSE(0, false, "IsFalse", "False"),
+        IS_TRUE(0, false, "IsTrue", "True"),
+        BEFORE(1, false, "Before"),
+        NOT_IN(1, true, "NotIn"),
+        AFTER(1, false, "After"),
+        EQUALS(1, false, "Equals", "Is"),
+        LIKE(1, false, "Like"),
+        NOT(1, true, "Not"),
+        IN(1, false, "In");
+
+        /**
+         * 需要的参数个数
+         */
+        private final int args;
+
+        /**
+         * 是否放在must_not中
+         */
+        private final boolean negated;
+
+        private final String[] keywords;
+
+        Operator(int args, boolean negated, String... keywords) {
+            this.args = args;
+            this.negated = negated;
+            this.keywords = keywords;
+        }
+    }
+
+    /**
+     * 一个查询条件，例如PriceBetween
+     */
+    private static class Part {
+
+        private final String field;
+
+        private final Operator operator;
+
+        private Part(String field, Operator operator) {
+            this.field = field;
+            this.operator = operator;
+        }
+
+        static Part parse(String part, Method method, Class<?> entityClass) {
+            for (Operator operator : Operator.values()) {
+                for (String keyword : operator.keywords) {
+                    if (part.length() > keyword.length() && part.endsWith(keyword)) {
+                        String property = part.substring(0, part.length() - keyword.length());
+                        // 去掉后缀后属性不存在时，整体当作属性名处理，例如checkIn
+                        if (exists(property, entityClass)) {
+                            return new Part(fieldName(property, method, entityClass), operator);
+                        }
+                    }
+                }
+            }
+            return new Part(fieldName(part, method, entityClass), Operator.EQUALS);
+        }
+
+        private static boolean exists(String property, Class<?> entityClass) {
+            String top = property.split("_")[0];
+            return !top.isEmpty()
+                    && hasField(entityClass, Character.toLowerCase(top.charAt(0)) + top.substring(1));
+        }
+
+        /**
+         * 写入条件对应的JSON
+         *
+         * @param arg 第一个参数的下标
+         */
+        void append(QueryTemplate.Builder builder, int arg) {
+            String f = "\"" + field + "\"";
+            switch (operator) {
+                case EQUALS:
+                case NOT:
+                    builder.literal("{\"match\":{" + f + ":{\"query\":").arg(arg).literal(",\"operator\":\"and\"}}}");
+                    break;
+                case BETWEEN:
+                    builder.literal("{\"range\":{" + f + ":{\"gte\":").arg(arg).literal(",\"lte\":").arg(arg + 1).literal("}}}");
+                    break;
+                case GREATER_THAN:
+                case AFTER:
+                    range(builder, f, "gt", arg);
+                    break;
+                case GREATER_THAN_EQUAL:
+                    range(builder, f, "gte", arg);
+                    break;
+                case LESS_THAN:
+                case BEFORE:
+                    range(builder, f, "lt", arg);
+                    break;
+                case LESS_THAN_EQUAL:
+                    range(builder, f, "lte", arg);
+                    break;
+                case IN:
+                case NOT_IN:
+                    builder.literal("{\"terms\":{" + f + ":").arg(arg).literal("}}");
+                    break;
+                case STARTING_WITH:
+                    builder.literal("{\"prefix\":{" + f + ":").arg(arg).literal("}}");
+                    break;
+                case CONTAINING:
+                    builder.literal("{\"match_phrase\":{" + f + ":").arg(arg).literal("}}");
+                    break;
+                case LIKE:
+                    builder.literal("{\"wildcard\":{" + f + ":").arg(arg).literal("}}");
+                    break;
+                case IS_NULL:
+                case IS_NOT_NULL:
+                    builder.literal("{\"exists\":{\"field\":" + f + "}}");
+                    break;
+                case IS_TRUE:
+                    builder.literal("{\"term\":{" + f + ":true}}");
+                    break;
+                case IS_FALSE:
+                    builder.literal("{\"term\":{" + f + ":false}}");
+                    break;
+                default:
+                    throw new IllegalStateException(operator.name());
+            }
+        }
+
+        private static void range(QueryTemplate.Builder builder, String f, String op, int arg) {
+            builder.literal("{\"range\":{" + f + ":{\"" + op + "\":").arg(arg).literal("}}}");
+        }
+    }
+}
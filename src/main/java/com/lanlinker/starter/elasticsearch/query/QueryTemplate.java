@@ -0,0 +1,111 @@
+package com.lanlinker.starter.elasticsearch.query;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.lanlinker.starter.elasticsearch.codec.EntityCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预先编译好的请求体模板，由固定的JSON片段和参数占位组成。<br/>
+ * 每次调用只需要把参数序列化后依次拼接到片段之间，不再解析方法名，也不再构建查询对象
+ *
+ * @author hc
+ */
+public class QueryTemplate {
+
+    /**
+     * 和实体类的编码使用同样的规则，例如LocalDate写成日期字符串
+     */
+    private static final ObjectWriter writer = EntityCodec.jsonWriter();
+
+    /**
+     * 固定的JSON片段，比参数多一个
+     */
+    private final String[] fragments;
+
+    /**
+     * 每个占位对应的方法参数下标
+     */
+    private final int[] argIndexes;
+
+    /**
+     * 片段的总长度，用于预估请求体大小
+     */
+    private final int length;
+
+    private QueryTemplate(String[] fragments, int[] argIndexes) {
+        this.fragments = fragments;
+        this.argIndexes = argIndexes;
+        int total = 0;
+        for (String fragment : fragments) {
+            total += fragment.length();
+        }
+        this.length = total;
+    }
+
+    /**
+     * 绑定参数，生成请求体
+     *
+     * @param args 方法参数
+     * @return JSON请求体
+     */
+    public String bind(Object[] args) {
+        StringBuilder sb = new StringBuilder(length + 16 * argIndexes.length);
+        sb.append(fragments[0]);
+        for (int i = 0; i < argIndexes.length; i++) {
+            try {
+                sb.append(writer.writeValueAsString(args[argIndexes[i]]));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+            sb.append(fragments[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(fragments[0]);
+        for (int i = 0; i < argIndexes.length; i++) {
+            sb.append("?").append(argIndexes[i]).append(fragments[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static class Builder {
+
+        private final List<String> fragments = new ArrayList<>();
+
+        private final List<Integer> argIndexes = new ArrayList<>();
+
+        private StringBuilder current = new StringBuilder();
+
+        Builder literal(String json) {
+            current.append(json);
+            return this;
+        }
+
+        Builder arg(int index) {
+            fragments.add(current.toString());
+            argIndexes.add(index);
+            current = new StringBuilder();
+            return this;
+        }
+
+        QueryTemplate build() {
+            List<String> all = new ArrayList<>(fragments);
+            all.add(current.toString());
+            int[] indexes = new int[argIndexes.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = argIndexes.get(i);
+            }
+            return new QueryTemplate(all.toArray(new String[0]), indexes);
+        }
+    }
+}
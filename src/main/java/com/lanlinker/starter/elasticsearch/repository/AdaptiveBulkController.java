@@ -0,0 +1,285 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按AIMD（加性增、乘性减）调整bulk请求的文档数和并发数。<br/>
+ * 每个bulk请求发送前先取得一个许可，在途的许可数不超过当前并发数；请求结束后归还许可并报告结果：
+ * 被拒绝（429）或耗时过长时文档数和并发数减半，成功时文档数增加一个步长，
+ * 连续成功的次数达到当前并发数时并发数加一。<br/>
+ * 一次减小之前已经发出的请求，结果反映的还是减小前的负载，不会再次触发减小，避免一次拥塞把数值减到底
+ *
+ * @author hc
+ */
+class AdaptiveBulkController {
+
+    private final boolean adaptive;
+
+    private final int minActions;
+
+    private final int maxActions;
+
+    private final int actionsIncrement;
+
+    private final int maxConcurrency;
+
+    private final long maxLatencyNanos;
+
+    private final int maxRetries;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    /**
+     * 当前每个bulk请求的文档数
+     */
+    private volatile int actions;
+
+    /**
+     * 当前同时在途的bulk请求数
+     */
+    private volatile int concurrency;
+
+    /**
+     * 在途的许可数
+     */
+    private int inFlight;
+
+    /**
+     * 上次调整后连续成功的请求数
+     */
+    private int successes;
+
+    /**
+     * 每次减小加一，许可记录取得时的值
+     */
+    private long epoch;
+
+    /**
+     * 等待许可的订阅者，按先后顺序分配
+     */
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+
+    AdaptiveBulkController(ElasticsearchProperties.Bulk bulk) {
+        this.adaptive = bulk.isAdaptive();
+        this.actions = Math.max(1, bulk.getActions());
+        this.concurrency = Math.max(1, bulk.getConcurrentRequests());
+        this.minActions = Math.max(1, Math.min(bulk.getMinActions(), actions));
+        this.maxActions = Math.max(bulk.getMaxActions(), actions);
+        this.actionsIncrement = Math.max(1, bulk.getActionsIncrement());
+        this.maxConcurrency = adaptive ? Math.max(bulk.getMaxConcurrentRequests(), concurrency) : concurrency;
+        this.maxLatencyNanos = bulk.getMaxLatency().toNanos();
+        this.maxRetries = Math.max(0, bulk.getMaxRetries());
+        this.initialBackoffMillis = bulk.getInitialBackoff().toMillis();
+        this.maxBackoffMillis = bulk.getMaxBackoff().toMillis();
+    }
+
+    /**
+     * @return 当前每个bulk请求的文档数
+     */
+    int actions() {
+        return actions;
+    }
+
+    /**
+     * @return 当前同时在途的bulk请求数
+     */
+    int concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return 并发数可能达到的最大值，作为flatMap的并发上限，实际并发由许可控制
+     */
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return 被拒绝的文档最多重试的次数
+     */
+    int maxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 第attempt次重试前的等待时间：指数增长，不超过上限，再在[一半, 全部]之间随机，避免重试同时到达
+     *
+     * @param attempt 从0开始的重试次数
+     */
+    Duration backoff(int attempt) {
+        return backoff(attempt, initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * 按给定的初始值和上限计算第attempt次重试前的等待时间，参见{@link #backoff(int)}
+     */
+    static Duration backoff(int attempt, long initialBackoffMillis, long maxBackoffMillis) {
+        long delay = initialBackoffMillis << Math.min(attempt, 30);
+        if (delay <= 0 || delay > maxBackoffMillis) {
+            delay = maxBackoffMillis;
+        }
+        return Duration.ofMillis(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+
+    /**
+     * 取得一个许可，在途的许可数达到当前并发数时等待。订阅时才排队，取消时退出队列
+     */
+    Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            Permit permit = null;
+            synchronized (this) {
+                if (inFlight < concurrency && waiters.isEmpty()) {
+                    inFlight++;
+                    permit = new Permit(epoch);
+                } else {
+                    waiters.add(waiter);
+                }
+            }
+            if (permit != null) {
+                sink.success(permit);
+                return;
+            }
+            sink.onCancel(() -> {
+                Permit granted;
+                synchronized (this) {
+                    if (waiters.remove(waiter)) {
+                        return;
+                    }
+                    granted = waiter.permit;
+                }
+                // 取消和分配同时发生，许可可能没有送达，直接归还
+                if (granted != null) {
+                    release(granted);
+                }
+            });
+        });
+    }
+
+    /**
+     * 请求成功，耗时没有超过上限时增大，否则减小
+     *
+     * @param permit       请求取得的许可
+     * @param latencyNanos 请求的耗时
+     */
+    void onSuccess(Permit permit, long latencyNanos) {
+        if (latencyNanos > maxLatencyNanos) {
+            onRejected(permit);
+            return;
+        }
+        if (permit.released.compareAndSet(false, true)) {
+            List<Waiter> granted;
+            synchronized (this) {
+                inFlight--;
+                if (adaptive) {
+                    actions = Math.min(maxActions, actions + actionsIncrement);
+                    if (++successes >= concurrency) {
+                        successes = 0;
+                        concurrency = Math.min(maxConcurrency, concurrency + 1);
+                    }
+                }
+                granted = grant();
+            }
+            deliver(granted);
+        }
+    }
+
+    /**
+     * 请求被拒绝或耗时过长，减小文档数和并发数
+     *
+     * @param permit 请求取得的许可
+     */
+    void onRejected(Permit permit) {
+        if (permit.released.compareAndSet(false, true)) {
+            List<Waiter> granted;
+            synchronized (this) {
+                inFlight--;
+                if (adaptive && permit.epoch == epoch) {
+                    epoch++;
+                    successes = 0;
+                    actions = Math.max(minActions, actions / 2);
+                    concurrency = Math.max(1, concurrency / 2);
+                }
+                granted = grant();
+            }
+            deliver(granted);
+        }
+    }
+
+    /**
+     * 请求因为其它原因失败，只归还许可，不调整
+     *
+     * @param permit 请求取得的许可
+     */
+    void release(Permit permit) {
+        if (permit.released.compareAndSet(false, true)) {
+            List<Waiter> granted;
+            synchronized (this) {
+                inFlight--;
+                granted = grant();
+            }
+            deliver(granted);
+        }
+    }
+
+    /**
+     * 在锁内按当前并发数给排队的订阅者分配许可
+     */
+    private List<Waiter> grant() {
+        List<Waiter> granted = new ArrayList<>();
+        while (inFlight < concurrency && !waiters.isEmpty()) {
+            Waiter waiter = waiters.poll();
+            inFlight++;
+            waiter.permit = new Permit(epoch);
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    /**
+     * 在锁外通知取得许可的订阅者，避免在锁内执行下游的逻辑
+     */
+    private static void deliver(List<Waiter> granted) {
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    /**
+     * 一个在途请求占用的许可，只能归还一次
+     */
+    static class Permit {
+
+        private final long epoch;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static class Waiter {
+
+        private final MonoSink<Permit> sink;
+
+        /**
+         * 分配到的许可，在锁内设置
+         */
+        private Permit permit;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.rest.RestStatus;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * 基于{@link BulkProcessor}的缓冲写入器。<br/>
+ * 写入的文档先进入缓冲区，按文档数、字节数或时间间隔攒成一个bulk请求异步发送，
+ * 每个文档对应的{@link Mono}在其所在bulk请求返回后完成。<br/>
+ * 未确认的文档数达到上限时，新的文档在订阅后排队，直到有文档被确认后才放入缓冲区，订阅的线程不会被阻塞；
+ * 排队的文档数也有上限，超过后新的文档直接以失败结束。关闭时仍在排队的文档同样以失败结束。<br/>
+ * 放入缓冲区的操作在{@link Schedulers#boundedElastic()}上执行：BulkProcessor在在途请求数达到上限时会阻塞调用方，
+ * 而订阅可能发生在HTTP客户端的IO线程上（例如flatMap中前一个文档完成之后），IO线程被阻塞就无法再处理响应。<br/>
+ * 被拒绝（429）的文档和流式写入一样按 lanlinker.elasticsearch.bulk 的重试次数和退避时间重新放入缓冲区，
+ * 重试期间继续占用许可，用尽重试次数后才以失败结束。
+ *
+ * @author hc
+ */
+class BufferedBulkWriter implements AutoCloseable {
+
+    private final BulkProcessor processor;
+
+    /**
+     * 剩余的未确认文档许可，用来做背压，在锁内修改
+     */
+    private int available;
+
+    /**
+     * 等待许可的文档，按先后顺序分配
+     */
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+
+    /**
+     * 最多排队的文档数
+     */
+    private final int maxWaiters;
+
+    /**
+     * 是否已经关闭，在锁内修改
+     */
+    private boolean closed;
+
+    /**
+     * 已放入缓冲区的请求与等待者的对应关系，按对象身份匹配
+     */
+    private final Map<DocWriteRequest<?>, Waiter> submitted =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * 被拒绝的文档最多重试的次数
+     */
+    private final int maxRetries;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    /**
+     * 每个bulk请求结束后回调，参数是请求和失败的文档数
+     */
+    private final ObjIntConsumer<BulkRequest> onBulk;
+
+    BufferedBulkWriter(RestHighLevelClient client, ElasticsearchProperties.Bulk bulk, ObjIntConsumer<BulkRequest> onBulk) {
+        this.onBulk = onBulk;
+        this.available = Math.max(1, bulk.getMaxPendingActions());
+        this.maxWaiters = Math.max(0, bulk.getMaxWaiters());
+        this.maxRetries = Math.max(0, bulk.getMaxRetries());
+        this.initialBackoffMillis = bulk.getInitialBackoff().toMillis();
+        this.maxBackoffMillis = bulk.getMaxBackoff().toMillis();
+        this.processor = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener), new Listener())
+                .setBulkActions(bulk.getActions())
+                .setBulkSize(new ByteSizeValue(bulk.getSize().toBytes()))
+                .setFlushInterval(TimeValue.timeValueMillis(bulk.getFlushInterval().toMillis()))
+                .setConcurrentRequests(bulk.getConcurrentRequests())
+                // 不在BulkProcessor内部重试，保证响应中的条目和请求一一对应，被拒绝的文档由afterBulk重新放入
+                .setBackoffPolicy(BackoffPolicy.noBackoff())
+                .build();
+    }
+
+    /**
+     * 把请求放入缓冲区
+     *
+     * @param request 写请求，每次订阅都应该是一个新的实例
+     * @return 该文档被确认后完成的Mono
+     */
+    Mono<Boolean> add(DocWriteRequest<?> request) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(request, sink);
+            boolean granted = false;
+            String rejection = null;
+            synchronized (this) {
+                if (closed) {
+                    rejection = "缓冲写入器已关闭";
+                } else if (available > 0 && waiters.isEmpty()) {
+                    granted = true;
+                    available--;
+                } else if (waiters.size() >= maxWaiters) {
+                    rejection = "缓冲写入排队的文档数已达到上限" + maxWaiters;
+                } else {
+                    // 缓冲区满了就排队，不阻塞订阅的线程
+                    waiters.add(waiter);
+                }
+            }
+            // 在锁外结束，下游的回调可能再次写入
+            if (rejection != null) {
+                sink.error(new RuntimeException(rejection));
+            } else if (granted) {
+                submit(waiter);
+            } else {
+                sink.onCancel(() -> {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 取得许可后放入缓冲区
+     */
+    private void submit(Waiter waiter) {
+        Schedulers.boundedElastic().schedule(() -> enqueue(waiter));
+    }
+
+    /**
+     * 被拒绝的文档在退避之后重新放入缓冲区，许可不归还
+     *
+     * @return 没有剩余的重试次数时返回false
+     */
+    private boolean retry(Waiter waiter) {
+        if (waiter.attempt >= maxRetries) {
+            return false;
+        }
+        long delay = AdaptiveBulkController.backoff(waiter.attempt++, initialBackoffMillis, maxBackoffMillis).toMillis();
+        Schedulers.boundedElastic().schedule(() -> enqueue(waiter), delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void enqueue(Waiter waiter) {
+        submitted.put(waiter.request, waiter);
+        try {
+            processor.add(waiter.request);
+        } catch (Exception e) {
+            // 已经关闭
+            submitted.remove(waiter.request);
+            release(1);
+            waiter.sink.error(e);
+        }
+    }
+
+    /**
+     * 归还许可，按顺序分给排队的文档
+     */
+    private void release(int permits) {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            available += permits;
+            while (available > 0 && !waiters.isEmpty()) {
+                available--;
+                granted.add(waiters.poll());
+            }
+        }
+        granted.forEach(this::submit);
+    }
+
+    @Override
+    public void close() {
+        List<Waiter> rejected;
+        synchronized (this) {
+            closed = true;
+            rejected = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        // 排队的文档还没有放入缓冲区，不再发送
+        RuntimeException failure = new RuntimeException("缓冲写入器已关闭");
+        rejected.forEach(waiter -> waiter.sink.error(failure));
+        // 发送缓冲区中剩余的请求，并等待在途请求结束
+        try {
+            processor.awaitClose(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // 被中断时不再等待，保留中断状态交给调用方处理
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            List<DocWriteRequest<?>> requests = request.requests();
+            BulkItemResponse[] items = response.getItems();
+            int failed = 0;
+            int retried = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                Waiter waiter = submitted.remove(requests.get(i));
+                BulkItemResponse item = items[i];
+                if (item.isFailed()) {
+                    failed++;
+                }
+                if (waiter == null) {
+                    continue;
+                }
+                if (item.isFailed()) {
+                    // 只重试被拒绝的文档，其它失败重试也不会成功
+                    if (item.status() == RestStatus.TOO_MANY_REQUESTS && retry(waiter)) {
+                        retried++;
+                    } else {
+                        waiter.sink.error(new RuntimeException(item.getFailureMessage()));
+                    }
+                } else {
+                    // 判断是否有失败
+                    waiter.sink.success(item.getResponse().getShardInfo().getFailed() == 0);
+                }
+            }
+            release(requests.size() - retried);
+            onBulk.accept(request, failed);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            onBulk.accept(request, request.numberOfActions());
+            // 整个bulk请求失败，其中的每个文档都失败；整个请求被拒绝时每个文档都重试
+            boolean rejected = failure instanceof ElasticsearchException
+                    && ((ElasticsearchException) failure).status() == RestStatus.TOO_MANY_REQUESTS;
+            int retried = 0;
+            for (DocWriteRequest<?> r : request.requests()) {
+                Waiter waiter = submitted.remove(r);
+                if (waiter == null) {
+                    continue;
+                }
+                if (rejected && retry(waiter)) {
+                    retried++;
+                } else {
+                    waiter.sink.error(failure);
+                }
+            }
+            release(request.numberOfActions() - retried);
+        }
+    }
+
+    private static class Waiter {
+
+        private final DocWriteRequest<?> request;
+
+        private final MonoSink<Boolean> sink;
+
+        /**
+         * 已经重试的次数，只在afterBulk中修改
+         */
+        private int attempt;
+
+        Waiter(DocWriteRequest<?> request, MonoSink<Boolean> sink) {
+            this.request = request;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import org.elasticsearch.search.SearchHit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个补全字段的本地补全索引。<br/>
+ * 从索引库中扫描出字段的所有输入和权重，按小写后的词条排序保存在数组中，查询时二分查找前缀的范围，
+ * 再按权重取前N个，不需要访问集群。索引在后台定期整体重建，重建完成后原子替换；
+ * 还没有加载完成、或者文档数超过max-entries只加载了一部分时返回null，由调用方回退到集群查询。<br/>
+ * 刷新之后新增的词条要到下一次刷新才能查到，延迟可以通过{@link #stats()}或监控指标中的刷新间隔观察。
+ *
+ * @author hc
+ */
+class LocalSuggester implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalSuggester.class);
+
+    /**
+     * 前缀范围超过该值时缓存查询结果，避免短前缀每次都扫描大量词条
+     */
+    private static final int SCAN_LIMIT = 4096;
+
+    private final String field;
+
+    private final int size;
+
+    private final int maxEntries;
+
+    /**
+     * 扫描索引库，只返回补全字段的源数据
+     */
+    private final Flux<SearchHit> source;
+
+    private volatile Snapshot snapshot;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile long lastRefreshMillis = -1;
+
+    private volatile long refreshDurationMillis;
+
+    private final LongAdder localHits = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    private final Disposable schedule;
+
+    LocalSuggester(String field, ElasticsearchProperties.Suggest config, Flux<SearchHit> source) {
+        this.field = field;
+        this.size = config.getSize();
+        this.maxEntries = config.getMaxEntries();
+        this.source = source;
+        long interval = config.getRefreshInterval().toMillis();
+        // 立即加载一次，之后定期重建
+        this.schedule = Schedulers.parallel().schedulePeriodically(this::refresh, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 查询前缀对应的补全结果
+     *
+     * @param prefix 前缀
+     * @return 按权重从高到低排列的结果，本地索引不可用或没有结果时返回null
+     */
+    List<String> lookup(String prefix) {
+        Snapshot current = snapshot;
+        List<String> result = current == null || current.truncated ? null : current.lookup(prefix.toLowerCase(Locale.ROOT));
+        if (result == null || result.isEmpty()) {
+            // 冷启动、本地索引不完整或者有刷新后新增的词条，交给集群
+            fallbacks.increment();
+            return null;
+        }
+        localHits.increment();
+        return result;
+    }
+
+    SuggestIndexStats stats() {
+        Snapshot current = snapshot;
+        long lag = lastRefreshMillis < 0 ? -1 : System.currentTimeMillis() - lastRefreshMillis;
+        return new SuggestIndexStats(field, current == null ? 0 : current.keys.length,
+                current == null ? 0 : current.memoryBytes, lag, refreshDurationMillis,
+                localHits.sum(), fallbacks.sum(), current != null && current.truncated);
+    }
+
+    /**
+     * 重建索引，上一次重建还没结束时跳过
+     */
+    void refresh() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        // 多取一个文档用来判断是否被截断，截断的索引不完整，不能作为查询结果
+        AtomicInteger scanned = new AtomicInteger();
+        source.take(maxEntries + 1L)
+                .filter(hit -> scanned.incrementAndGet() <= maxEntries)
+                .reduce(new HashMap<String, Integer>(), (entries, hit) -> {
+                    collect(hit.getSourceAsMap(), field.split("\\."), 0, entries);
+                    return entries;
+                })
+                // 排序放到单独的线程池，不占用IO线程
+                .publishOn(Schedulers.boundedElastic())
+                .map(entries -> new Snapshot(entries, scanned.get() > maxEntries))
+                .doFinally(signal -> refreshing.set(false))
+                .subscribe(built -> {
+                    if (built.truncated) {
+                        log.warn("补全字段{}的文档数超过{}，本地补全索引不完整，查询全部交给集群", field, maxEntries);
+                    }
+                    snapshot = built;
+                    lastRefreshMillis = System.currentTimeMillis();
+                    refreshDurationMillis = lastRefreshMillis - start;
+                }, e -> log.warn("刷新本地补全索引{}失败", field, e));
+    }
+
+    @Override
+    public void close() {
+        schedule.dispose();
+    }
+
+    /**
+     * 从源数据中取出补全字段的输入。字段值可以是字符串、字符串数组，或者{"input": ..., "weight": ...}对象及其数组；
+     * 路径在源数据中不存在时（例如title.suggest这样的子字段）使用上一级的值
+     */
+    @SuppressWarnings("unchecked")
+    private static void collect(Object node, String[] path, int depth, Map<String, Integer> entries) {
+        if (depth < path.length && node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            if (map.containsKey(path[depth])) {
+                collect(map.get(path[depth]), path, depth + 1, entries);
+                return;
+            }
+            if (depth == 0) {
+                return;
+            }
+        }
+        if (node instanceof List) {
+            for (Object item : (List<Object>) node) {
+                collect(item, path, path.length, entries);
+            }
+        } else if (node instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) node;
+            Object weight = map.get("weight");
+            int w = weight instanceof Number ? ((Number) weight).intValue() : 1;
+            Object input = map.get("input");
+            if (input instanceof List) {
+                for (Object item : (List<Object>) input) {
+                    put(entries, item, w);
+                }
+            } else {
+                put(entries, input, w);
+            }
+        } else {
+            put(entries, node, 1);
+        }
+    }
+
+    private static void put(Map<String, Integer> entries, Object input, int weight) {
+        if (input instanceof String && !((String) input).trim().isEmpty()) {
+            // 相同的词条保留最大的权重
+            entries.merge((String) input, weight, Math::max);
+        }
+    }
+
+    /**
+     * 某一时刻的补全索引，创建后不再修改
+     */
+    private class Snapshot {
+
+        /**
+         * 小写后的词条，升序
+         */
+        private final String[] keys;
+
+        /**
+         * 原始词条，没有大写字母时和keys共用同一个实例
+         */
+        private final String[] texts;
+
+        private final int[] weights;
+
+        private final long memoryBytes;
+
+        /**
+         * 扫描时是否因为超过max-entries而截断
+         */
+        private final boolean truncated;
+
+        /**
+         * 短前缀的查询结果
+         */
+        private final Map<String, List<String>> wide = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, Integer> entries, boolean truncated) {
+            this.truncated = truncated;
+            String[][] pairs = new String[entries.size()][];
+            int[] sortedWeights = new int[entries.size()];
+            int i = 0;
+            for (String text : entries.keySet()) {
+                String key = text.toLowerCase(Locale.ROOT);
+                pairs[i++] = new String[]{key, key.equals(text) ? key : text};
+            }
+            Arrays.sort(pairs, Comparator.comparing((String[] pair) -> pair[0]));
+            keys = new String[pairs.length];
+            texts = new String[pairs.length];
+            long bytes = 0;
+            for (i = 0; i < pairs.length; i++) {
+                keys[i] = pairs[i][0];
+                texts[i] = pairs[i][1];
+                sortedWeights[i] = entries.get(texts[i]);
+                // 对象头、数组引用和字符数据的粗略估算
+                bytes += 40 + 2L * keys[i].length() + (texts[i] == keys[i] ? 0 : 40 + 2L * texts[i].length()) + 12;
+            }
+            weights = sortedWeights;
+            memoryBytes = bytes;
+        }
+
+        List<String> lookup(String prefix) {
+            int from = lowerBound(prefix);
+            int to = lowerBound(prefix + Character.MAX_VALUE);
+            if (to - from > SCAN_LIMIT) {
+                return wide.computeIfAbsent(prefix, p -> topK(from, to));
+            }
+            return topK(from, to);
+        }
+
+        /**
+         * 用大小为N的小顶堆取权重最高的N个
+         */
+        private List<String> topK(int from, int to) {
+            if (from >= to) {
+                return Collections.emptyList();
+            }
+            Comparator<Integer> order = Comparator.<Integer>comparingInt(i -> weights[i])
+                    // 权重相同时词条小的排在前面
+                    .thenComparing(i -> keys[i], Comparator.reverseOrder());
+            PriorityQueue<Integer> heap = new PriorityQueue<>(size + 1, order);
+            for (int i = from; i < to; i++) {
+                heap.offer(i);
+                if (heap.size() > size) {
+                    heap.poll();
+                }
+            }
+            String[] result = new String[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = texts[heap.poll()];
+            }
+            return Arrays.asList(result);
+        }
+
+        private int lowerBound(String key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.elasticsearch.common.bytes.BytesReference;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * queryById的本地缓存。<br/>
+ * 缓存的是文档的源数据而不是实体对象，每次命中都解码出新的实例，调用方修改实体不会污染缓存；
+ * 按字节数限制大小时，源数据的长度就是权重。同一个id并发未命中时只发起一次GET，其余订阅者等待同一个结果。<br/>
+ * 缓存以id为键，只缓存没有指定routing的读取：不同routing下可能有相同id的文档，写入时也只按id失效。
+ *
+ * @author hc
+ */
+class NearCache {
+
+    private final AsyncCache<String, BytesReference> cache;
+
+    private NearCache(AsyncCache<String, BytesReference> cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 按@Index和全局配置创建缓存
+     *
+     * @param entityClass 实体类
+     * @param config      全局配置
+     * @return 没有开启缓存时返回null
+     */
+    static NearCache create(Class<?> entityClass, ElasticsearchProperties.Cache config) {
+        Index index = entityClass.getAnnotation(Index.class);
+        if (!config.isEnabled() && (index == null || !index.cache())) {
+            return null;
+        }
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (config.getMaximumWeight() != null && (index == null || index.cacheMaximumSize() < 0)) {
+            builder.maximumWeight(config.getMaximumWeight().toBytes())
+                    .weigher((String id, BytesReference source) -> source.length());
+        } else {
+            builder.maximumSize(index != null && index.cacheMaximumSize() >= 0
+                    ? index.cacheMaximumSize() : config.getMaximumSize());
+        }
+        if (index != null && index.cacheExpireAfterWriteSeconds() >= 0) {
+            builder.expireAfterWrite(index.cacheExpireAfterWriteSeconds(), TimeUnit.SECONDS);
+        } else if (config.getExpireAfterWrite() != null) {
+            builder.expireAfterWrite(config.getExpireAfterWrite().toNanos(), TimeUnit.NANOSECONDS);
+        }
+        if (config.isRecordStats()) {
+            builder.recordStats();
+        }
+        return new NearCache(builder.buildAsync());
+    }
+
+    /**
+     * 从缓存中获取源数据，未命中时调用loader加载。加载失败的结果不会被缓存
+     *
+     * @param id     文档id
+     * @param loader 加载源数据
+     * @return 源数据
+     */
+    Mono<BytesReference> get(String id, Function<String, Mono<BytesReference>> loader) {
+        return Mono.defer(() -> Mono.fromFuture(cache.get(id, (key, executor) -> loader.apply(key).toFuture())
+                // 派生出新的future，某个订阅者取消时不会取消其它订阅者共享的加载
+                .thenApply(Function.identity())));
+    }
+
+    /**
+     * 文档被修改或删除后使缓存失效，在途的加载结果也不会再放入缓存
+     */
+    void invalidate(String id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+}
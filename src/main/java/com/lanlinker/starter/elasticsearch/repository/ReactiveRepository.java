@@ -0,0 +1,285 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Repository}的响应式版本，所有方法都基于异步客户端，调用线程不会阻塞在网络IO上 <br/>
+ * 泛型说明 <br/>
+ * T：实体类类型
+ * ID：实体类中的id类型
+ *
+ * @author hc
+ */
+public interface ReactiveRepository<T, ID> {
+    /**
+     * 创建索引库
+     *
+     * @param source setting和mapping的json字符串
+     * @return 是否创建成功
+     */
+    Mono<Boolean> createIndex(String source);
+
+    /**
+     * 删除当前实体类相关的索引库
+     *
+     * @return 是否删除成功
+     */
+    Mono<Boolean> deleteIndex();
+
+    /**
+     * 新增数据
+     *
+     * @param t 要新增的数据
+     * @return 是否新增成功
+     */
+    Mono<Boolean> save(T t);
+
+    /**
+     * 批量新增，按当前的文档数切分成多个bulk请求，被拒绝的文档会退避重试
+     *
+     * @param iterable 要新增的数据
+     * @return 是否新增成功
+     */
+    Mono<Boolean> saveAll(Iterable<T> iterable);
+
+    /**
+     * 流式批量新增，参见{@link Repository#saveAllStream(Flux)}
+     *
+     * @param flux 要新增的数据
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> saveAllStream(Flux<T> flux);
+
+    /**
+     * 批量导入，导入期间关闭refresh和副本，结束后恢复，参见{@link Repository#bulkLoad(Iterable, boolean)}
+     *
+     * @param flux       要导入的数据
+     * @param forceMerge 导入成功后是否强制合并段
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> bulkLoad(Flux<T> flux, boolean forceMerge);
+
+    /**
+     * 局部更新，参见{@link Repository#update(Object, Map)}
+     *
+     * @param id id
+     * @param fields 要修改的字段
+     * @return 是否更新成功
+     */
+    Mono<Boolean> update(ID id, Map<String, Object> fields);
+
+    /**
+     * 按id局部更新指定routing的文档，参见{@link Repository#update(Object, Map, String)}
+     *
+     * @param id      id
+     * @param fields  要修改的字段
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否更新成功
+     */
+    Mono<Boolean> update(ID id, Map<String, Object> fields, String routing);
+
+    /**
+     * 局部更新，只写入不为null的属性，参见{@link Repository#update(Object)}
+     *
+     * @param partial 只设置了要修改的属性的实体类
+     * @return 是否更新成功
+     */
+    Mono<Boolean> update(T partial);
+
+    /**
+     * 文档存在时更新，不存在时新增，参见{@link Repository#upsert(Object)}
+     *
+     * @param t 实体类
+     * @return 是否成功
+     */
+    Mono<Boolean> upsert(T t);
+
+    /**
+     * 用painless脚本更新文档，参见{@link Repository#updateByScript(Object, String, Map)}
+     *
+     * @param id id
+     * @param script painless脚本
+     * @param params 脚本参数，可以为null
+     * @return 是否更新成功
+     */
+    Mono<Boolean> updateByScript(ID id, String script, Map<String, Object> params);
+
+    /**
+     * 用painless脚本更新指定routing的文档，参见{@link Repository#updateByScript(Object, String, Map, String)}
+     *
+     * @param id      id
+     * @param script  painless脚本
+     * @param params  脚本参数，可以为null
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否更新成功
+     */
+    Mono<Boolean> updateByScript(ID id, String script, Map<String, Object> params, String routing);
+
+    /**
+     * 批量局部更新，参见{@link Repository#updateAll(Map)}
+     *
+     * @param updates id和要修改的字段
+     * @return 是否全部更新成功
+     */
+    Mono<Boolean> updateAll(Map<ID, Map<String, Object>> updates);
+
+    /**
+     * 批量局部更新，参见{@link Repository#updateAll(Iterable)}
+     *
+     * @param partials 只设置了要修改的属性的实体类
+     * @return 是否全部更新成功
+     */
+    Mono<Boolean> updateAll(Iterable<T> partials);
+
+    /**
+     * 批量upsert，参见{@link Repository#upsertAll(Iterable)}
+     *
+     * @param iterable 实体类
+     * @return 是否全部成功
+     */
+    Mono<Boolean> upsertAll(Iterable<T> iterable);
+
+    /**
+     * 用同一个脚本批量更新多个文档，参见{@link Repository#updateAllByScript(Iterable, String, Map)}
+     *
+     * @param ids id集合
+     * @param script painless脚本
+     * @param params 脚本参数，可以为null
+     * @return 是否全部更新成功
+     */
+    Mono<Boolean> updateAllByScript(Iterable<ID> ids, String script, Map<String, Object> params);
+
+    /**
+     * 根据id删除数据
+     *
+     * @param id id
+     * @return 是否删除成功
+     */
+    Mono<Boolean> deleteById(ID id);
+
+    /**
+     * 根据id删除指定routing的数据，只访问一个分片
+     *
+     * @param id      id
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否删除成功
+     */
+    Mono<Boolean> deleteById(ID id, String routing);
+
+    /**
+     * 删除实体类对应的文档，id和routing从实体类中读取；按时间分区时直接删除所在分区中的文档
+     *
+     * @param t 实体类
+     * @return 是否删除成功
+     */
+    Mono<Boolean> delete(T t);
+
+    /**
+     * 根据id查询数据
+     *
+     * @param id id
+     * @return 包含实体类的Mono实例
+     */
+    Mono<T> queryById(ID id);
+
+    /**
+     * 根据id查询指定routing的数据，只访问一个分片
+     *
+     * @param id      id
+     * @param routing 写入时的routing
+     * @return 包含实体类的Mono实例
+     */
+    Mono<T> queryById(ID id, String routing);
+
+    /**
+     * 根据多个id一次查询数据（_mget），按id的顺序发布，不存在的文档被跳过
+     *
+     * @param ids id集合
+     * @return 逐条发布实体类的Flux
+     */
+    Flux<T> queryAllById(Iterable<ID> ids);
+
+    /**
+     * 根据多个id一次查询指定routing的数据，参见{@link #queryAllById(Iterable)}
+     *
+     * @param ids     id集合
+     * @param routing 写入时的routing
+     * @return 逐条发布实体类的Flux
+     */
+    Flux<T> queryAllById(Iterable<ID> ids, String routing);
+
+    /**
+     * 根据{@link SearchSourceBuilder}查询数据，返回分页结果{@link PageInfo}，其中的数据已经高亮处理
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @return 结果处理器处理后的的数据
+     */
+    Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder);
+
+    /**
+     * 只在指定routing对应的分片上查询，参见{@link #queryBySourceBuilderForPageHighlight(SearchSourceBuilder)}
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @param routing       routing，多个值用逗号分隔
+     * @return 结果处理器处理后的的数据
+     */
+    Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder, String routing);
+
+    /**
+     * 把多个分页查询放在一次_msearch请求中发送，例如一个页面上的主结果、分面和相关推荐。<br/>
+     * 每个查询的结果和{@link #queryBySourceBuilderForPageHighlight(SearchSourceBuilder)}相同，按传入的顺序发布；
+     * 任何一个查询失败时Flux以该错误结束。同时执行的查询数由 lanlinker.elasticsearch.msearch.max-concurrent-searches 控制
+     *
+     * @param sourceBuilders 查询条件构建器
+     * @return 按顺序发布每个查询分页结果的Flux
+     */
+    Flux<PageInfo<T>> multiQuery(List<SearchSourceBuilder> sourceBuilders);
+
+    /**
+     * 根据{@link SearchSourceBuilder}流式查询全部数据，参见{@link Repository#streamBySourceBuilder(SearchSourceBuilder)}
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @return 逐条发布数据的Flux
+     */
+    Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder);
+
+    /**
+     * 只在指定routing对应的分片上流式查询，参见{@link #streamBySourceBuilder(SearchSourceBuilder)}
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @param routing       routing，多个值用逗号分隔
+     * @return 逐条发布数据的Flux
+     */
+    Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder, String routing);
+
+    /**
+     * 根据指定的prefixKey对单个指定suggestField 做自动补全，返回推荐结果的列表{@link List}
+     * @param suggestField 补全字段
+     * @param prefixKey 关键字
+     * @return 返回推荐结果列表{@link List}
+     */
+    Mono<List<String>> suggestBySingleField(String suggestField, String prefixKey);
+
+    /**
+     * queryById本地缓存的命中统计，没有开启缓存时所有数值为0
+     *
+     * @return 缓存统计
+     */
+    CacheStats nearCacheStats();
+
+    /**
+     * 本地补全索引的状态，包括内存占用和距离上次刷新的时间，没有开启本地补全时为空
+     *
+     * @return 每个补全字段的状态
+     */
+    List<SuggestIndexStats> localSuggestStats();
+}
@@ -0,0 +1,183 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ReactiveRepository}的实现，实体类的元信息和请求构建都复用{@link RepositoryHandler}
+ *
+ * @author hc
+ */
+public class ReactiveRepositoryHandler<T, ID> implements ReactiveRepository<T, ID> {
+
+    private final RepositoryHandler<T, ID> delegate;
+
+    public ReactiveRepositoryHandler(RepositoryHandler<T, ID> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Mono<Boolean> createIndex(String source) {
+        return delegate.createIndexAsync(source);
+    }
+
+    @Override
+    public Mono<Boolean> deleteIndex() {
+        return delegate.deleteIndexAsync();
+    }
+
+    @Override
+    public Mono<Boolean> save(T t) {
+        return delegate.saveAsync(t);
+    }
+
+    @Override
+    public Mono<Boolean> saveAll(Iterable<T> iterable) {
+        return delegate.saveAllAsync(iterable);
+    }
+
+    @Override
+    public Mono<BulkResult> saveAllStream(Flux<T> flux) {
+        return delegate.saveAllStream(flux);
+    }
+
+    @Override
+    public Mono<BulkResult> bulkLoad(Flux<T> flux, boolean forceMerge) {
+        return delegate.bulkLoad(flux, forceMerge);
+    }
+
+    @Override
+    public Mono<Boolean> update(ID id, Map<String, Object> fields) {
+        return update(id, fields, null);
+    }
+
+    @Override
+    public Mono<Boolean> update(ID id, Map<String, Object> fields, String routing) {
+        return delegate.updateAsync(() -> delegate.newUpdateRequest(id, fields, routing));
+    }
+
+    @Override
+    public Mono<Boolean> update(T partial) {
+        return delegate.updateAsync(() -> delegate.newPartialUpdateRequest(partial));
+    }
+
+    @Override
+    public Mono<Boolean> upsert(T t) {
+        return delegate.updateAsync(() -> delegate.newUpsertRequest(t));
+    }
+
+    @Override
+    public Mono<Boolean> updateByScript(ID id, String script, Map<String, Object> params) {
+        return updateByScript(id, script, params, null);
+    }
+
+    @Override
+    public Mono<Boolean> updateByScript(ID id, String script, Map<String, Object> params, String routing) {
+        return delegate.updateAsync(() -> delegate.newScriptUpdateRequest(id, script, params, routing));
+    }
+
+    @Override
+    public Mono<Boolean> updateAll(Map<ID, Map<String, Object>> updates) {
+        return delegate.bulkAsync(() -> delegate.newBulkRequest(updates.entrySet(),
+                entry -> delegate.newUpdateRequest(entry.getKey(), entry.getValue(), null)));
+    }
+
+    @Override
+    public Mono<Boolean> updateAll(Iterable<T> partials) {
+        return delegate.bulkAsync(() -> delegate.newBulkRequest(partials, delegate::newPartialUpdateRequest));
+    }
+
+    @Override
+    public Mono<Boolean> upsertAll(Iterable<T> iterable) {
+        return delegate.bulkAsync(() -> delegate.newBulkRequest(iterable, delegate::newUpsertRequest));
+    }
+
+    @Override
+    public Mono<Boolean> updateAllByScript(Iterable<ID> ids, String script, Map<String, Object> params) {
+        return delegate.bulkAsync(() -> delegate.newBulkRequest(ids,
+                id -> delegate.newScriptUpdateRequest(id, script, params, null)));
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(ID id) {
+        return delegate.deleteByIdAsync(id, null);
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(ID id, String routing) {
+        return delegate.deleteByIdAsync(id, routing);
+    }
+
+    @Override
+    public Mono<Boolean> delete(T t) {
+        return delegate.deleteAsync(t);
+    }
+
+    @Override
+    public Mono<T> queryById(ID id) {
+        return delegate.queryById(id);
+    }
+
+    @Override
+    public Mono<T> queryById(ID id, String routing) {
+        return delegate.queryById(id, routing);
+    }
+
+    @Override
+    public Flux<T> queryAllById(Iterable<ID> ids) {
+        return delegate.queryAllById(ids);
+    }
+
+    @Override
+    public Flux<T> queryAllById(Iterable<ID> ids, String routing) {
+        return delegate.queryAllById(ids, routing);
+    }
+
+    @Override
+    public Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder) {
+        return delegate.queryBySourceBuilderForPageHighlight(sourceBuilder);
+    }
+
+    @Override
+    public Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder, String routing) {
+        return delegate.queryBySourceBuilderForPageHighlight(sourceBuilder, routing);
+    }
+
+    @Override
+    public Flux<PageInfo<T>> multiQuery(List<SearchSourceBuilder> sourceBuilders) {
+        return delegate.multiQuery(sourceBuilders);
+    }
+
+    @Override
+    public Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder) {
+        return delegate.streamBySourceBuilder(sourceBuilder);
+    }
+
+    @Override
+    public Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder, String routing) {
+        return delegate.streamBySourceBuilder(sourceBuilder, routing);
+    }
+
+    @Override
+    public Mono<List<String>> suggestBySingleField(String suggestField, String prefixKey) {
+        return delegate.suggestBySingleField(suggestField, prefixKey);
+    }
+
+    @Override
+    public CacheStats nearCacheStats() {
+        return delegate.nearCacheStats();
+    }
+
+    @Override
+    public List<SuggestIndexStats> localSuggestStats() {
+        return delegate.localSuggestStats();
+    }
+}
@@ -1,10 +1,16 @@
 package com.lanlinker.starter.elasticsearch.repository;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
 import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * 定义了操作Elasticsearch的CRUD的功能 <br/>
@@ -40,13 +46,174 @@ public interface Repository<T, ID> {
     boolean save(T t);
 
     /**
-     * 批量新增
+     * 批量新增。<br/>
+     * 和{@link #saveAllStream(Iterable)}一样按当前的文档数切分成多个bulk请求，被拒绝的文档会退避重试，
+     * 最终仍有文档失败时抛出异常
      *
      * @param iterable 要新增的数据
      * @return 是否新增成功
      */
     boolean saveAll(Iterable<T> iterable);
 
+    /**
+     * 缓冲新增，数据先进入缓冲区，按文档数、字节数或时间间隔合并为bulk请求异步发送，
+     * 相关阈值见 lanlinker.elasticsearch.bulk 配置
+     *
+     * @param t 要新增的数据
+     * @return 数据所在的bulk请求被确认后完成的Mono，包含是否新增成功
+     */
+    Mono<Boolean> saveBuffered(T t);
+
+    /**
+     * 缓冲批量新增，参见{@link #saveBuffered(Object)}
+     *
+     * @param iterable 要新增的数据
+     * @return 全部数据被确认后完成的Mono，包含是否全部新增成功
+     */
+    Mono<Boolean> saveAllBuffered(Iterable<T> iterable);
+
+    /**
+     * 流式批量新增，适合数据量很大的场景。<br/>
+     * 数据按 lanlinker.elasticsearch.bulk.actions 和 lanlinker.elasticsearch.bulk.size 切分成多个bulk请求，
+     * 最多同时发送 lanlinker.elasticsearch.bulk.concurrent-requests 个，单个文档失败不会中断整个流程。<br/>
+     * 开启 lanlinker.elasticsearch.bulk.adaptive 时以上两个值只是初始值：被拒绝（429）或耗时过长时减半，
+     * 持续成功时逐步增大；被拒绝的文档按指数退避单独重试
+     *
+     * @param iterable 要新增的数据
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> saveAllStream(Iterable<T> iterable);
+
+    /**
+     * 流式批量新增，参见{@link #saveAllStream(Iterable)}
+     *
+     * @param stream 要新增的数据
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> saveAllStream(Stream<T> stream);
+
+    /**
+     * 流式批量新增，参见{@link #saveAllStream(Iterable)}
+     *
+     * @param flux 要新增的数据
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> saveAllStream(Flux<T> flux);
+
+    /**
+     * 批量导入，适合初始化数据或重建索引。<br/>
+     * 先记录索引库当前的refresh_interval和number_of_replicas，改为-1和0后通过{@link #saveAllStream(Flux)}写入，
+     * 结束后恢复原来的设置并refresh；无论写入成功、失败还是被取消，设置都会被恢复。<br/>
+     * 同一个索引库同时只能有一个bulkLoad，否则后开始的会把导入时的设置当作原始设置
+     *
+     * @param iterable   要导入的数据
+     * @param forceMerge 导入成功后是否强制合并段，目标段数见 lanlinker.elasticsearch.bulk.force-merge-max-segments
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> bulkLoad(Iterable<T> iterable, boolean forceMerge);
+
+    /**
+     * 批量导入，参见{@link #bulkLoad(Iterable, boolean)}
+     *
+     * @param flux       要导入的数据
+     * @param forceMerge 导入成功后是否强制合并段
+     * @return 包含每个失败文档id的结果汇总
+     */
+    Mono<BulkResult> bulkLoad(Flux<T> flux, boolean forceMerge);
+
+    /**
+     * 局部更新，只修改fields中的字段，其它字段保持不变，文档不存在时失败。<br/>
+     * 版本冲突时的重试次数和是否检测noop见 lanlinker.elasticsearch.update 配置。
+     * 分区的实体类不知道文档所在的分区，不支持按id更新
+     *
+     * @param id     id
+     * @param fields 要修改的字段，支持嵌套对象
+     * @return 是否更新成功，内容没有变化时也返回true
+     */
+    boolean update(ID id, Map<String, Object> fields);
+
+    /**
+     * 按id局部更新指定routing的文档，只访问一个分片，参见{@link #update(Object, Map)}
+     *
+     * @param id      id
+     * @param fields  要修改的字段，支持嵌套对象
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否更新成功，内容没有变化时也返回true
+     */
+    boolean update(ID id, Map<String, Object> fields, String routing);
+
+    /**
+     * 局部更新，只写入实体类中不为null的属性，基本类型的属性总会写入。
+     * 有{@code @Routing}字段时使用其值作为routing
+     *
+     * @param partial 只设置了要修改的属性的实体类，必须有id
+     * @return 是否更新成功
+     */
+    boolean update(T partial);
+
+    /**
+     * 文档存在时用实体类的全部属性更新，不存在时新增
+     *
+     * @param t 实体类
+     * @return 是否成功
+     */
+    boolean upsert(T t);
+
+    /**
+     * 用painless脚本更新文档，例如 ctx._source.count += params.delta ，文档不存在时失败
+     *
+     * @param id     id
+     * @param script painless脚本
+     * @param params 脚本参数，可以为null
+     * @return 是否更新成功
+     */
+    boolean updateByScript(ID id, String script, Map<String, Object> params);
+
+    /**
+     * 用painless脚本更新指定routing的文档，参见{@link #updateByScript(Object, String, Map)}
+     *
+     * @param id      id
+     * @param script  painless脚本
+     * @param params  脚本参数，可以为null
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否更新成功
+     */
+    boolean updateByScript(ID id, String script, Map<String, Object> params, String routing);
+
+    /**
+     * 批量局部更新，和saveAll一样通过一个bulk请求发送，参见{@link #update(Object, Map)}
+     *
+     * @param updates id和要修改的字段
+     * @return 是否全部更新成功
+     */
+    boolean updateAll(Map<ID, Map<String, Object>> updates);
+
+    /**
+     * 批量局部更新，参见{@link #update(Object)}
+     *
+     * @param partials 只设置了要修改的属性的实体类
+     * @return 是否全部更新成功
+     */
+    boolean updateAll(Iterable<T> partials);
+
+    /**
+     * 批量upsert，参见{@link #upsert(Object)}
+     *
+     * @param iterable 实体类
+     * @return 是否全部成功
+     */
+    boolean upsertAll(Iterable<T> iterable);
+
+    /**
+     * 用同一个脚本批量更新多个文档，参见{@link #updateByScript(Object, String, Map)}
+     *
+     * @param ids    id集合
+     * @param script painless脚本
+     * @param params 脚本参数，可以为null
+     * @return 是否全部更新成功
+     */
+    boolean updateAllByScript(Iterable<ID> ids, String script, Map<String, Object> params);
+
     /**
      * 根据id删除数据
      *
@@ -55,6 +222,23 @@ public interface Repository<T, ID> {
      */
     boolean deleteById(ID id);
 
+    /**
+     * 根据id删除指定routing的数据，只访问一个分片
+     *
+     * @param id      id
+     * @param routing 写入时的routing，即{@code @Routing}字段的值
+     * @return 是否删除成功
+     */
+    boolean deleteById(ID id, String routing);
+
+    /**
+     * 删除实体类对应的文档，id和routing从实体类中读取；按时间分区时直接删除所在分区中的文档
+     *
+     * @param t 实体类
+     * @return 是否删除成功
+     */
+    boolean delete(T t);
+
     /**
      * 异步功能，根据id查询数据
      *
@@ -63,6 +247,32 @@ public interface Repository<T, ID> {
      */
     Mono<T> queryById(ID id);
 
+    /**
+     * 根据id查询指定routing的数据，只访问一个分片
+     *
+     * @param id      id
+     * @param routing 写入时的routing
+     * @return 包含实体类的Mono实例
+     */
+    Mono<T> queryById(ID id, String routing);
+
+    /**
+     * 异步功能，根据多个id一次查询数据（_mget），按id的顺序发布，不存在的文档被跳过
+     *
+     * @param ids id集合
+     * @return 逐条发布实体类的Flux
+     */
+    Flux<T> queryAllById(Iterable<ID> ids);
+
+    /**
+     * 根据多个id一次查询指定routing的数据，参见{@link #queryAllById(Iterable)}
+     *
+     * @param ids     id集合
+     * @param routing 写入时的routing
+     * @return 逐条发布实体类的Flux
+     */
+    Flux<T> queryAllById(Iterable<ID> ids, String routing);
+
 
     /**
      * 根据{@link SearchSourceBuilder}查询数据，返回分页结果{@link PageInfo}，其中的数据已经高亮处理
@@ -72,6 +282,44 @@ public interface Repository<T, ID> {
      */
     Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder);
 
+    /**
+     * 只在指定routing对应的分片上查询，参见{@link #queryBySourceBuilderForPageHighlight(SearchSourceBuilder)}
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @param routing       routing，多个值用逗号分隔
+     * @return 结果处理器处理后的的数据
+     */
+    Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder, String routing);
+
+    /**
+     * 把多个分页查询放在一次_msearch请求中发送，例如一个页面上的主结果、分面和相关推荐。<br/>
+     * 每个查询的结果和{@link #queryBySourceBuilderForPageHighlight(SearchSourceBuilder)}相同，按传入的顺序发布；
+     * 任何一个查询失败时Flux以该错误结束。同时执行的查询数由 lanlinker.elasticsearch.msearch.max-concurrent-searches 控制
+     *
+     * @param sourceBuilders 查询条件构建器
+     * @return 按顺序发布每个查询分页结果的Flux
+     */
+    Flux<PageInfo<T>> multiQuery(List<SearchSourceBuilder> sourceBuilders);
+
+    /**
+     * 根据{@link SearchSourceBuilder}流式查询全部数据，适合导出或全量扫描。<br/>
+     * 指定了排序时用search_after翻页，否则用scroll翻页；开始消费一页时才预取下一页，内存中最多保留两页，
+     * 结束或取消时清理scroll上下文。sourceBuilder中的size作为每页条数，未指定或不大于0时为1000
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @return 逐条发布数据的Flux
+     */
+    Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder);
+
+    /**
+     * 只在指定routing对应的分片上流式查询，参见{@link #streamBySourceBuilder(SearchSourceBuilder)}
+     *
+     * @param sourceBuilder 查询条件构建器
+     * @param routing       routing，多个值用逗号分隔
+     * @return 逐条发布数据的Flux
+     */
+    Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder, String routing);
+
     /**
      * 根据指定的prefixKey对单个指定suggestField 做自动补全，返回推荐结果的列表{@link List}
      * @param suggestField 补全字段
@@ -79,4 +327,18 @@ public interface Repository<T, ID> {
      * @return 返回推荐结果列表{@link List}
      */
     Mono<List<String>> suggestBySingleField(String suggestField, String prefixKey);
+
+    /**
+     * queryById本地缓存的命中统计，没有开启缓存时所有数值为0
+     *
+     * @return 缓存统计
+     */
+    CacheStats nearCacheStats();
+
+    /**
+     * 本地补全索引的状态，包括内存占用和距离上次刷新的时间，没有开启本地补全时为空
+     *
+     * @return 每个补全字段的状态
+     */
+    List<SuggestIndexStats> localSuggestStats();
 }
@@ -1,77 +1,139 @@
 package com.lanlinker.starter.elasticsearch.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.lanlinker.starter.elasticsearch.annotaions.Id;
-import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.lanlinker.starter.elasticsearch.codec.DecodeScheduler;
+import com.lanlinker.starter.elasticsearch.codec.EntityCodec;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
 import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
-import org.apache.commons.beanutils.BeanUtils;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadata;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadataRegistry;
+import com.lanlinker.starter.elasticsearch.metrics.RepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.node.HedgedReads;
+import com.lanlinker.starter.elasticsearch.partition.IndexPartitioner;
+import com.lanlinker.starter.elasticsearch.query.DerivedQuery;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeResponse;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.DeleteByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+import org.elasticsearch.search.suggest.Suggest;
 import org.elasticsearch.search.suggest.SuggestBuilder;
 import org.elasticsearch.search.suggest.SuggestBuilders;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
 import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
 
 import java.io.IOException;
-import java.lang.reflect.*;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * @author hc
  * @date 2021/7/9 10:57
  */
-public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHandler {
+public class RepositoryHandler<T, ID> implements Repository<T, ID>, AutoCloseable {
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * 流式查询时每页的默认条数
+     */
+    private static final int STREAM_PAGE_SIZE = 1000;
 
     /**
-     * Elasticsearch的客户端
+     * scroll上下文的保持时间
      */
-    private final RestHighLevelClient client;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
 
     /**
-     * id字段名称
+     * 批量导入期间的索引库设置：不refresh，不写副本
      */
-    private String id;
+    private static final Settings BULK_LOAD_SETTINGS = Settings.builder()
+            .put("index.refresh_interval", "-1")
+            .put("index.number_of_replicas", 0)
+            .build();
 
     /**
-     * id字段
+     * Elasticsearch的客户端
      */
-    private Field idField;
+    private final RestHighLevelClient client;
 
     /**
      * 索引库名称
      */
-    private String indexName;
+    private final String indexName;
 
     /**
      * T对应的字节码
@@ -82,62 +144,126 @@ public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHa
      */
     private final Class<ID> idType;
 
-    public RepositoryHandler(RestHighLevelClient client, Class<?> repositoryInterface){
+    /**
+     * lanlinker.elasticsearch 开头的配置
+     */
+    private final ElasticsearchProperties properties;
+
+    /**
+     * T对应的元信息
+     */
+    private final EntityMetadata<T> metadata;
+
+    /**
+     * T对应的编解码器
+     */
+    private final EntityCodec<T> codec;
+
+    /**
+     * 缓冲批量写入器，第一次使用缓冲写入时才创建
+     */
+    private volatile BufferedBulkWriter bufferedWriter;
+
+    /**
+     * 流式批量写入器
+     */
+    private final StreamingBulkIngester bulkIngester;
+
+    /**
+     * queryById的本地缓存，没有开启时为null
+     */
+    private final NearCache nearCache;
+
+    /**
+     * 把queryById合并为_mget的合并器，没有开启时为null
+     */
+    private final RequestBatcher<String, MultiGetItemResponse> getBatcher;
+
+    /**
+     * 把分页查询合并为_msearch的合并器，没有开启时为null
+     */
+    private final RequestBatcher<SearchRequest, MultiSearchResponse.Item> searchBatcher;
+
+    /**
+     * 每个补全字段的本地补全索引，第一次补全该字段时创建
+     */
+    private final ConcurrentMap<String, LocalSuggester> localSuggesters = new ConcurrentHashMap<>();
+
+    /**
+     * 对冲读，没有开启时为null
+     */
+    private final HedgedReads hedgedReads;
+
+    /**
+     * 响应解码的线程池，没有开启时为null，解码在IO线程上执行
+     */
+    private final DecodeScheduler decodeScheduler;
+
+    /**
+     * 按时间分区或rollover时决定读写哪些索引库，没有开启时为null
+     */
+    private final IndexPartitioner<T> partitioner;
+
+    /**
+     * 监控指标
+     */
+    private final RepositoryMetrics metrics;
+
+    /**
+     * Repository接口的名称，作为指标的标签
+     */
+    private final String repositoryName;
+
+    public RepositoryHandler(RestHighLevelClient client, Class<?> repositoryInterface, ElasticsearchProperties properties){
+        this(client, repositoryInterface, properties, null, null, RepositoryMetrics.NOOP);
+    }
+
+    @SuppressWarnings("unchecked")
+    public RepositoryHandler(RestHighLevelClient client, Class<?> repositoryInterface, ElasticsearchProperties properties,
+                             HedgedReads hedgedReads, DecodeScheduler decodeScheduler, RepositoryMetrics metrics) {
         this.client = client;
-        this.indexName = indexName;
+        this.hedgedReads = hedgedReads;
+        this.decodeScheduler = decodeScheduler;
+        this.metrics = metrics;
+        this.repositoryName = repositoryInterface.getSimpleName();
+        this.properties = properties;
+        this.bulkIngester = new StreamingBulkIngester(client, properties.getBulk(), this::recordBulk);
         // 参数的接口应该是这样的：interface MyRepository extends Repository<IndexData, Long>
-        // 反射获取接口声明的泛型
-        ParameterizedType parameterizedType = (ParameterizedType) repositoryInterface.getGenericInterfaces()[0];
+        // 反射获取接口声明的泛型，Repository不一定是第一个父接口
+        ParameterizedType parameterizedType = repositoryType(repositoryInterface);
         // 获取泛型对应的真实类型,这里有2个，<IndexData, Long>
         Type[] actualType = parameterizedType.getActualTypeArguments();
         // 我们取数组的第一个，肯定是T的类型，即实体类类型
         this.clazz = (Class<T>) actualType[0];
         // 我们取数组的第一个，肯定是ID的类型，即ID的类型
         this.idType = (Class<ID>) actualType[1];
+        this.metadata = EntityMetadataRegistry.get(clazz);
+        this.codec = new EntityCodec<>(metadata, properties.getContentType());
+        // 索引库名称、id字段等都由实体类的元信息提供
+        this.indexName = metadata.getIndexName();
+        this.partitioner = IndexPartitioner.create(clazz, indexName, properties.getPartition());
+        this.nearCache = NearCache.create(clazz, properties.getCache());
+        ElasticsearchProperties.Mget mget = properties.getMget();
+        // 分区时不知道文档在哪个索引库，按id读取改为ids查询，不再合并为_mget
+        this.getBatcher = mget.isBatching() && partitioner == null
+                ? new RequestBatcher<>(mget.getWindow(), mget.getMaxBatchSize(), ids -> multiGet(ids, null)) : null;
+        ElasticsearchProperties.Msearch msearch = properties.getMsearch();
+        // 每个查询自带索引库和routing，分区时也可以合并
+        this.searchBatcher = msearch.isBatching() ? new RequestBatcher<>(msearch.getWindow(), msearch.getMaxBatchSize(),
+                requests -> multiSearch("queryBySourceBuilderForPageHighlight", requests)) : null;
 
-        // 利用反射获取注解
-        if (clazz.isAnnotationPresent(Index.class)) {
-            // 获取@Index注解
-            Index indices = clazz.getAnnotation(Index.class);
-            // 获取索引库及类型名称
-            indexName = indices.value();
-        } else {
-            // 没有注解，我们用类名称首字母小写，作为索引库名称
-            String simpleName = clazz.getSimpleName();
-            indexName = simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
-        }
-
-
-        // 获取带有@Id注解的字段：
-        // 获取所有字段
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            field.setAccessible(true);
-            // 判断是否包含@Id注解
-            if (field.isAnnotationPresent(Id.class)) {
-                id = field.getName();
-                idField = field;
-            }
-        }
-        // 没有发现包含@Id的字段，抛出异常
-        if (StringUtils.isBlank(id)) {
-            // 没有找到id字段，则抛出异常
-            throw new RuntimeException("实体类中必须有一个字段标记@IndexID注解。");
+        metrics.registerBulkGauges(repositoryName, indexName,
+                bulkIngester::currentActions, bulkIngester::currentConcurrency);
+        if (decodeScheduler != null) {
+            metrics.registerDecodeGauges(decodeScheduler::queued, decodeScheduler::active);
         }
     }
 
-    @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        // object 方法，走原生方法
-        if (Object.class.equals(method.getDeclaringClass())) {
-            return method.invoke(this,args);
-        }
-        // 其它走本地代理
-        return method.invoke(this, args);
-    }
-
     @Override
     public Boolean createIndex(String source) {
+        if (partitioner != null) {
+            return partitioner.createIndex(client, source).block();
+        }
         try {
             // 发起请求，准备创建索引库
             CreateIndexResponse response = client.indices().create(
@@ -152,6 +278,9 @@ public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHa
 
     @Override
     public Boolean deleteIndex() {
+        if (partitioner != null) {
+            return partitioner.deleteIndex(client).block();
+        }
         try {
             // 发起请求，删除索引库
             AcknowledgedResponse response = client.indices()
@@ -166,18 +295,16 @@ public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHa
     @Override
     public boolean save(T t) {
         try {
-            // 从对象中获取id
-            String id = getID(t);
-            // 把对象转为JSON
-            String json = toJson(t);
             // 准备请求
-            IndexRequest request = new IndexRequest(indexName)
-                    .id(id)
-                    .source(json, XContentType.JSON);
-            // 发出请求
-            IndexResponse response = client.index(request, RequestOptions.DEFAULT);
-            // 判断是否有失败
-            return response.getShardInfo().getFailed() == 0;
+            IndexRequest request = newIndexRequest(t);
+            try {
+                // 发出请求
+                IndexResponse response = client.index(request, RequestOptions.DEFAULT);
+                // 判断是否有失败
+                return response.getShardInfo().getFailed() == 0;
+            } finally {
+                evict(request.id());
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -186,64 +313,222 @@ public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHa
     @Override
     public boolean saveAll(Iterable<T> iterable) {
         // 创建批处理请求
-        BulkRequest request = new BulkRequest();
-        // 遍历要处理的文档集合，然后创建成IndexRequest，逐个添加到BulkRequest中
-        iterable.forEach(t -> request.add(new IndexRequest(indexName).id(getID(t)).source(toJson(t), XContentType.JSON)));
+        return bulk(newBulkRequest(iterable));
+    }
+
+    /**
+     * 同步发送批处理请求，saveAll和批量更新共用
+     */
+    private boolean bulk(BulkRequest request) {
+        return bulkAsync(() -> request).block();
+    }
+
+    @Override
+    public Mono<Boolean> saveBuffered(T t) {
+        // 每次订阅都创建新的请求，交给缓冲写入器
+        return Mono.defer(() -> {
+            IndexRequest request = newIndexRequest(t);
+            return bufferedWriter().add(request).doFinally(signal -> evict(request.id()));
+        });
+    }
+
+    @Override
+    public Mono<Boolean> saveAllBuffered(Iterable<T> iterable) {
+        // 逐个放入缓冲区，全部确认后合并结果
+        return Flux.fromIterable(iterable)
+                .flatMap(this::saveBuffered)
+                .all(Boolean::booleanValue);
+    }
+
+    @Override
+    public Mono<BulkResult> saveAllStream(Iterable<T> iterable) {
+        return saveAllStream(Flux.fromIterable(iterable));
+    }
+
+    @Override
+    public Mono<BulkResult> saveAllStream(Stream<T> stream) {
+        return saveAllStream(Flux.fromStream(stream));
+    }
+
+    @Override
+    public Mono<BulkResult> saveAllStream(Flux<T> flux) {
+        // 文档在被切分到分片时才序列化，不会一次性全部放进内存
+        return bulkIngester.ingest(flux.map(this::newIndexRequest))
+                // 写入的文档可能很多，结束后清空整个缓存
+                .doFinally(signal -> evictAll());
+    }
+
+    @Override
+    public Mono<BulkResult> bulkLoad(Iterable<T> iterable, boolean forceMerge) {
+        return bulkLoad(Flux.fromIterable(iterable), forceMerge);
+    }
+
+    @Override
+    public Mono<BulkResult> bulkLoad(Flux<T> flux, boolean forceMerge) {
+        // 分区时只调整已经存在的分区，导入过程中新建的分区使用模板中的设置
+        String[] indices = partitioner == null ? new String[]{indexName} : partitioner.allIndices();
+        // 先记录原始设置，再修改设置和写入，修改失败时也能恢复
+        return Mono.usingWhen(snapshotSettings(indices),
+                snapshot -> updateSettings(new UpdateSettingsRequest(indices).settings(BULK_LOAD_SETTINGS))
+                        .then(saveAllStream(flux)),
+                snapshot -> restoreSettings(snapshot)
+                        .then(refresh(indices))
+                        .then(forceMerge ? forceMerge(indices) : Mono.empty()),
+                (snapshot, e) -> restoreSettings(snapshot),
+                this::restoreSettings);
+    }
+
+    @Override
+    public boolean update(ID id, Map<String, Object> fields) {
+        return update(id, fields, null);
+    }
+
+    @Override
+    public boolean update(ID id, Map<String, Object> fields, String routing) {
+        return update(newUpdateRequest(id, fields, routing));
+    }
+
+    @Override
+    public boolean update(T partial) {
+        return update(newPartialUpdateRequest(partial));
+    }
+
+    @Override
+    public boolean upsert(T t) {
+        return update(newUpsertRequest(t));
+    }
+
+    @Override
+    public boolean updateByScript(ID id, String script, Map<String, Object> params) {
+        return updateByScript(id, script, params, null);
+    }
+
+    @Override
+    public boolean updateByScript(ID id, String script, Map<String, Object> params, String routing) {
+        return update(newScriptUpdateRequest(id, script, params, routing));
+    }
+
+    @Override
+    public boolean updateAll(Map<ID, Map<String, Object>> updates) {
+        return bulk(newBulkRequest(updates.entrySet(), entry -> newUpdateRequest(entry.getKey(), entry.getValue(), null)));
+    }
+
+    @Override
+    public boolean updateAll(Iterable<T> partials) {
+        return bulk(newBulkRequest(partials, this::newPartialUpdateRequest));
+    }
+
+    @Override
+    public boolean upsertAll(Iterable<T> iterable) {
+        return bulk(newBulkRequest(iterable, this::newUpsertRequest));
+    }
+
+    @Override
+    public boolean updateAllByScript(Iterable<ID> ids, String script, Map<String, Object> params) {
+        return bulk(newBulkRequest(ids, id -> newScriptUpdateRequest(id, script, params, null)));
+    }
+
+    private boolean update(UpdateRequest request) {
         try {
-            // 发送批处理请求
-            BulkResponse bulkResponse = client.bulk(request, RequestOptions.DEFAULT);
-            // 判断结果
-            if(bulkResponse.status() != RestStatus.OK){
-                return false;
-            }
-            if(bulkResponse.hasFailures()){
-                throw new RuntimeException(bulkResponse.buildFailureMessage());
-            }
-            return true;
+            UpdateResponse response = client.update(request, RequestOptions.DEFAULT);
+            // 内容没有变化（noop）时没有分片参与，同样视为成功
+            return response.getShardInfo().getFailed() == 0;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            evict(request.id());
         }
     }
 
     @Override
     public boolean deleteById(ID id) {
+        return deleteById(id, null);
+    }
+
+    @Override
+    public boolean deleteById(ID id, String routing) {
+        return delete(partitioner == null ? indexName : null, id.toString(), routing);
+    }
+
+    @Override
+    public boolean delete(T t) {
+        return delete(documentIndex(t), getID(t), metadata.getRouting(t));
+    }
+
+    /**
+     * 删除文档
+     *
+     * @param index 文档所在的索引库，为null时文档可能位于任何一个分区中，先refresh所有分区再按id删除
+     */
+    private boolean delete(String index, String id, String routing) {
         try {
+            if (index == null) {
+                client.indices().refresh(refreshAllRequest(), RequestOptions.DEFAULT);
+                return isSucceeded(client.deleteByQuery(deleteByIdRequest(id, routing), RequestOptions.DEFAULT));
+            }
             // 准备请求
-            DeleteRequest request = new DeleteRequest(indexName, id.toString());
+            DeleteRequest request = new DeleteRequest(index, id).routing(routing);
             // 发出请求
             DeleteResponse response = client.delete(request, RequestOptions.DEFAULT);
             // 判断是否有失败
             return response.getShardInfo().getFailed() == 0;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            evict(id);
         }
     }
 
     @Override
     public Mono<T> queryById(ID id) {
-        // 通过Mono.create函数来构建一个Mono，sink用来发布查询到的数据或失败结果
-        return Mono.create(sink -> {
-            // 开启异步查询
-            client.getAsync(
-                    new GetRequest(indexName, id.toString()),
-                    RequestOptions.DEFAULT,
-                    // 异步回调
-                    new ActionListener<GetResponse>() {
-                        @Override
-                        public void onResponse(GetResponse response) {
-                            // 判断查询是否成功
-                            if (!response.isExists()) {
-                                // 不成功则返回错误
-                                sink.error(new RuntimeException("文档不存在！"));
-                            }
-                            // 成功时的回调，
-                            sink.success(fromJson(response.getSourceAsString()));
-                        }
+        return queryById(id, null);
+    }
 
-                        @Override
-                        public void onFailure(Exception e) {
-                            // 失败时的回调
-                            sink.error(e);
+    @Override
+    public Mono<T> queryById(ID id, String routing) {
+        String key = id.toString();
+        // 开启缓存时先查缓存，同一个id并发未命中只发起一次GET；缓存只按id区分，指定routing时不经过缓存
+        Mono<BytesReference> source = nearCache == null || routing != null ? getSource(key, routing)
+                : nearCache.get(key, k -> getSource(k, routing));
+        return decodeOn(source).map(codec::decode);
+    }
+
+    @Override
+    public Flux<T> queryAllById(Iterable<ID> ids) {
+        return queryAllById(ids, null);
+    }
+
+    @Override
+    public Flux<T> queryAllById(Iterable<ID> ids, String routing) {
+        return Flux.defer(() -> {
+            List<String> keys = new ArrayList<>();
+            ids.forEach(id -> keys.add(id.toString()));
+            if (keys.isEmpty()) {
+                return Flux.empty();
+            }
+            if (partitioner != null) {
+                // 按传入id的顺序返回，不存在的文档跳过
+                return decodeOn(searchByIds(keys, routing)
+                        .collectMap(SearchHit::getId, SearchHit::getSourceRef))
+                        .flatMapIterable(sources -> {
+                            List<T> list = new ArrayList<>(keys.size());
+                            for (String key : keys) {
+                                BytesReference source = sources.get(key);
+                                if (source != null) {
+                                    list.add(codec.decode(source));
+                                }
+                            }
+                            return list;
+                        });
+            }
+            return decodeOn(multiGet(keys, routing))
+                    .flatMapIterable(Function.identity())
+                    .handle((item, sink) -> {
+                        if (item.isFailed()) {
+                            sink.error(item.getFailure().getFailure());
+                        } else if (item.getResponse().isExists()) {
+                            // 不存在的文档直接跳过
+                            sink.next(codec.decode(item.getResponse().getSourceInternal()));
                         }
                     });
         });
@@ -251,137 +536,879 @@ public class RepositoryHandler<T, ID> implements Repository<T, ID>, InvocationHa
 
     @Override
     public Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder) {
-        return Mono.create(sink -> {
-            // 准备搜索请求，并接受用户提交的查询参数
-            SearchRequest request = new SearchRequest(indexName).source(sourceBuilder);
-            // 发送异步请求
-            client.searchAsync(request, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
-                @Override
-                public void onResponse(SearchResponse response) {
+        return queryBySourceBuilderForPageHighlight(sourceBuilder, null);
+    }
+
+    @Override
+    public Mono<PageInfo<T>> queryBySourceBuilderForPageHighlight(SearchSourceBuilder sourceBuilder, String routing) {
+        // 准备搜索请求，并接受用户提交的查询参数
+        SearchRequest request = searchRequest(sourceBuilder, routing);
+        Mono<SearchResponse> search;
+        if (searchBatcher != null) {
+            // 开启合并时和同一个窗口内的其它分页查询一起通过_msearch发送
+            search = searchBatcher.submit(request).handle(this::itemResponse);
+        } else {
+            // 发送异步请求，开启对冲读时可能同时发往两个节点
+            search = timedSearch("queryBySourceBuilderForPageHighlight", read((ActionListener<SearchResponse> listener) ->
+                    client.searchAsync(request, RequestOptions.DEFAULT, listener)));
+        }
+        return decodeOn(search).handle(this::toPage);
+    }
+
+    @Override
+    public Flux<PageInfo<T>> multiQuery(List<SearchSourceBuilder> sourceBuilders) {
+        return Flux.defer(() -> {
+            if (sourceBuilders.isEmpty()) {
+                return Flux.empty();
+            }
+            List<SearchRequest> requests = new ArrayList<>(sourceBuilders.size());
+            sourceBuilders.forEach(sourceBuilder -> requests.add(searchRequest(sourceBuilder, null)));
+            return decodeOn(multiSearch("multiQuery", requests))
+                    .flatMapIterable(Function.identity())
+                    .<SearchResponse>handle(this::itemResponse)
+                    .handle(this::toPage);
+        });
+    }
+
+    /**
+     * 校验搜索响应，把命中的结果反序列化为T类型，并注入高亮，发布分页结果
+     */
+    private void toPage(SearchResponse response, SynchronousSink<PageInfo<T>> sink) {
+        // 成功的回调函数
+        if (response.status() != RestStatus.OK) {
+            sink.error(new RuntimeException("查询失败"));
+            return;
+        }
+        // 获取命中的结果
+        SearchHits searchHits = response.getHits();
+        // 总条数
+        long total = searchHits.getTotalHits().value;
+        sink.next(new PageInfo<>(total, toEntities(searchHits)));
+    }
+
+    /**
+     * _msearch中单个查询失败时以该错误结束，否则发布其搜索响应
+     */
+    private void itemResponse(MultiSearchResponse.Item item, SynchronousSink<SearchResponse> sink) {
+        if (item.isFailure()) {
+            sink.error(item.getFailure());
+        } else {
+            sink.next(item.getResponse());
+        }
+    }
+
+    @Override
+    public Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder) {
+        return streamBySourceBuilder(sourceBuilder, null);
+    }
+
+    @Override
+    public Flux<T> streamBySourceBuilder(SearchSourceBuilder sourceBuilder, String routing) {
+        // 复制一份，避免修改调用方的查询条件
+        SearchSourceBuilder source = sourceBuilder.shallowCopy().from(0);
+        if (source.size() <= 0) {
+            source.size(STREAM_PAGE_SIZE);
+        }
+        // 指定了排序就用search_after翻页，否则用scroll
+        return CollectionUtils.isEmpty(source.sorts()) ? scroll(source, routing) : searchAfter(source, routing);
+    }
+
+    @Override
+    public Mono<List<String>> suggestBySingleField(String suggestField, String prefixKey) {
+        ElasticsearchProperties.Suggest suggest = properties.getSuggest();
+        if (suggest.isLocal()) {
+            // 先查本地补全索引，没有结果时再查询集群
+            List<String> local = localSuggesters.computeIfAbsent(suggestField, field -> {
+                LocalSuggester suggester = new LocalSuggester(field, suggest, scrollHits(new SearchSourceBuilder()
+                        .fetchSource(field.split("\\.")[0], null).size(STREAM_PAGE_SIZE), null));
+                metrics.registerSuggestMeters(repositoryName, indexName, field, suggester::stats);
+                return suggester;
+            }).lookup(prefixKey);
+            if (local != null) {
+                return Mono.just(local);
+            }
+        }
+        // 准备查询条件
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.suggest(new SuggestBuilder()
+                .addSuggestion("mySuggestion",
+                        SuggestBuilders.completionSuggestion(suggestField).prefix(prefixKey)
+                                .size(suggest.getSize()).skipDuplicates(true)));
+        // 准备请求对象
+        SearchRequest request = searchRequest(sourceBuilder, null);
+        // 发送异步请求
+        return decodeOn(timedSearch("suggestBySingleField", onDemand((ActionListener<SearchResponse> listener) ->
+                client.searchAsync(request, RequestOptions.DEFAULT, listener))))
+                .handle((response, sink) -> {
                     // 成功的回调函数
                     if (response.status() != RestStatus.OK) {
                         sink.error(new RuntimeException("查询失败"));
+                        return;
                     }
-                    // 处理返回结果
-                    // 获取命中的结果
+                    // 处理结果，发布数据
+                    sink.next(handleSuggestResponse(response));
+                });
+    }
+
+    /**
+     * 编译接口中自定义的查询方法，例如findByTitleAndPriceBetween，创建代理时每个方法只调用一次。<br/>
+     * 返回的函数每次调用只把参数绑定到预先编译好的请求体中，通过低级客户端发送
+     *
+     * @param method 查询方法
+     * @return 绑定参数并执行查询的函数
+     */
+    public Function<Object[], Object> derivedQuery(Method method) {
+        DerivedQuery query = DerivedQuery.parse(method, clazz);
+        String fixedEndpoint = "/" + indexName + "/" + query.getEndpoint();
+        // 分区时根据参数中分区字段的范围决定查询哪些分区
+        Function<Object[], String> endpoint = partitioner == null ? args -> fixedEndpoint
+                : args -> "/" + String.join(",", partitioner.searchIndices(query, args)) + "/" + query.getEndpoint()
+                + IndexPartitioner.INDICES_OPTIONS_PARAMS;
+        String name = method.getName();
+        switch (query.getResultType()) {
+            case COUNT:
+                return args -> performRequest(endpoint.apply(args), query, args).map(RepositoryHandler::parseCount);
+            case EXISTS:
+                return args -> performRequest(endpoint.apply(args), query, args).map(response -> parseCount(response) > 0);
+            case ONE:
+                return args -> search(name, endpoint.apply(args), query, args).flatMap(response -> {
+                    SearchHit[] hits = response.getHits().getHits();
+                    return hits.length == 0 ? Mono.empty() : Mono.justOrEmpty(toEntity(hits[0]));
+                });
+            case MANY:
+                return args -> search(name, endpoint.apply(args), query, args)
+                        .flatMapIterable(response -> Arrays.asList(response.getHits().getHits()))
+                        .map(this::toEntity);
+            case LIST:
+                return args -> search(name, endpoint.apply(args), query, args)
+                        .map(response -> toEntities(response.getHits()));
+            case PAGE:
+                return args -> search(name, endpoint.apply(args), query, args).map(response -> {
                     SearchHits searchHits = response.getHits();
-                    // 总条数
-                    long total = searchHits.getTotalHits().value;
-                    // 数据
-                    SearchHit[] hits = searchHits.getHits();
-                    // 处理数据
-                    List<T> list = new ArrayList<>(hits.length);
-                    for (SearchHit hit : hits) {
-                        T t = null;
-                        try {
-                            // 把查询到的json反序列化为T类型
-                            t = mapper.readValue(hit.getSourceAsString(), clazz);
-                        } catch (IOException e) {
-                            sink.error(e);
-                        }
-                        list.add(t);
-                        // 获取高亮结果的集合
-                        Map<String, HighlightField> highlightFields = hit.getHighlightFields();
-                        // 判断是否有高亮
-                        if (!CollectionUtils.isEmpty(highlightFields)) {
-                            // 遍历高亮字段
-                            for (HighlightField highlightField : highlightFields.values()) {
-                                // 获取字段名称
-                                String fieldName = highlightField.getName();
-                                // 获取高亮值
-                                String value = StringUtils.join(highlightField.getFragments());
-                                try {
-                                    // 把高亮值注入 t 中
-                                    BeanUtils.setProperty(t, fieldName, value);
-                                } catch (Exception e) {
-                                    sink.error(e);
-                                }
+                    return new PageInfo<>(searchHits.getTotalHits().value, toEntities(searchHits));
+                });
+            default:
+                throw new IllegalStateException(query.getResultType().name());
+        }
+    }
+
+    /**
+     * 索引库名称
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public CacheStats nearCacheStats() {
+        return nearCache == null ? CacheStats.empty() : nearCache.stats();
+    }
+
+    @Override
+    public List<SuggestIndexStats> localSuggestStats() {
+        List<SuggestIndexStats> stats = new ArrayList<>(localSuggesters.size());
+        localSuggesters.values().forEach(suggester -> stats.add(suggester.stats()));
+        return stats;
+    }
+
+    /**
+     * {@link #createIndex(String)}的异步版本，供{@link ReactiveRepositoryHandler}使用
+     */
+    Mono<Boolean> createIndexAsync(String source) {
+        if (partitioner != null) {
+            return partitioner.createIndex(client, source);
+        }
+        return onDemand((ActionListener<CreateIndexResponse> listener) -> client.indices().createAsync(
+                new CreateIndexRequest(indexName).source(source, XContentType.JSON), RequestOptions.DEFAULT, listener))
+                .map(CreateIndexResponse::isAcknowledged);
+    }
+
+    /**
+     * {@link #deleteIndex()}的异步版本
+     */
+    Mono<Boolean> deleteIndexAsync() {
+        if (partitioner != null) {
+            return partitioner.deleteIndex(client);
+        }
+        return onDemand((ActionListener<AcknowledgedResponse> listener) -> client.indices().deleteAsync(
+                new DeleteIndexRequest(indexName), RequestOptions.DEFAULT, listener))
+                .map(AcknowledgedResponse::isAcknowledged);
+    }
+
+    /**
+     * {@link #save(Object)}的异步版本
+     */
+    Mono<Boolean> saveAsync(T t) {
+        return Mono.defer(() -> {
+            IndexRequest request = newIndexRequest(t);
+            return onDemand((ActionListener<IndexResponse> listener) ->
+                    client.indexAsync(request, RequestOptions.DEFAULT, listener))
+                    // 判断是否有失败
+                    .map(response -> response.getShardInfo().getFailed() == 0)
+                    .doFinally(signal -> evict(request.id()));
+        });
+    }
+
+    /**
+     * {@link #saveAll(Iterable)}的异步版本
+     */
+    Mono<Boolean> saveAllAsync(Iterable<T> iterable) {
+        return bulkAsync(() -> newBulkRequest(iterable));
+    }
+
+    /**
+     * 异步发送批处理请求，每次订阅都重新创建请求，saveAll和批量更新共用。<br/>
+     * 交给流式批量写入器按当前的文档数切分发送，被拒绝的文档会退避重试，最终仍有失败时抛出异常
+     */
+    Mono<Boolean> bulkAsync(Supplier<BulkRequest> requestSupplier) {
+        return Mono.defer(() -> {
+            BulkRequest request = requestSupplier.get();
+            return bulkIngester.ingest(Flux.fromIterable(request.requests()))
+                    .doFinally(signal -> request.requests().forEach(r -> evict(r.id())));
+        }).handle((result, sink) -> {
+            // 判断结果
+            if (result.isSuccess()) {
+                sink.next(true);
+            } else {
+                StringBuilder message = new StringBuilder("failure in bulk execution:");
+                result.getFailures().forEach((id, failure) ->
+                        message.append("\n[").append(id).append("]: ").append(failure));
+                sink.error(new RuntimeException(message.toString()));
+            }
+        });
+    }
+
+    /**
+     * 异步发送更新请求，每次订阅都重新创建请求，供{@link ReactiveRepositoryHandler}的各个更新方法使用
+     */
+    Mono<Boolean> updateAsync(Supplier<UpdateRequest> requestSupplier) {
+        return Mono.defer(() -> {
+            UpdateRequest request = requestSupplier.get();
+            return onDemand((ActionListener<UpdateResponse> listener) ->
+                    client.updateAsync(request, RequestOptions.DEFAULT, listener))
+                    .map(response -> response.getShardInfo().getFailed() == 0)
+                    .doFinally(signal -> evict(request.id()));
+        });
+    }
+
+    /**
+     * {@link #deleteById(Object, String)}的异步版本
+     */
+    Mono<Boolean> deleteByIdAsync(ID id, String routing) {
+        return deleteAsync(partitioner == null ? indexName : null, id.toString(), routing);
+    }
+
+    /**
+     * {@link #delete(Object)}的异步版本
+     */
+    Mono<Boolean> deleteAsync(T t) {
+        return Mono.defer(() -> deleteAsync(documentIndex(t), getID(t), metadata.getRouting(t)));
+    }
+
+    private Mono<Boolean> deleteAsync(String index, String id, String routing) {
+        if (index == null) {
+            return refresh(partitioner.allIndices())
+                    .then(onDemand((ActionListener<BulkByScrollResponse> listener) ->
+                            client.deleteByQueryAsync(deleteByIdRequest(id, routing), RequestOptions.DEFAULT, listener)))
+                    .map(RepositoryHandler::isSucceeded)
+                    .doFinally(signal -> evict(id));
+        }
+        return onDemand((ActionListener<DeleteResponse> listener) ->
+                client.deleteAsync(new DeleteRequest(index, id).routing(routing), RequestOptions.DEFAULT, listener))
+                .map(response -> response.getShardInfo().getFailed() == 0)
+                .doFinally(signal -> evict(id));
+    }
+
+    /**
+     * 释放处理器持有的资源，缓冲区中尚未发送的数据会被发送出去。<br/>
+     * 等待在途请求时被中断会提前返回，并保留线程的中断状态
+     */
+    @Override
+    public void close() {
+        localSuggesters.values().forEach(LocalSuggester::close);
+        if (bufferedWriter != null) {
+            bufferedWriter.close();
+        }
+    }
+
+    /**
+     * 记录每个索引库中会被bulkLoad修改的设置，没有显式设置的记为null，恢复时回到默认值
+     */
+    private Mono<Map<String, Settings>> snapshotSettings(String[] indices) {
+        GetSettingsRequest request = new GetSettingsRequest().indices(indices);
+        if (partitioner != null) {
+            request.indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        }
+        return onDemand((ActionListener<GetSettingsResponse> listener) ->
+                client.indices().getSettingsAsync(request, RequestOptions.DEFAULT, listener))
+                .map(response -> {
+                    Map<String, Settings> snapshot = new LinkedHashMap<>();
+                    response.getIndexToSettings().keysIt().forEachRemaining(index -> {
+                        Settings.Builder settings = Settings.builder();
+                        for (String key : BULK_LOAD_SETTINGS.keySet()) {
+                            String value = response.getSetting(index, key);
+                            if (value == null) {
+                                settings.putNull(key);
+                            } else {
+                                settings.put(key, value);
                             }
                         }
+                        snapshot.put(index, settings.build());
+                    });
+                    return snapshot;
+                });
+    }
+
+    /**
+     * 恢复bulkLoad之前的设置，原始设置相同的索引库合并为一个请求
+     */
+    private Mono<Void> restoreSettings(Map<String, Settings> snapshot) {
+        Map<Settings, List<String>> groups = new LinkedHashMap<>();
+        snapshot.forEach((index, settings) -> groups.computeIfAbsent(settings, key -> new ArrayList<>()).add(index));
+        return Flux.fromIterable(groups.entrySet())
+                .concatMap(group -> updateSettings(new UpdateSettingsRequest(group.getValue().toArray(new String[0]))
+                        .settings(group.getKey())))
+                .then();
+    }
+
+    private Mono<Void> updateSettings(UpdateSettingsRequest request) {
+        if (partitioner != null) {
+            request.indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        }
+        return onDemand((ActionListener<AcknowledgedResponse> listener) ->
+                client.indices().putSettingsAsync(request, RequestOptions.DEFAULT, listener))
+                .then();
+    }
+
+    private Mono<Void> refresh(String[] indices) {
+        RefreshRequest request = new RefreshRequest(indices);
+        if (partitioner != null) {
+            request.indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        }
+        return onDemand((ActionListener<RefreshResponse> listener) ->
+                client.indices().refreshAsync(request, RequestOptions.DEFAULT, listener))
+                .then();
+    }
+
+    private Mono<Void> forceMerge(String[] indices) {
+        ForceMergeRequest request = new ForceMergeRequest(indices)
+                .maxNumSegments(properties.getBulk().getForceMergeMaxSegments());
+        if (partitioner != null) {
+            request.indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        }
+        return onDemand((ActionListener<ForceMergeResponse> listener) ->
+                client.indices().forcemergeAsync(request, RequestOptions.DEFAULT, listener))
+                .then();
+    }
+
+    /**
+     * 根据id查询文档的源数据，开启合并且没有指定routing时和同一窗口内的其它id一起通过_mget查询
+     */
+    private Mono<BytesReference> getSource(String id, String routing) {
+        if (partitioner != null) {
+            return searchByIds(Collections.singletonList(id), routing)
+                    .next()
+                    .map(SearchHit::getSourceRef)
+                    .switchIfEmpty(Mono.error(() -> new RuntimeException("文档不存在！")));
+        }
+        Mono<GetResponse> get = getBatcher != null && routing == null
+                ? getBatcher.submit(id).handle((item, sink) -> {
+                    if (item.isFailed()) {
+                        sink.error(item.getFailure().getFailure());
+                    } else {
+                        sink.next(item.getResponse());
                     }
-                    // 发布分页结果
-                    sink.success(new PageInfo<>(total, list));
-                }
+                })
+                : read((ActionListener<GetResponse> listener) ->
+                        client.getAsync(new GetRequest(indexName, id).routing(routing), RequestOptions.DEFAULT, listener));
+        return get.handle((response, sink) -> {
+            // 判断查询是否成功
+            if (!response.isExists()) {
+                // 不成功则返回错误
+                sink.error(new RuntimeException("文档不存在！"));
+            } else {
+                sink.next(response.getSourceInternal());
+            }
+        });
+    }
+
+    /**
+     * 一次查询多个id，结果和id按位置一一对应
+     */
+    private Mono<List<MultiGetItemResponse>> multiGet(List<String> ids, String routing) {
+        return read((ActionListener<MultiGetResponse> listener) -> {
+            MultiGetRequest request = new MultiGetRequest();
+            ids.forEach(id -> request.add(new MultiGetRequest.Item(indexName, id).routing(routing)));
+            return client.mgetAsync(request, RequestOptions.DEFAULT, listener);
+        }).map(response -> Arrays.asList(response.getResponses()));
+    }
 
-                @Override
-                public void onFailure(Exception e) {
-                    // 失败回调
-                    sink.error(e);
+    /**
+     * 分区时按id查询，文档可能在任何一个分区中
+     */
+    private Flux<SearchHit> searchByIds(List<String> ids, String routing) {
+        SearchRequest request = new SearchRequest(partitioner.allIndices())
+                .source(new SearchSourceBuilder().query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+                        .size(ids.size()))
+                .routing(routing)
+                .indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        return read((ActionListener<SearchResponse> listener) -> client.searchAsync(request, RequestOptions.DEFAULT, listener))
+                .flatMapIterable(response -> Arrays.asList(response.getHits().getHits()));
+    }
+
+    /**
+     * 分区时按id删除，在所有分区中删除该id的文档。<br/>
+     * _delete_by_query只能看到已经refresh的文档，调用前先refresh所有分区；删除后再refresh，之后的按id读取不会再读到该文档
+     */
+    private DeleteByQueryRequest deleteByIdRequest(String id, String routing) {
+        DeleteByQueryRequest request = new DeleteByQueryRequest(partitioner.allIndices());
+        request.setQuery(QueryBuilders.idsQuery().addIds(id));
+        if (routing != null) {
+            request.setRouting(routing);
+        }
+        request.setIndicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        request.setRefresh(true);
+        return request;
+    }
+
+    private RefreshRequest refreshAllRequest() {
+        RefreshRequest request = new RefreshRequest(partitioner.allIndices());
+        request.indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+        return request;
+    }
+
+    /**
+     * 实体类对应的文档所在的索引库
+     *
+     * @return 分区时无法确定则返回null
+     */
+    private String documentIndex(T t) {
+        return partitioner == null ? indexName : partitioner.documentIndex(t);
+    }
+
+    private static boolean isSucceeded(BulkByScrollResponse response) {
+        return response.getBulkFailures().isEmpty() && response.getSearchFailures().isEmpty();
+    }
+
+    /**
+     * 创建搜索请求，分区时只发往查询条件可能命中的分区，指定routing时只发往对应的分片
+     */
+    private SearchRequest searchRequest(SearchSourceBuilder source, String routing) {
+        if (partitioner == null) {
+            return new SearchRequest(indexName).source(source).routing(routing);
+        }
+        return new SearchRequest(partitioner.searchIndices(source.query()))
+                .source(source)
+                .routing(routing)
+                .indicesOptions(IndexPartitioner.INDICES_OPTIONS);
+    }
+
+    private void evict(String id) {
+        if (nearCache != null) {
+            nearCache.invalidate(id);
+        }
+    }
+
+    private void evictAll() {
+        if (nearCache != null) {
+            nearCache.invalidateAll();
+        }
+    }
+
+    private BufferedBulkWriter bufferedWriter() {
+        BufferedBulkWriter writer = bufferedWriter;
+        if (writer == null) {
+            synchronized (this) {
+                writer = bufferedWriter;
+                if (writer == null) {
+                    writer = new BufferedBulkWriter(client, properties.getBulk(), this::recordBulk);
+                    bufferedWriter = writer;
                 }
-            });
+            }
+        }
+        return writer;
+    }
+
+    private Flux<T> scroll(SearchSourceBuilder source, String routing) {
+        return scrollHits(source, routing).map(this::toEntity);
+    }
+
+    private Flux<SearchHit> scrollHits(SearchSourceBuilder source, String routing) {
+        return Flux.defer(() -> {
+            // 记录最新的scroll id，结束或取消时清理
+            AtomicReference<String> scrollId = new AtomicReference<>();
+            SearchRequest request = searchRequest(source, routing).scroll(SCROLL_KEEP_ALIVE);
+            return onDemand((ActionListener<SearchResponse> listener) ->
+                    client.searchAsync(request, RequestOptions.DEFAULT, listener))
+                    // 开始消费一页时预取下一页，内存中最多保留两页
+                    .expand(response -> {
+                        if (response.getHits().getHits().length < source.size()) {
+                            return Mono.empty();
+                        }
+                        SearchScrollRequest next = new SearchScrollRequest(response.getScrollId()).scroll(SCROLL_KEEP_ALIVE);
+                        return onDemand((ActionListener<SearchResponse> listener) ->
+                                client.scrollAsync(next, RequestOptions.DEFAULT, listener));
+                    })
+                    // 每一页到达时就记录，第一页还没消费完就取消时也能清理
+                    .doOnNext(response -> scrollId.set(response.getScrollId()))
+                    .concatMapIterable(response -> Arrays.asList(response.getHits().getHits()), 1)
+                    .doFinally(signal -> clearScroll(scrollId.get()));
         });
     }
 
-    @Override
-    public Mono<List<String>> suggestBySingleField(String suggestField, String prefixKey) {
-        return Mono.create(sink -> {
-            // 准备查询条件
-            SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
-            sourceBuilder.suggest(new SuggestBuilder()
-                    .addSuggestion("mySuggestion",
-                            SuggestBuilders.completionSuggestion(suggestField).prefix(prefixKey)
-                                    .size(30).skipDuplicates(true)));
-            // 准备请求对象
-            SearchRequest request = new SearchRequest(indexName).source(sourceBuilder);
-
-            // 发送异步请求
-            client.searchAsync(request, RequestOptions.DEFAULT, new ActionListener<SearchResponse>() {
-                @Override
-                public void onResponse(SearchResponse response) {
-                    // 成功的回调函数
-                    if (response.status() != RestStatus.OK) {
-                        sink.error(new RuntimeException("查询失败"));
+    private Flux<T> searchAfter(SearchSourceBuilder source, String routing) {
+        return onDemand((ActionListener<SearchResponse> listener) ->
+                client.searchAsync(searchRequest(source, routing), RequestOptions.DEFAULT, listener))
+                // 用上一页最后一条的排序值作为下一页的起点，和scroll一样预取一页
+                .expand(response -> {
+                    SearchHit[] hits = response.getHits().getHits();
+                    if (hits.length < source.size()) {
+                        return Mono.empty();
                     }
-                    // 处理结果
-                    List<String> list = handleSuggestResponse(response);
-                    // 发布数据
-                    sink.success(list);
-                }
-                @Override
-                public void onFailure(Exception e) {
-                    sink.error(e);
+                    SearchSourceBuilder next = source.shallowCopy().searchAfter(hits[hits.length - 1].getSortValues());
+                    return onDemand((ActionListener<SearchResponse> listener) ->
+                            client.searchAsync(searchRequest(next, routing), RequestOptions.DEFAULT, listener));
+                })
+                .concatMapIterable(response -> Arrays.asList(response.getHits().getHits()), 1)
+                .map(this::toEntity);
+    }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        ClearScrollRequest request = new ClearScrollRequest();
+        request.addScrollId(scrollId);
+        // 清理失败也无妨，scroll上下文到期后会自动释放
+        client.clearScrollAsync(request, RequestOptions.DEFAULT, ActionListener.wrap(r -> { }, e -> { }));
+    }
+
+    /**
+     * 发起读请求，开启对冲读时交给{@link HedgedReads}，否则等同于{@link #onDemand(Function)}
+     */
+    private <R> Mono<R> read(Function<ActionListener<R>, Cancellable> call) {
+        return hedgedReads != null ? hedgedReads.read(call) : onDemand(call);
+    }
+
+    /**
+     * 发送_msearch请求，返回的结果和请求按位置一一对应，每个成功的查询分别记录指标
+     *
+     * @param method   记录指标时使用的方法名
+     * @param requests 搜索请求
+     */
+    private Mono<List<MultiSearchResponse.Item>> multiSearch(String method, List<SearchRequest> requests) {
+        return Mono.defer(() -> {
+            MultiSearchRequest request = new MultiSearchRequest();
+            requests.forEach(request::add);
+            int maxConcurrentSearches = properties.getMsearch().getMaxConcurrentSearches();
+            if (maxConcurrentSearches > 0) {
+                request.maxConcurrentSearchRequests(maxConcurrentSearches);
+            }
+            long start = System.nanoTime();
+            return read((ActionListener<MultiSearchResponse> listener) ->
+                    client.msearchAsync(request, RequestOptions.DEFAULT, listener))
+                    .map(response -> {
+                        List<MultiSearchResponse.Item> items = Arrays.asList(response.getResponses());
+                        for (MultiSearchResponse.Item item : items) {
+                            if (!item.isFailure()) {
+                                recordSearch(method, item.getResponse(), start);
+                            }
+                        }
+                        return items;
+                    });
+        });
+    }
+
+    /**
+     * 开启解码线程池时，响应到达后切换到解码线程，之后的反序列化和下游操作都不占用IO线程
+     */
+    private <R> Mono<R> decodeOn(Mono<R> response) {
+        return decodeScheduler == null ? response : response.publishOn(decodeScheduler.scheduler());
+    }
+
+    /**
+     * 构建一个在下游请求数据时才发起异步调用的Mono，取消时同时取消底层请求
+     *
+     * @param call 发起异步调用，返回可取消的句柄
+     */
+    private <R> Mono<R> onDemand(Function<ActionListener<R>, Cancellable> call) {
+        return Mono.create(sink -> {
+            AtomicBoolean started = new AtomicBoolean();
+            sink.onRequest(n -> {
+                if (started.compareAndSet(false, true)) {
+                    Cancellable cancellable = call.apply(ActionListener.wrap(sink::success, sink::error));
+                    sink.onCancel(cancellable::cancel);
                 }
             });
         });
     }
 
-    private String getID(T t) {
-        if(t == null){
-            throw new RuntimeException(t.getClass().getName() + "实例不能为null！");
-        }
-        try {
-            Object value = idField.get(t);
-            return value == null ? null : value.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("实体类中没有id字段或者id字段没有get方法");
+    /**
+     * 绑定参数后通过低级客户端发送查询，请求体在订阅时才生成
+     */
+    private Mono<Response> performRequest(String endpoint, DerivedQuery query, Object[] args) {
+        return Mono.defer(() -> {
+            Request request = new Request("POST", endpoint);
+            request.setJsonEntity(query.bind(args));
+            return read((ActionListener<Response> listener) ->
+                    client.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+                        @Override
+                        public void onSuccess(Response response) {
+                            listener.onResponse(response);
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            listener.onFailure(e);
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * 发送派生查询并解析为搜索响应
+     */
+    private Mono<SearchResponse> search(String method, String endpoint, DerivedQuery query, Object[] args) {
+        return timedSearch(method, decodeOn(performRequest(endpoint, query, args)).map(RepositoryHandler::parseSearchResponse));
+    }
+
+    /**
+     * 记录搜索的服务端耗时和客户端耗时，每次订阅重新计时
+     */
+    private Mono<SearchResponse> timedSearch(String method, Mono<SearchResponse> search) {
+        if (metrics == RepositoryMetrics.NOOP) {
+            return search;
         }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return search.doOnNext(response -> recordSearch(method, response, start));
+        });
     }
 
-    private String toJson(Object o) {
-        try {
-            return mapper.writeValueAsString(o);
-        } catch (JsonProcessingException e) {
+    private void recordSearch(String method, SearchResponse response, long start) {
+        metrics.recordSearch(repositoryName, indexName, method, response.getTook().millis(),
+                System.nanoTime() - start, response.getFailedShards());
+    }
+
+    private void recordBulk(BulkRequest request, int failedItems) {
+        metrics.recordBulk(repositoryName, indexName, request.numberOfActions(), request.estimatedSizeInBytes(), failedItems);
+    }
+
+    private static SearchResponse parseSearchResponse(Response response) {
+        try (XContentParser parser = createParser(response)) {
+            return SearchResponse.fromXContent(parser);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private T fromJson(String json) {
-        try {
-            return mapper.readValue(json, clazz);
+    private static long parseCount(Response response) {
+        try (XContentParser parser = createParser(response)) {
+            return ((Number) parser.map().get("count")).longValue();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 按响应的Content-Type解析响应体，没有Content-Type或无法识别时按JSON解析
+     */
+    private static XContentParser createParser(Response response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            throw new RuntimeException("响应没有内容：" + response.getRequestLine());
+        }
+        Header contentType = entity.getContentType();
+        XContentType type = contentType == null ? null : XContentType.fromMediaTypeOrFormat(contentType.getValue());
+        InputStream in = entity.getContent();
+        return (type == null ? XContentType.JSON : type).xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, in);
+    }
+
+    /**
+     * 把命中结果反序列化为T类型的集合，并注入高亮值
+     */
+    List<T> toEntities(SearchHits searchHits) {
+        SearchHit[] hits = searchHits.getHits();
+        List<T> list = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            list.add(toEntity(hit));
+        }
+        return list;
+    }
+
+    /**
+     * 把一条命中结果反序列化为T类型，并注入高亮值
+     */
+    private T toEntity(SearchHit hit) {
+        T t = codec.decode(hit.getSourceRef());
+        // 获取高亮结果的集合
+        Map<String, HighlightField> highlightFields = hit.getHighlightFields();
+        // 判断是否有高亮
+        if (t != null && !CollectionUtils.isEmpty(highlightFields)) {
+            // 遍历高亮字段
+            for (HighlightField highlightField : highlightFields.values()) {
+                // 把高亮值注入 t 中，字段名称支持 author.name 这样的嵌套路径
+                metadata.setString(t, highlightField.getName(), joinFragments(highlightField.getFragments()));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * 拼接高亮片段，只有一个片段时不产生新的字符串
+     */
+    private static String joinFragments(Text[] fragments) {
+        if (fragments == null || fragments.length == 0) {
+            return "";
+        }
+        if (fragments.length == 1) {
+            return fragments[0].string();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Text fragment : fragments) {
+            sb.append(fragment.string());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 创建批处理请求
+     */
+    BulkRequest newBulkRequest(Iterable<T> iterable) {
+        // 遍历要处理的文档集合，然后创建成IndexRequest，逐个添加到BulkRequest中
+        return newBulkRequest(iterable, this::newIndexRequest);
+    }
+
+    /**
+     * 为每个元素创建一个写请求，组成批处理请求
+     */
+    <E> BulkRequest newBulkRequest(Iterable<E> items, Function<E, ? extends DocWriteRequest<?>> factory) {
+        BulkRequest request = new BulkRequest();
+        items.forEach(item -> request.add(factory.apply(item)));
+        return request;
+    }
+
+    /**
+     * 按id局部更新的请求
+     *
+     * @param routing 写入时的routing，可以为null
+     */
+    UpdateRequest newUpdateRequest(ID id, Map<String, Object> fields, String routing) {
+        return updateRequest(updateIndex(null), id.toString(), routing).doc(fields);
+    }
+
+    /**
+     * 只包含实体类中不为null的属性的局部更新请求
+     */
+    UpdateRequest newPartialUpdateRequest(T partial) {
+        String id = getID(partial);
+        return updateRequest(updateIndex(partial), id, metadata.getRouting(partial))
+                .doc(new IndexRequest().source(codec.encodePartial(partial), codec.contentType()));
+    }
+
+    /**
+     * 文档不存在时把整个实体类作为新文档的更新请求
+     */
+    UpdateRequest newUpsertRequest(T t) {
+        String id = getID(t);
+        UpdateRequest request = updateRequest(updateIndex(t), id, metadata.getRouting(t))
+                .doc(new IndexRequest().source(codec.encode(t), codec.contentType()))
+                .docAsUpsert(true);
+        if (partitioner != null) {
+            partitioner.afterWrite(client);
+        }
+        return request;
+    }
+
+    /**
+     * 按id执行painless脚本的更新请求
+     *
+     * @param routing 写入时的routing，可以为null
+     */
+    UpdateRequest newScriptUpdateRequest(ID id, String script, Map<String, Object> params, String routing) {
+        return updateRequest(updateIndex(null), id.toString(), routing).script(new Script(ScriptType.INLINE,
+                Script.DEFAULT_SCRIPT_LANG, script, params == null ? Collections.emptyMap() : params));
+    }
+
+    private UpdateRequest updateRequest(String index, String id, String routing) {
+        ElasticsearchProperties.Update update = properties.getUpdate();
+        return new UpdateRequest(index, id)
+                .routing(routing)
+                .retryOnConflict(update.getRetryOnConflict())
+                .detectNoop(update.isDetectNoop());
+    }
+
+    /**
+     * 更新请求的目标索引库，分区时只能根据实体类确定分区
+     *
+     * @param t 实体类，按id更新时为null
+     */
+    private String updateIndex(T t) {
+        if (partitioner == null) {
+            return indexName;
+        }
+        if (t == null) {
+            throw new RuntimeException(indexName + "按分区存储，无法确定文档所在的分区，不支持按id更新，请使用update(T)");
+        }
+        return partitioner.writeIndex(t);
+    }
+
+    /**
+     * 找到继承的Repository或ReactiveRepository的泛型声明，也支持通过中间接口间接继承
+     *
+     * @param repositoryInterface 自定义的Repository接口
+     */
+    private static ParameterizedType repositoryType(Class<?> repositoryInterface) {
+        for (Type type : repositoryInterface.getGenericInterfaces()) {
+            if (type instanceof ParameterizedType) {
+                Type raw = ((ParameterizedType) type).getRawType();
+                if (raw == Repository.class || raw == ReactiveRepository.class) {
+                    return (ParameterizedType) type;
+                }
+            }
+            Class<?> parent = type instanceof ParameterizedType
+                    ? (Class<?>) ((ParameterizedType) type).getRawType() : (Class<?>) type;
+            if (Repository.class.isAssignableFrom(parent) || ReactiveRepository.class.isAssignableFrom(parent)) {
+                return repositoryType(parent);
+            }
+        }
+        throw new RuntimeException(repositoryInterface.getName() + "没有声明Repository<T, ID>的泛型参数");
+    }
+
+    private IndexRequest newIndexRequest(T t) {
+        String id = getID(t);
+        // 有路由字段时按字段值路由，bulk中的每一项也因此带上routing
+        String routing = metadata.getRouting(t);
+        if (partitioner == null) {
+            // 从对象中获取id，把对象直接编码为请求体
+            return new IndexRequest(indexName).id(id).routing(routing).source(codec.encode(t), codec.contentType());
+        }
+        IndexRequest request = new IndexRequest(partitioner.writeIndex(t)).id(id).routing(routing)
+                .source(codec.encode(t), codec.contentType());
+        partitioner.afterWrite(client);
+        return request;
+    }
+
+    private String getID(T t) {
+        if(t == null){
+            throw new RuntimeException(clazz.getName() + "实例不能为null！");
+        }
+        return metadata.getId(t);
+    }
+
     private List<String> handleSuggestResponse(SearchResponse response) {
-        return StreamSupport.stream(response.getSuggest().spliterator(), true)
-                .map(s -> (CompletionSuggestion) s)
-                .map(CompletionSuggestion::getOptions)
-                .flatMap(List::stream)
-                .map(CompletionSuggestion.Entry.Option::getText)
-                .map(Text::string)
-                .distinct()
-                .filter(StringUtils::isNotBlank)
-                .collect(Collectors.toList());
+        // 结果只有几十条，直接遍历去重即可
+        Set<String> texts = new LinkedHashSet<>();
+        for (Suggest.Suggestion<? extends Suggest.Suggestion.Entry<? extends Suggest.Suggestion.Entry.Option>> suggestion
+                : response.getSuggest()) {
+            for (CompletionSuggestion.Entry.Option option : ((CompletionSuggestion) suggestion).getOptions()) {
+                String text = option.getText().string();
+                if (StringUtils.isNotBlank(text)) {
+                    texts.add(text);
+                }
+            }
+        }
+        return new ArrayList<>(texts);
     }
 }
@@ -0,0 +1,135 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 请求合并器。<br/>
+ * 在一个很短的时间窗口内提交的请求先攒成一批，窗口结束或攒够最大条数时用一次批量调用发送，
+ * 再按位置把批量结果分发给每个请求各自的{@link Mono}。例如把多个queryById合并成一次_mget。
+ *
+ * @param <K> 单个请求的参数
+ * @param <V> 单个请求的结果
+ * @author hc
+ */
+class RequestBatcher<K, V> {
+
+    /**
+     * 触发窗口计时的调度器
+     */
+    private static final Scheduler TIMER = Schedulers.parallel();
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    /**
+     * 批量调用，返回的结果和参数按位置一一对应
+     */
+    private final Function<List<K>, Mono<List<V>>> executor;
+
+    /**
+     * 正在攒的一批，发送后置为null
+     */
+    private List<Pending<K, V>> batch;
+
+    /**
+     * @param window       时间窗口，第一个请求到达时开始计时
+     * @param maxBatchSize 每批最多的请求数
+     * @param executor     批量调用
+     */
+    RequestBatcher(Duration window, int maxBatchSize, Function<List<K>, Mono<List<V>>> executor) {
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.executor = executor;
+    }
+
+    /**
+     * 提交一个请求，订阅时加入当前批次
+     *
+     * @param key 请求参数
+     * @return 该请求的结果
+     */
+    Mono<V> submit(K key) {
+        return Mono.create(sink -> {
+            List<Pending<K, V>> full = null;
+            List<Pending<K, V>> opened = null;
+            synchronized (this) {
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    opened = batch;
+                }
+                batch.add(new Pending<>(key, sink));
+                if (batch.size() >= maxBatchSize) {
+                    full = batch;
+                    batch = null;
+                }
+            }
+            if (full != null) {
+                dispatch(full);
+            } else if (opened != null) {
+                List<Pending<K, V>> expected = opened;
+                TIMER.schedule(() -> flush(expected), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * 窗口结束，如果这一批还没有因为攒满而发送，就在这里发送
+     */
+    private void flush(List<Pending<K, V>> expected) {
+        synchronized (this) {
+            if (batch != expected) {
+                return;
+            }
+            batch = null;
+        }
+        dispatch(expected);
+    }
+
+    private void dispatch(List<Pending<K, V>> pendings) {
+        List<K> keys = new ArrayList<>(pendings.size());
+        for (Pending<K, V> pending : pendings) {
+            keys.add(pending.key);
+        }
+        Mono<List<V>> call;
+        try {
+            call = executor.apply(keys);
+        } catch (RuntimeException e) {
+            pendings.forEach(pending -> pending.sink.error(e));
+            return;
+        }
+        call.defaultIfEmpty(Collections.emptyList()).subscribe(values -> {
+            for (int i = 0; i < pendings.size(); i++) {
+                MonoSink<V> sink = pendings.get(i).sink;
+                V value = i < values.size() ? values.get(i) : null;
+                if (value == null) {
+                    sink.success();
+                } else {
+                    sink.success(value);
+                }
+            }
+        }, e -> pendings.forEach(pending -> pending.sink.error(e)));
+    }
+
+    private static class Pending<K, V> {
+
+        private final K key;
+
+        private final MonoSink<V> sink;
+
+        Pending(K key, MonoSink<V> sink) {
+            this.key = key;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * 流式批量写入。<br/>
+ * 把输入的请求按文档数或字节数切成多个bulk请求，同时在途的bulk请求数由{@link AdaptiveBulkController}控制，
+ * 任何时候内存中只保留在途的分片，最后汇总每个文档的结果。<br/>
+ * 分片的文档数和并发数随集群的反馈调整；被拒绝（429）的文档在退避之后单独重试，整个请求被拒绝时重试整个分片
+ *
+ * @author hc
+ */
+class StreamingBulkIngester {
+
+    private final RestHighLevelClient client;
+
+    /**
+     * 每个bulk请求最大的字节数
+     */
+    private final long chunkBytes;
+
+    /**
+     * 决定每个bulk请求的文档数、并发数和重试前的等待时间
+     */
+    private final AdaptiveBulkController controller;
+
+    /**
+     * 每个bulk请求结束后回调，参数是请求和失败的文档数
+     */
+    private final ObjIntConsumer<BulkRequest> onBulk;
+
+    StreamingBulkIngester(RestHighLevelClient client, ElasticsearchProperties.Bulk bulk, ObjIntConsumer<BulkRequest> onBulk) {
+        this.client = client;
+        this.onBulk = onBulk;
+        this.chunkBytes = bulk.getSize().toBytes();
+        this.controller = new AdaptiveBulkController(bulk);
+    }
+
+    /**
+     * @return 当前每个bulk请求的文档数
+     */
+    int currentActions() {
+        return controller.actions();
+    }
+
+    /**
+     * @return 当前同时在途的bulk请求数
+     */
+    int currentConcurrency() {
+        return controller.concurrency();
+    }
+
+    /**
+     * 分片发送请求
+     *
+     * @param requests 写请求流
+     * @return 汇总结果
+     */
+    Mono<BulkResult> ingest(Flux<? extends DocWriteRequest<?>> requests) {
+        return Flux.defer(() -> requests.bufferUntil(new ChunkBoundary()))
+                .flatMap(chunk -> execute(chunk, 0), controller.maxConcurrency())
+                .reduceWith(BulkResult::new, BulkResult::merge);
+    }
+
+    /**
+     * 取得许可后发送一个分片，被拒绝的文档在退避之后重新排队发送
+     *
+     * @param chunk   分片中的请求
+     * @param attempt 从0开始的重试次数
+     */
+    private Mono<BulkResult> execute(List<? extends DocWriteRequest<?>> chunk, int attempt) {
+        return controller.acquire()
+                .flatMap(permit -> send(chunk, attempt, permit))
+                .flatMap(outcome -> {
+                    if (outcome.rejected.isEmpty()) {
+                        return Mono.just(outcome.result);
+                    }
+                    return Mono.delay(controller.backoff(attempt))
+                            .then(Mono.defer(() -> execute(outcome.rejected, attempt + 1)))
+                            .map(retried -> {
+                                // 重试的文档由重试的结果计数
+                                outcome.result.setTotal(chunk.size() - outcome.rejected.size());
+                                return outcome.result.merge(retried);
+                            });
+                });
+    }
+
+    /**
+     * 发送一个bulk请求，请求结束时归还许可并向控制器报告结果。<br/>
+     * 取消订阅时中止在途的HTTP请求后再归还许可，之后到达的响应不再处理，许可只归还一次
+     */
+    private Mono<Outcome> send(List<? extends DocWriteRequest<?>> chunk, int attempt,
+                               AdaptiveBulkController.Permit permit) {
+        boolean retryable = attempt < controller.maxRetries();
+        return Mono.<Outcome>create(sink -> {
+            BulkRequest request = new BulkRequest();
+            chunk.forEach(request::add);
+            long start = System.nanoTime();
+            // 响应和取消只有一方能处理许可
+            AtomicBoolean done = new AtomicBoolean();
+            Cancellable cancellable = client.bulkAsync(request, RequestOptions.DEFAULT, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    if (!done.compareAndSet(false, true)) {
+                        return;
+                    }
+                    Map<String, String> failures = new LinkedHashMap<>();
+                    List<DocWriteRequest<?>> rejected = new ArrayList<>();
+                    // 失败数单独计数，同一分片中可能有id相同或没有id的文档
+                    int failed = 0;
+                    for (BulkItemResponse item : response.getItems()) {
+                        if (!item.isFailed()) {
+                            continue;
+                        }
+                        // 只重试被拒绝的文档，其它失败重试也不会成功
+                        if (retryable && item.status() == RestStatus.TOO_MANY_REQUESTS) {
+                            rejected.add(chunk.get(item.getItemId()));
+                        } else {
+                            failed++;
+                            failures.put(item.getId(), item.getFailureMessage());
+                        }
+                    }
+                    if (rejected.isEmpty()) {
+                        controller.onSuccess(permit, System.nanoTime() - start);
+                    } else {
+                        controller.onRejected(permit);
+                    }
+                    onBulk.accept(request, failed + rejected.size());
+                    sink.success(new Outcome(new BulkResult(chunk.size(), 1, failed, failures), rejected));
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    if (!done.compareAndSet(false, true)) {
+                        return;
+                    }
+                    onBulk.accept(request, chunk.size());
+                    boolean rejected = e instanceof ElasticsearchException
+                            && ((ElasticsearchException) e).status() == RestStatus.TOO_MANY_REQUESTS;
+                    if (rejected) {
+                        controller.onRejected(permit);
+                    } else {
+                        controller.release(permit);
+                    }
+                    if (rejected && retryable) {
+                        sink.success(new Outcome(new BulkResult(chunk.size(), 1, new LinkedHashMap<>()),
+                                new ArrayList<>(chunk)));
+                        return;
+                    }
+                    // 整个请求失败，分片中的每个文档都记为失败
+                    Map<String, String> failures = new LinkedHashMap<>();
+                    chunk.forEach(r -> failures.put(r.id(), e.getMessage()));
+                    sink.success(new Outcome(new BulkResult(chunk.size(), 1, chunk.size(), failures),
+                            Collections.emptyList()));
+                }
+            });
+            sink.onCancel(() -> {
+                // 先标记，中止请求时监听器可能在当前线程以失败回调
+                if (done.compareAndSet(false, true)) {
+                    cancellable.cancel();
+                    controller.release(permit);
+                }
+            });
+        });
+    }
+
+    /**
+     * 一个bulk请求的结果和需要重试的文档
+     */
+    private static class Outcome {
+
+        private final BulkResult result;
+
+        private final List<DocWriteRequest<?>> rejected;
+
+        private Outcome(BulkResult result, List<DocWriteRequest<?>> rejected) {
+            this.result = result;
+            this.rejected = rejected;
+        }
+    }
+
+    /**
+     * 判断分片边界，文档数或字节数达到上限时在当前文档之后切分，文档数取控制器的当前值。每次订阅使用一个新实例
+     */
+    private class ChunkBoundary implements Predicate<DocWriteRequest<?>> {
+
+        private int actions;
+
+        private long bytes;
+
+        @Override
+        public boolean test(DocWriteRequest<?> request) {
+            actions++;
+            bytes += request.ramBytesUsed();
+            if (actions >= controller.actions() || bytes >= chunkBytes) {
+                actions = 0;
+                bytes = 0;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.lanlinker.starter.elasticsearch.scanner;
 
+import com.lanlinker.starter.elasticsearch.annotaions.EnableElasticsearchRepositories;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
 import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.ReactiveRepository;
 import com.lanlinker.starter.elasticsearch.repository.Repository;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
@@ -17,44 +24,92 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.support.ResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
 import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
 import org.springframework.core.type.classreading.MetadataReader;
 import org.springframework.core.type.classreading.MetadataReaderFactory;
 import org.springframework.util.ClassUtils;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
+ * 扫描Repository接口并注册为RepositoryFactory。<br/>
+ * 默认只读取class文件的元信息筛选出Repository接口，筛选出的接口加载时也不初始化；
+ * 开启use-index并且类路径中有编译期生成的索引时直接读取索引，索引中没有任何接口的包仍然扫描
+ *
  * @author hc
  * @date 2021/7/9 13:07
  */
 public class RepositoryScanner implements BeanDefinitionRegistryPostProcessor, ResourceLoaderAware, ApplicationContextAware {
 
-    private ApplicationContext applicationContext;
+    /**
+     * 编译期生成的Repository索引，每行一个接口的类名，由elasticsearch-spring-boot-starter-processor生成
+     */
+    public static final String INDEX_LOCATION = "META-INF/lanlinker-elasticsearch.repositories";
+
+    private static final Logger log = LoggerFactory.getLogger(RepositoryScanner.class);
 
     private static final String DEFAULT_RESOURCE_PATTERN = "**/*.class";
 
+    private static final Set<String> REPOSITORY_INTERFACES = new HashSet<>(Arrays.asList(
+            Repository.class.getName(), ReactiveRepository.class.getName()));
+
+    private ApplicationContext applicationContext;
+
     private MetadataReaderFactory metadataReaderFactory;
 
     private ResourcePatternResolver resourcePatternResolver;
 
     private RestHighLevelClient client;
 
-    public RepositoryScanner(RestHighLevelClient client) {
+    private ElasticsearchProperties properties;
+
+    public RepositoryScanner(RestHighLevelClient client, ElasticsearchProperties properties) {
         this.client = client;
+        this.properties = properties;
     }
     @Override
     public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry beanDefinitionRegistry) throws BeansException {
-        // 获取启动类所在包
-        List<String> packages = AutoConfigurationPackages.get(applicationContext);
-        // 开始扫描包，获取字节码
-        Set<Class<?>> beanClazzSet = scannerPackages(packages.get(0));
-        for (Class beanClazz : beanClazzSet) {
-            // 判断是否是repository
-            if(isNotElasticsearchRepository(beanClazz)){
+        // 要扫描的包
+        List<String> packages = basePackages(beanDefinitionRegistry);
+        // 开启时优先使用编译期生成的索引，没有索引时扫描包
+        Set<String> classNames = properties.getRepositories().isUseIndex() ? readIndex(packages) : null;
+        if (classNames == null) {
+            classNames = new LinkedHashSet<>();
+            for (String basePackage : packages) {
+                classNames.addAll(scannerPackages(basePackage));
+            }
+        } else {
+            // 索引只覆盖使用了注解处理器的模块，没有任何索引条目的包可能是没有使用处理器的模块，仍然扫描
+            for (String basePackage : packages) {
+                if (classNames.stream().noneMatch(name ->
+                        ClassUtils.convertClassNameToResourcePath(name).startsWith(basePackage + "/"))) {
+                    log.warn("Repository索引中没有{}下的接口，改为扫描类路径", basePackage);
+                    classNames.addAll(scannerPackages(basePackage));
+                }
+            }
+        }
+        ClassLoader classLoader = applicationContext.getClassLoader();
+        for (String className : classNames) {
+            Class<?> beanClazz;
+            try {
+                // 只加载不初始化，静态代码块不会执行
+                beanClazz = ClassUtils.forName(className, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.warn("加载Repository接口{}失败", className, e);
                 continue;
             }
             // BeanDefinition构建器
@@ -64,6 +119,7 @@ public class RepositoryScanner implements BeanDefinitionRegistryPostProcessor, R
             //在这里，我们可以给该对象的属性注入对应的实例。
             definition.getConstructorArgumentValues().addGenericArgumentValue(beanClazz);
             definition.getConstructorArgumentValues().addIndexedArgumentValue(1, client);
+            definition.getConstructorArgumentValues().addIndexedArgumentValue(2, properties);
             // 定义Bean工程
             definition.setBeanClass(RepositoryFactory.class);
 
@@ -75,51 +131,146 @@ public class RepositoryScanner implements BeanDefinitionRegistryPostProcessor, R
         }
     }
 
-    private boolean isNotElasticsearchRepository(Class beanClazz) {
-        return !beanClazz.isInterface() || beanClazz.getInterfaces().length <= 0 || beanClazz.getInterfaces()[0] != Repository.class;
+    /**
+     * 要扫描的包：@EnableElasticsearchRepositories和配置中指定的包，都没有时使用启动类所在的包。
+     * 已经被其它包包含的子包会被去掉，避免重复扫描
+     */
+    private List<String> basePackages(BeanDefinitionRegistry registry) {
+        Set<String> packages = new LinkedHashSet<>(properties.getRepositories().getBasePackages());
+        for (String beanName : registry.getBeanDefinitionNames()) {
+            BeanDefinition definition = registry.getBeanDefinition(beanName);
+            if (!(definition instanceof AnnotatedBeanDefinition)) {
+                continue;
+            }
+            AnnotationMetadata metadata = ((AnnotatedBeanDefinition) definition).getMetadata();
+            Map<String, Object> attributes = metadata.getAnnotationAttributes(EnableElasticsearchRepositories.class.getName(), true);
+            if (attributes == null) {
+                continue;
+            }
+            Set<String> declared = new LinkedHashSet<>();
+            declared.addAll(Arrays.asList((String[]) attributes.get("value")));
+            declared.addAll(Arrays.asList((String[]) attributes.get("basePackages")));
+            for (String basePackageClass : (String[]) attributes.get("basePackageClasses")) {
+                declared.add(ClassUtils.getPackageName(basePackageClass));
+            }
+            // 什么都没有指定时扫描注解所在类的包
+            if (declared.isEmpty()) {
+                declared.add(ClassUtils.getPackageName(metadata.getClassName()));
+            }
+            packages.addAll(declared);
+        }
+        if (packages.isEmpty() && AutoConfigurationPackages.has(applicationContext)) {
+            // 启动类所在包
+            packages.addAll(AutoConfigurationPackages.get(applicationContext));
+        }
+        List<String> result = new ArrayList<>();
+        for (String candidate : packages) {
+            String basePackage = resolveBasePackage(candidate);
+            if (packages.stream().map(this::resolveBasePackage)
+                    .noneMatch(other -> !other.equals(basePackage) && basePackage.startsWith(other + "/"))
+                    && !result.contains(basePackage)) {
+                result.add(basePackage);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取类路径中所有编译期生成的Repository索引，只保留要扫描的包中的接口
+     *
+     * @param packages 要扫描的包（资源路径格式）
+     * @return 接口的类名，类路径中没有索引时返回null
+     */
+    private Set<String> readIndex(List<String> packages) {
+        Enumeration<URL> urls;
+        try {
+            urls = applicationContext.getClassLoader() == null
+                    ? ClassLoader.getSystemResources(INDEX_LOCATION)
+                    : applicationContext.getClassLoader().getResources(INDEX_LOCATION);
+        } catch (IOException e) {
+            throw new RuntimeException("读取Repository索引失败", e);
+        }
+        if (!urls.hasMoreElements()) {
+            return null;
+        }
+        Set<String> classNames = new LinkedHashSet<>();
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String path = ClassUtils.convertClassNameToResourcePath(line);
+                    if (packages.stream().anyMatch(basePackage -> path.startsWith(basePackage + "/"))) {
+                        classNames.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("读取Repository索引" + url + "失败", e);
+            }
+        }
+        return classNames;
     }
 
     /**
-     * 根据包路径获取包及子包下的所有类
+     * 根据包路径获取包及子包下的所有Repository接口。<br/>
+     * 只读取class文件的元信息判断是否直接继承了Repository或ReactiveRepository，不加载其它类
      *
-     * @param basePackage basePackage
-     * @return Set<Class   <   ?>> Set<Class<?>>
+     * @param basePackage basePackage（资源路径格式）
+     * @return Repository接口的类名
      */
-    private Set<Class<?>> scannerPackages(String basePackage) {
+    private Set<String> scannerPackages(String basePackage) {
         // 准备集合，装扫描到的类
-        Set<Class<?>> set = new LinkedHashSet<>();
+        Set<String> set = new LinkedHashSet<>();
         // 设置要扫描的文件路径匹配模板 classpath*:/xx/xx/**/*.class
         String packageSearchPath =
                 // classpath*:
                 ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
-                        // 启动类所在包
-                        resolveBasePackage(basePackage) +
+                        // 要扫描的包
+                        basePackage +
                         // **/*.class
                         '/' + DEFAULT_RESOURCE_PATTERN;
         try {
             // 读取符合匹配模板的所有文件
             Resource[] resources = this.resourcePatternResolver.getResources(packageSearchPath);
             for (Resource resource : resources) {
-                if (resource.isReadable()) {
+                if (!resource.isReadable()) {
+                    continue;
+                }
+                ClassMetadata classMetadata;
+                try {
                     MetadataReader metadataReader = this.metadataReaderFactory.getMetadataReader(resource);
-                    // 读取类名称
-                    String className = metadataReader.getClassMetadata().getClassName();
-                    Class<?> clazz;
-                    try {
-                        // 加载为字节码
-                        clazz = Class.forName(className);
-                        set.add(clazz);
-                    } catch (ClassNotFoundException e) {
-                        e.printStackTrace();
-                    }
+                    classMetadata = metadataReader.getClassMetadata();
+                } catch (IOException e) {
+                    // 个别class文件无法解析时跳过，不影响其它Repository
+                    log.warn("读取{}失败", resource, e);
+                    continue;
+                }
+                if (isElasticsearchRepository(classMetadata)) {
+                    set.add(classMetadata.getClassName());
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warn("扫描{}失败", basePackage, e);
         }
         return set;
     }
 
+    private boolean isElasticsearchRepository(ClassMetadata classMetadata) {
+        if (!classMetadata.isInterface() || classMetadata.isAnnotation()) {
+            return false;
+        }
+        for (String interfaceName : classMetadata.getInterfaceNames()) {
+            if (REPOSITORY_INTERFACES.contains(interfaceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String resolveBasePackage(String basePackage) {
         return ClassUtils.convertClassNameToResourcePath(
                 this.applicationContext.getEnvironment().resolveRequiredPlaceholders(basePackage));
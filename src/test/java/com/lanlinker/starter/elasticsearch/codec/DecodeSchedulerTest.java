@@ -0,0 +1,170 @@
+package com.lanlinker.starter.elasticsearch.codec;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 开启解码线程池时，反序列化和下游的操作都在解码线程上执行，不占用HTTP客户端的IO线程；
+ * 排队和执行中的任务数在解码结束后回到0
+ *
+ * @author hc
+ */
+class DecodeSchedulerTest {
+
+    private static final String DECODE_THREAD = "lanlinker-es-decode-";
+
+    /**
+     * 执行过setName的线程
+     */
+    private static final Set<String> DECODED_ON = ConcurrentHashMap.newKeySet();
+
+    @Index("decoded")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            DECODED_ON.add(Thread.currentThread().getName());
+            this.name = name;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        DECODED_ON.clear();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private DocRepository repository(DecodeScheduler decodeScheduler) throws Exception {
+        RepositoryFactory<DocRepository> factory = new RepositoryFactory<>(DocRepository.class, client,
+                new ElasticsearchProperties());
+        factory.setDecodeScheduler(decodeScheduler);
+        DocRepository repository = factory.getObject();
+        repository.saveAll(Arrays.asList(new Doc("1", "a"), new Doc("2", "b")));
+        DECODED_ON.clear();
+        return repository;
+    }
+
+    @Test
+    void decodingRunsOnDecodeThreads() throws Exception {
+        ElasticsearchProperties.Decode decode = new ElasticsearchProperties.Decode();
+        decode.setThreads(2);
+        try (DecodeScheduler decodeScheduler = new DecodeScheduler(decode)) {
+            DocRepository repository = repository(decodeScheduler);
+            String downstream = repository.queryById("1").map(doc -> Thread.currentThread().getName()).block();
+            assertTrue(downstream.startsWith(DECODE_THREAD), downstream);
+
+            repository.queryBySourceBuilderForPageHighlight(new SearchSourceBuilder()).block();
+            repository.queryAllById(Arrays.asList("1", "2")).collectList().block();
+            assertFalse(DECODED_ON.isEmpty());
+            assertTrue(DECODED_ON.stream().allMatch(name -> name.startsWith(DECODE_THREAD)), DECODED_ON.toString());
+
+            // 任务在下游收到结果之后才结束
+            for (int i = 0; i < 100 && decodeScheduler.active() + decodeScheduler.queued() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, decodeScheduler.queued());
+            assertEquals(0, decodeScheduler.active());
+        }
+    }
+
+    @Test
+    void withoutSchedulerDecodingStaysOnIoThread() throws Exception {
+        DocRepository repository = repository(null);
+        repository.queryById("1").block();
+        List<String> names = new ArrayList<>(DECODED_ON);
+        assertEquals(1, names.size());
+        assertFalse(names.get(0).startsWith(DECODE_THREAD), names.get(0));
+        assertNotEquals(Thread.currentThread().getName(), names.get(0));
+    }
+
+    @Test
+    void blockedDownstreamDoesNotStallIo() throws Exception {
+        ElasticsearchProperties.Decode decode = new ElasticsearchProperties.Decode();
+        decode.setThreads(4);
+        try (DecodeScheduler decodeScheduler = new DecodeScheduler(decode)) {
+            DocRepository repository = repository(decodeScheduler);
+            CountDownLatch release = new CountDownLatch(1);
+            // 两个下游在解码线程上阻塞，IO线程仍然可以接收之后的响应
+            Flux.range(0, 2)
+                    .flatMap(i -> repository.queryById("1").doOnNext(doc -> await(release)))
+                    .subscribe();
+            for (int i = 0; i < 100 && decodeScheduler.active() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, decodeScheduler.active());
+            assertEquals("b", repository.queryById("2").block().getName());
+            release.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.lanlinker.starter.elasticsearch.codec;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.metadata.EntityMetadataRegistry;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 按字节头识别SMILE：任一格式写入的文档都能被另一种格式的编解码器读取，包括带偏移量的字节切片；
+ * 日期的写出格式和局部更新时跳过null属性
+ *
+ * @author hc
+ */
+class EntityCodecTest {
+
+    @Index("codec")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        private int count;
+
+        private Date created;
+
+        private LocalDate day;
+
+        private LocalDateTime time;
+
+        private Tag tag;
+
+        public Doc() {
+        }
+
+        Doc(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public void setDay(LocalDate day) {
+            this.day = day;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public void setTime(LocalDateTime time) {
+            this.time = time;
+        }
+
+        public Tag getTag() {
+            return tag;
+        }
+
+        public void setTag(Tag tag) {
+            this.tag = tag;
+        }
+    }
+
+    public static class Tag {
+
+        private String label;
+
+        private String color;
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+        public String getColor() {
+            return color;
+        }
+
+        public void setColor(String color) {
+            this.color = color;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private static EntityCodec<Doc> codec(XContentType type) {
+        return new EntityCodec<>(EntityMetadataRegistry.get(Doc.class), type);
+    }
+
+    private static Doc sample() {
+        Doc doc = new Doc("1", "名称");
+        doc.setCount(3);
+        doc.setCreated(Date.from(Instant.parse("2021-07-09T01:02:03Z")));
+        doc.setDay(LocalDate.of(2021, 7, 9));
+        doc.setTime(LocalDateTime.of(2021, 7, 9, 10, 30));
+        Tag tag = new Tag();
+        tag.setLabel("x");
+        doc.setTag(tag);
+        return doc;
+    }
+
+    private static void assertSameDoc(Doc expected, Doc actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getCreated(), actual.getCreated());
+        assertEquals(expected.getDay(), actual.getDay());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getTag().getLabel(), actual.getTag().getLabel());
+    }
+
+    @Test
+    void formatIsDetectedFromHeader() {
+        EntityCodec<Doc> json = codec(XContentType.JSON);
+        EntityCodec<Doc> smile = codec(XContentType.SMILE);
+        Doc doc = sample();
+
+        BytesReference smileBytes = smile.encode(doc);
+        assertEquals(':', smileBytes.get(0));
+        assertEquals(')', smileBytes.get(1));
+        assertEquals('\n', smileBytes.get(2));
+        // 读取格式和写入格式无关
+        assertSameDoc(doc, json.decode(smileBytes));
+        assertSameDoc(doc, smile.decode(json.encode(doc)));
+
+        // 带偏移量的切片，头部在偏移量处
+        byte[] raw = BytesReference.toBytes(smileBytes);
+        byte[] padded = new byte[raw.length + 4];
+        System.arraycopy(raw, 0, padded, 4, raw.length);
+        assertSameDoc(doc, json.decode(new BytesArray(padded, 4, raw.length)));
+
+        assertNull(json.decode(null));
+        assertNull(json.decode(BytesArray.EMPTY));
+    }
+
+    @Test
+    void datesAndPartialEncoding() {
+        EntityCodec<Doc> json = codec(XContentType.JSON);
+        String encoded = json.encode(sample()).utf8ToString();
+        // Date保持毫秒时间戳，java.time写成ISO-8601
+        assertEquals("{\"id\":\"1\",\"name\":\"名称\",\"count\":3,\"created\":1625792523000,\"day\":\"2021-07-09\","
+                + "\"time\":\"2021-07-09T10:30:00\",\"tag\":{\"label\":\"x\",\"color\":null}}", encoded);
+
+        Doc partial = new Doc("1", null);
+        Tag tag = new Tag();
+        tag.setColor("red");
+        partial.setTag(tag);
+        // null属性（包括嵌套对象中的）不写出，基本类型总会写出
+        assertEquals("{\"id\":\"1\",\"count\":0,\"tag\":{\"color\":\"red\"}}", json.encodePartial(partial).utf8ToString());
+    }
+
+    @Test
+    void cborIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> codec(XContentType.CBOR));
+    }
+
+    @Test
+    void smileDocumentsRoundTripThroughStub() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            ElasticsearchProperties properties = new ElasticsearchProperties();
+            properties.setContentType(XContentType.SMILE);
+            DocRepository repository = new RepositoryFactory<>(DocRepository.class, client, properties).getObject();
+            Doc first = sample();
+            Doc second = sample();
+            second.setId("2");
+            repository.save(first);
+            repository.saveAll(Arrays.asList(second));
+            assertSameDoc(first, repository.queryById("1").block());
+            assertSameDoc(second, repository.queryById("2").block());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
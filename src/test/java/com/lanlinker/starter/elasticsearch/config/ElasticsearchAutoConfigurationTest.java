@@ -0,0 +1,151 @@
+package com.lanlinker.starter.elasticsearch.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.sniff.Sniffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 客户端的配置：lanlinker.elasticsearch.client.* 中的超时、压缩和sniff都作用到创建出的客户端上
+ *
+ * @author hc
+ */
+class ElasticsearchAutoConfigurationTest {
+
+    /**
+     * sniff返回的节点地址，不需要真的可以连接
+     */
+    private static final String SNIFFED = "127.0.0.1:9299";
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * 收到的请求的Accept-Encoding
+     */
+    private final List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            acceptEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+            respond(exchange, "{}");
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, "{}");
+        });
+        server.createContext("/_nodes/http", exchange -> respond(exchange, "{\"nodes\":{\"n1\":{"
+                + "\"name\":\"n1\",\"version\":\"7.9.0\",\"roles\":[\"data\",\"master\"],"
+                + "\"http\":{\"bound_address\":[\"" + SNIFFED + "\"],\"publish_address\":\"" + SNIFFED + "\"}}}}"));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private ElasticsearchAutoConfiguration configuration(Map<String, Object> client) {
+        Map<String, Object> source = new HashMap<>();
+        source.put("lanlinker.elasticsearch.hosts", "http://127.0.0.1:" + server.getAddress().getPort());
+        client.forEach((key, value) -> source.put("lanlinker.elasticsearch.client." + key, value));
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", source));
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.setEnvironment(environment);
+        ElasticsearchAutoConfiguration configuration = new ElasticsearchAutoConfiguration();
+        configuration.setApplicationContext(context);
+        return configuration;
+    }
+
+    @Test
+    void timeoutsAndCompressionAreApplied() throws Exception {
+        Map<String, Object> client = new HashMap<>();
+        client.put("socket-timeout", "200ms");
+        client.put("compression", "true");
+        try (RestHighLevelClient restClient = configuration(client).restHighLevelClient()) {
+            restClient.getLowLevelClient().performRequest(new Request("GET", "/"));
+            // 7.9的客户端不能压缩请求体，只请求压缩的响应
+            assertEquals("gzip", acceptEncodings.get(0));
+            assertThrows(SocketTimeoutException.class,
+                    () -> restClient.getLowLevelClient().performRequest(new Request("GET", "/slow")));
+        }
+    }
+
+    @Test
+    void defaultsSendNoAcceptEncoding() throws Exception {
+        try (RestHighLevelClient restClient = configuration(new HashMap<>()).restHighLevelClient()) {
+            restClient.getLowLevelClient().performRequest(new Request("GET", "/"));
+            assertEquals("null", acceptEncodings.get(0));
+        }
+    }
+
+    @Test
+    void snifferReplacesConfiguredHosts() throws Exception {
+        Map<String, Object> client = new HashMap<>();
+        client.put("sniff.enabled", "true");
+        client.put("sniff.interval", "1h");
+        ElasticsearchAutoConfiguration configuration = configuration(client);
+        try (RestHighLevelClient restClient = configuration.restHighLevelClient();
+             Sniffer ignored = configuration.sniffer(restClient)) {
+            // 创建后立即sniff一次
+            List<String> hosts = null;
+            for (int i = 0; i < 100; i++) {
+                hosts = restClient.getLowLevelClient().getNodes().stream()
+                        .map(Node::getHost)
+                        .map(HttpHost::toHostString)
+                        .collect(Collectors.toList());
+                if (hosts.contains(SNIFFED)) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+            assertEquals(Collections.singletonList(SNIFFED), hosts);
+        }
+    }
+}
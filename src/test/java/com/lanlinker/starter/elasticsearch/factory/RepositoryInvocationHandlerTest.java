@@ -0,0 +1,164 @@
+package com.lanlinker.starter.elasticsearch.factory;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.metrics.RepositoryMetrics;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 代理对象的分发：目标对象实现的方法、default方法、派生查询，以及按代理对象身份处理的Object方法
+ *
+ * @author hc
+ */
+class RepositoryInvocationHandlerTest {
+
+    @Index("proxied")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+
+        Flux<Doc> findByName(String name);
+
+        Mono<Long> countByName(String name);
+
+        /**
+         * 其中调用的接口方法仍然经过代理
+         */
+        default Mono<String> nameOrEmpty(String id) {
+            return queryById(id).map(Doc::getName).defaultIfEmpty("");
+        }
+    }
+
+    /**
+     * 只记录方法名
+     */
+    static class RecordingMetrics implements RepositoryMetrics {
+
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void recordCall(String repository, String index, String method, long nanos, String outcome) {
+            calls.add(method);
+        }
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private RecordingMetrics metrics;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        metrics = new RecordingMetrics();
+        RepositoryFactory<DocRepository> factory = new RepositoryFactory<>(DocRepository.class, client,
+                new ElasticsearchProperties());
+        factory.setMetrics(metrics);
+        repository = factory.getObject();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    /**
+     * doFinally在下游收到完成信号之后才执行，block返回时可能还没有记录
+     */
+    private void awaitCalls(String... expected) throws InterruptedException {
+        for (int i = 0; i < 100 && metrics.calls.size() < expected.length; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList(expected), metrics.calls);
+    }
+
+    @Test
+    void targetAndDerivedMethodsAreDispatched() throws Exception {
+        repository.saveAll(Arrays.asList(new Doc("1", "a"), new Doc("2", "b"), new Doc("3", "a")));
+        assertEquals(Arrays.asList("1", "3"), repository.findByName("a").map(Doc::getId).sort().collectList().block());
+        awaitCalls("saveAll", "findByName");
+        assertEquals(1L, (long) repository.countByName("b").block());
+        awaitCalls("saveAll", "findByName", "countByName");
+    }
+
+    @Test
+    void defaultMethodCallsBackThroughProxy() throws Exception {
+        repository.save(new Doc("1", "a"));
+        metrics.calls.clear();
+        assertEquals("a", repository.nameOrEmpty("1").block());
+        // 内层的queryById也经过代理，两者的doFinally先后不确定
+        for (int i = 0; i < 100 && metrics.calls.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("queryById", "nameOrEmpty")), new HashSet<>(metrics.calls));
+    }
+
+    @Test
+    void objectMethodsUseProxyIdentity() throws Exception {
+        DocRepository other = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties())
+                .getObject();
+        assertTrue(repository.equals(repository));
+        assertFalse(repository.equals(other));
+        assertEquals(System.identityHashCode(repository), repository.hashCode());
+        assertNotEquals(repository.hashCode(), other.hashCode());
+        assertTrue(repository.toString().startsWith(DocRepository.class.getName() + "@"));
+        // Object方法不经过监控
+        assertTrue(metrics.calls.isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+package com.lanlinker.starter.elasticsearch.metadata;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 高亮注入：通过缓存的MethodHandle写入字符串属性，支持setter、只有字段的属性和嵌套路径，
+ * 中间对象为null、属性不是字符串或不存在时忽略
+ *
+ * @author hc
+ */
+class ReflectiveEntityMetadataTest {
+
+    @Index("articles")
+    static class Article {
+
+        @Id
+        private String id;
+
+        private String title;
+
+        /**
+         * 没有getter/setter，直接访问字段
+         */
+        private String summary;
+
+        private int views;
+
+        private Author author;
+
+        public Article() {
+        }
+
+        Article(String id, String title, String authorName) {
+            this.id = id;
+            this.title = title;
+            if (authorName != null) {
+                this.author = new Author();
+                this.author.setName(authorName);
+            }
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public int getViews() {
+            return views;
+        }
+
+        public void setViews(int views) {
+            this.views = views;
+        }
+
+        public Author getAuthor() {
+            return author;
+        }
+
+        public void setAuthor(Author author) {
+            this.author = author;
+        }
+    }
+
+    public static class Author {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    interface ArticleRepository extends Repository<Article, String> {
+    }
+
+    @Test
+    void setStringResolvesPaths() {
+        ReflectiveEntityMetadata<Article> metadata = new ReflectiveEntityMetadata<>(Article.class);
+        Article article = new Article("1", "标题", "hc");
+
+        metadata.setString(article, "title", "<em>标题</em>");
+        metadata.setString(article, "summary", "<em>摘要</em>");
+        metadata.setString(article, "author.name", "<em>hc</em>");
+        assertEquals("<em>标题</em>", article.getTitle());
+        assertEquals("<em>摘要</em>", article.summary);
+        assertEquals("<em>hc</em>", article.getAuthor().getName());
+
+        // 不是字符串、不存在的属性，以及中间对象为null的路径都被忽略
+        metadata.setString(article, "views", "1");
+        metadata.setString(article, "missing", "x");
+        metadata.setString(article, "author.missing", "x");
+        assertEquals(0, article.getViews());
+        Article anonymous = new Article("2", "标题", null);
+        metadata.setString(anonymous, "author.name", "x");
+        assertNull(anonymous.getAuthor());
+    }
+
+    @Test
+    void highlightsAreInjectedFromSearch() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            ArticleRepository repository = new RepositoryFactory<>(ArticleRepository.class, client,
+                    new ElasticsearchProperties()).getObject();
+            repository.save(new Article("1", "reactive streams", "reactive author"));
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.boolQuery()
+                            .should(QueryBuilders.matchQuery("title", "reactive"))
+                            .should(QueryBuilders.matchQuery("author.name", "reactive")))
+                    .highlighter(new HighlightBuilder().field("title").field("author.name"));
+            PageInfo<Article> page = repository.queryBySourceBuilderForPageHighlight(source).block();
+            assertEquals(1, page.getContent().size());
+            Article article = page.getContent().get(0);
+            assertEquals("<em>reactive</em> streams", article.getTitle());
+            assertEquals("<em>reactive</em> author", article.getAuthor().getName());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.lanlinker.starter.elasticsearch.metrics;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Repository方法的耗时按结果分别计时，返回Mono的方法每次订阅计时一次；bulk和搜索的指标随请求记录。
+ * 本地补全索引的指标：读取时取最新的状态，注册方不持有引用也不会被回收
+ *
+ * @author hc
+ */
+class MicrometerRepositoryMetricsTest {
+
+    @Index("metered")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        public Doc() {
+        }
+
+        Doc(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private static Timer timer(SimpleMeterRegistry registry, String method, String outcome) {
+        return registry.get("lanlinker.elasticsearch.repository")
+                .tag("repository", "DocRepository")
+                .tag("index", "metered")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+    /**
+     * doFinally在下游收到信号之后执行，block返回时可能还没有记录
+     */
+    private static void awaitCount(SimpleMeterRegistry registry, String method, String outcome, long count)
+            throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Timer timer = registry.find("lanlinker.elasticsearch.repository")
+                    .tag("method", method)
+                    .tag("outcome", outcome)
+                    .timer();
+            if (timer != null && timer.count() >= count) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(count, timer(registry, method, outcome).count());
+    }
+
+    @Test
+    void repositoryCallsAreTimed() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ElasticsearchStubServer server = ElasticsearchStubServer.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            RepositoryFactory<DocRepository> factory = new RepositoryFactory<>(DocRepository.class, client,
+                    new ElasticsearchProperties());
+            factory.setMetrics(new MicrometerRepositoryMetrics(registry));
+            DocRepository repository = factory.getObject();
+
+            repository.saveAll(Arrays.asList(new Doc("1"), new Doc("2"), new Doc("3")));
+            assertEquals(1, timer(registry, "saveAll", RepositoryMetrics.OUTCOME_SUCCESS).count());
+            assertEquals(1, registry.get("lanlinker.elasticsearch.bulk.items").summary().count());
+            assertEquals(3, registry.get("lanlinker.elasticsearch.bulk.items").summary().totalAmount());
+            assertEquals(0, registry.get("lanlinker.elasticsearch.bulk.item.failures").counter().count());
+
+            // 返回Mono的方法在订阅时计时，每次订阅记录一次
+            Mono<Doc> found = repository.queryById("1");
+            assertEquals(0, registry.find("lanlinker.elasticsearch.repository").tag("method", "queryById").timers().size());
+            found.block();
+            found.block();
+            awaitCount(registry, "queryById", RepositoryMetrics.OUTCOME_SUCCESS, 2);
+
+            Mono<Doc> missing = repository.queryById("missing").onErrorResume(e -> Mono.empty());
+            missing.block();
+            awaitCount(registry, "queryById", RepositoryMetrics.OUTCOME_ERROR, 1);
+
+            repository.streamBySourceBuilder(new SearchSourceBuilder().size(1)).take(1).blockLast();
+            awaitCount(registry, "streamBySourceBuilder", RepositoryMetrics.OUTCOME_CANCELLED, 1);
+
+            repository.queryBySourceBuilderForPageHighlight(new SearchSourceBuilder()).block();
+            Timer took = registry.get("lanlinker.elasticsearch.search.took")
+                    .tag("method", "queryBySourceBuilderForPageHighlight").timer();
+            Timer latency = registry.get("lanlinker.elasticsearch.search.latency")
+                    .tag("method", "queryBySourceBuilderForPageHighlight").timer();
+            assertEquals(1, took.count());
+            assertEquals(1, latency.count());
+            assertTrue(latency.totalTime(TimeUnit.NANOSECONDS) > 0);
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    void suggestMetersFollowStats() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerRepositoryMetrics metrics = new MicrometerRepositoryMetrics(registry);
+        AtomicReference<SuggestIndexStats> current = new AtomicReference<>(
+                new SuggestIndexStats("title", 0, 0, -1, 0, 0, 0, false));
+        metrics.registerSuggestMeters("ItemRepository", "item", "title", current::get);
+        System.gc();
+
+        assertTrue(Double.isNaN(registry.get("lanlinker.elasticsearch.suggest.local.refresh.lag").timeGauge()
+                .value(TimeUnit.MILLISECONDS)));
+        current.set(new SuggestIndexStats("title", 42, 1024, 1500, 30, 7, 3, true));
+        assertEquals(7, registry.get("lanlinker.elasticsearch.suggest.local.hits").tag("field", "title")
+                .functionCounter().count());
+        assertEquals(3, registry.get("lanlinker.elasticsearch.suggest.local.fallbacks").functionCounter().count());
+        assertEquals(42, registry.get("lanlinker.elasticsearch.suggest.local.entries").gauge().value());
+        assertEquals(1, registry.get("lanlinker.elasticsearch.suggest.local.truncated").gauge().value());
+        assertEquals(1500, registry.get("lanlinker.elasticsearch.suggest.local.refresh.lag").timeGauge()
+                .value(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,135 @@
+package com.lanlinker.starter.elasticsearch.node;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.DocumentStore;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.InMemoryDocumentStore;
+import com.lanlinker.starter.elasticsearch.stub.LatencyModel;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个共享数据的桩服务，其中一个的get请求很慢：按延迟选择节点后请求集中到快的节点，对冲请求不受慢节点拖累
+ *
+ * @author hc
+ */
+class HedgedReadsTest {
+
+    private static final Duration SLOW = Duration.ofSeconds(1);
+
+    @Index("hedged")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        public Doc() {
+        }
+
+        Doc(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer fast;
+
+    private ElasticsearchStubServer slow;
+
+    private RestHighLevelClient client;
+
+    private NodeLatencyTracker tracker;
+
+    @BeforeEach
+    void start() throws Exception {
+        DocumentStore store = new InMemoryDocumentStore();
+        fast = ElasticsearchStubServer.builder().store(store).start();
+        slow = ElasticsearchStubServer.builder().store(store).latency(Operation.GET, LatencyModel.fixed(SLOW)).start();
+        tracker = new NodeLatencyTracker(0.3);
+        RestClientBuilder builder = RestClient.builder(HttpHost.create(fast.getHosts()), HttpHost.create(slow.getHosts()))
+                .setHttpClientConfigCallback(httpClient -> {
+                    tracker.install(httpClient);
+                    return httpClient;
+                })
+                .setNodeSelector(new LatencyAwareNodeSelector(tracker, true, TimeUnit.MINUTES.toNanos(1)));
+        client = new RestHighLevelClient(builder);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        fast.close();
+        slow.close();
+    }
+
+    private DocRepository repository(HedgedReads hedgedReads) throws Exception {
+        RepositoryFactory<DocRepository> factory =
+                new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties());
+        factory.setHedgedReads(hedgedReads);
+        DocRepository repository = factory.getObject();
+        repository.save(new Doc("1"));
+        return repository;
+    }
+
+    @Test
+    void latencyAwareSelectionAvoidsSlowNode() throws Exception {
+        DocRepository repository = repository(null);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("1", repository.queryById("1").block().getId());
+        }
+        // 慢节点最多在还没有样本时被选中一次，之后平均延迟更高就不再被选中
+        assertTrue(slow.getRequestCount(Operation.GET) <= 1, "slow: " + slow.getRequestCount(Operation.GET));
+        assertEquals(50, fast.getRequestCount(Operation.GET) + slow.getRequestCount(Operation.GET));
+    }
+
+    @Test
+    void hedgedReadIsNotHeldBySlowNode() throws Exception {
+        HedgedReads hedgedReads = new HedgedReads(tracker, 0.95, Duration.ofMillis(20), Duration.ofMillis(20));
+        DocRepository repository = repository(hedgedReads);
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            assertEquals("1", repository.queryById("1").block().getId());
+            long elapsed = System.nanoTime() - start;
+            assertTrue(elapsed < SLOW.toNanos() / 2, "attempt " + i + " took " + elapsed / 1_000_000 + "ms");
+        }
+    }
+
+    @Test
+    void hedgeGoesToAnotherNode() throws Exception {
+        HedgedReads hedgedReads = new HedgedReads(tracker, 0.95, Duration.ofMillis(20), Duration.ofMillis(20));
+        DocRepository repository = repository(hedgedReads);
+        // 让快节点看起来更慢，第一次请求总是发往慢节点，只有对冲请求能及时返回
+        tracker.record(HttpHost.create(fast.getHosts()), TimeUnit.SECONDS.toNanos(10));
+        long start = System.nanoTime();
+        assertEquals("1", repository.queryById("1").block().getId());
+        assertTrue(System.nanoTime() - start < SLOW.toNanos());
+        assertEquals(1, slow.getRequestCount(Operation.GET));
+        assertEquals(1, fast.getRequestCount(Operation.GET));
+    }
+}
@@ -0,0 +1,178 @@
+package com.lanlinker.starter.elasticsearch.partition;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.annotaions.PartitionGranularity;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.repository.Repository;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按时间分区的裁剪：精度不完整的时间作为上界时要覆盖它表示的整个时间段；
+ * 按实体类删除时直接删除所在分区中的文档，只有id时通过_delete_by_query删除
+ *
+ * @author hc
+ */
+class TimeIndexPartitionerTest {
+
+    @Index(value = "events", partitionField = "time", partitionGranularity = PartitionGranularity.HOUR)
+    static class HourlyEvent {
+
+        @Id
+        private String id;
+
+        private Date time;
+
+        public HourlyEvent() {
+        }
+
+        HourlyEvent(String id, String time) {
+            this.id = id;
+            this.time = Date.from(Instant.parse(time));
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public Date getTime() {
+            return time;
+        }
+
+        public void setTime(Date time) {
+            this.time = time;
+        }
+    }
+
+    @Index(value = "logs", partitionField = "time", partitionZone = "Asia/Shanghai")
+    static class DailyEvent {
+
+        private Date time;
+
+        public Date getTime() {
+            return time;
+        }
+    }
+
+    interface HourlyEventRepository extends Repository<HourlyEvent, String> {
+    }
+
+    private static <T> TimeIndexPartitioner<T> partitioner(Class<T> entityClass) {
+        Index index = entityClass.getAnnotation(Index.class);
+        return new TimeIndexPartitioner<>(entityClass, index.value(), index, 1000);
+    }
+
+    @Test
+    void dateOnlyUpperBoundCoversWholeDay() {
+        String[] indices = partitioner(HourlyEvent.class).searchIndices(QueryBuilders.rangeQuery("time")
+                .gte("2021-07-09T22:00:00Z").lte("2021-07-09"));
+        assertArrayEquals(new String[]{"events-2021.07.09.22", "events-2021.07.09.23"}, indices);
+    }
+
+    @Test
+    void minuteUpperBoundCoversWholeMinute() {
+        String[] indices = partitioner(HourlyEvent.class).searchIndices(QueryBuilders.rangeQuery("time")
+                .gte("2021-07-09T09:30:00Z").lte("2021-07-09T09:59Z"));
+        assertArrayEquals(new String[]{"events-2021.07.09.09"}, indices);
+        assertEquals(Instant.parse("2021-07-09T09:59:59.999999999Z"),
+                TimeIndexPartitioner.toUpperInstant("2021-07-09T09:59Z", null));
+        assertEquals(Instant.parse("2021-07-09T09:59:00.500Z"),
+                TimeIndexPartitioner.toUpperInstant("2021-07-09T09:59:00.500Z", null));
+    }
+
+    @Test
+    void termOnDateCoversWholeDay() {
+        TimeIndexPartitioner<HourlyEvent> partitioner = partitioner(HourlyEvent.class);
+        String[] term = partitioner.searchIndices(QueryBuilders.termQuery("time", "2021-07-09"));
+        assertEquals(24, term.length);
+        assertEquals("events-2021.07.09.00", term[0]);
+        assertEquals("events-2021.07.09.23", term[23]);
+        String[] match = partitioner.searchIndices(QueryBuilders.matchQuery("time", LocalDate.of(2021, 7, 9)));
+        assertArrayEquals(term, match);
+    }
+
+    @Test
+    void rangeTimeZoneAppliesToDateOnlyBounds() {
+        // 按+08:00理解是2021-07-08T16:00Z到2021-07-09T15:59:59.999Z，正好是上海时区的07-09一天
+        String[] indices = partitioner(DailyEvent.class).searchIndices(QueryBuilders.rangeQuery("time")
+                .gte("2021-07-09").lte("2021-07-09").timeZone("+08:00"));
+        assertArrayEquals(new String[]{"logs-2021.07.09"}, indices);
+        // 同样的日期按UTC理解时跨越上海时区的两天
+        indices = partitioner(DailyEvent.class).searchIndices(QueryBuilders.termQuery("time", "2021-07-09"));
+        assertArrayEquals(new String[]{"logs-2021.07.09", "logs-2021.07.10"}, indices);
+    }
+
+    @Test
+    void dateOnlyUpperBoundAgainstStub() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            HourlyEventRepository repository = new RepositoryFactory<>(HourlyEventRepository.class, client,
+                    new ElasticsearchProperties()).getObject();
+            repository.saveAll(Arrays.asList(
+                    new HourlyEvent("1", "2021-07-09T00:30:00Z"),
+                    new HourlyEvent("2", "2021-07-09T12:00:00Z"),
+                    new HourlyEvent("3", "2021-07-09T23:30:00Z"),
+                    new HourlyEvent("4", "2021-07-10T01:00:00Z")));
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(QueryBuilders.boolQuery().filter(QueryBuilders.rangeQuery("time")
+                            .gte(Instant.parse("2021-07-09T00:00:00Z").toEpochMilli()).lte("2021-07-09")))
+                    .size(10);
+            PageInfo<HourlyEvent> page = repository.queryBySourceBuilderForPageHighlight(source).block();
+            List<String> ids = page.getContent().stream().map(HourlyEvent::getId).sorted().collect(Collectors.toList());
+            // lte 2021-07-09 包含当天的所有时间，只裁剪掉07-10的分区
+            assertEquals(Arrays.asList("1", "2", "3"), ids);
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    void deleteByEntityTargetsItsPartition() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            HourlyEventRepository repository = new RepositoryFactory<>(HourlyEventRepository.class, client,
+                    new ElasticsearchProperties()).getObject();
+            HourlyEvent first = new HourlyEvent("1", "2021-07-09T00:30:00Z");
+            repository.saveAll(Arrays.asList(first, new HourlyEvent("2", "2021-07-09T12:00:00Z")));
+
+            assertTrue(repository.delete(first));
+            assertEquals(1, server.getRequestCount(Operation.DELETE));
+            assertEquals(0, server.getRequestCount(Operation.DELETE_BY_QUERY));
+
+            // 只有id时无法确定分区
+            assertTrue(repository.deleteById("2"));
+            assertEquals(1, server.getRequestCount(Operation.DELETE_BY_QUERY));
+            assertEquals(0L, (long) repository.queryAllById(Arrays.asList("1", "2")).count().block());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.lanlinker.starter.elasticsearch.query;
+
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 方法名的解析：运算符后缀的匹配顺序、And/Or/OrderBy的切分，以及编译出的请求体
+ *
+ * @author hc
+ */
+class DerivedQueryTest {
+
+    static class Author {
+
+        private String name;
+    }
+
+    static class Item {
+
+        private String title;
+
+        private String brand;
+
+        private String category;
+
+        private String origin;
+
+        private String checkIn;
+
+        private long price;
+
+        private boolean onSale;
+
+        private LocalDate day;
+
+        private Author author;
+    }
+
+    interface ItemQueries {
+
+        Flux<Item> findByTitleAndPriceBetween(String title, long lo, long hi);
+
+        Flux<Item> findByTitleOrBrandAndPriceLessThan(String title, String brand, long price);
+
+        Flux<Item> findByOriginOrBrand(String origin, String brand);
+
+        Mono<Item> findFirstByTitleOrderByPriceDescTitle(String title);
+
+        Mono<PageInfo<Item>> findTop20ByCategoryIn(List<String> categories);
+
+        Mono<List<Item>> findByTitleIsNotNullAndBrandIsNullAndCategoryNotIn(List<String> categories);
+
+        Flux<Item> findByPriceGreaterThanEqualAndPriceGreaterThanAndPriceLessThanEqual(long a, long b, long c);
+
+        Flux<Item> findByOnSaleIsTrueAndTitleNot(String title);
+
+        Flux<Item> findByCheckIn(String checkIn);
+
+        Flux<Item> findByCheckInIn(List<String> checkIns);
+
+        Flux<Item> findByAuthor_NameStartingWith(String prefix);
+
+        Flux<Item> findByDayBefore(LocalDate day);
+
+        Mono<Long> countByBrand(String brand);
+
+        Mono<Boolean> existsByTitle(String title);
+
+        Flux<Item> findByTitle(String title, String extra);
+
+        Flux<Item> findByColor(String color);
+
+        Flux<Long> countByTitle(String title);
+
+        List<Item> findByBrand(String brand);
+    }
+
+    private static DerivedQuery parse(String name) {
+        for (Method method : ItemQueries.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return DerivedQuery.parse(method, Item.class);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static String bind(String name, Object... args) {
+        return parse(name).bind(args);
+    }
+
+    @Test
+    void andConditionsInOneBool() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":["
+                        + "{\"match\":{\"title\":{\"query\":\"phone\",\"operator\":\"and\"}}},"
+                        + "{\"range\":{\"price\":{\"gte\":10,\"lte\":20}}}]}}}",
+                bind("findByTitleAndPriceBetween", "phone", 10L, 20L));
+    }
+
+    @Test
+    void andBindsTighterThanOr() {
+        assertEquals("{\"query\":{\"bool\":{\"should\":["
+                        + "{\"bool\":{\"must\":[{\"match\":{\"title\":{\"query\":\"a\",\"operator\":\"and\"}}}]}},"
+                        + "{\"bool\":{\"must\":[{\"match\":{\"brand\":{\"query\":\"b\",\"operator\":\"and\"}}},"
+                        + "{\"range\":{\"price\":{\"lt\":5}}}]}}],\"minimum_should_match\":1}}}",
+                bind("findByTitleOrBrandAndPriceLessThan", "a", "b", 5L));
+    }
+
+    @Test
+    void orInsidePropertyNameIsNotASeparator() {
+        String body = bind("findByOriginOrBrand", "cn", "b");
+        assertTrue(body.contains("{\"match\":{\"origin\":{\"query\":\"cn\""), body);
+        assertTrue(body.contains("{\"match\":{\"brand\":{\"query\":\"b\""), body);
+    }
+
+    @Test
+    void orderByWithMixedDirections() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"match\":{\"title\":{\"query\":\"a\",\"operator\":\"and\"}}}]}},"
+                        + "\"size\":1,\"sort\":[{\"price\":{\"order\":\"desc\"}},{\"title\":{\"order\":\"asc\"}}]}",
+                bind("findFirstByTitleOrderByPriceDescTitle", "a"));
+    }
+
+    @Test
+    void topNSetsSize() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"terms\":{\"category\":[\"x\",\"y\"]}}]}},\"size\":20}",
+                bind("findTop20ByCategoryIn", Arrays.asList("x", "y")));
+        assertEquals(DerivedQuery.ResultType.PAGE, parse("findTop20ByCategoryIn").getResultType());
+    }
+
+    @Test
+    void longerSuffixesWin() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"exists\":{\"field\":\"title\"}}],"
+                        + "\"must_not\":[{\"exists\":{\"field\":\"brand\"}},{\"terms\":{\"category\":[\"x\"]}}]}}}",
+                bind("findByTitleIsNotNullAndBrandIsNullAndCategoryNotIn", Collections.singletonList("x")));
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"range\":{\"price\":{\"gte\":1}}},"
+                        + "{\"range\":{\"price\":{\"gt\":2}}},{\"range\":{\"price\":{\"lte\":3}}}]}}}",
+                bind("findByPriceGreaterThanEqualAndPriceGreaterThanAndPriceLessThanEqual", 1L, 2L, 3L));
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"term\":{\"onSale\":true}}],"
+                        + "\"must_not\":[{\"match\":{\"title\":{\"query\":\"a\",\"operator\":\"and\"}}}]}}}",
+                bind("findByOnSaleIsTrueAndTitleNot", "a"));
+    }
+
+    @Test
+    void suffixThatIsPartOfPropertyName() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"match\":{\"checkIn\":{\"query\":\"a\",\"operator\":\"and\"}}}]}}}",
+                bind("findByCheckIn", "a"));
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"terms\":{\"checkIn\":[\"a\"]}}]}}}",
+                bind("findByCheckInIn", Collections.singletonList("a")));
+    }
+
+    @Test
+    void nestedPropertyPath() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"prefix\":{\"author.name\":\"j\"}}]}}}",
+                bind("findByAuthor_NameStartingWith", "j"));
+    }
+
+    @Test
+    void argumentsUseDocumentDateFormat() {
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"range\":{\"day\":{\"lt\":\"2021-07-09\"}}}]}}}",
+                bind("findByDayBefore", LocalDate.of(2021, 7, 9)));
+    }
+
+    @Test
+    void countAndExistsGoToCountEndpoint() {
+        DerivedQuery count = parse("countByBrand");
+        assertEquals(DerivedQuery.ResultType.COUNT, count.getResultType());
+        assertEquals("_count", count.getEndpoint());
+        assertEquals("{\"query\":{\"bool\":{\"must\":[{\"match\":{\"brand\":{\"query\":\"b\",\"operator\":\"and\"}}}]}}}",
+                count.bind(new Object[]{"b"}));
+        assertEquals(DerivedQuery.ResultType.EXISTS, parse("existsByTitle").getResultType());
+        assertEquals("_search", parse("findByCheckIn").getEndpoint());
+    }
+
+    @Test
+    void collectRangeOnlyWithoutOr() {
+        List<Object> bounds = new ArrayList<>();
+        parse("findByTitleAndPriceBetween").collectRange("price", new Object[]{"a", 1L, 2L}, (lower, upper) -> {
+            bounds.add(lower);
+            bounds.add(upper);
+        });
+        assertEquals(Arrays.asList(1L, 2L), bounds);
+        bounds.clear();
+        parse("findByTitleOrBrandAndPriceLessThan").collectRange("price", new Object[]{"a", "b", 5L},
+                (lower, upper) -> bounds.add(upper));
+        assertTrue(bounds.isEmpty());
+    }
+
+    @Test
+    void invalidMethodsAreRejected() {
+        assertThrows(RuntimeException.class, () -> parse("findByTitle"));
+        assertThrows(RuntimeException.class, () -> parse("findByColor"));
+        assertThrows(RuntimeException.class, () -> parse("countByTitle"));
+        assertThrows(RuntimeException.class, () -> parse("findByBrand"));
+    }
+}
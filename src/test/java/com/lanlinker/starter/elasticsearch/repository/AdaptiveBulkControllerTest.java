@@ -0,0 +1,136 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AIMD的调整：成功时加性增大，被拒绝或过慢时乘性减小，同一次拥塞只减小一次，并发数由许可控制
+ *
+ * @author hc
+ */
+class AdaptiveBulkControllerTest {
+
+    private static ElasticsearchProperties.Bulk bulk() {
+        ElasticsearchProperties.Bulk bulk = new ElasticsearchProperties.Bulk();
+        bulk.setActions(400);
+        bulk.setConcurrentRequests(2);
+        bulk.setMinActions(100);
+        bulk.setMaxActions(500);
+        bulk.setActionsIncrement(50);
+        bulk.setMaxConcurrentRequests(4);
+        bulk.setMaxLatency(Duration.ofSeconds(1));
+        bulk.setInitialBackoff(Duration.ofMillis(100));
+        bulk.setMaxBackoff(Duration.ofMillis(1000));
+        return bulk;
+    }
+
+    @Test
+    void successGrowsActionsAndConcurrency() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        controller.onSuccess(controller.acquire().block(), 0);
+        assertEquals(450, controller.actions());
+        assertEquals(2, controller.concurrency());
+        controller.onSuccess(controller.acquire().block(), 0);
+        // 连续成功的次数达到并发数时并发数加一，文档数不超过上限
+        assertEquals(500, controller.actions());
+        assertEquals(3, controller.concurrency());
+        for (int i = 0; i < 20; i++) {
+            controller.onSuccess(controller.acquire().block(), 0);
+        }
+        assertEquals(500, controller.actions());
+        assertEquals(4, controller.concurrency());
+    }
+
+    @Test
+    void rejectionHalvesOncePerCongestion() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        AdaptiveBulkController.Permit first = controller.acquire().block();
+        AdaptiveBulkController.Permit second = controller.acquire().block();
+        controller.onRejected(first);
+        assertEquals(200, controller.actions());
+        assertEquals(1, controller.concurrency());
+        // 减小之前发出的请求再被拒绝，不再减小
+        controller.onRejected(second);
+        assertEquals(200, controller.actions());
+        assertEquals(1, controller.concurrency());
+        controller.onRejected(controller.acquire().block());
+        assertEquals(100, controller.actions());
+        controller.onRejected(controller.acquire().block());
+        assertEquals(100, controller.actions());
+        assertEquals(1, controller.concurrency());
+    }
+
+    @Test
+    void slowResponseCountsAsRejection() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        controller.onSuccess(controller.acquire().block(), TimeUnit.SECONDS.toNanos(2));
+        assertEquals(200, controller.actions());
+        assertEquals(1, controller.concurrency());
+    }
+
+    @Test
+    void permitsLimitInFlightRequests() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        AdaptiveBulkController.Permit first = controller.acquire().block();
+        controller.acquire().block();
+        AtomicReference<AdaptiveBulkController.Permit> third = new AtomicReference<>();
+        controller.acquire().subscribe(third::set);
+        AtomicReference<AdaptiveBulkController.Permit> fourth = new AtomicReference<>();
+        controller.acquire().subscribe(fourth::set);
+        assertNull(third.get());
+        // 只归还许可不调整，排队的按顺序取得
+        controller.release(first);
+        assertNotNull(third.get());
+        assertNull(fourth.get());
+        // 同一个许可只能归还一次
+        controller.release(first);
+        assertNull(fourth.get());
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueue() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        AdaptiveBulkController.Permit first = controller.acquire().block();
+        controller.acquire().block();
+        AtomicReference<AdaptiveBulkController.Permit> cancelled = new AtomicReference<>();
+        Disposable waiting = controller.acquire().subscribe(cancelled::set);
+        AtomicReference<AdaptiveBulkController.Permit> next = new AtomicReference<>();
+        controller.acquire().subscribe(next::set);
+        waiting.dispose();
+        controller.release(first);
+        assertNull(cancelled.get());
+        assertNotNull(next.get());
+    }
+
+    @Test
+    void fixedWhenNotAdaptive() {
+        ElasticsearchProperties.Bulk bulk = bulk();
+        bulk.setAdaptive(false);
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk);
+        controller.onSuccess(controller.acquire().block(), 0);
+        controller.onRejected(controller.acquire().block());
+        assertEquals(400, controller.actions());
+        assertEquals(2, controller.concurrency());
+        assertEquals(2, controller.maxConcurrency());
+    }
+
+    @Test
+    void backoffGrowsWithJitterUpToLimit() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(bulk());
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long full = Math.min(1000, 100L << Math.min(attempt, 30));
+            long delay = controller.backoff(attempt).toMillis();
+            assertTrue(delay >= full / 2 && delay <= full, attempt + ": " + delay);
+        }
+    }
+}
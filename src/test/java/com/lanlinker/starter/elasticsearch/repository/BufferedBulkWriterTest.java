@@ -0,0 +1,69 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.LatencyModel;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 排队的文档数有上限，超过后直接失败；关闭时仍在排队的文档以失败结束，不会一直挂起
+ *
+ * @author hc
+ */
+class BufferedBulkWriterTest {
+
+    private static IndexRequest request(int n) {
+        return new IndexRequest("docs").id(String.valueOf(n)).source("{\"n\":" + n + "}", XContentType.JSON);
+    }
+
+    private static String failure(CompletableFuture<Boolean> future) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return e.getCause().getMessage();
+    }
+
+    @Test
+    void waitersAreBoundedAndFailedOnClose() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.builder()
+                .latency(Operation.BULK, LatencyModel.fixed(Duration.ofMillis(500)))
+                .start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            ElasticsearchProperties.Bulk bulk = new ElasticsearchProperties.Bulk();
+            bulk.setActions(1);
+            bulk.setMaxPendingActions(1);
+            bulk.setMaxWaiters(1);
+            BufferedBulkWriter writer = new BufferedBulkWriter(client, bulk, (request, failed) -> {
+            });
+            // 第一个取得许可，第二个排队，第三个超过排队上限
+            CompletableFuture<Boolean> sent = writer.add(request(1)).toFuture();
+            CompletableFuture<Boolean> waiting = writer.add(request(2)).toFuture();
+            CompletableFuture<Boolean> overflow = writer.add(request(3)).toFuture();
+            assertTrue(failure(overflow).contains("上限"));
+
+            writer.close();
+            assertTrue(failure(waiting).contains("已关闭"));
+            // 已经放入缓冲区的文档照常发送
+            assertTrue(sent.get(5, TimeUnit.SECONDS));
+            assertEquals(1, server.getRequestCount(Operation.BULK));
+            assertTrue(failure(writer.add(request(4)).toFuture()).contains("已关闭"));
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
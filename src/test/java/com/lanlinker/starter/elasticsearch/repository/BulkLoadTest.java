@@ -0,0 +1,152 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * bulkLoad：导入时关闭refresh和副本，结束后恢复原来的设置，写入失败、被取消时也恢复；原来没有的设置恢复为默认
+ *
+ * @author hc
+ */
+class BulkLoadTest {
+
+    private static final String INDEX = "loaded";
+
+    @Index(INDEX)
+    static class Doc {
+
+        @Id
+        private String id;
+
+        public Doc() {
+        }
+
+        Doc(int n) {
+            this.id = String.valueOf(n);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private void createIndex(String refreshInterval, String replicas) {
+        Map<String, Object> settings = new HashMap<>();
+        if (refreshInterval != null) {
+            settings.put("index.refresh_interval", refreshInterval);
+        }
+        settings.put("index.number_of_replicas", replicas);
+        server.getStore().createIndex(INDEX, settings);
+    }
+
+    private String setting(String key) {
+        Object value = server.getStore().getSettings(INDEX).get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * 第一个文档被写入之前记录当时的设置
+     */
+    private Flux<Doc> docs(int count, AtomicReference<String> during) {
+        return Flux.range(0, count)
+                .doOnSubscribe(s -> during.set(setting("index.refresh_interval") + "/" + setting("index.number_of_replicas")))
+                .map(Doc::new);
+    }
+
+    @Test
+    void settingsAreRestoredAfterLoad() {
+        createIndex("5s", "2");
+        AtomicReference<String> during = new AtomicReference<>();
+        BulkResult result = repository.bulkLoad(docs(50, during), true).block();
+        assertNotNull(result);
+        assertEquals("-1/0", during.get());
+        assertEquals("5s", setting("index.refresh_interval"));
+        assertEquals("2", setting("index.number_of_replicas"));
+        assertNotNull(server.getStore().get(INDEX, "49"));
+    }
+
+    @Test
+    void missingSettingIsRemovedAgain() {
+        createIndex(null, "1");
+        repository.bulkLoad(docs(5, new AtomicReference<>()), false).block();
+        assertFalse(server.getStore().getSettings(INDEX).containsKey("index.refresh_interval"));
+        assertEquals("1", setting("index.number_of_replicas"));
+    }
+
+    @Test
+    void settingsAreRestoredAfterError() {
+        createIndex("5s", "2");
+        Flux<Doc> failing = docs(5, new AtomicReference<>())
+                .concatWith(Flux.error(new IllegalStateException("数据源出错")));
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> repository.bulkLoad(failing, false).block());
+        assertEquals("数据源出错", e.getMessage());
+        assertEquals("5s", setting("index.refresh_interval"));
+        assertEquals("2", setting("index.number_of_replicas"));
+    }
+
+    @Test
+    void settingsAreRestoredAfterCancel() throws Exception {
+        createIndex("5s", "2");
+        AtomicReference<String> during = new AtomicReference<>();
+        Disposable load = repository.bulkLoad(docs(5, during).concatWith(Flux.never()), false).subscribe();
+        for (int i = 0; i < 100 && during.get() == null; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("-1/0", during.get());
+        load.dispose();
+        // 恢复设置是异步发送的
+        for (int i = 0; i < 100 && !"5s".equals(setting("index.refresh_interval")); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("5s", setting("index.refresh_interval"));
+        assertEquals("2", setting("index.number_of_replicas"));
+    }
+}
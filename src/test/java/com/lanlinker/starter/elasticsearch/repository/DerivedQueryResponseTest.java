@@ -0,0 +1,84 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 派生查询通过低级客户端发送，响应没有Content-Type时按JSON解析
+ *
+ * @author hc
+ */
+class DerivedQueryResponseTest {
+
+    @Index("items")
+    static class Item {
+
+        @Id
+        private String id;
+
+        private String title;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+    }
+
+    interface ItemRepository extends Repository<Item, String> {
+
+        Mono<Long> countByTitle(String title);
+
+        Mono<Boolean> existsByTitle(String title);
+    }
+
+    @Test
+    void missingContentTypeIsParsedAsJson() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "{\"count\":2}".getBytes(StandardCharsets.UTF_8);
+            // 不设置Content-Type
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(
+                new HttpHost("127.0.0.1", server.getAddress().getPort())));
+        try {
+            ItemRepository repository = new RepositoryFactory<>(ItemRepository.class, client,
+                    new ElasticsearchProperties()).getObject();
+            assertEquals(2L, (long) repository.countByTitle("a").block());
+            assertTrue(repository.existsByTitle("a").block());
+        } finally {
+            client.close();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.SuggestIndexStats;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.search.SearchHit;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地补全索引：按权重返回前缀匹配的词条，文档数超过max-entries时不再由本地返回
+ *
+ * @author hc
+ */
+class LocalSuggesterTest {
+
+    private static SearchHit hit(int id, String source) {
+        SearchHit hit = new SearchHit(id, String.valueOf(id), null, Collections.emptyMap(), Collections.emptyMap());
+        return hit.sourceRef(new BytesArray(source));
+    }
+
+    private static Flux<SearchHit> hits() {
+        return Flux.just(
+                hit(1, "{\"title\":{\"input\":[\"Apple\",\"apricot\"],\"weight\":5}}"),
+                hit(2, "{\"title\":\"application\"}"),
+                hit(3, "{\"title\":{\"input\":\"banana\",\"weight\":9}}"));
+    }
+
+    private static LocalSuggester suggester(int maxEntries) throws InterruptedException {
+        ElasticsearchProperties.Suggest config = new ElasticsearchProperties.Suggest();
+        config.setSize(2);
+        config.setMaxEntries(maxEntries);
+        config.setRefreshInterval(Duration.ofHours(1));
+        LocalSuggester suggester = new LocalSuggester("title", config, hits());
+        // 创建时在后台加载一次
+        for (int i = 0; i < 100 && suggester.stats().getRefreshLagMillis() < 0; i++) {
+            Thread.sleep(20);
+        }
+        return suggester;
+    }
+
+    @Test
+    void prefixLookupByWeight() throws Exception {
+        try (LocalSuggester suggester = suggester(10)) {
+            assertEquals(Arrays.asList("Apple", "apricot"), suggester.lookup("ap"));
+            assertEquals(Collections.singletonList("application"), suggester.lookup("appli"));
+            // 本地没有结果时交给集群
+            assertNull(suggester.lookup("cherry"));
+            SuggestIndexStats stats = suggester.stats();
+            assertEquals(4, stats.getEntries());
+            assertFalse(stats.isTruncated());
+            assertEquals(2, stats.getLocalHits());
+            assertEquals(1, stats.getFallbacks());
+        }
+    }
+
+    @Test
+    void truncatedIndexIsNotServed() throws Exception {
+        try (LocalSuggester suggester = suggester(2)) {
+            // 只加载了前两个文档，前缀ap在本地能找到，但结果可能不完整，仍然交给集群
+            assertNull(suggester.lookup("ap"));
+            SuggestIndexStats stats = suggester.stats();
+            assertTrue(stats.isTruncated());
+            assertEquals(0, stats.getLocalHits());
+            assertEquals(1, stats.getFallbacks());
+        }
+    }
+}
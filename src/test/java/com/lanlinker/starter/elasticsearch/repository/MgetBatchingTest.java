@@ -0,0 +1,157 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按id批量读取：queryAllById按传入顺序返回并跳过不存在的文档；开启合并时并发的queryById合并为_mget，
+ * 按位置把结果分发给各自的调用，不存在的文档和失败的条目只让对应的调用失败
+ *
+ * @author hc
+ */
+class MgetBatchingTest {
+
+    @Index("batched")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id) {
+            this.id = id;
+            this.name = "name-" + id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private DocRepository repository(int maxBatchSize) throws Exception {
+        ElasticsearchProperties properties = new ElasticsearchProperties();
+        properties.getMget().setBatching(true);
+        // 足够长的窗口，保证并发的调用落在同一批
+        properties.getMget().setWindow(Duration.ofMillis(100));
+        properties.getMget().setMaxBatchSize(maxBatchSize);
+        DocRepository repository = new RepositoryFactory<>(DocRepository.class, client, properties).getObject();
+        repository.saveAll(IntStream.range(0, 10).mapToObj(i -> new Doc(String.valueOf(i))).collect(Collectors.toList()));
+        return repository;
+    }
+
+    @Test
+    void queryAllByIdKeepsOrderAndSkipsMissing() throws Exception {
+        DocRepository repository = repository(100);
+        List<String> ids = repository.queryAllById(Arrays.asList("7", "missing", "2", "5"))
+                .map(Doc::getId)
+                .collectList()
+                .block();
+        assertEquals(Arrays.asList("7", "2", "5"), ids);
+        assertEquals(1, server.getRequestCount(Operation.MGET));
+    }
+
+    @Test
+    void concurrentQueryByIdIsBatched() throws Exception {
+        DocRepository repository = repository(100);
+        List<String> names = Flux.range(0, 10)
+                .flatMapSequential(i -> repository.queryById(String.valueOf(i)))
+                .map(Doc::getName)
+                .collectList()
+                .block();
+        assertEquals(IntStream.range(0, 10).mapToObj(i -> "name-" + i).collect(Collectors.toList()), names);
+        assertEquals(1, server.getRequestCount(Operation.MGET));
+        assertEquals(0, server.getRequestCount(Operation.GET));
+    }
+
+    @Test
+    void batchesAreSplitAtMaxBatchSize() throws Exception {
+        DocRepository repository = repository(4);
+        assertEquals(10L, (long) Flux.range(0, 10)
+                .flatMap(i -> repository.queryById(String.valueOf(i)))
+                .count()
+                .block());
+        assertEquals(3, server.getRequestCount(Operation.MGET));
+    }
+
+    @Test
+    void missingDocumentFailsOnlyItsCall() throws Exception {
+        DocRepository repository = repository(100);
+        List<String> results = Flux.just("1", "missing", "2")
+                .flatMapSequential(id -> repository.queryById(id)
+                        .map(Doc::getName)
+                        .onErrorResume(e -> Mono.just("error:" + e.getMessage())))
+                .collectList()
+                .block();
+        assertEquals(Arrays.asList("name-1", "error:文档不存在！", "name-2"), results);
+        assertEquals(1, server.getRequestCount(Operation.MGET));
+    }
+
+    @Test
+    void failedItemIsMappedToError() throws Exception {
+        DocRepository repository = repository(100);
+        repository.deleteIndex();
+        // _mget整体成功，失败的是其中的条目
+        ElasticsearchException e = assertThrows(ElasticsearchException.class, () -> repository.queryById("1").block());
+        assertTrue(e.getMessage().contains("index_not_found_exception"));
+        assertThrows(ElasticsearchException.class, () -> repository.queryAllById(Arrays.asList("1", "2")).collectList().block());
+        assertEquals(2, server.getRequestCount(Operation.MGET));
+    }
+}
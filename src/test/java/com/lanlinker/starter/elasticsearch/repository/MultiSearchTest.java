@@ -0,0 +1,167 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.PageInfo;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * _msearch：multiQuery按传入顺序发布每个查询的结果，任何一个失败时以该错误结束；
+ * 开启合并时并发的分页查询合并为一次_msearch，失败的查询只让对应的调用失败
+ *
+ * @author hc
+ */
+class MultiSearchTest {
+
+    @Index("searched")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String color;
+
+        public Doc() {
+        }
+
+        Doc(String id, String color) {
+            this.id = id;
+            this.color = color;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getColor() {
+            return color;
+        }
+
+        public void setColor(String color) {
+            this.color = color;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private DocRepository repository(boolean batching) throws Exception {
+        ElasticsearchProperties properties = new ElasticsearchProperties();
+        properties.getMsearch().setBatching(batching);
+        // 足够长的窗口，保证并发的查询落在同一批
+        properties.getMsearch().setWindow(Duration.ofMillis(100));
+        DocRepository repository = new RepositoryFactory<>(DocRepository.class, client, properties).getObject();
+        // red、green、blue分别有1、2、3个文档，按total区分结果
+        List<String> colors = Arrays.asList("red", "green", "green", "blue", "blue", "blue");
+        repository.saveAll(IntStream.range(0, colors.size())
+                .mapToObj(i -> new Doc(String.valueOf(i), colors.get(i)))
+                .collect(Collectors.toList()));
+        return repository;
+    }
+
+    private static SearchSourceBuilder color(String color) {
+        return new SearchSourceBuilder().query(QueryBuilders.termQuery("color", color));
+    }
+
+    /**
+     * 桩服务不支持的查询，在_msearch中是一个失败的条目
+     */
+    private static SearchSourceBuilder failing() {
+        return new SearchSourceBuilder().query(QueryBuilders.queryStringQuery("color:red"));
+    }
+
+    @Test
+    void multiQueryKeepsOrder() throws Exception {
+        DocRepository repository = repository(false);
+        List<Long> totals = repository.multiQuery(Arrays.asList(color("blue"), color("red"), color("green")))
+                .map(PageInfo::getTotal)
+                .collectList()
+                .block();
+        assertEquals(Arrays.asList(3L, 1L, 2L), totals);
+        assertEquals(1, server.getRequestCount(Operation.MSEARCH));
+        assertEquals(Collections.emptyList(), repository.multiQuery(Collections.emptyList()).collectList().block());
+        assertEquals(1, server.getRequestCount(Operation.MSEARCH));
+    }
+
+    @Test
+    void multiQueryFailsWithFailedItem() throws Exception {
+        DocRepository repository = repository(false);
+        List<Long> received = new ArrayList<>();
+        assertThrows(ElasticsearchException.class, () -> repository.multiQuery(Arrays.asList(color("red"), failing()))
+                .doOnNext(page -> received.add(page.getTotal()))
+                .blockLast());
+        // 失败之前的结果已经发布
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    void concurrentPageQueriesAreCoalesced() throws Exception {
+        DocRepository repository = repository(true);
+        List<Long> totals = Flux.just("red", "green", "blue")
+                .flatMapSequential(color -> repository.queryBySourceBuilderForPageHighlight(color(color)))
+                .map(PageInfo::getTotal)
+                .collectList()
+                .block();
+        assertEquals(1, server.getRequestCount(Operation.MSEARCH));
+        assertEquals(0, server.getRequestCount(Operation.SEARCH));
+        assertEquals(Arrays.asList(1L, 2L, 3L), totals);
+    }
+
+    @Test
+    void failedQueryFailsOnlyItsCall() throws Exception {
+        DocRepository repository = repository(true);
+        List<String> results = Flux.just(color("red"), failing(), color("blue"))
+                .flatMapSequential(source -> repository.queryBySourceBuilderForPageHighlight(source)
+                        .map(page -> "total:" + page.getTotal())
+                        .onErrorResume(ElasticsearchException.class, e -> Mono.just("error")))
+                .collectList()
+                .block();
+        assertEquals(Arrays.asList("total:1", "error", "total:3"), results);
+        assertEquals(1, server.getRequestCount(Operation.MSEARCH));
+    }
+}
@@ -0,0 +1,212 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.annotaions.Routing;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.LatencyModel;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * queryById的本地缓存：以id为键，指定routing的读取不经过缓存；写入和删除后失效，
+ * 并发未命中只发起一次GET，命中时解码出新的实例，按@Index限制条数
+ *
+ * @author hc
+ */
+class NearCacheTest {
+
+    @Index(value = "cached", cache = true)
+    static class Doc {
+
+        @Id
+        private String id;
+
+        @Routing
+        private String tenant;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id, String tenant, String name) {
+            this.id = id;
+            this.tenant = tenant;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public void setTenant(String tenant) {
+            this.tenant = tenant;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    @Index(value = "small", cache = true, cacheMaximumSize = 1)
+    static class Small {
+
+        @Id
+        private String id;
+
+        public Small() {
+        }
+
+        Small(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    interface SmallRepository extends Repository<Small, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void routedReadsBypassCache() {
+        repository.save(new Doc("1", "a", "first"));
+
+        assertEquals("first", repository.queryById("1").block().getName());
+        assertEquals("first", repository.queryById("1").block().getName());
+        assertEquals(1, server.getRequestCount(Operation.GET));
+
+        // 不同routing下可能是不同的文档，每次都读取集群
+        repository.queryById("1", "a").block();
+        repository.queryById("1", "a").block();
+        assertEquals(3, server.getRequestCount(Operation.GET));
+    }
+
+    @Test
+    void hitsDecodeFreshInstances() {
+        repository.save(new Doc("1", null, "first"));
+        Doc first = repository.queryById("1").block();
+        first.setName("changed");
+        Doc second = repository.queryById("1").block();
+        assertNotSame(first, second);
+        assertEquals("first", second.getName());
+        assertEquals(1, server.getRequestCount(Operation.GET));
+    }
+
+    @Test
+    void writesInvalidate() {
+        repository.save(new Doc("1", null, "first"));
+        repository.queryById("1").block();
+
+        repository.save(new Doc("1", null, "saved"));
+        assertEquals("saved", repository.queryById("1").block().getName());
+
+        repository.update("1", Collections.singletonMap("name", "updated"));
+        assertEquals("updated", repository.queryById("1").block().getName());
+
+        repository.updateByScript("1", "ctx._source.name = params.name", Collections.singletonMap("name", "scripted"));
+        assertEquals("scripted", repository.queryById("1").block().getName());
+        assertEquals(4, server.getRequestCount(Operation.GET));
+
+        repository.deleteById("1");
+        RuntimeException e = assertThrows(RuntimeException.class, () -> repository.queryById("1").block());
+        assertEquals("文档不存在！", e.getMessage());
+        assertEquals(5, server.getRequestCount(Operation.GET));
+    }
+
+    @Test
+    void concurrentMissesShareOneGet() throws Exception {
+        ElasticsearchStubServer slow = ElasticsearchStubServer.builder()
+                .latency(Operation.GET, LatencyModel.fixed(Duration.ofMillis(200)))
+                .start();
+        RestHighLevelClient slowClient = new RestHighLevelClient(RestClient.builder(HttpHost.create(slow.getHosts())));
+        try {
+            DocRepository slowRepository = new RepositoryFactory<>(DocRepository.class, slowClient,
+                    new ElasticsearchProperties()).getObject();
+            slowRepository.save(new Doc("1", null, "first"));
+            List<String> names = Flux.range(0, 8)
+                    .flatMap(i -> slowRepository.queryById("1"))
+                    .map(Doc::getName)
+                    .collectList()
+                    .block();
+            assertEquals(Collections.nCopies(8, "first"), names);
+            assertEquals(1, slow.getRequestCount(Operation.GET));
+        } finally {
+            slowClient.close();
+            slow.close();
+        }
+    }
+
+    @Test
+    void maximumSizeFromIndex() throws Exception {
+        SmallRepository small = new RepositoryFactory<>(SmallRepository.class, client, new ElasticsearchProperties())
+                .getObject();
+        small.save(new Small("1"));
+        small.save(new Small("2"));
+        small.queryById("1").block();
+        small.queryById("2").block();
+        assertEquals(2, server.getRequestCount(Operation.GET));
+        // 淘汰是异步执行的
+        Thread.sleep(200);
+        Mono.when(small.queryById("1"), small.queryById("2")).block();
+        assertTrue(server.getRequestCount(Operation.GET) >= 3);
+    }
+}
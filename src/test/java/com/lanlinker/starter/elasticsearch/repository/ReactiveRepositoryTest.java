@@ -0,0 +1,135 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 响应式Repository：订阅之前不发送请求，每次订阅都重新发送，写入和索引库管理都不阻塞调用线程
+ *
+ * @author hc
+ */
+class ReactiveRepositoryTest {
+
+    @Index("reactive")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    interface DocRepository extends ReactiveRepository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private long totalRequests() {
+        long total = 0;
+        for (Operation operation : Operation.values()) {
+            total += server.getRequestCount(operation);
+        }
+        return total;
+    }
+
+    @Test
+    void nothingIsSentBeforeSubscribe() {
+        Doc doc = new Doc("1", "a");
+        List<Mono<Boolean>> calls = Arrays.asList(
+                repository.createIndex("{}"),
+                repository.save(doc),
+                repository.saveAll(Collections.singletonList(doc)),
+                repository.update("1", Collections.singletonMap("name", "b")),
+                repository.upsert(doc),
+                repository.delete(doc),
+                repository.deleteById("1"),
+                repository.deleteIndex());
+        assertEquals(8, calls.size());
+        assertEquals(0, totalRequests());
+
+        // 每次订阅都重新发送
+        Mono<Boolean> save = repository.save(doc);
+        save.block();
+        save.block();
+        assertEquals(2, server.getRequestCount(Operation.INDEX));
+    }
+
+    @Test
+    void writeAndAdminRoundTrip() {
+        assertTrue(repository.createIndex("{}").block());
+        assertTrue(repository.save(new Doc("1", "a")).block());
+        assertTrue(repository.saveAll(Arrays.asList(new Doc("2", "b"), new Doc("3", "c"))).block());
+        assertEquals(1, server.getRequestCount(Operation.BULK));
+
+        assertTrue(repository.update("1", Collections.singletonMap("name", "a2")).block());
+        assertEquals("a2", repository.queryById("1").block().getName());
+
+        assertTrue(repository.delete(new Doc("2", null)).block());
+        assertTrue(repository.deleteById("3").block());
+        assertEquals(Collections.singletonList("1"), repository.queryAllById(Arrays.asList("1", "2", "3"))
+                .map(Doc::getId).collectList().block());
+
+        assertTrue(repository.deleteIndex().block());
+        assertFalse(server.getStore().indexExists("reactive"));
+    }
+}
@@ -0,0 +1,194 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.annotaions.Routing;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * routing：@Routing字段的值随写入发送，按id的读写和搜索的重载把routing作为请求参数发送。
+ * 桩服务不按routing分片，这里检查客户端发出的请求
+ *
+ * @author hc
+ */
+class RoutingTest {
+
+    @Index("routed")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        @Routing
+        private String tenant;
+
+        private String name;
+
+        public Doc() {
+        }
+
+        Doc(String id, String tenant, String name) {
+            this.id = id;
+            this.tenant = tenant;
+            this.name = name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public void setTenant(String tenant) {
+            this.tenant = tenant;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    /**
+     * 发出的请求行，已经URL解码
+     */
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * 发出的请求体
+     */
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts()))
+                .setHttpClientConfigCallback(builder -> builder.addInterceptorLast(
+                        (HttpRequest request, HttpContext context) -> record(request))));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private void record(HttpRequest request) throws IOException {
+        requests.add(request.getRequestLine().getMethod() + " "
+                + URLDecoder.decode(request.getRequestLine().getUri(), StandardCharsets.UTF_8.name()));
+        if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+            bodies.add(EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity()));
+        }
+    }
+
+    /**
+     * 最后一个请求
+     */
+    private String last() {
+        return requests.get(requests.size() - 1);
+    }
+
+    @Test
+    void writesCarryRoutingField() {
+        repository.save(new Doc("1", "t1", "a"));
+        assertTrue(last().startsWith("PUT /routed/_doc/1?"), last());
+        assertTrue(last().contains("routing=t1"), last());
+
+        repository.saveAll(Arrays.asList(new Doc("2", "t2", "b"), new Doc("3", null, "c")));
+        String bulk = bodies.get(bodies.size() - 1);
+        assertTrue(bulk.contains("\"_id\":\"2\",\"routing\":\"t2\""), bulk);
+        // 没有routing的文档不带routing
+        assertTrue(bulk.contains("\"_id\":\"3\"}"), bulk);
+
+        repository.delete(new Doc("1", "t1", null));
+        assertTrue(last().startsWith("DELETE /routed/_doc/1?"), last());
+        assertTrue(last().contains("routing=t1"), last());
+    }
+
+    @Test
+    void idOverloadsSendRouting() {
+        repository.save(new Doc("1", "t1", "a"));
+
+        repository.queryById("1", "t1").block();
+        assertTrue(last().startsWith("GET /routed/_doc/1?routing=t1"), last());
+
+        repository.queryAllById(Arrays.asList("1", "2"), "t1").collectList().block();
+        String mget = bodies.get(bodies.size() - 1);
+        assertTrue(mget.contains("\"routing\":\"t1\""), mget);
+
+        repository.update("1", Collections.singletonMap("name", "b"), "t1");
+        assertTrue(last().startsWith("POST /routed/_update/1?"), last());
+        assertTrue(last().contains("routing=t1"), last());
+
+        repository.updateByScript("1", "ctx._source.name = params.name", Collections.singletonMap("name", "c"), "t1");
+        assertTrue(last().contains("routing=t1"), last());
+
+        repository.deleteById("1", "t1");
+        assertTrue(last().startsWith("DELETE /routed/_doc/1?"), last());
+        assertTrue(last().contains("routing=t1"), last());
+    }
+
+    @Test
+    void searchOverloadsSendRouting() {
+        repository.save(new Doc("1", "t1", "a"));
+
+        repository.queryBySourceBuilderForPageHighlight(new SearchSourceBuilder(), "t1,t2").block();
+        assertTrue(last().startsWith("POST /routed/_search?"), last());
+        assertTrue(last().contains("routing=t1,t2"), last());
+
+        requests.clear();
+        assertEquals(1, (long) repository.streamBySourceBuilder(new SearchSourceBuilder(), "t1").count().block());
+        // 之后还会异步地清理scroll
+        String search = requests.get(0);
+        assertTrue(search.startsWith("POST /routed/_search?"), search);
+        assertTrue(search.contains("routing=t1"), search);
+
+        // 不带routing的重载不发送routing参数
+        repository.queryBySourceBuilderForPageHighlight(new SearchSourceBuilder()).block();
+        assertFalse(last().contains("routing="), last());
+    }
+}
@@ -0,0 +1,169 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式查询：没有排序时用scroll，结束或取消时清理scroll上下文；有排序时用search_after按顺序翻页；
+ * 最多预取一页，下游不请求时不会继续翻页
+ *
+ * @author hc
+ */
+class StreamBySourceBuilderTest {
+
+    private static final int DOCS = 25;
+
+    @Index("streamed")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private int n;
+
+        public Doc() {
+        }
+
+        Doc(int n) {
+            this.id = String.valueOf(n);
+            this.n = n;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public int getN() {
+            return n;
+        }
+
+        public void setN(int n) {
+            this.n = n;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+        repository.saveAll(IntStream.range(0, DOCS).mapToObj(Doc::new).collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private static void awaitNoOpenScroll(ElasticsearchStubServer server) throws InterruptedException {
+        // 清理请求是异步发出的
+        for (int i = 0; i < 100 && server.getOpenScrollCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getOpenScrollCount());
+    }
+
+    @Test
+    void scrollReadsEverythingAndClears() throws Exception {
+        List<Doc> docs = repository.streamBySourceBuilder(new SearchSourceBuilder().size(10)).collectList().block();
+        Set<Integer> numbers = docs.stream().map(Doc::getN).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(IntStream.range(0, DOCS).boxed().collect(Collectors.toSet()), numbers);
+        assertEquals(DOCS, docs.size());
+        assertEquals(1, server.getRequestCount(Operation.SEARCH));
+        assertEquals(2, server.getRequestCount(Operation.SCROLL));
+        awaitNoOpenScroll(server);
+    }
+
+    @Test
+    void cancelledScrollIsCleared() throws Exception {
+        assertEquals(3, (long) repository.streamBySourceBuilder(new SearchSourceBuilder().size(10)).take(3).count().block());
+        assertEquals(0, server.getRequestCount(Operation.SCROLL));
+        awaitNoOpenScroll(server);
+    }
+
+    @Test
+    void searchAfterKeepsSortOrder() {
+        List<Integer> numbers = repository.streamBySourceBuilder(new SearchSourceBuilder().size(10).sort("n", SortOrder.DESC))
+                .map(Doc::getN)
+                .collectList()
+                .block();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = DOCS - 1; i >= 0; i--) {
+            expected.add(i);
+        }
+        assertEquals(expected, numbers);
+        assertEquals(3, server.getRequestCount(Operation.SEARCH));
+        assertEquals(0, server.getOpenScrollCount());
+    }
+
+    @Test
+    void readsAtMostOnePageAhead() throws Exception {
+        List<Doc> received = new ArrayList<>();
+        BaseSubscriber<Doc> subscriber = new BaseSubscriber<Doc>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(10);
+            }
+
+            @Override
+            protected void hookOnNext(Doc value) {
+                received.add(value);
+            }
+        };
+        repository.streamBySourceBuilder(new SearchSourceBuilder().size(10)).subscribe(subscriber);
+        for (int i = 0; i < 100 && received.size() < 10; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        // 只预取了第二页
+        assertEquals(10, received.size());
+        assertEquals(1, server.getRequestCount(Operation.SCROLL));
+
+        // 消费第二页的过程中再拉取第三页
+        subscriber.request(10);
+        for (int i = 0; i < 100 && (received.size() < 20 || server.getRequestCount(Operation.SCROLL) < 2); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, received.size());
+        assertEquals(2, server.getRequestCount(Operation.SCROLL));
+        subscriber.dispose();
+        awaitNoOpenScroll(server);
+    }
+}
@@ -0,0 +1,89 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.entiry.BulkResult;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.LatencyModel;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 失败数按文档计数：id相同或没有id的文档失败时不会被合并；取消时中止在途的bulk请求，之后到达的响应不再处理
+ *
+ * @author hc
+ */
+class StreamingBulkIngesterTest {
+
+    @Test
+    void failuresWithDuplicateOrMissingIdsAreAllCounted() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.builder().bulkItemRejectionRate(1.0).start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            ElasticsearchProperties.Bulk bulk = new ElasticsearchProperties.Bulk();
+            // 不重试，被拒绝的文档直接记为失败
+            bulk.setMaxRetries(0);
+            StreamingBulkIngester ingester = new StreamingBulkIngester(client, bulk, (request, failed) -> {
+            });
+            List<DocWriteRequest<?>> requests = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                requests.add(new IndexRequest("docs").id("same").source("{\"n\":" + i + "}", XContentType.JSON));
+            }
+            for (int i = 0; i < 2; i++) {
+                requests.add(new IndexRequest("docs").source("{\"n\":" + i + "}", XContentType.JSON));
+            }
+            BulkResult result = ingester.ingest(Flux.fromIterable(requests)).block();
+            assertFalse(result.isSuccess());
+            assertEquals(5, result.getTotal());
+            assertEquals(5, result.getFailed());
+            assertEquals(0, result.getSucceeded());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    @Test
+    void cancelAbortsInFlightBulk() throws Exception {
+        ElasticsearchStubServer server = ElasticsearchStubServer.builder()
+                .latency(Operation.BULK, LatencyModel.fixed(Duration.ofMillis(500)))
+                .start();
+        RestHighLevelClient client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        try {
+            ElasticsearchProperties.Bulk bulk = new ElasticsearchProperties.Bulk();
+            bulk.setAdaptive(false);
+            bulk.setActions(1);
+            AtomicInteger completed = new AtomicInteger();
+            StreamingBulkIngester ingester = new StreamingBulkIngester(client, bulk,
+                    (request, failed) -> completed.incrementAndGet());
+            Disposable ingestion = ingester.ingest(Flux.just(new IndexRequest("docs").id("1")
+                    .source("{\"n\":1}", XContentType.JSON))).subscribe();
+            for (int i = 0; i < 100 && server.getRequestCount(Operation.BULK) == 0; i++) {
+                Thread.sleep(10);
+            }
+            ingestion.dispose();
+            // 桩服务的响应在取消之后到达，不再回调
+            Thread.sleep(1000);
+            assertEquals(1, server.getRequestCount(Operation.BULK));
+            assertEquals(0, completed.get());
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+}
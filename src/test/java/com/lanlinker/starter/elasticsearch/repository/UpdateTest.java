@@ -0,0 +1,197 @@
+package com.lanlinker.starter.elasticsearch.repository;
+
+import com.lanlinker.starter.elasticsearch.annotaions.Id;
+import com.lanlinker.starter.elasticsearch.annotaions.Index;
+import com.lanlinker.starter.elasticsearch.config.ElasticsearchProperties;
+import com.lanlinker.starter.elasticsearch.factory.RepositoryFactory;
+import com.lanlinker.starter.elasticsearch.stub.ElasticsearchStubServer;
+import com.lanlinker.starter.elasticsearch.stub.Operation;
+import org.apache.http.HttpHost;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 局部更新、upsert和脚本更新：只修改请求中的字段，文档不存在时失败（upsert除外）；批量版本通过一个bulk请求发送
+ *
+ * @author hc
+ */
+class UpdateTest {
+
+    @Index("updated")
+    static class Doc {
+
+        @Id
+        private String id;
+
+        private String name;
+
+        private String color;
+
+        private int count;
+
+        public Doc() {
+        }
+
+        Doc(String id, String name, String color, int count) {
+            this.id = id;
+            this.name = name;
+            this.color = color;
+            this.count = count;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getColor() {
+            return color;
+        }
+
+        public void setColor(String color) {
+            this.color = color;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+
+    interface DocRepository extends Repository<Doc, String> {
+    }
+
+    private static final String INCREMENT = "ctx._source.count += params.delta";
+
+    private ElasticsearchStubServer server;
+
+    private RestHighLevelClient client;
+
+    private DocRepository repository;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = ElasticsearchStubServer.start();
+        client = new RestHighLevelClient(RestClient.builder(HttpHost.create(server.getHosts())));
+        repository = new RepositoryFactory<>(DocRepository.class, client, new ElasticsearchProperties()).getObject();
+        repository.saveAll(Arrays.asList(new Doc("1", "a", "red", 5), new Doc("2", "b", "blue", 7)));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private Doc get(String id) {
+        return repository.queryById(id).block();
+    }
+
+    @Test
+    void fieldUpdateKeepsOtherFields() {
+        assertTrue(repository.update("1", Collections.singletonMap("name", "a2")));
+        Doc doc = get("1");
+        assertEquals("a2", doc.getName());
+        assertEquals("red", doc.getColor());
+        assertEquals(5, doc.getCount());
+
+        // 内容没有变化时也返回true
+        assertTrue(repository.update("1", Collections.singletonMap("name", "a2")));
+
+        ElasticsearchStatusException e = assertThrows(ElasticsearchStatusException.class,
+                () -> repository.update("missing", Collections.singletonMap("name", "x")));
+        assertEquals(RestStatus.NOT_FOUND, e.status());
+    }
+
+    @Test
+    void partialEntitySkipsNullProperties() {
+        Doc partial = new Doc("1", null, "green", 9);
+        assertTrue(repository.update(partial));
+        Doc doc = get("1");
+        assertEquals("a", doc.getName());
+        assertEquals("green", doc.getColor());
+        // 基本类型总会写入
+        assertEquals(9, doc.getCount());
+    }
+
+    @Test
+    void upsertCreatesOrReplacesFields() {
+        assertTrue(repository.upsert(new Doc("3", "c", null, 1)));
+        assertEquals("c", get("3").getName());
+
+        assertTrue(repository.upsert(new Doc("1", "a3", null, 2)));
+        Doc doc = get("1");
+        assertEquals("a3", doc.getName());
+        assertEquals(2, doc.getCount());
+    }
+
+    @Test
+    void scriptUpdate() {
+        assertTrue(repository.updateByScript("1", INCREMENT, Collections.singletonMap("delta", 3)));
+        assertEquals(8, get("1").getCount());
+
+        assertThrows(ElasticsearchStatusException.class,
+                () -> repository.updateByScript("missing", INCREMENT, Collections.singletonMap("delta", 3)));
+    }
+
+    @Test
+    void bulkVariantsUseOneRequestEach() {
+        long bulks = server.getRequestCount(Operation.BULK);
+
+        Map<String, Map<String, Object>> updates = new LinkedHashMap<>();
+        updates.put("1", Collections.singletonMap("name", "a2"));
+        updates.put("2", Collections.singletonMap("name", "b2"));
+        assertTrue(repository.updateAll(updates));
+        assertEquals("a2", get("1").getName());
+        assertEquals("b2", get("2").getName());
+
+        assertTrue(repository.updateAll(Arrays.asList(new Doc("1", null, "c1", 1), new Doc("2", null, "c2", 2))));
+        assertEquals("c1", get("1").getColor());
+        assertEquals("a2", get("1").getName());
+
+        assertTrue(repository.upsertAll(Arrays.asList(new Doc("2", "b3", "c2", 2), new Doc("3", "c", null, 0))));
+        assertEquals("b3", get("2").getName());
+        assertEquals("c", get("3").getName());
+
+        assertTrue(repository.updateAllByScript(Arrays.asList("1", "2"), INCREMENT, Collections.singletonMap("delta", 10)));
+        assertEquals(11, get("1").getCount());
+        assertEquals(12, get("2").getCount());
+        assertEquals(bulks + 4, server.getRequestCount(Operation.BULK));
+
+        // 其中一个文档不存在时其它文档照常更新，失败的id在异常信息中
+        RuntimeException e = assertThrows(RuntimeException.class, () -> repository.updateAllByScript(
+                Arrays.asList("1", "missing"), INCREMENT, Collections.singletonMap("delta", 1)));
+        assertTrue(e.getMessage().contains("[missing]: "), e.getMessage());
+        assertFalse(e.getMessage().contains("[1]: "), e.getMessage());
+        assertEquals(12, get("1").getCount());
+    }
+}